@@ -0,0 +1,244 @@
+package com.smartherd.debugoverlay;
+
+import androidx.annotation.Nullable;
+
+import java.time.Instant;
+import java.util.Locale;
+
+/**
+ * Evaluates the AlertRules against every sample and keeps a timestamped log of when each one
+ * fired and cleared.
+ *
+ * Rules are added and removed from any thread (copy-on-write array, like the stats listeners);
+ * samples and finished network calls are fed in on the sampler thread, which owns the rules'
+ * windows. The event log is a fixed ring guarded by this object: written once per firing or
+ * clearing, read by appendReport() from any thread.
+ */
+final class AlertEngine {
+
+    static final int MAX_RULES = 32;
+    static final int MAX_EVENTS = 64;
+
+    /**
+     * Told when a rule starts firing. Called on the sampler thread; keep it short.
+     */
+    interface Listener {
+        void onAlertFired(AlertRule rule, double value, long wallMs);
+    }
+
+    /**
+     * One firing of a rule.
+     */
+    private static final class Event {
+        long sequence = -1;
+        String rule;
+        long firedWallMs;
+        // -1 while the rule is still firing.
+        long clearedWallMs;
+        double value;
+    }
+
+    private static final AlertRule[] NO_RULES = new AlertRule[0];
+
+    private volatile AlertRule[] rules = NO_RULES;
+    @Nullable
+    private volatile Listener listener;
+
+    // --- Event Log (guarded by this) ---
+    private final Event[] events = new Event[MAX_EVENTS];
+    private long eventCount = 0;
+    private long lastWallMs = 0;
+
+    AlertEngine() {
+        for (int i = 0; i < MAX_EVENTS; i++) {
+            events[i] = new Event();
+        }
+    }
+
+    void setListener(@Nullable Listener listener) {
+        this.listener = listener;
+    }
+
+    // --- Rules (any thread) ---
+
+    /**
+     * Parses and adds a rule (see AlertRule for the grammar). Safe from any thread.
+     *
+     * @throws IllegalArgumentException if the rule doesn't parse or MAX_RULES are already set.
+     */
+    synchronized AlertRule addRule(String text) {
+        AlertRule rule = AlertRule.parse(text);
+        AlertRule[] current = rules;
+        if (current.length >= MAX_RULES) {
+            throw new IllegalArgumentException("At most " + MAX_RULES + " alert rules");
+        }
+        AlertRule[] updated = new AlertRule[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = rule;
+        rules = updated;
+        return rule;
+    }
+
+    /**
+     * Removes every rule whose text equals {@code text} (as added, ignoring surrounding spaces).
+     * A removed rule that was firing is logged as cleared.
+     */
+    synchronized void removeRule(String text) {
+        String trimmed = text.trim();
+        AlertRule[] current = rules;
+        int kept = 0;
+        AlertRule[] updated = new AlertRule[current.length];
+        for (AlertRule rule : current) {
+            if (rule.text.equals(trimmed)) {
+                closeEvent(rule, lastWallMs);
+            } else {
+                updated[kept++] = rule;
+            }
+        }
+        if (kept == current.length) return;
+        AlertRule[] trimmedRules = new AlertRule[kept];
+        System.arraycopy(updated, 0, trimmedRules, 0, kept);
+        rules = trimmedRules;
+    }
+
+    synchronized void clearRules() {
+        for (AlertRule rule : rules) {
+            closeEvent(rule, lastWallMs);
+        }
+        rules = NO_RULES;
+    }
+
+    int ruleCount() {
+        return rules.length;
+    }
+
+    // --- Evaluation (sampler thread) ---
+
+    /**
+     * Feeds one finished call to the net.* rules.
+     *
+     * @param nowMs uptime at which the call is seen (the same clock as evaluate()).
+     */
+    void addCall(long nowMs, NetworkLogBuffer.Entry entry) {
+        for (AlertRule rule : rules) {
+            rule.addCall(nowMs, entry);
+        }
+    }
+
+    /**
+     * Judges every rule against the sample {@code data} and writes the outcome into its alert
+     * fields: which metrics are firing, how many rules are, and the newest alert.
+     *
+     * @param nowMs  uptime of the sample, driving the windows.
+     * @param wallMs wall-clock time of the sample, for the event log.
+     */
+    void evaluate(DebugStatsCollector.StatsData data, long nowMs, long wallMs) {
+        AlertRule[] current = rules;
+        long firingMetrics = 0;
+        int firing = 0;
+        AlertRule newest = null;
+        for (AlertRule rule : current) {
+            boolean breached = rule.update(data, nowMs);
+            if (breached && !rule.firing) {
+                rule.firing = true;
+                rule.firedAtMs = nowMs;
+                openEvent(rule, wallMs);
+                Listener l = listener;
+                if (l != null) {
+                    l.onAlertFired(rule, rule.value(), wallMs);
+                }
+            } else if (!breached && rule.firing) {
+                rule.firing = false;
+                synchronized (this) {
+                    closeEvent(rule, wallMs);
+                }
+            }
+            if (rule.firing) {
+                firingMetrics |= 1L << rule.metric;
+                firing++;
+                if (newest == null || rule.firedAtMs >= newest.firedAtMs) {
+                    newest = rule;
+                }
+            }
+        }
+        synchronized (this) {
+            lastWallMs = wallMs;
+            data.alertEventCount = eventCount;
+        }
+
+        data.alertRuleCount = current.length;
+        data.alertFiringCount = firing;
+        data.alertFiringMetrics = firingMetrics;
+        if (newest != null) {
+            data.alertLabel = newest.text;
+            data.alertValue = newest.value();
+            data.alertAgeSeconds = (int) ((nowMs - newest.firedAtMs) / 1000);
+        } else {
+            data.alertLabel = null;
+            data.alertValue = Double.NaN;
+            data.alertAgeSeconds = 0;
+        }
+    }
+
+    /**
+     * Restarts every rule's window, e.g. when sampling resumes after the app was in the
+     * background. Sampler thread only.
+     */
+    void reset() {
+        for (AlertRule rule : rules) {
+            rule.reset();
+        }
+    }
+
+    // --- Event Log ---
+
+    private synchronized void openEvent(AlertRule rule, long wallMs) {
+        Event event = events[(int) (eventCount % MAX_EVENTS)];
+        event.sequence = eventCount;
+        event.rule = rule.text;
+        event.firedWallMs = wallMs;
+        event.clearedWallMs = -1;
+        event.value = rule.value();
+        rule.eventSequence = eventCount;
+        eventCount++;
+    }
+
+    // Caller holds the lock.
+    private void closeEvent(AlertRule rule, long wallMs) {
+        long sequence = rule.eventSequence;
+        if (sequence < 0) return;
+        Event event = events[(int) (sequence % MAX_EVENTS)];
+        // Unless the ring has moved past it since.
+        if (event.sequence == sequence && event.clearedWallMs < 0) {
+            event.clearedWallMs = wallMs;
+        }
+        rule.eventSequence = -1;
+    }
+
+    synchronized long eventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Appends the rules and the retained events, oldest first, with ISO-8601 (UTC) timestamps.
+     */
+    synchronized void appendReport(StringBuilder out) {
+        AlertRule[] current = rules;
+        out.append("Alert rules: ").append(current.length).append(", fired ").append(eventCount).append(" times\n");
+        for (AlertRule rule : current) {
+            out.append("  ").append(rule.text).append(rule.firing ? " (firing)" : "").append('\n');
+        }
+        long first = Math.max(0, eventCount - MAX_EVENTS);
+        for (long sequence = first; sequence < eventCount; sequence++) {
+            Event event = events[(int) (sequence % MAX_EVENTS)];
+            out.append(Instant.ofEpochMilli(event.firedWallMs)).append(' ').append(event.rule)
+                    .append(": ").append(String.format(Locale.ROOT, "%.1f", event.value));
+            if (event.clearedWallMs >= 0) {
+                out.append(", cleared ").append(Instant.ofEpochMilli(event.clearedWallMs));
+            } else {
+                out.append(", firing");
+            }
+            out.append('\n');
+        }
+    }
+}
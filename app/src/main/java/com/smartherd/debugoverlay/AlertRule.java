@@ -0,0 +1,319 @@
+package com.smartherd.debugoverlay;
+
+import androidx.annotation.Nullable;
+
+import java.util.Locale;
+
+/**
+ * One declarative threshold rule over the collector's samples, e.g.
+ *
+ *   fps < 45 for 3s                   FPS stayed below 45 for the last 3 seconds
+ *   net.p99[api.example.com] > 800ms over 30s
+ *                                     p99 latency of the calls to that host (or its subdomains)
+ *                                     finished in the last 30 seconds
+ *   rate(heap) > 20 over 1m           Java heap grew faster than 20MB per minute over the last minute
+ *
+ * Grammar: {@code metric op threshold[unit] mode duration}, where
+ * - metric is one of METRIC_NAMES, {@code rate(metric)} for its change per minute (for counters
+ *   such as gc.blocking and stalls, or growth of a gauge), and the net.* metrics may name a host
+ *   in brackets;
+ * - op is {@code <} / {@code below} or {@code >} / {@code above};
+ * - the threshold is a number in the metric's own unit (FPS, ms, %, MB, count), optionally
+ *   followed by that unit, which is only read past;
+ * - mode {@code for} means the value was past the threshold at every sample in the window
+ *   (gauges only), {@code over} compares the window's mean, growth or call percentile;
+ * - the duration is a number with ms, s or m.
+ *
+ * Each sample is folded into a SlidingWindow (or a CallWindow for network calls), so evaluation is
+ * O(1) per sample whatever the window length. A gauge rule is only judged once its samples cover
+ * the whole window, and an unknown value (e.g. FPS before any frame) restarts that coverage.
+ * The windows are updated and read on the sampler thread only.
+ */
+final class AlertRule {
+
+    // --- Metrics ---
+    static final int FPS = 0;
+    static final int FRAME_P99 = 1;
+    static final int CPU = 2;
+    static final int SYSTEM_CPU = 3;
+    static final int HEAP = 4;
+    static final int NATIVE_HEAP = 5;
+    static final int PSS = 6;
+    static final int RSS = 7;
+    static final int THREADS = 8;
+    static final int BLOCKING_GC = 9;
+    static final int STALLS = 10;
+    static final int NET_P50 = 11;
+    static final int NET_P95 = 12;
+    static final int NET_P99 = 13;
+    static final int NET_ERRORS = 14;
+    static final int METRIC_COUNT = 15;
+    static final String[] METRIC_NAMES = {
+            "fps", "frame.p99", "cpu", "sys.cpu", "heap", "native", "pss", "rss", "threads",
+            "gc.blocking", "stalls", "net.p50", "net.p95", "net.p99", "net.errors"
+    };
+
+    // Sized for one sample per second or faster; longer windows keep their newest samples.
+    private static final int MIN_SAMPLES = 8;
+    private static final int MAX_SAMPLES = 1024;
+    private static final long SAMPLE_SPACING_MS = 500;
+    private static final int MAX_CALLS = 1024;
+
+    final String text;
+    final int metric;
+    // Calls to this host or its subdomains only (net.* metrics); null for all.
+    @Nullable
+    final String host;
+    final boolean rate;
+    final boolean above;
+    final double threshold;
+    // "for": every sample in the window; "over": the window's aggregate.
+    final boolean sustained;
+    final long windowMs;
+
+    // --- State (sampler thread only) ---
+    @Nullable
+    private final SlidingWindow samples;
+    @Nullable
+    private final CallWindow calls;
+    // When the current run of known samples started (-1 until the next sample).
+    private long coveredSinceMs = -1;
+    private double value = Double.NaN;
+    // Also read by AlertEngine.appendReport() on other threads.
+    volatile boolean firing = false;
+    long firedAtMs = 0;
+    // Sequence of the event this rule's current firing was logged as (AlertEngine).
+    long eventSequence = -1;
+
+    private AlertRule(String text, int metric, @Nullable String host, boolean rate, boolean above,
+                      double threshold, boolean sustained, long windowMs) {
+        this.text = text;
+        this.metric = metric;
+        this.host = host;
+        this.rate = rate;
+        this.above = above;
+        this.threshold = threshold;
+        this.sustained = sustained;
+        this.windowMs = windowMs;
+        if (isCallMetric()) {
+            samples = null;
+            calls = new CallWindow(windowMs, MAX_CALLS);
+        } else {
+            int capacity = (int) Math.max(MIN_SAMPLES, Math.min(MAX_SAMPLES, windowMs / SAMPLE_SPACING_MS + 2));
+            samples = new SlidingWindow(windowMs, capacity);
+            calls = null;
+        }
+    }
+
+    /**
+     * Parses a rule such as "fps < 45 for 3s".
+     *
+     * @throws IllegalArgumentException if {@code text} does not follow the grammar above.
+     */
+    static AlertRule parse(String text) {
+        String trimmed = text.trim();
+        String[] tokens = trimmed.toLowerCase(Locale.ROOT).split("\\s+");
+        if (tokens.length != 5) {
+            throw new IllegalArgumentException("Expected \"metric op threshold for|over duration\": " + text);
+        }
+
+        String metricToken = tokens[0];
+        boolean rate = metricToken.startsWith("rate(") && metricToken.endsWith(")");
+        if (rate) {
+            metricToken = metricToken.substring("rate(".length(), metricToken.length() - 1);
+        }
+        String host = null;
+        int bracket = metricToken.indexOf('[');
+        if (bracket >= 0) {
+            if (!metricToken.endsWith("]") || bracket + 2 > metricToken.length() - 1) {
+                throw new IllegalArgumentException("Malformed host in " + text);
+            }
+            host = metricToken.substring(bracket + 1, metricToken.length() - 1);
+            metricToken = metricToken.substring(0, bracket);
+        }
+        int metric = indexOf(METRIC_NAMES, metricToken);
+        if (metric < 0) {
+            throw new IllegalArgumentException("Unknown metric \"" + metricToken + "\" in " + text);
+        }
+        boolean callMetric = metric >= NET_P50;
+        if (host != null && !callMetric) {
+            throw new IllegalArgumentException("Only net.* metrics take a host: " + text);
+        }
+        if (rate && callMetric) {
+            throw new IllegalArgumentException("rate() does not apply to net.* metrics: " + text);
+        }
+
+        boolean above;
+        switch (tokens[1]) {
+            case ">": case "above": above = true; break;
+            case "<": case "below": above = false; break;
+            default: throw new IllegalArgumentException("Unknown operator \"" + tokens[1] + "\" in " + text);
+        }
+
+        double threshold = parseLeadingNumber(tokens[2], text);
+
+        boolean sustained;
+        switch (tokens[3]) {
+            case "for": sustained = true; break;
+            case "over": sustained = false; break;
+            default: throw new IllegalArgumentException("Expected \"for\" or \"over\" in " + text);
+        }
+        if (sustained && (rate || callMetric)) {
+            throw new IllegalArgumentException("Use \"over\" with rate() and net.* metrics: " + text);
+        }
+
+        long windowMs = parseDurationMs(tokens[4], text);
+        return new AlertRule(trimmed, metric, host, rate, above, threshold, sustained, windowMs);
+    }
+
+    private static int indexOf(String[] names, String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    // "800ms" -> 800, "20mb/min" -> 20; whatever follows the number is taken to be its unit.
+    private static double parseLeadingNumber(String token, String text) {
+        int end = 0;
+        while (end < token.length() && (Character.isDigit(token.charAt(end)) || token.charAt(end) == '.')) {
+            end++;
+        }
+        if (end == 0 || (end < token.length() && !isUnitChar(token.charAt(end)))) {
+            throw new IllegalArgumentException("Bad threshold \"" + token + "\" in " + text);
+        }
+        try {
+            return Double.parseDouble(token.substring(0, end));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad threshold \"" + token + "\" in " + text, e);
+        }
+    }
+
+    private static boolean isUnitChar(char c) {
+        return Character.isLetter(c) || c == '%' || c == '/';
+    }
+
+    static long parseDurationMs(String token, String text) {
+        long multiplier;
+        String digits;
+        if (token.endsWith("ms")) {
+            multiplier = 1;
+            digits = token.substring(0, token.length() - 2);
+        } else if (token.endsWith("s")) {
+            multiplier = 1_000;
+            digits = token.substring(0, token.length() - 1);
+        } else if (token.endsWith("m")) {
+            multiplier = 60_000;
+            digits = token.substring(0, token.length() - 1);
+        } else {
+            throw new IllegalArgumentException("Duration needs ms, s or m: " + text);
+        }
+        long duration;
+        try {
+            duration = Long.parseLong(digits);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad duration \"" + token + "\" in " + text, e);
+        }
+        if (duration <= 0) {
+            throw new IllegalArgumentException("Duration must be > 0: " + text);
+        }
+        return duration * multiplier;
+    }
+
+    boolean isCallMetric() {
+        return metric >= NET_P50;
+    }
+
+    // --- Evaluation (sampler thread) ---
+
+    /**
+     * Adds a finished call to a net.* rule's window if it matches the rule's host.
+     */
+    void addCall(long nowMs, NetworkLogBuffer.Entry entry) {
+        if (calls == null || !NetworkLogBuffer.matches(entry, host, NetworkLogBuffer.FILTER_ALL)) return;
+        calls.add(nowMs, entry.durationMs, entry.statusCode < 0 || entry.statusCode >= 500);
+    }
+
+    /**
+     * Folds in the sample {@code data} taken at {@code nowMs} (uptime) and judges the rule.
+     *
+     * @return whether the rule is breached now.
+     */
+    boolean update(DebugStatsCollector.StatsData data, long nowMs) {
+        if (calls != null) {
+            calls.evict(nowMs);
+            if (calls.size() == 0) {
+                value = Double.NaN;
+                return false;
+            }
+            value = metric == NET_ERRORS ? calls.errorPercent()
+                    : calls.percentileMs(metric == NET_P50 ? 50 : metric == NET_P95 ? 95 : 99);
+            return isPast(value);
+        }
+
+        SlidingWindow window = samples;
+        double sample = metricValue(metric, data);
+        if (Double.isNaN(sample)) {
+            window.clear();
+            coveredSinceMs = -1;
+            value = Double.NaN;
+            return false;
+        }
+        window.add(nowMs, sample);
+        if (coveredSinceMs < 0) {
+            coveredSinceMs = nowMs;
+        }
+        if (rate) {
+            value = window.ratePerMinute();
+        } else if (sustained) {
+            // The sample closest to the threshold: past it means every sample was.
+            value = above ? window.min() : window.max();
+        } else {
+            value = window.mean();
+        }
+        return nowMs - coveredSinceMs >= windowMs && !Double.isNaN(value) && isPast(value);
+    }
+
+    private boolean isPast(double aggregate) {
+        return above ? aggregate > threshold : aggregate < threshold;
+    }
+
+    /**
+     * The aggregate judged at the last update (NaN if there was nothing to judge).
+     */
+    double value() {
+        return value;
+    }
+
+    void reset() {
+        if (samples != null) samples.clear();
+        if (calls != null) calls.clear();
+        coveredSinceMs = -1;
+        value = Double.NaN;
+    }
+
+    /**
+     * Current value of a gauge metric in {@code data}, or NaN if it is unknown.
+     */
+    static double metricValue(int metric, DebugStatsCollector.StatsData data) {
+        switch (metric) {
+            case FPS: return data.fps > 0 ? data.fps : Double.NaN;
+            case FRAME_P99: return data.fps > 0 ? data.frameTimeP99Ms : Double.NaN;
+            case CPU: return data.cpuUsage;
+            case SYSTEM_CPU: return data.systemCpuUsage >= 0 ? data.systemCpuUsage : Double.NaN;
+            case HEAP: return data.javaHeapUsedMB;
+            case NATIVE_HEAP: return data.nativeHeapMB;
+            case PSS: return data.usedMemoryMB > 0 ? data.usedMemoryMB : Double.NaN;
+            case RSS: return data.rssMB >= 0 ? data.rssMB : Double.NaN;
+            case THREADS: return data.threadCount >= 0 ? data.threadCount : Double.NaN;
+            case BLOCKING_GC: return data.blockingGcCount >= 0 ? data.blockingGcCount : Double.NaN;
+            case STALLS: return data.mainThreadStallCount;
+            default: return Double.NaN;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
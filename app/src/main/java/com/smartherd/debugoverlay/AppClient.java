@@ -24,6 +24,8 @@ public class AppClient {
                         DebugStatsCollector collector = getCollector(context);
                         if (collector != null) {
                             builder.addInterceptor(new NetworkMonitorInterceptor(collector));
+                            // Per-phase timing (DNS/connect/TLS/TTFB/body) alongside the interceptor.
+                            builder.eventListenerFactory(collector.getNetworkEventListenerFactory());
                         }
                     }
 
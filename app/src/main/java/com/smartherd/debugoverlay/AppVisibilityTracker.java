@@ -0,0 +1,134 @@
+package com.smartherd.debugoverlay;
+
+import android.app.Activity;
+import android.app.ActivityManager;
+import android.app.Application;
+import android.os.Bundle;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Process-wide "is any activity of this app started" signal, derived from started/stopped counts
+ * in ActivityLifecycleCallbacks. Collectors use it to suspend all sampling while the app is in
+ * the background.
+ *
+ * An activity recreated for a configuration change (rotation, dark mode, ...) is stopped and its
+ * replacement started right after; that does not flip the state.
+ *
+ * Main thread only: lifecycle callbacks arrive there, and listeners are called there.
+ */
+final class AppVisibilityTracker implements Application.ActivityLifecycleCallbacks {
+
+    interface Listener {
+        void onAppVisibilityChanged(boolean visible);
+    }
+
+    private static final Listener[] NO_LISTENERS = new Listener[0];
+    private static AppVisibilityTracker instance;
+
+    private int startedCount = 0;
+    private boolean visible;
+    private Listener[] listeners = NO_LISTENERS;
+
+    AppVisibilityTracker(boolean initiallyVisible) {
+        this.visible = initiallyVisible;
+    }
+
+    /**
+     * Registers the process-wide tracker (once; later calls return the same instance).
+     * Call from Application.onCreate() so no activity start is missed.
+     */
+    static AppVisibilityTracker install(Application app) {
+        if (instance == null) {
+            // If installed late, start from the process state instead of assuming background.
+            ActivityManager.RunningAppProcessInfo state = new ActivityManager.RunningAppProcessInfo();
+            ActivityManager.getMyMemoryState(state);
+            instance = new AppVisibilityTracker(
+                    state.importance <= ActivityManager.RunningAppProcessInfo.IMPORTANCE_VISIBLE);
+            app.registerActivityLifecycleCallbacks(instance);
+        }
+        return instance;
+    }
+
+    /**
+     * @return the installed tracker, or null if nothing installed one (collectors then never pause).
+     */
+    @Nullable
+    static AppVisibilityTracker get() {
+        return instance;
+    }
+
+    /**
+     * Makes {@code tracker} the process-wide one without registering it with an Application.
+     * For local unit tests, which feed it onStarted()/onStopped() directly.
+     */
+    static void setInstance(@Nullable AppVisibilityTracker tracker) {
+        instance = tracker;
+    }
+
+    boolean isVisible() {
+        return visible;
+    }
+
+    void addListener(Listener listener) {
+        for (Listener l : listeners) {
+            if (l == listener) return;
+        }
+        Listener[] next = new Listener[listeners.length + 1];
+        System.arraycopy(listeners, 0, next, 0, listeners.length);
+        next[listeners.length] = listener;
+        listeners = next;
+    }
+
+    void removeListener(Listener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] != listener) continue;
+            Listener[] next = listeners.length == 1 ? NO_LISTENERS : new Listener[listeners.length - 1];
+            System.arraycopy(listeners, 0, next, 0, i);
+            System.arraycopy(listeners, i + 1, next, i, listeners.length - i - 1);
+            listeners = next;
+            return;
+        }
+    }
+
+    private void setVisible(boolean nowVisible) {
+        if (visible == nowVisible) return;
+        visible = nowVisible;
+        // Iterates a snapshot, so listeners may unregister themselves while being called.
+        for (Listener listener : listeners) {
+            listener.onAppVisibilityChanged(nowVisible);
+        }
+    }
+
+    @Override
+    public void onActivityStarted(@NonNull Activity activity) {
+        onStarted();
+    }
+
+    @Override
+    public void onActivityStopped(@NonNull Activity activity) {
+        onStopped(activity.isChangingConfigurations());
+    }
+
+    void onStarted() {
+        startedCount++;
+        setVisible(true);
+    }
+
+    /**
+     * @param changingConfigurations whether the activity is stopped only to be recreated.
+     */
+    void onStopped(boolean changingConfigurations) {
+        startedCount = Math.max(0, startedCount - 1);
+        if (startedCount == 0 && !changingConfigurations) {
+            setVisible(false);
+        }
+    }
+
+    @Override public void onActivityCreated(@NonNull Activity activity, @Nullable Bundle savedInstanceState) {}
+    @Override public void onActivityResumed(@NonNull Activity activity) {}
+    @Override public void onActivityPaused(@NonNull Activity activity) {}
+    @Override public void onActivitySaveInstanceState(@NonNull Activity activity, @NonNull Bundle outState) {}
+    @Override public void onActivityDestroyed(@NonNull Activity activity) {}
+}
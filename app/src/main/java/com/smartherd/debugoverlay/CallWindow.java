@@ -0,0 +1,100 @@
+package com.smartherd.debugoverlay;
+
+/**
+ * Latency percentiles and error rate of the network calls finished in the last {@code windowMs}.
+ *
+ * Calls are kept in a preallocated ring as (time, LatencyHistogram bucket, error); a per-bucket
+ * count array is incremented when a call enters and decremented when it leaves the window, so
+ * adding and evicting are O(1) and a percentile walks the fixed LatencyHistogram buckets, never
+ * the calls. When more calls finish within the window than the ring holds, the oldest are dropped
+ * early. Not thread-safe: one thread adds and reads.
+ */
+final class CallWindow {
+
+    private final long windowMs;
+    private final int capacity;
+    private final long[] times;
+    private final short[] buckets;
+    private final boolean[] errors;
+    private long first = 0;
+    private long next = 0;
+    private final long[] bucketCounts = new long[LatencyHistogram.BUCKET_COUNT];
+    private int errorCount = 0;
+
+    CallWindow(long windowMs, int capacity) {
+        if (windowMs <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("windowMs and capacity must be > 0");
+        }
+        this.windowMs = windowMs;
+        this.capacity = capacity;
+        times = new long[capacity];
+        buckets = new short[capacity];
+        errors = new boolean[capacity];
+    }
+
+    /**
+     * Adds a call that finished at {@code timeMs} (non-decreasing between calls).
+     *
+     * @param error whether it failed or returned a 5xx, as counted by EndpointStatsRegistry.
+     */
+    void add(long timeMs, long durationMs, boolean error) {
+        evict(timeMs);
+        if (next - first == capacity) {
+            removeOldest();
+        }
+        int slot = slot(next);
+        int bucket = LatencyHistogram.bucketIndex(durationMs * 1_000);
+        times[slot] = timeMs;
+        buckets[slot] = (short) bucket;
+        errors[slot] = error;
+        bucketCounts[bucket]++;
+        if (error) errorCount++;
+        next++;
+    }
+
+    /**
+     * Drops the calls that finished at or before {@code nowMs - windowMs}.
+     */
+    void evict(long nowMs) {
+        long cutoff = nowMs - windowMs;
+        while (next > first && times[slot(first)] <= cutoff) {
+            removeOldest();
+        }
+    }
+
+    void clear() {
+        while (next > first) {
+            removeOldest();
+        }
+    }
+
+    int size() {
+        return (int) (next - first);
+    }
+
+    /**
+     * Latency percentile (0-100) of the calls in the window, in milliseconds (0 if there are none).
+     */
+    double percentileMs(double percent) {
+        return LatencyHistogram.percentile(bucketCounts, size(), percent) / 1_000.0;
+    }
+
+    /**
+     * Share of the calls in the window that failed, in percent (0 if there are none).
+     */
+    double errorPercent() {
+        int size = size();
+        return size > 0 ? errorCount * 100.0 / size : 0;
+    }
+
+    private void removeOldest() {
+        int slot = slot(first);
+        bucketCounts[buckets[slot]]--;
+        if (errors[slot]) errorCount--;
+        first++;
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % capacity);
+    }
+}
@@ -0,0 +1,128 @@
+package com.smartherd.debugoverlay;
+
+/**
+ * A reusable, fixed-capacity line of text used to format overlay values without allocating.
+ * Replaces String.format on the render path: numbers are written digit by digit into a char[]
+ * that lives as long as the view, and the result is drawn straight from that array.
+ *
+ * Text beyond the capacity is silently truncated.
+ */
+final class CharLine {
+
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L
+    };
+
+    private final char[] chars;
+    private int length = 0;
+
+    CharLine(int capacity) {
+        this.chars = new char[capacity];
+    }
+
+    CharLine clear() {
+        length = 0;
+        return this;
+    }
+
+    CharLine append(char c) {
+        if (length < chars.length) {
+            chars[length++] = c;
+        }
+        return this;
+    }
+
+    CharLine append(String literal) {
+        int n = literal.length();
+        for (int i = 0; i < n; i++) {
+            append(literal.charAt(i));
+        }
+        return this;
+    }
+
+    /**
+     * Appends at most {@code maxChars} characters of {@code literal}.
+     */
+    CharLine append(String literal, int maxChars) {
+        int n = Math.min(literal.length(), maxChars);
+        for (int i = 0; i < n; i++) {
+            append(literal.charAt(i));
+        }
+        return this;
+    }
+
+    CharLine append(long value) {
+        if (value == Long.MIN_VALUE) {
+            return append("-9223372036854775808");
+        }
+        if (value < 0) {
+            append('-');
+            value = -value;
+        }
+
+        int digits = 1;
+        for (long v = value / 10; v > 0; v /= 10) {
+            digits++;
+        }
+
+        // Write right-to-left into the reserved span, dropping digits that don't fit.
+        int end = length + digits;
+        for (int i = end - 1; i >= length; i--) {
+            if (i < chars.length) {
+                chars[i] = (char) ('0' + (value % 10));
+            }
+            value /= 10;
+        }
+        length = Math.min(end, chars.length);
+        return this;
+    }
+
+    /**
+     * Appends {@code value} rounded to {@code decimals} places (0-6), e.g. 12.345 -> "12.3".
+     */
+    CharLine appendFixed(double value, int decimals) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return append('-');
+        }
+        int places = Math.max(0, Math.min(decimals, POWERS_OF_TEN.length - 1));
+        long scale = POWERS_OF_TEN[places];
+        long scaled = Math.round(Math.abs(value) * scale);
+        if (value < 0 && scaled != 0) {
+            append('-');
+        }
+
+        append(scaled / scale);
+        if (places > 0) {
+            append('.');
+            long fraction = scaled % scale;
+            // Zero-pad the fraction, e.g. 5.05 -> "5.05" rather than "5.5".
+            for (long p = scale / 10; p > fraction && p > 1; p /= 10) {
+                append('0');
+            }
+            append(fraction);
+        }
+        return this;
+    }
+
+    boolean contentEquals(CharLine other) {
+        if (length != other.length) return false;
+        for (int i = 0; i < length; i++) {
+            if (chars[i] != other.chars[i]) return false;
+        }
+        return true;
+    }
+
+    void copyFrom(CharLine other) {
+        int n = Math.min(other.length, chars.length);
+        System.arraycopy(other.chars, 0, chars, 0, n);
+        length = n;
+    }
+
+    char[] chars() { return chars; }
+    int length() { return length; }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+}
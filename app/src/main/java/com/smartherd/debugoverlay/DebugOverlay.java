@@ -3,6 +3,7 @@ package com.smartherd.debugoverlay;
 
 import android.app.Application;
 
+import okhttp3.EventListener;
 import okhttp3.Interceptor;
 
 public final class DebugOverlay {
@@ -42,4 +43,12 @@ public final class DebugOverlay {
     public static Interceptor getNetworkInterceptor() {
         return new NetworkInterceptor();
     }
+
+    /**
+     * Per-phase call timing (DNS, connect, TLS, request, TTFB, body). Register it with
+     * OkHttpClient.Builder.eventListenerFactory() alongside getNetworkInterceptor().
+     */
+    public static EventListener.Factory getNetworkEventListenerFactory() {
+        return StatsCollector.networkTimingFactory();
+    }
 }
@@ -16,6 +16,9 @@ public class DebugOverlayApp extends Application {
     public void onCreate() {
         super.onCreate();
 
+        // Installed before any activity starts, so collectors can go idle in the background.
+        AppVisibilityTracker.install(this);
+
         // Initialize the collector early in the application lifecycle.
         // We pass null for the listener here, as the listener (DebugOverlayView)
         // is created later by the DebugOverlayService when the overlay starts.
@@ -8,20 +8,35 @@ import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
 import android.os.IBinder;
+import android.view.View;
 import android.view.WindowManager;
 import android.util.Log;
 import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
 
+import java.io.File;
+
 public class DebugOverlayService extends Service {
     private static final String TAG = "DebugOverlayService";
     public static final String ACTION_START = "ACTION_START";
     public static final String ACTION_STOP = "ACTION_STOP";
+    // Optional int extra on ACTION_START: stream metrics to desktop tools on this loopback port
+    // (debug builds only), e.g. `--ei stream_port 7077` followed by `adb forward tcp:7077 tcp:7077`.
+    public static final String EXTRA_STREAM_PORT = "stream_port";
+    // Flight recorder dumps, under the app's files directory (adb shell run-as <pkg> ls files/flight).
+    private static final String FLIGHT_DIRECTORY = "flight";
 
     private WindowManager windowManager;
     private DebugOverlayView debugOverlayView;
     private DebugStatsCollector statsCollector;
 
+    // Hides the overlay while the app is in the background; the collector suspends itself meanwhile.
+    private final AppVisibilityTracker.Listener visibilityListener = visible -> {
+        if (debugOverlayView != null) {
+            debugOverlayView.setVisibility(visible ? View.VISIBLE : View.GONE);
+        }
+    };
+
     // Required for Android O+ Foreground Service Notification
     private static final String CHANNEL_ID = "DebugOverlayChannel";
     private static final int NOTIFICATION_ID = 1001; // Must be a unique positive integer
@@ -54,6 +69,10 @@ public class DebugOverlayService extends Service {
                 // FIX: Call startForeground() immediately to satisfy Android O+ requirement
                 startForeground(NOTIFICATION_ID, buildForegroundNotification());
                 startOverlay();
+                int streamPort = intent.getIntExtra(EXTRA_STREAM_PORT, 0);
+                if (BuildConfig.DEBUG && streamPort > 0) {
+                    statsCollector.startStreaming(streamPort);
+                }
             } else if (ACTION_STOP.equals(action)) {
                 stopOverlay();
             }
@@ -67,16 +86,23 @@ public class DebugOverlayService extends Service {
         if (debugOverlayView == null) {
             Log.d(TAG, "Starting Debug Overlay components: Creating View and attempting to add to WindowManager.");
 
-            // 1. Initialize View and set it as the collector's listener
-            debugOverlayView = new DebugOverlayView(this);
-            statsCollector.setListener(debugOverlayView);
+            // 1. Initialize View and register it as one of the collector's listeners
+            debugOverlayView = new DebugOverlayView(this, statsCollector);
+            statsCollector.addListener(debugOverlayView);
 
             try {
                 // 2. Add the View to the WindowManager
                 windowManager.addView(debugOverlayView, debugOverlayView.getLayoutParams());
 
-                // 3. Start data collection (FPS/Memory/CPU)
+                // 3. Start data collection (FPS/Memory/CPU); it only samples while the app is visible
                 statsCollector.start();
+                // Keeps the last seconds in memory; written out on jank, alerts or a double-tap.
+                statsCollector.startFlightRecorder(new File(getFilesDir(), FLIGHT_DIRECTORY));
+                AppVisibilityTracker visibility = AppVisibilityTracker.get();
+                if (visibility != null) {
+                    visibility.addListener(visibilityListener);
+                    visibilityListener.onAppVisibilityChanged(visibility.isVisible());
+                }
                 Log.i(TAG, "Debug Overlay SHOWN successfully and collection started.");
             } catch (WindowManager.BadTokenException e) {
                 // This is the common failure point if permission check was bypassed or failed.
@@ -94,9 +120,13 @@ public class DebugOverlayService extends Service {
             Log.d(TAG, "Stopping Debug Overlay components.");
 
             // 1. Stop data collection
+            AppVisibilityTracker visibility = AppVisibilityTracker.get();
+            if (visibility != null) {
+                visibility.removeListener(visibilityListener);
+            }
             statsCollector.stop();
-            // 2. Clear the listener from the collector
-            statsCollector.setListener(null);
+            // 2. Unregister the view from the collector
+            statsCollector.removeListener(debugOverlayView);
 
             // 3. Remove the View from the WindowManager
             windowManager.removeView(debugOverlayView);
@@ -112,6 +142,10 @@ public class DebugOverlayService extends Service {
     public void onDestroy() {
         super.onDestroy();
         Log.d(TAG, "Service onDestroy.");
+        AppVisibilityTracker visibility = AppVisibilityTracker.get();
+        if (visibility != null) {
+            visibility.removeListener(visibilityListener);
+        }
         if (debugOverlayView != null) {
             windowManager.removeView(debugOverlayView);
         }
@@ -6,11 +6,12 @@ import android.os.Build;
 import android.os.SystemClock;
 import android.util.TypedValue;
 import android.view.Gravity;
+import android.view.HapticFeedbackConstants;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
+import android.view.ViewConfiguration;
 import android.view.WindowManager;
 import android.widget.LinearLayout;
-import android.widget.TextView;
 
 import androidx.annotation.Nullable;
 
@@ -18,17 +19,28 @@ import androidx.annotation.Nullable;
  * Custom View responsible for rendering the debug overlay and handling drag gestures.
  * It implements the StatsUpdateListener to receive and display real-time data.
  * Now loads its design from an XML layout file (debug_overlay.xml).
+ * Updates are coalesced into a single reusable Runnable that copies the collector's latest
+ * snapshot on the main thread, so the UI never reads a sample the sampler is still writing.
+ * The values themselves are drawn by a single StatsPanelView, which formats without allocating
+ * and never requests layout; a SparklineView below it graphs the last minute of FPS, CPU and heap
+ * and is redrawn only when a new snapshot arrives. Their cost (copy, format, draw) is charged to
+ * the collector's OverheadMeter as rendering.
+ * Double-tapping the overlay dumps the collector's flight recorder (the last few seconds of data).
  */
 public class DebugOverlayView extends LinearLayout implements DebugStatsCollector.StatsUpdateListener {
 
     private final WindowManager windowManager;
     private WindowManager.LayoutParams params;
 
+    // --- Stats Source ---
+    private final DebugStatsCollector statsSource;
+    // Main-thread-owned copy of the latest snapshot, refilled by renderStats.
+    private final DebugStatsCollector.StatsData displayedStats = new DebugStatsCollector.StatsData();
+    private long renderedVersion = -1;
+
     // --- Design Elements (IDs match XML) ---
-    private TextView fpsTextView;
-    private TextView memoryTextView;
-    private TextView cpuTextView;
-    private TextView networkTextView;
+    private StatsPanelView statsPanel;
+    private SparklineView sparklines;
 
     // --- Drag State ---
     private float initialTouchX;
@@ -37,9 +49,12 @@ public class DebugOverlayView extends LinearLayout implements DebugStatsCollecto
     private int initialY;
     private long touchStartTime;
     private static final int CLICK_ACTION_THRESHOLD = 200; // ms
+    // End of the previous tap, for double-tap detection (0 if none pending).
+    private long lastTapTime = 0;
 
-    public DebugOverlayView(Context context) {
+    public DebugOverlayView(Context context, DebugStatsCollector statsSource) {
         super(context);
+        this.statsSource = statsSource;
         this.windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
         initView(context);
     }
@@ -67,10 +82,16 @@ public class DebugOverlayView extends LinearLayout implements DebugStatsCollecto
         }
 
         // --- Retrieve Views by ID ---
-        fpsTextView = findViewById(com.smartherd.debugoverlay.R.id.fps_text);
-        memoryTextView = findViewById(com.smartherd.debugoverlay.R.id.memory_text);
-        cpuTextView = findViewById(com.smartherd.debugoverlay.R.id.cpu_text);
-        networkTextView = findViewById(com.smartherd.debugoverlay.R.id.network_text);
+        statsPanel = findViewById(com.smartherd.debugoverlay.R.id.stats_panel);
+        if (statsPanel != null) {
+            statsPanel.setOverheadMeter(statsSource.getOverheadMeter());
+        }
+        sparklines = findViewById(com.smartherd.debugoverlay.R.id.sparklines);
+        if (sparklines != null) {
+            // No setHistorySize(): the collector publishes once per second, so the default
+            // DEFAULT_HISTORY_SAMPLES already cover a minute.
+            sparklines.setOverheadMeter(statsSource.getOverheadMeter());
+        }
     }
 
     /**
@@ -109,28 +130,39 @@ public class DebugOverlayView extends LinearLayout implements DebugStatsCollecto
 
     @Override
     public void onStatsUpdated(DebugStatsCollector.StatsData data) {
-        // Must update UI elements on the main thread
-        post(new Runnable() {
-            @Override
-            public void run() {
-                if (fpsTextView != null) {
-                    fpsTextView.setText(String.format("FPS: %d", data.fps));
-                }
-                if (memoryTextView != null) {
-                    memoryTextView.setText(String.format("Memory: %d MB", data.usedMemoryMB));
-                }
-                if (cpuTextView != null) {
-                    cpuTextView.setText(String.format("CPU: %.1f%%", data.cpuUsage));
+        // Called on the sampler thread: don't touch `data` here, just schedule a render.
+        // Must update UI elements on the main thread; pending renders are coalesced.
+        removeCallbacks(renderStats);
+        post(renderStats);
+    }
+
+    private final Runnable renderStats = new Runnable() {
+        @Override
+        public void run() {
+            OverheadMeter meter = statsSource.getOverheadMeter();
+            long start = System.nanoTime();
+            long cpuStart = meter.cpuStart();
+            long allocStart = meter.allocStart();
+
+            // Copy a consistent snapshot; skip the work if nothing new was published.
+            long version = statsSource.readLatestStats(displayedStats);
+            if (version != renderedVersion) {
+                renderedVersion = version;
+                // Invalidates only if some line changed; never requests layout.
+                if (statsPanel != null) {
+                    statsPanel.setStats(displayedStats);
                 }
-                if (networkTextView != null) {
-                    String netText = data.networkCallCount > 0 ?
-                            String.format("Net: %dms (%d calls)", data.lastRequestLatencyMs, data.networkCallCount) :
-                            String.format("Net: N/A (0 calls)");
-                    networkTextView.setText(netText);
+                // One point per published snapshot; unknown values become gaps.
+                if (sparklines != null) {
+                    sparklines.addSample(displayedStats.fps > 0 ? displayedStats.fps : Double.NaN,
+                            displayedStats.cpuUsage, displayedStats.javaHeapUsedMB);
                 }
             }
-        });
-    }
+
+            meter.end(OverheadMeter.RENDERING, cpuStart, allocStart);
+            meter.addMainThread(OverheadMeter.RENDERING, System.nanoTime() - start);
+        }
+    };
 
     // --- Drag Implementation ---
 
@@ -166,7 +198,16 @@ public class DebugOverlayView extends LinearLayout implements DebugStatsCollecto
                 if (elapsedTime < CLICK_ACTION_THRESHOLD &&
                         Math.abs(event.getRawX() - initialTouchX) < dpToPx(5) &&
                         Math.abs(event.getRawY() - initialTouchY) < dpToPx(5)) {
-                    // This was a click, not a drag.
+                    // This was a click, not a drag. A second one in quick succession dumps the
+                    // flight recorder, so "it just stuttered" can be captured on the spot.
+                    long now = SystemClock.elapsedRealtime();
+                    if (lastTapTime > 0 && now - lastTapTime < ViewConfiguration.getDoubleTapTimeout()) {
+                        lastTapTime = 0;
+                        statsSource.dumpFlightRecorder();
+                        performHapticFeedback(HapticFeedbackConstants.CONFIRM);
+                    } else {
+                        lastTapTime = now;
+                    }
                     return true;
                 }
 
@@ -1,58 +1,221 @@
 package com.smartherd.debugoverlay;
 
-import android.app.ActivityManager;
 import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.hardware.display.DisplayManager;
 import android.os.Build;
 import android.os.Debug;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.Process;
 import android.os.SystemClock;
+import android.system.Os;
+import android.system.OsConstants;
 import android.util.Log;
 import android.view.Choreographer;
+import android.view.Display;
 
 import androidx.annotation.Nullable;
 
-import java.util.LinkedList;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
+import okhttp3.EventListener;
+
 /**
  * Collects FPS, Memory, and CPU usage statistics in a background thread using official Android APIs.
  * It uses the StatsUpdateListener interface to deliver data back to the UI (DebugOverlayView).
  * * CPU monitoring now uses the universally available android.os.Process.getElapsedCpuTime()
  * to bypass file permission and API resolution issues.
+ * * Threading: frame intervals are recorded on the main thread by the Choreographer callback, which
+ * does nothing but write into a primitive ring buffer. All CPU and memory collection (including the
+ * getProcessMemoryInfo binder call) and FPS aggregation run on a dedicated low-priority sampler
+ * thread, so the UI thread only ever receives the finished snapshot.
+ * * Publishing: each finished sample is published through a seqlock-guarded snapshot
+ * (StatsSnapshotPublisher) to any number of registered listeners. Readers on other threads copy
+ * it with readLatestStats() and never see a half-written sample; nothing is allocated per update.
+ * * Background: while no activity of the app is started (AppVisibilityTracker), sampling and the
+ * frame callback are suspended. On return, the CPU baseline and the frame timestamp restart, so the
+ * first sample never spans the time spent in the background.
+ * * Recording: startRecording() appends every frame, request and sample to compact session files
+ * (SessionRecorder) from the sampler thread; SessionTraceExporter turns them into a trace.
+ * startStreaming() sends the same data live to desktop tools (MetricsStreamServer).
+ * * Scheduling: each metric source (FPS, process CPU, heap, PSS, threads, network, ...) has its own
+ * rate in a SamplingScheduler, which merges ticks that fall close together into one wakeup and
+ * slows the expensive sources down when sampling goes over its CPU budget or the device is busy.
+ * Each wakeup that ran anything publishes one snapshot.
+ * * Profiling: startProfiling() samples the main thread's stack from its own thread
+ * (MainThreadProfiler) for flame graphs; its CPU cost is published next to cpuUsage.
+ * * Self-overhead: sampling, the panel's rendering and the network hooks charge their own CPU,
+ * main-thread time and (optionally) allocations to an OverheadMeter, published per component
+ * so the overlay's footprint can be subtracted from what it reports.
+ * * Alerts: rules added with addAlertRule() are judged against every sample over sliding windows
+ * (AlertEngine); firing ones are highlighted in the panel and logged with their time.
+ * * Flight recorder: startFlightRecorder() keeps the last seconds of frames, samples and calls in a
+ * fixed-size ring (FlightRecorder) and writes them out only on a jank spike, a firing alert or
+ * dumpFlightRecorder(), from its own writer thread.
  */
 public class DebugStatsCollector implements Choreographer.FrameCallback {
 
     private static final String TAG = "DebugStatsCollector";
-    private static final long UPDATE_INTERVAL_MS = 1000; // Update metrics every 1 second
+    private static final long UPDATE_INTERVAL_MS = 1000; // First sample after start or resume
+
+    // --- Source Rates (SamplingScheduler; adaptive ones slow down under the budget) ---
+    // FPS, process CPU, heap gauges, thread count, main-thread stalls and network aggregates.
+    private static final long FAST_SOURCE_INTERVAL_MS = 1000;
+    private static final long SYSTEM_CPU_INTERVAL_MS = 2000;
+    private static final long THREAD_CPU_INTERVAL_MS = 2000;
+    // The per-thread inventory reads one file per thread.
+    private static final long THREAD_INVENTORY_INTERVAL_MS = 5000;
+    // MemorySampler further spaces the breakdowns by what they cost.
+    private static final long PSS_INTERVAL_MS = MemorySampler.MIN_BREAKDOWN_INTERVAL_MS;
+    // Above this system-wide CPU usage the device counts as busy, and adaptive sources slow down.
+    private static final double DEVICE_BUSY_CPU_PERCENT = 85.0;
+
+    private static final String SAMPLER_THREAD_NAME = "DebugStatsSampler";
+    // Number of hosts whose latency percentiles are carried in each snapshot.
+    public static final int MAX_TOP_HOSTS = 3;
+    // Number of thread-name groups carried in each snapshot.
+    public static final int MAX_THREAD_GROUPS = 2;
+    // Number of main-thread stall stacks carried in each snapshot.
+    public static final int MAX_TOP_STALLS = 2;
+    // Number of busiest threads (by CPU) carried in each snapshot.
+    public static final int MAX_TOP_CPU_THREADS = 3;
+    // Cores whose utilisation and frequency are carried in each snapshot.
+    public static final int MAX_CPU_CORES = 12;
+    private static final String PROFILER_THREAD_NAME = "MainThreadProfiler";
 
     // --- State & Handlers ---
     private final Context context;
-    private Handler handler;
+    // Sampler thread owning all CPU/memory collection; created on start(), quit on stop().
+    private HandlerThread samplerThread;
+    private volatile Handler samplerHandler;
     private volatile boolean isRunning = false;
-    private final ActivityManager activityManager;
+    // True while the app is in the background; the sampler thread stays alive but idle.
+    private volatile boolean isPaused = false;
 
     // --- CPU Usage Tracking (Universal API Implementation) ---
     // Total time this process has actively spent on the CPU (in milliseconds).
     private long processCpuTimeBefore = 0L;
     // Wall-clock time elapsed since boot (in milliseconds).
     private long systemTimeBefore = 0L;
+    // CPU time the profiler had spent sampling at the previous sample (in nanoseconds).
+    private long profilerCpuTimeBefore = 0L;
+    // Cores the process may run on; process CPU is normalised against this.
+    private final int cpuCoreCount = Math.max(1, Runtime.getRuntime().availableProcessors());
+    // Device-wide utilisation, load and per-core frequency (sampler thread only).
+    private final SystemCpuSampler systemCpuSampler = new SystemCpuSampler(Math.min(cpuCoreCount, MAX_CPU_CORES));
+
+    // --- Memory (sampler thread only) ---
+    // Heap, RSS and GC counters every sample; the PSS breakdown at an adaptive, slower interval.
+    private final MemorySampler memorySampler = new MemorySampler();
+    private final MemorySampler.Snapshot memorySnapshot = new MemorySampler.Snapshot();
+
+    // --- Display Refresh Rate ---
+    // Followed at runtime, since VRR and power-saving modes switch rates while the app is running.
+    private final DisplayManager displayManager;
+    private volatile float refreshRateHz = 60f;
 
     // --- FPS Tracking ---
     private long lastFrameTimeNanos = 0;
-    private final LinkedList<Long> frameIntervalsNs = new LinkedList<>();
-    private static final int MAX_FRAME_SAMPLES = 30;
+    // Roughly one second of frames at 120Hz; kept small so summarizing (sort) stays cheap.
+    private static final int MAX_FRAME_SAMPLES = 120;
+    // Frames retained for the session recorder: several seconds at 120Hz, so a late sample loses none.
+    private static final int FRAME_HISTORY = 512;
+    private final FrameIntervalBuffer frameIntervals = new FrameIntervalBuffer(MAX_FRAME_SAMPLES, FRAME_HISTORY);
+
+    // --- Main-Thread Watchdog ---
+    // Heartbeat checked from the sampler thread; stall stacks are captured there, never on main.
+    private final MainThreadWatchdog mainThreadWatchdog;
+
+    // --- Main-Thread Profiler ---
+    // Samples on its own thread, so 100Hz sampling never queues behind a slow binder call.
+    private final MainThreadProfiler mainThreadProfiler;
+    // Created by startProfiling(), quit by stopProfiling(); main thread only.
+    private HandlerThread profilerThread;
+    private volatile Handler profilerHandler;
+
+    // --- Thread Tracking (sampler thread only) ---
+    private final ThreadInventory threadInventory = new ThreadInventory();
+    // Per-thread CPU from /proc/self/task/<tid>/stat; created lazily on the sampler thread.
+    private ThreadCpuSampler threadCpuSampler;
+
+    // --- Self-Overhead (any thread; rates on the sampler thread) ---
+    private final OverheadMeter overheadMeter =
+            new OverheadMeter(Debug::threadCpuTimeNanos, DebugStatsCollector::threadAllocSize);
+
+    // --- Network Tracking (written from OkHttp threads) ---
+    // Per-host/per-route latency histograms, updated lock-free by NetworkMonitorInterceptor.
+    private final EndpointStatsRegistry endpointStats = new EndpointStatsRegistry();
+    // Sampler-thread scratch for merging histogram stripes.
+    private final long[] histogramScratch = new long[LatencyHistogram.BUCKET_COUNT];
+    // Per-phase (DNS/connect/TLS/request/TTFB/body) timings from OkHttp's EventListener.
+    private final NetworkPhaseStats networkPhaseStats = new NetworkPhaseStats();
+    private final NetworkTimingListenerFactory networkTimingFactory =
+            new NetworkTimingListenerFactory(networkPhaseStats, overheadMeter);
+    // Finished calls, appended by NetworkMonitorInterceptor and drained by the recorder and stream.
+    private static final int NETWORK_LOG_CAPACITY = 256;
+    private final NetworkLogBuffer networkLog = new NetworkLogBuffer(NETWORK_LOG_CAPACITY);
+
+    // --- Session Recording & Streaming (sampler thread only) ---
+    private static final long RECORDING_FILE_BYTES = 8L * 1024 * 1024;
+    private static final int RECORDING_MAX_FILES = 4;
+    private SessionRecorder sessionRecorder;
+    private MetricsStreamServer streamServer;
+    // Both consumers are fed from one drain per sample, so frames and calls are read once.
+    private final FrameIntervalBuffer.Cursor drainCursor = new FrameIntervalBuffer.Cursor();
+    private final long[] drainIntervals = new long[FRAME_HISTORY];
+    private final long[] drainFrameTimes = new long[FRAME_HISTORY];
+    private final NetworkLogBuffer.Entry[] drainEntries = newEntries(NETWORK_LOG_CAPACITY);
+    private long nextNetworkSequence = 0;
+
+    // --- Flight Recorder ---
+    // The last 30s of frames (at up to 120Hz), samples and calls, dumped on a trigger.
+    private static final long FLIGHT_WINDOW_MS = 30_000;
+    private static final int FLIGHT_MAX_FRAMES = 4096;
+    private static final int FLIGHT_MAX_SAMPLES = 64;
+    private static final long FLIGHT_FILE_BYTES = 1024L * 1024;
+    private static final int FLIGHT_MAX_DUMPS = 8;
+    // A frame this long triggers a dump; automatic dumps are at least FLIGHT_COOLDOWN_MS apart.
+    private static final long FLIGHT_JANK_TRIGGER_NS = TimeUnit.MILLISECONDS.toNanos(250);
+    private static final long FLIGHT_COOLDOWN_MS = 15_000;
+    private static final String FLIGHT_THREAD_NAME = "DebugOverlay-FlightWriter";
+    // Sampler thread only.
+    private FlightRecorder flightRecorder;
+    private File flightDirectory;
+    private long lastFlightDumpMs = -FLIGHT_COOLDOWN_MS;
+    // Set from any thread, handled after the next sample.
+    private volatile String pendingFlightTrigger;
+    private volatile boolean manualFlightDumpRequested = false;
+    // Writes dumps off the sampler thread; created by startFlightRecorder() (main thread).
+    private HandlerThread flightWriterThread;
+    private volatile Handler flightWriterHandler;
+
+    // --- Alerts (rules from any thread, evaluated on the sampler thread) ---
+    private final AlertEngine alertEngine = new AlertEngine();
+    // Network log position of the alert rules, independent of the recorder's and stream's.
+    private long nextAlertNetworkSequence = 0;
+
+    // --- Scheduling (sampler thread, except the budget) ---
+    private final SamplingScheduler scheduler = new SamplingScheduler(Debug::threadCpuTimeNanos);
 
     // --- Data Storage ---
+    // Working copy owned by the sampler thread; only ever published as a snapshot.
     private final StatsData currentStatsData = new StatsData();
-
-    // --- Listener ---
-    @Nullable
-    private StatsUpdateListener listener;
+    private final StatsSnapshotPublisher publisher = new StatsSnapshotPublisher();
 
     /**
      * Interface for components that wish to receive performance updates.
+     * Callbacks arrive on the sampler thread, and {@code data} is only valid for the duration of
+     * the call. Components that consume it on another thread (e.g. the UI) must copy it with
+     * {@link #readLatestStats(StatsData)} from that thread instead of holding on to it.
      */
     public interface StatsUpdateListener {
         void onStatsUpdated(StatsData data);
@@ -60,42 +223,282 @@ public class DebugStatsCollector implements Choreographer.FrameCallback {
 
     /**
      * Data structure to hold the collected statistics.
+     * Instances are reused: copy one with copyFrom() rather than keeping a reference to it.
      */
     public static class StatsData {
+        // Increases by one with every published sample; lets readers skip unchanged data.
+        public long version = 0;
         public int fps = 0;
+        // Display refresh rate the FPS figure should be read against (e.g. 58 of 120Hz).
+        public float refreshRateHz = 0f;
+        // Vsyncs missed since collection started, counted from how many refresh periods each frame spans.
+        public long droppedFrameCount = 0;
+        // Frame time percentiles over the last MAX_FRAME_SAMPLES frames (in milliseconds).
+        public double frameTimeP50Ms = 0.0;
+        public double frameTimeP90Ms = 0.0;
+        public double frameTimeP99Ms = 0.0;
+        // Frames slower than 16.6ms / 700ms since collection started.
+        public long slowFrameCount = 0;
+        public long frozenFrameCount = 0;
+        // Total PSS from the last breakdown, refreshed every 5-60s (see MemorySampler).
         public int usedMemoryMB = 0;
+        // PSS breakdown from the same refresh, and how many seconds ago it was taken.
+        public int pssJavaMB = 0;
+        public int pssNativeMB = 0;
+        public int pssGraphicsMB = 0;
+        public int pssCodeMB = 0;
+        public int pssStackMB = 0;
+        // Seconds since the PSS breakdown was taken; -1 until the first one.
+        public int pssAgeSeconds = -1;
+        // Cheap gauges, fresh every sample (rssMB is -1 if /proc is unreadable).
+        public int javaHeapUsedMB = 0;
+        public int javaHeapMaxMB = 0;
+        public int nativeHeapMB = 0;
+        public int rssMB = 0;
+        // GC activity since the runtime started (-1 where ART doesn't report it), and the Java
+        // allocation rate over the last sampling interval (-1 until known).
+        public long gcCount = 0;
+        public long blockingGcCount = 0;
+        public long blockingGcTimeMs = 0;
+        public double allocationRateMBps = 0.0;
+        // Process CPU normalised to the available cores (0-100%: 100% means every core is busy).
         public double cpuUsage = 0.0;
-        public long lastRequestLatencyMs = 0;
+        // The same in percent of one core (0 to cpuCoreCount * 100%: 300% is three busy cores).
+        public double cpuUsageRaw = 0.0;
+        public int cpuCoreCount = 0;
+        // CPU used by the main-thread profiler itself in percent of one core, like cpuUsageRaw,
+        // and its rate (0 when off).
+        public double profilerCpuUsage = 0.0;
+        public int profilerRateHz = 0;
+        // CPU spent by the periodic sampling itself, in percent of one core (SamplingScheduler),
+        // and how much its expensive sources are currently slowed down (1 = full rate).
+        public double samplingOverheadPercent = 0.0;
+        public int samplingSlowdown = 1;
+        // The overlay's own cost per component (indexed by OverheadMeter.SAMPLING/RENDERING/NETWORK):
+        // CPU in percent of one core, main-thread time in ms per second, and allocations in KB per
+        // second (-1 unless allocation counting is on).
+        public final double[] overheadCpuPercent = new double[OverheadMeter.COMPONENT_COUNT];
+        public final double[] overheadMainThreadMsPerSec = new double[OverheadMeter.COMPONENT_COUNT];
+        public final double[] overheadAllocKbPerSec = newUnknowns(OverheadMeter.COMPONENT_COUNT);
+        // Device-wide: busy share of all cores and the 1-minute load average (-1 if unreadable).
+        public double systemCpuUsage = -1;
+        public double systemLoadAverage = -1;
+        // Per core (first coreCount entries): busy share, current and maximum frequency
+        // (-1 if unreadable or offline), and how many cores are capped below their maximum
+        // frequency by thermal or power limits (-1 if unknown).
+        public final double[] coreUsage = new double[MAX_CPU_CORES];
+        public final int[] coreFreqMHz = new int[MAX_CPU_CORES];
+        public final int[] coreMaxFreqMHz = new int[MAX_CPU_CORES];
+        public int coreCount = 0;
+        public int cappedCoreCount = -1;
+        // All threads of the process, native ones included (-1 if /proc is unreadable).
+        public int threadCount = 0;
+        // Largest thread groups by name prefix (e.g. "OkHttp Dispatch"), refreshed every few samples.
+        public final String[] threadGroupNames = new String[MAX_THREAD_GROUPS];
+        public final int[] threadGroupCounts = new int[MAX_THREAD_GROUPS];
+        public int threadGroupCount = 0;
+        // Busiest threads over the last sampling interval, in percent of one core (main = "main").
+        public final String[] topCpuThreadNames = new String[MAX_TOP_CPU_THREADS];
+        public final double[] topCpuThreadPercent = new double[MAX_TOP_CPU_THREADS];
+        public int topCpuThreadCount = 0;
         public int networkCallCount = 0;
+        // Latency percentiles and error rate over all calls, and for the busiest hosts.
+        public final EndpointStatsRegistry.Summary networkOverall = new EndpointStatsRegistry.Summary();
+        public final EndpointStatsRegistry.Summary[] networkTopHosts = newSummaries(MAX_TOP_HOSTS);
+        public int networkTopHostCount = 0;
+        // Mean duration per call phase (indexed by NetworkTimingListener.PHASE_*), in milliseconds,
+        // over the calls finished during the last sampling interval.
+        public final double[] networkPhaseMs = new double[NetworkTimingListener.PHASE_COUNT];
+        public long networkTimedCalls = 0;
+        public long networkReusedConnections = 0;
+        // Main-thread dispatches blocked longer than the watchdog threshold, since collection started.
+        public long mainThreadStallCount = 0;
+        public long mainThreadBlockedMs = 0;
+        // Most-blocking distinct stacks: label (first app frame), stall count and total blocked time.
+        public final String[] topStallLabels = new String[MAX_TOP_STALLS];
+        public final int[] topStallCounts = new int[MAX_TOP_STALLS];
+        public final long[] topStallBlockedMs = new long[MAX_TOP_STALLS];
+        public int topStallCount = 0;
+        // Alert rules (addAlertRule): how many are set and firing, which AlertRule metrics are
+        // firing (bit 1 << metric), and how many times any rule has fired since collection started.
+        public int alertRuleCount = 0;
+        public int alertFiringCount = 0;
+        public long alertFiringMetrics = 0;
+        public long alertEventCount = 0;
+        // The newest firing rule (null if none), its value and how many seconds ago it fired.
+        public String alertLabel = null;
+        public double alertValue = Double.NaN;
+        public int alertAgeSeconds = 0;
+
+        /**
+         * Copies every field from {@code other} into this instance without allocating.
+         */
+        public void copyFrom(StatsData other) {
+            version = other.version;
+            fps = other.fps;
+            refreshRateHz = other.refreshRateHz;
+            droppedFrameCount = other.droppedFrameCount;
+            frameTimeP50Ms = other.frameTimeP50Ms;
+            frameTimeP90Ms = other.frameTimeP90Ms;
+            frameTimeP99Ms = other.frameTimeP99Ms;
+            slowFrameCount = other.slowFrameCount;
+            frozenFrameCount = other.frozenFrameCount;
+            usedMemoryMB = other.usedMemoryMB;
+            pssJavaMB = other.pssJavaMB;
+            pssNativeMB = other.pssNativeMB;
+            pssGraphicsMB = other.pssGraphicsMB;
+            pssCodeMB = other.pssCodeMB;
+            pssStackMB = other.pssStackMB;
+            pssAgeSeconds = other.pssAgeSeconds;
+            javaHeapUsedMB = other.javaHeapUsedMB;
+            javaHeapMaxMB = other.javaHeapMaxMB;
+            nativeHeapMB = other.nativeHeapMB;
+            rssMB = other.rssMB;
+            gcCount = other.gcCount;
+            blockingGcCount = other.blockingGcCount;
+            blockingGcTimeMs = other.blockingGcTimeMs;
+            allocationRateMBps = other.allocationRateMBps;
+            cpuUsage = other.cpuUsage;
+            cpuUsageRaw = other.cpuUsageRaw;
+            cpuCoreCount = other.cpuCoreCount;
+            systemCpuUsage = other.systemCpuUsage;
+            systemLoadAverage = other.systemLoadAverage;
+            System.arraycopy(other.coreUsage, 0, coreUsage, 0, coreUsage.length);
+            System.arraycopy(other.coreFreqMHz, 0, coreFreqMHz, 0, coreFreqMHz.length);
+            System.arraycopy(other.coreMaxFreqMHz, 0, coreMaxFreqMHz, 0, coreMaxFreqMHz.length);
+            coreCount = other.coreCount;
+            cappedCoreCount = other.cappedCoreCount;
+            profilerCpuUsage = other.profilerCpuUsage;
+            samplingOverheadPercent = other.samplingOverheadPercent;
+            profilerRateHz = other.profilerRateHz;
+            samplingSlowdown = other.samplingSlowdown;
+            System.arraycopy(other.overheadCpuPercent, 0, overheadCpuPercent, 0, overheadCpuPercent.length);
+            System.arraycopy(other.overheadMainThreadMsPerSec, 0, overheadMainThreadMsPerSec, 0,
+                    overheadMainThreadMsPerSec.length);
+            System.arraycopy(other.overheadAllocKbPerSec, 0, overheadAllocKbPerSec, 0, overheadAllocKbPerSec.length);
+            threadCount = other.threadCount;
+            System.arraycopy(other.threadGroupNames, 0, threadGroupNames, 0, threadGroupNames.length);
+            System.arraycopy(other.threadGroupCounts, 0, threadGroupCounts, 0, threadGroupCounts.length);
+            threadGroupCount = other.threadGroupCount;
+            System.arraycopy(other.topCpuThreadNames, 0, topCpuThreadNames, 0, topCpuThreadNames.length);
+            System.arraycopy(other.topCpuThreadPercent, 0, topCpuThreadPercent, 0, topCpuThreadPercent.length);
+            topCpuThreadCount = other.topCpuThreadCount;
+            networkCallCount = other.networkCallCount;
+            networkOverall.copyFrom(other.networkOverall);
+            for (int i = 0; i < networkTopHosts.length; i++) {
+                networkTopHosts[i].copyFrom(other.networkTopHosts[i]);
+            }
+            networkTopHostCount = other.networkTopHostCount;
+            System.arraycopy(other.networkPhaseMs, 0, networkPhaseMs, 0, networkPhaseMs.length);
+            networkTimedCalls = other.networkTimedCalls;
+            networkReusedConnections = other.networkReusedConnections;
+            mainThreadStallCount = other.mainThreadStallCount;
+            mainThreadBlockedMs = other.mainThreadBlockedMs;
+            System.arraycopy(other.topStallLabels, 0, topStallLabels, 0, topStallLabels.length);
+            System.arraycopy(other.topStallCounts, 0, topStallCounts, 0, topStallCounts.length);
+            System.arraycopy(other.topStallBlockedMs, 0, topStallBlockedMs, 0, topStallBlockedMs.length);
+            topStallCount = other.topStallCount;
+            alertRuleCount = other.alertRuleCount;
+            alertFiringCount = other.alertFiringCount;
+            alertFiringMetrics = other.alertFiringMetrics;
+            alertEventCount = other.alertEventCount;
+            alertLabel = other.alertLabel;
+            alertValue = other.alertValue;
+            alertAgeSeconds = other.alertAgeSeconds;
+        }
+
+        private static double[] newUnknowns(int count) {
+            double[] values = new double[count];
+            Arrays.fill(values, -1);
+            return values;
+        }
+
+        private static EndpointStatsRegistry.Summary[] newSummaries(int count) {
+            EndpointStatsRegistry.Summary[] summaries = new EndpointStatsRegistry.Summary[count];
+            for (int i = 0; i < count; i++) {
+                summaries[i] = new EndpointStatsRegistry.Summary();
+            }
+            return summaries;
+        }
     }
 
     public DebugStatsCollector(Context context, @Nullable StatsUpdateListener listener) {
         this.context = context.getApplicationContext();
-        this.listener = listener;
-        this.activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (listener != null) {
+            publisher.addListener(listener);
+        }
+        this.displayManager = (DisplayManager) context.getSystemService(Context.DISPLAY_SERVICE);
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        this.mainThreadWatchdog = new MainThreadWatchdog(Looper.getMainLooper().getThread(), mainHandler::post);
+        this.mainThreadProfiler = new MainThreadProfiler(Looper.getMainLooper().getThread(), Debug::threadCpuTimeNanos);
+        alertEngine.setListener((rule, value, wallMs) -> requestFlightDump("alert: " + rule.text));
+        registerSources();
+    }
+
+    // Sources run in this order when due together; the cheap ones keep their rate.
+    private void registerSources() {
+        scheduler.add("memory", FAST_SOURCE_INTERVAL_MS, false, this::collectMemoryStats);
+        scheduler.add("pss", PSS_INTERVAL_MS, true, this::collectMemoryBreakdown);
+        scheduler.add("cpu", FAST_SOURCE_INTERVAL_MS, false, this::collectCpuStats);
+        scheduler.add("system_cpu", SYSTEM_CPU_INTERVAL_MS, true, this::collectSystemCpuStats);
+        scheduler.add("threads", FAST_SOURCE_INTERVAL_MS, false, this::collectThreadStats);
+        scheduler.add("thread_cpu", THREAD_CPU_INTERVAL_MS, true, this::collectThreadCpuStats);
+        scheduler.add("thread_inventory", THREAD_INVENTORY_INTERVAL_MS, true, this::collectThreadInventory);
+        scheduler.add("main_thread", FAST_SOURCE_INTERVAL_MS, false, this::collectMainThreadStats);
+        scheduler.add("fps", FAST_SOURCE_INTERVAL_MS, false, this::calculateFps);
+        scheduler.add("network", FAST_SOURCE_INTERVAL_MS, false, this::collectNetworkStats);
+        scheduler.add("overhead", FAST_SOURCE_INTERVAL_MS, false, this::collectOverheadStats);
+        // Last, so the rules see this wakeup's values.
+        scheduler.add("alerts", FAST_SOURCE_INTERVAL_MS, false, this::evaluateAlerts);
+    }
+
+    /**
+     * Registers a listener (overlay, recorder, exporter, ...). Safe to call from any thread.
+     */
+    public void addListener(StatsUpdateListener listener) {
+        publisher.addListener(listener);
     }
 
-    public void setListener(@Nullable StatsUpdateListener listener) {
-        this.listener = listener;
+    public void removeListener(StatsUpdateListener listener) {
+        publisher.removeListener(listener);
+    }
+
+    /**
+     * Copies the latest published snapshot into {@code out} without tearing. Safe from any thread.
+     *
+     * @return the snapshot version (0 if nothing has been published yet).
+     */
+    public long readLatestStats(StatsData out) {
+        return publisher.read(out);
     }
 
     /**
      * Starts the data collection thread (CPU/MEM/NET reporting) and FPS tracking.
+     * Must be called from the main thread, since the Choreographer is thread-local.
      */
     public void start() {
         if (!isRunning) {
             isRunning = true;
 
-            // Capture initial times before starting the periodic update
-            // We use the universal API here, so no Build checks are needed.
-            processCpuTimeBefore = Process.getElapsedCpuTime();
-            systemTimeBefore = SystemClock.elapsedRealtime();
+            samplerThread = new HandlerThread(SAMPLER_THREAD_NAME, Process.THREAD_PRIORITY_BACKGROUND);
+            samplerThread.start();
+            samplerHandler = new Handler(samplerThread.getLooper());
 
-            handler = new Handler(Looper.getMainLooper());
-            handler.post(statsRunnable);
+            // Track the display refresh rate, delivering mode changes on the sampler thread.
+            updateRefreshRate();
+            if (displayManager != null) {
+                displayManager.registerDisplayListener(displayListener, samplerHandler);
+            }
 
-            // START REAL FPS TRACKING
-            Choreographer.getInstance().postFrameCallback(this);
+            // Sample only while the app is visible; the tracker resumes and suspends us.
+            AppVisibilityTracker visibility = AppVisibilityTracker.get();
+            if (visibility != null) {
+                visibility.addListener(visibilityListener);
+            }
+            isPaused = visibility != null && !visibility.isVisible();
+            if (!isPaused) {
+                startSampling();
+            }
 
             Log.d(TAG, "DebugStatsCollector started.");
         }
@@ -106,92 +509,283 @@ public class DebugStatsCollector implements Choreographer.FrameCallback {
      */
     public void stop() {
         isRunning = false;
-        if (handler != null) {
-            handler.removeCallbacks(statsRunnable);
-            handler = null;
+        stopProfiling();
+        // Process-wide counters: don't leave them slowing the app down once the overlay is gone.
+        setOverheadAllocationCounting(false);
+        AppVisibilityTracker visibility = AppVisibilityTracker.get();
+        if (visibility != null) {
+            visibility.removeListener(visibilityListener);
+        }
+        if (displayManager != null) {
+            displayManager.unregisterDisplayListener(displayListener);
+        }
+        if (samplerHandler != null) {
+            samplerHandler.removeCallbacks(statsRunnable);
+            samplerHandler.removeCallbacks(watchdogRunnable);
+            // Queued behind any in-flight sample, so the last records are flushed before quitting.
+            samplerHandler.post(this::closeRecorder);
+            samplerHandler.post(this::closeStreamServer);
+            samplerHandler.post(this::closeFlightRecorder);
+            samplerHandler.post(memorySampler::close);
+            samplerHandler.post(systemCpuSampler::close);
+            samplerHandler.post(this::closeThreadCpuSampler);
+            samplerHandler = null;
+        }
+        if (samplerThread != null) {
+            // Lets an in-flight sample finish; its result is dropped because isRunning is false.
+            samplerThread.quitSafely();
+            samplerThread = null;
         }
+        // A dump already handed over is still written out before the writer quits.
+        quitFlightWriter();
 
         // STOP REAL FPS TRACKING
         Choreographer.getInstance().removeFrameCallback(this);
-        frameIntervalsNs.clear();
+        frameIntervals.clear();
         lastFrameTimeNanos = 0;
 
         Log.d(TAG, "DebugStatsCollector stopped.");
     }
 
-    // --- FPS Implementation (Unchanged) ---
+    // --- Background Suspension ---
+
+    private final AppVisibilityTracker.Listener visibilityListener = visible -> {
+        if (!isRunning || isPaused == !visible) return;
+        isPaused = !visible;
+        if (visible) {
+            startSampling();
+            Log.d(TAG, "App visible: sampling resumed.");
+        } else {
+            suspendSampling();
+            Log.d(TAG, "App in background: sampling suspended.");
+        }
+    };
+
+    // Main thread. Restarts the frame timestamp and FPS window here and the CPU baseline on the
+    // sampler thread.
+    private void startSampling() {
+        Handler handler = samplerHandler;
+        if (handler == null) return;
+        // Without this, the first frame back would be one background-long (frozen) interval.
+        lastFrameTimeNanos = 0;
+        // Frames from before the background would otherwise still be averaged into FPS and percentiles.
+        frameIntervals.restartWindow();
+        handler.removeCallbacks(statsRunnable);
+        handler.removeCallbacks(watchdogRunnable);
+        handler.post(resetBaselines);
+        handler.postDelayed(statsRunnable, UPDATE_INTERVAL_MS);
+        handler.post(watchdogRunnable);
+        Handler profiler = profilerHandler;
+        if (profiler != null) {
+            profiler.removeCallbacks(profilerRunnable);
+            profiler.post(profilerRunnable);
+        }
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    // Main thread. Leaves the sampler thread alive but with nothing queued.
+    private void suspendSampling() {
+        Choreographer.getInstance().removeFrameCallback(this);
+        Handler handler = samplerHandler;
+        if (handler != null) {
+            handler.removeCallbacks(resetBaselines);
+            handler.removeCallbacks(statsRunnable);
+            handler.removeCallbacks(watchdogRunnable);
+        }
+        Handler profiler = profilerHandler;
+        if (profiler != null) {
+            profiler.removeCallbacks(profilerRunnable);
+        }
+    }
+
+    // Runs on the sampler thread, which owns the CPU baseline.
+    private final Runnable resetBaselines = new Runnable() {
+        @Override
+        public void run() {
+            processCpuTimeBefore = Process.getElapsedCpuTime();
+            systemTimeBefore = SystemClock.elapsedRealtime();
+            profilerCpuTimeBefore = mainThreadProfiler.getCpuTimeNs();
+            // The allocation rate and per-thread CPU must not span the background either.
+            memorySampler.reset();
+            systemCpuSampler.reset();
+            if (threadCpuSampler != null) {
+                threadCpuSampler.reset();
+            }
+            // A ping still pending from before the suspension says nothing about now.
+            mainThreadWatchdog.reset();
+            // Every source is due at the first sample back.
+            scheduler.reset(0);
+            overheadMeter.resetRates(System.nanoTime());
+            // Windows must not span the background; calls finished meanwhile are skipped.
+            alertEngine.reset();
+            nextAlertNetworkSequence = networkLog.totalRecorded();
+        }
+    };
+
+    // --- Refresh Rate Tracking ---
+
+    private final DisplayManager.DisplayListener displayListener = new DisplayManager.DisplayListener() {
+        @Override
+        public void onDisplayAdded(int displayId) { }
+
+        @Override
+        public void onDisplayRemoved(int displayId) { }
+
+        @Override
+        public void onDisplayChanged(int displayId) {
+            if (displayId == Display.DEFAULT_DISPLAY) {
+                updateRefreshRate();
+            }
+        }
+    };
+
+    private void updateRefreshRate() {
+        Display display = displayManager != null ? displayManager.getDisplay(Display.DEFAULT_DISPLAY) : null;
+        if (display == null) return;
+
+        float rate = display.getRefreshRate();
+        if (rate > 0f && rate != refreshRateHz) {
+            refreshRateHz = rate;
+            frameIntervals.setRefreshPeriodNs((long) (TimeUnit.SECONDS.toNanos(1) / rate));
+            Log.d(TAG, "Display refresh rate is now " + rate + "Hz.");
+        }
+    }
+
+    // --- FPS Implementation ---
 
     @Override
     public void doFrame(long frameTimeNanos) {
-        if (!isRunning) return;
+        if (!isRunning || isPaused) return;
+        // Wall time only: reading the thread CPU clock every vsync would cost more than this does.
+        long start = System.nanoTime();
 
         if (lastFrameTimeNanos > 0) {
-            long interval = frameTimeNanos - lastFrameTimeNanos;
-            frameIntervalsNs.add(interval);
-            if (frameIntervalsNs.size() > MAX_FRAME_SAMPLES) {
-                frameIntervalsNs.removeFirst();
-            }
+            // Primitive ring buffer: no boxing, no allocation per vsync.
+            frameIntervals.record(frameTimeNanos - lastFrameTimeNanos, frameTimeNanos);
         }
         lastFrameTimeNanos = frameTimeNanos;
 
         Choreographer.getInstance().postFrameCallback(this);
+        overheadMeter.addMainThread(OverheadMeter.SAMPLING, System.nanoTime() - start);
     }
 
     private void calculateFps() {
-        if (frameIntervalsNs.isEmpty()) {
+        currentStatsData.slowFrameCount = frameIntervals.getSlowFrameCount();
+        currentStatsData.frozenFrameCount = frameIntervals.getFrozenFrameCount();
+        currentStatsData.droppedFrameCount = frameIntervals.getDroppedVsyncCount();
+        float refreshRate = refreshRateHz;
+        currentStatsData.refreshRateHz = refreshRate;
+
+        if (frameIntervals.summarize() == 0 || frameIntervals.getMeanNs() <= 0) {
             currentStatsData.fps = 0;
+            currentStatsData.frameTimeP50Ms = 0.0;
+            currentStatsData.frameTimeP90Ms = 0.0;
+            currentStatsData.frameTimeP99Ms = 0.0;
             return;
         }
 
-        long totalIntervalNs = 0;
-        for (long interval : frameIntervalsNs) {
-            totalIntervalNs += interval;
-        }
+        int calculatedFps = (int) (TimeUnit.SECONDS.toNanos(1) / frameIntervals.getMeanNs());
+        // Only clamp away vsync timestamp jitter above the panel's actual rate (not a fixed 60).
+        currentStatsData.fps = Math.min(Math.round(refreshRate), calculatedFps);
+        currentStatsData.frameTimeP50Ms = nanosToMillis(frameIntervals.getP50Ns());
+        currentStatsData.frameTimeP90Ms = nanosToMillis(frameIntervals.getP90Ns());
+        currentStatsData.frameTimeP99Ms = nanosToMillis(frameIntervals.getP99Ns());
+    }
 
-        long averageIntervalNs = totalIntervalNs / frameIntervalsNs.size();
-        int calculatedFps = (int) (TimeUnit.SECONDS.toNanos(1) / averageIntervalNs);
-        currentStatsData.fps = Math.min(60, calculatedFps);
+    private static double nanosToMillis(long nanos) {
+        return nanos / 1_000_000.0;
     }
 
     // --- Core Data Reporting Runnable ---
 
+    // Runs on the sampler thread only.
     private final Runnable statsRunnable = new Runnable() {
         @Override
         public void run() {
-            if (!isRunning) return;
+            Handler handler = samplerHandler;
+            if (!isRunning || isPaused || handler == null) return;
+            long cpuStart = overheadMeter.cpuStart();
+            long allocStart = overheadMeter.allocStart();
 
-            // Collect all real data sources
-            collectMemoryStats();
-            collectCpuStats(); // Using universal API
-            calculateFps();
+            // Collect every source that is due (or nearly due), in one wakeup
+            long nextDueMs = scheduler.runDue(SystemClock.uptimeMillis());
+            currentStatsData.samplingOverheadPercent = scheduler.getOverheadPercent();
+            currentStatsData.samplingSlowdown = scheduler.getSlowdown();
 
-            // Report the latest data to the listener (DebugOverlayView)
-            if (listener != null) {
-                listener.onStatsUpdated(currentStatsData);
+            // Publish the finished snapshot to every listener (DebugOverlayView posts it to the UI)
+            if (isRunning && !isPaused) {
+                publisher.publish(currentStatsData);
+                recordAndStream();
             }
 
-            // Schedule the next run
-            handler.postDelayed(this, UPDATE_INTERVAL_MS);
+            // Schedule the next run (replacing any run a resume queued while this one was in flight)
+            handler.removeCallbacks(this);
+            handler.postAtTime(this, nextDueMs);
+            overheadMeter.end(OverheadMeter.SAMPLING, cpuStart, allocStart);
         }
     };
 
     /**
-     * Uses ActivityManager to get current process memory usage (Unchanged).
+     * Sets the CPU budget for all periodic sampling together, in percent of one core (default 1%).
+     * Above it, the expensive sources (PSS, system and per-thread CPU, thread inventory) slow down.
+     * Safe from any thread.
+     */
+    public void setSamplingBudgetPercent(double percent) {
+        scheduler.setBudgetPercent(percent);
+    }
+
+    /**
+     * Reads the cheap memory gauges (heap, RSS, GC counters).
      */
     private void collectMemoryStats() {
+        MemorySampler.Snapshot memory = memorySnapshot;
         try {
-            android.os.Debug.MemoryInfo[] memoryInfos = activityManager.getProcessMemoryInfo(new int[]{Process.myPid()});
-            if (memoryInfos.length > 0) {
-                int pssMb = memoryInfos[0].getTotalPss() / 1024;
-                currentStatsData.usedMemoryMB = pssMb;
-            }
-        } catch (Exception e) {
+            memorySampler.sample(memory);
+        } catch (RuntimeException e) {
             Log.e(TAG, "Failed to collect memory stats.", e);
+            return;
+        }
+        StatsData data = currentStatsData;
+        data.javaHeapUsedMB = kbToMb(memory.javaHeapUsedKb);
+        data.javaHeapMaxMB = kbToMb(memory.javaHeapMaxKb);
+        data.nativeHeapMB = kbToMb(memory.nativeHeapKb);
+        data.rssMB = memory.rssKb >= 0 ? kbToMb(memory.rssKb) : -1;
+        data.gcCount = memory.gcCount;
+        data.blockingGcCount = memory.blockingGcCount;
+        data.blockingGcTimeMs = memory.blockingGcTimeMs;
+        data.allocationRateMBps = memory.allocationRateKbPerSec >= 0 ? memory.allocationRateKbPerSec / 1024.0 : -1;
+        // The breakdown itself is a slower source; its age moves on every sample.
+        data.pssAgeSeconds = memory.breakdownUptimeMs > 0
+                ? (int) ((SystemClock.uptimeMillis() - memory.breakdownUptimeMs) / 1000) : -1;
+    }
+
+    /**
+     * Refreshes the PSS breakdown when MemorySampler decides it is due (by age, cost and RSS).
+     */
+    private void collectMemoryBreakdown() {
+        MemorySampler.Snapshot memory = memorySnapshot;
+        try {
+            memorySampler.sampleBreakdown(memory);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to collect the memory breakdown.", e);
+            return;
         }
+        StatsData data = currentStatsData;
+        data.usedMemoryMB = kbToMb(memory.pssTotalKb);
+        data.pssJavaMB = kbToMb(memory.pssJavaKb);
+        data.pssNativeMB = kbToMb(memory.pssNativeKb);
+        data.pssGraphicsMB = kbToMb(memory.pssGraphicsKb);
+        data.pssCodeMB = kbToMb(memory.pssCodeKb);
+        data.pssStackMB = kbToMb(memory.pssStackKb);
+    }
+
+    private static int kbToMb(long kb) {
+        return (int) (kb / 1024);
     }
 
     /**
-     * Calculates the process CPU usage percentage using the universal Android Process API (API 1+).
+     * Calculates the process CPU usage percentage using the universal Android Process API (API 1+),
+     * both per core and normalised to all cores.
      */
     private void collectCpuStats() {
         try {
@@ -205,7 +799,10 @@ public class DebugStatsCollector implements Choreographer.FrameCallback {
                 // Initialize the 'before' values on the first run
                 processCpuTimeBefore = processCpuTimeAfter;
                 systemTimeBefore = systemTimeAfter;
+                profilerCpuTimeBefore = mainThreadProfiler.getCpuTimeNs();
                 currentStatsData.cpuUsage = 0.0;
+                currentStatsData.cpuUsageRaw = 0.0;
+                currentStatsData.profilerCpuUsage = 0.0;
                 return;
             }
 
@@ -213,31 +810,631 @@ public class DebugStatsCollector implements Choreographer.FrameCallback {
             long processDelta = processCpuTimeAfter - processCpuTimeBefore; // in milliseconds
             long systemDeltaMs = systemTimeAfter - systemTimeBefore; // in milliseconds
 
+            currentStatsData.cpuCoreCount = cpuCoreCount;
             if (systemDeltaMs > 0) {
-                // CPU Usage = (Process CPU Time Delta / System Wall Clock Time Delta) * 100
-                double cpuUsage = (double) processDelta * 100.0 / systemDeltaMs;
-
-                // Clamping to a maximum of 100%
-                currentStatsData.cpuUsage = Math.min(100.0, cpuUsage);
+                // Raw CPU Usage = (Process CPU Time Delta / System Wall Clock Time Delta) * 100,
+                // which exceeds 100% as soon as more than one core is busy
+                double cpuUsageRaw = Math.min(cpuCoreCount * 100.0, (double) processDelta * 100.0 / systemDeltaMs);
+                currentStatsData.cpuUsageRaw = cpuUsageRaw;
+                // Normalised to the cores available, so 100% means the whole device
+                currentStatsData.cpuUsage = cpuUsageRaw / cpuCoreCount;
             } else {
                 currentStatsData.cpuUsage = 0.0;
+                currentStatsData.cpuUsageRaw = 0.0;
             }
 
+            // The profiler's own cost, per core like cpuUsageRaw (it runs on one thread)
+            long profilerCpuTimeAfter = mainThreadProfiler.getCpuTimeNs();
+            long profilerDeltaNs = profilerCpuTimeAfter - profilerCpuTimeBefore;
+            currentStatsData.profilerCpuUsage = systemDeltaMs > 0
+                    ? Math.min(100.0, profilerDeltaNs / 1_000_000.0 * 100.0 / systemDeltaMs) : 0.0;
+            currentStatsData.profilerRateHz = profilerHandler != null ? mainThreadProfiler.getRateHz() : 0;
+
             // Update 'before' values for the next iteration
             processCpuTimeBefore = processCpuTimeAfter;
             systemTimeBefore = systemTimeAfter;
+            profilerCpuTimeBefore = profilerCpuTimeAfter;
 
         } catch (Exception e) {
             Log.e(TAG, "Failed to collect CPU stats using universal Process API.", e);
             currentStatsData.cpuUsage = 0.0;
+            currentStatsData.cpuUsageRaw = 0.0;
+        }
+    }
+
+    private void collectSystemCpuStats() {
+        SystemCpuSampler system = systemCpuSampler;
+        system.sample();
+        StatsData data = currentStatsData;
+        data.systemCpuUsage = system.getSystemUsagePercent();
+        data.systemLoadAverage = system.getLoadAverage1();
+        int cores = system.getCoreCount();
+        for (int core = 0; core < cores; core++) {
+            data.coreUsage[core] = system.getCoreUsagePercent(core);
+            data.coreFreqMHz[core] = system.getCoreFreqMHz(core);
+            data.coreMaxFreqMHz[core] = system.getCoreMaxFreqMHz(core);
+        }
+        data.coreCount = cores;
+        data.cappedCoreCount = system.getCappedCoreCount();
+
+        // Where /proc/stat is unreadable, a load average above the core count means busy too.
+        boolean busy = data.systemCpuUsage >= 0
+                ? data.systemCpuUsage >= DEVICE_BUSY_CPU_PERCENT
+                : data.systemLoadAverage >= cpuCoreCount;
+        scheduler.setDeviceBusy(busy);
+    }
+
+    // --- Thread API implementation ---
+
+    private void collectThreadStats() {
+        currentStatsData.threadCount = threadInventory.countThreads();
+    }
+
+    private void collectThreadInventory() {
+        if (threadInventory.takeInventory() < 0) return;
+
+        int groups = Math.min(MAX_THREAD_GROUPS, threadInventory.getGroupCount());
+        for (int i = 0; i < MAX_THREAD_GROUPS; i++) {
+            currentStatsData.threadGroupNames[i] = i < groups ? threadInventory.getGroupName(i) : null;
+            currentStatsData.threadGroupCounts[i] = i < groups ? threadInventory.getGroupThreadCount(i) : 0;
         }
+        currentStatsData.threadGroupCount = groups;
     }
 
-    // --- Network API implementation (Unchanged) ---
+    private void collectThreadCpuStats() {
+        if (threadCpuSampler == null) {
+            threadCpuSampler = new ThreadCpuSampler(ThreadCpuSampler.TASK_DIR, Process.myPid(),
+                    Os.sysconf(OsConstants._SC_CLK_TCK));
+        }
+        // The thread count from this wakeup's "threads" source; a change triggers a rescan.
+        if (threadCpuSampler.sample(System.nanoTime(), currentStatsData.threadCount) < 0) {
+            currentStatsData.topCpuThreadCount = 0;
+            return;
+        }
+        int copied = threadCpuSampler.readTopThreads(currentStatsData.topCpuThreadNames,
+                currentStatsData.topCpuThreadPercent);
+        for (int i = copied; i < MAX_TOP_CPU_THREADS; i++) {
+            currentStatsData.topCpuThreadNames[i] = null;
+        }
+        currentStatsData.topCpuThreadCount = copied;
+    }
+
+    // Sampler thread, posted by stop().
+    private void closeThreadCpuSampler() {
+        if (threadCpuSampler != null) {
+            threadCpuSampler.close();
+            threadCpuSampler = null;
+        }
+    }
+
+    // --- Main-Thread Watchdog ---
+
+    /**
+     * Main-thread dispatches blocked at least this long are reported as stalls, with the stack
+     * they were stuck in (default 100ms). Safe from any thread.
+     */
+    public void setSlowMessageThresholdMs(long thresholdMs) {
+        mainThreadWatchdog.setThresholdMs(thresholdMs);
+    }
+
+    /**
+     * Appends every distinct stall stack recorded so far (counts, blocked times, frames).
+     */
+    public void appendMainThreadStallReport(StringBuilder out) {
+        mainThreadWatchdog.appendReport(out);
+    }
+
+    // Sampler thread. Checks twice per threshold, so a stall is caught while it's still going on.
+    private final Runnable watchdogRunnable = new Runnable() {
+        @Override
+        public void run() {
+            Handler handler = samplerHandler;
+            if (!isRunning || isPaused || handler == null) return;
+            long cpuStart = overheadMeter.cpuStart();
+            long allocStart = overheadMeter.allocStart();
+            mainThreadWatchdog.check(System.nanoTime());
+            handler.postDelayed(this, Math.max(10, mainThreadWatchdog.getThresholdMs() / 2));
+            overheadMeter.end(OverheadMeter.SAMPLING, cpuStart, allocStart);
+        }
+    };
+
+    // --- Main-Thread Profiler ---
+
+    /**
+     * Starts sampling the main thread's stack {@code rateHz} times per second (e.g. 100), adding to
+     * any samples already taken. Sampling pauses while the app is in the background.
+     * Main thread only.
+     */
+    public void startProfiling(int rateHz) {
+        mainThreadProfiler.setRateHz(rateHz);
+        if (profilerThread == null) {
+            // Default priority: a background-priority sampler would be starved exactly when the
+            // device is busy, skewing the samples towards quiet periods.
+            profilerThread = new HandlerThread(PROFILER_THREAD_NAME, Process.THREAD_PRIORITY_DEFAULT);
+            profilerThread.start();
+            profilerHandler = new Handler(profilerThread.getLooper());
+        }
+        if (isRunning && !isPaused) {
+            profilerHandler.removeCallbacks(profilerRunnable);
+            profilerHandler.post(profilerRunnable);
+        }
+        Log.d(TAG, "Main-thread profiling at " + mainThreadProfiler.getRateHz() + "Hz.");
+    }
 
-    public void updateNetworkStats(long durationMs) {
-        currentStatsData.lastRequestLatencyMs = durationMs;
-        currentStatsData.networkCallCount++;
-        Log.d(TAG, String.format("Network request finished in %dms. Total calls: %d", durationMs, currentStatsData.networkCallCount));
+    /**
+     * Stops sampling; the samples taken so far stay available to writeCollapsedStacks().
+     * Main thread only.
+     */
+    public void stopProfiling() {
+        Handler handler = profilerHandler;
+        if (handler != null) {
+            handler.removeCallbacks(profilerRunnable);
+            profilerHandler = null;
+        }
+        if (profilerThread != null) {
+            profilerThread.quitSafely();
+            profilerThread = null;
+        }
+    }
+
+    /**
+     * Writes the main-thread samples in collapsed-stack format ("outer;inner;leaf count" per line),
+     * the input of flamegraph.pl, speedscope and similar tools. Safe from any thread.
+     */
+    public void writeCollapsedStacks(Appendable out) throws IOException {
+        mainThreadProfiler.writeCollapsed(out);
+    }
+
+    /**
+     * Drops the main-thread samples taken so far. Safe from any thread.
+     */
+    public void resetProfile() {
+        mainThreadProfiler.reset();
+    }
+
+    // Profiler thread. Reschedules itself at the configured rate until stopped or suspended.
+    private final Runnable profilerRunnable = new Runnable() {
+        @Override
+        public void run() {
+            Handler handler = profilerHandler;
+            if (!isRunning || isPaused || handler == null) return;
+            long cpuStart = overheadMeter.cpuStart();
+            long allocStart = overheadMeter.allocStart();
+            mainThreadProfiler.sample();
+            handler.postDelayed(this, mainThreadProfiler.getIntervalMs());
+            overheadMeter.end(OverheadMeter.SAMPLING, cpuStart, allocStart);
+        }
+    };
+
+    // --- Self-Overhead ---
+
+    /**
+     * Counts what the overlay's own code allocates, per component, through the runtime's
+     * per-thread allocation counters. These slow down every allocation in the process while on,
+     * so leave them off unless allocations are being investigated. Main thread only.
+     */
+    @SuppressWarnings("deprecation")
+    public void setOverheadAllocationCounting(boolean enabled) {
+        if (enabled == overheadMeter.isAllocationCounting()) return;
+        if (enabled) {
+            Debug.startAllocCounting();
+            overheadMeter.setAllocationCounting(true);
+        } else {
+            overheadMeter.setAllocationCounting(false);
+            Debug.stopAllocCounting();
+        }
+    }
+
+    // Bytes allocated by the calling thread while allocation counting is on.
+    @SuppressWarnings("deprecation")
+    private static long threadAllocSize() {
+        return Debug.getThreadAllocSize();
+    }
+
+    /**
+     * Where the overlay's components charge their own CPU, allocations and main-thread time.
+     */
+    OverheadMeter getOverheadMeter() {
+        return overheadMeter;
+    }
+
+    private void collectOverheadStats() {
+        OverheadMeter meter = overheadMeter;
+        meter.updateRates(System.nanoTime());
+        StatsData data = currentStatsData;
+        for (int i = 0; i < OverheadMeter.COMPONENT_COUNT; i++) {
+            data.overheadCpuPercent[i] = meter.getCpuPercent(i);
+            data.overheadMainThreadMsPerSec[i] = meter.getMainThreadMsPerSec(i);
+            data.overheadAllocKbPerSec[i] = meter.getAllocKbPerSec(i);
+        }
+    }
+
+    private void collectMainThreadStats() {
+        currentStatsData.mainThreadStallCount = mainThreadWatchdog.getStallCount();
+        currentStatsData.mainThreadBlockedMs = mainThreadWatchdog.getTotalBlockedMs();
+        currentStatsData.topStallCount = mainThreadWatchdog.readTopStalls(currentStatsData.topStallLabels,
+                currentStatsData.topStallCounts, currentStatsData.topStallBlockedMs);
+    }
+
+    // --- Network API implementation ---
+
+    /**
+     * EventListener.Factory that reports per-phase call timings into this collector.
+     * Register it with OkHttpClient.Builder.eventListenerFactory(), next to NetworkMonitorInterceptor.
+     */
+    public EventListener.Factory getNetworkEventListenerFactory() {
+        return networkTimingFactory;
+    }
+
+    /**
+     * Per-endpoint latency histograms. NetworkMonitorInterceptor records into this directly from
+     * OkHttp threads (lock-free); the sampler summarizes it into each snapshot.
+     */
+    EndpointStatsRegistry getEndpointStats() {
+        return endpointStats;
+    }
+
+    private void collectNetworkStats() {
+        endpointStats.summarizeOverall(histogramScratch, currentStatsData.networkOverall);
+        currentStatsData.networkCallCount = (int) currentStatsData.networkOverall.calls;
+        currentStatsData.networkTopHostCount =
+                endpointStats.summarizeTopHosts(histogramScratch, currentStatsData.networkTopHosts);
+        // Keeps the previous means when no call finished during this interval.
+        networkPhaseStats.drain(currentStatsData.networkPhaseMs);
+        currentStatsData.networkTimedCalls = networkPhaseStats.getTotalTimedCalls();
+        currentStatsData.networkReusedConnections = networkPhaseStats.getTotalReusedConnections();
+    }
+
+    /**
+     * The bounded log NetworkMonitorInterceptor appends finished calls to.
+     */
+    NetworkLogBuffer getNetworkLog() {
+        return networkLog;
+    }
+
+    // --- Alerts ---
+
+    /**
+     * Adds a threshold rule, evaluated against every sample over a sliding window, such as
+     * "fps < 45 for 3s", "net.p99[api.example.com] > 800ms over 30s" or "rate(heap) > 20 over 1m"
+     * (see AlertRule for the metrics and grammar). While a rule fires, its metric is highlighted in
+     * the overlay; every firing is logged with its time. Safe from any thread.
+     *
+     * @throws IllegalArgumentException if the rule doesn't parse.
+     */
+    public void addAlertRule(String rule) {
+        alertEngine.addRule(rule);
+    }
+
+    /**
+     * Removes the rules added with this exact text. Safe from any thread.
+     */
+    public void removeAlertRule(String rule) {
+        alertEngine.removeRule(rule);
+    }
+
+    public void clearAlertRules() {
+        alertEngine.clearRules();
+    }
+
+    /**
+     * Appends the alert rules and the latest times they fired and cleared. Safe from any thread.
+     */
+    public void appendAlertReport(StringBuilder out) {
+        alertEngine.appendReport(out);
+    }
+
+    AlertEngine getAlertEngine() {
+        return alertEngine;
+    }
+
+    private void evaluateAlerts() {
+        long now = SystemClock.uptimeMillis();
+        if (alertEngine.ruleCount() > 0) {
+            // Calls are stamped when drained, at most one sample after they finished. The drain
+            // array is free here: recordAndStream() only uses it after the sources have run.
+            int calls;
+            while ((calls = networkLog.readSince(nextAlertNetworkSequence, drainEntries)) > 0) {
+                for (int i = 0; i < calls; i++) {
+                    alertEngine.addCall(now, drainEntries[i]);
+                }
+                nextAlertNetworkSequence = drainEntries[calls - 1].sequence + 1;
+            }
+        } else {
+            nextAlertNetworkSequence = networkLog.totalRecorded();
+        }
+        alertEngine.evaluate(currentStatsData, now, System.currentTimeMillis());
+    }
+
+    // --- Session Recording & Streaming ---
+
+    /**
+     * Starts appending frames, network calls and samples to session files in {@code directory}
+     * (8MB per file, the newest 4 kept). Files are opened and written on the sampler thread.
+     * Has no effect if the collector isn't running or is already recording.
+     */
+    public void startRecording(File directory) {
+        Handler handler = samplerHandler;
+        if (handler == null) return;
+        handler.post(() -> {
+            if (sessionRecorder != null || !isRunning) return;
+            try {
+                sessionRecorder = new SessionRecorder(directory, RECORDING_FILE_BYTES, RECORDING_MAX_FILES);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to start session recording.", e);
+                return;
+            }
+            Log.d(TAG, "Session recording started in " + directory);
+        });
+    }
+
+    /**
+     * Flushes and closes the current session file. The files stay on disk for export.
+     */
+    public void stopRecording() {
+        Handler handler = samplerHandler;
+        if (handler != null) {
+            handler.post(this::closeRecorder);
+        }
+    }
+
+    /**
+     * Streams every sample, with the frames and network calls since the previous one, to desktop
+     * tools connecting to loopback {@code port} (MetricsStreamServer; reach it with
+     * `adb forward tcp:PORT tcp:PORT`). Debuggable builds only: elsewhere this logs and does nothing.
+     */
+    public void startStreaming(int port) {
+        if ((context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) == 0) {
+            Log.w(TAG, "Metrics streaming is only available in debuggable builds.");
+            return;
+        }
+        Handler handler = samplerHandler;
+        if (handler == null) return;
+        handler.post(() -> {
+            if (streamServer != null || !isRunning) return;
+            try {
+                streamServer = new MetricsStreamServer(port);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to start metrics streaming on port " + port + ".", e);
+                return;
+            }
+            Log.i(TAG, "Streaming metrics on 127.0.0.1:" + streamServer.port()
+                    + " (adb forward tcp:" + port + " tcp:" + streamServer.port() + ").");
+        });
+    }
+
+    /**
+     * Disconnects streaming clients and closes the port.
+     */
+    public void stopStreaming() {
+        Handler handler = samplerHandler;
+        if (handler != null) {
+            handler.post(this::closeStreamServer);
+        }
+    }
+
+    // Sampler thread. Hands everything since the previous sample, then the sample itself, to the
+    // recorder and to connected stream clients.
+    private void recordAndStream() {
+        MetricsStreamServer server = streamServer;
+        if (server != null) {
+            try {
+                server.acceptClients();
+            } catch (IOException e) {
+                Log.e(TAG, "Metrics streaming failed; stopping it.", e);
+                closeStreamServer();
+                server = null;
+            }
+        }
+        boolean streaming = server != null && server.clientCount() > 0;
+        SessionRecorder recorder = sessionRecorder;
+        FlightRecorder flight = flightRecorder;
+        if (recorder == null && !streaming && flight == null) {
+            // Nobody is consuming: the next consumer starts from now, not from stale history.
+            frameIntervals.seekToEnd(drainCursor);
+            nextNetworkSequence = networkLog.totalRecorded();
+            return;
+        }
+
+        long now = System.nanoTime();
+        if (streaming) {
+            server.beginBatch(currentStatsData, now);
+        }
+        try {
+            int frames;
+            while ((frames = frameIntervals.copyFrames(drainCursor, drainIntervals, drainFrameTimes)) > 0) {
+                if (flight != null && flight.addFrames(drainIntervals, drainFrameTimes, frames) > FLIGHT_JANK_TRIGGER_NS) {
+                    requestFlightDump("jank");
+                }
+                if (recorder != null) recorder.recordFrames(drainIntervals, drainFrameTimes, frames);
+                if (streaming) server.addFrames(drainIntervals, drainFrameTimes, frames);
+            }
+            int calls;
+            while ((calls = networkLog.readSince(nextNetworkSequence, drainEntries)) > 0) {
+                for (int i = 0; i < calls; i++) {
+                    if (flight != null) flight.addNetworkCall(drainEntries[i]);
+                    if (recorder != null) recorder.recordNetwork(drainEntries[i]);
+                    if (streaming) server.addNetworkCall(drainEntries[i]);
+                }
+                nextNetworkSequence = drainEntries[calls - 1].sequence + 1;
+            }
+            if (flight != null) flight.addSample(currentStatsData, now);
+            if (recorder != null) recorder.recordSample(currentStatsData, now);
+        } catch (IOException e) {
+            // Only the recorder does I/O here; streaming carries on without it.
+            Log.e(TAG, "Session recording failed; stopping it.", e);
+            closeRecorder();
+        }
+        if (streaming) {
+            server.sendBatch();
+        }
+        if (flight != null) {
+            maybeDumpFlight(flight, now);
+        }
+    }
+
+    // --- Flight Recorder ---
+
+    /**
+     * Keeps the last 30 seconds of frames, samples and network calls in memory (fixed size, no
+     * I/O) and writes them to {@code directory} when something worth looking at happens: a frame
+     * over 250ms, an alert rule firing, or dumpFlightRecorder(). Each dump is a session file
+     * (SessionTraceExporter turns it into a trace) plus a text report with the trigger, the alert
+     * log and the main-thread stall stacks; the newest 8 dumps are kept. Main thread only.
+     */
+    public void startFlightRecorder(File directory) {
+        Handler handler = samplerHandler;
+        if (handler == null || flightWriterThread != null) return;
+        flightWriterThread = new HandlerThread(FLIGHT_THREAD_NAME, Process.THREAD_PRIORITY_BACKGROUND);
+        flightWriterThread.start();
+        flightWriterHandler = new Handler(flightWriterThread.getLooper());
+        handler.post(() -> {
+            if (flightRecorder != null || !isRunning) return;
+            flightRecorder = new FlightRecorder(FLIGHT_WINDOW_MS, FLIGHT_MAX_FRAMES, FLIGHT_MAX_SAMPLES,
+                    NETWORK_LOG_CAPACITY);
+            flightDirectory = directory;
+            Log.d(TAG, "Flight recorder started; dumps go to " + directory);
+        });
+    }
+
+    /**
+     * Drops the in-memory window. Dumps already written stay on disk. Main thread only.
+     */
+    public void stopFlightRecorder() {
+        Handler handler = samplerHandler;
+        if (handler != null) {
+            handler.post(this::closeFlightRecorder);
+        }
+        quitFlightWriter();
+    }
+
+    /**
+     * Writes the flight recorder's window out now (e.g. after "it stuttered a moment ago"),
+     * regardless of how recently the last automatic dump was. Safe from any thread.
+     */
+    public void dumpFlightRecorder() {
+        if (flightWriterHandler != null) {
+            manualFlightDumpRequested = true;
+        }
+    }
+
+    // Any thread. The first trigger wins until the sampler has handled it.
+    private void requestFlightDump(String reason) {
+        if (pendingFlightTrigger == null) {
+            pendingFlightTrigger = reason;
+        }
+    }
+
+    // Sampler thread, after the sample has been added: freezes the window and hands it to the writer.
+    // A manual request stays pending until the window could be frozen, so it isn't lost while the
+    // previous dump is still being written; it runs on the first sample after that.
+    private void maybeDumpFlight(FlightRecorder flight, long nowNanos) {
+        boolean manual = manualFlightDumpRequested;
+        String reason;
+        if (manual) {
+            reason = "manual";
+        } else {
+            reason = pendingFlightTrigger;
+            if (reason == null) return;
+            if (SystemClock.uptimeMillis() - lastFlightDumpMs < FLIGHT_COOLDOWN_MS) {
+                pendingFlightTrigger = null;
+                return;
+            }
+        }
+        pendingFlightTrigger = null;
+
+        Handler writer = flightWriterHandler;
+        long wallMs = System.currentTimeMillis();
+        if (writer == null || !flight.freeze(nowNanos, wallMs)) {
+            if (!manual) {
+                Log.w(TAG, "Flight recorder dump (" + reason + ") skipped: the previous one is still being written.");
+            }
+            return;
+        }
+        if (manual) manualFlightDumpRequested = false;
+        lastFlightDumpMs = SystemClock.uptimeMillis();
+        File directory = flightDirectory;
+        writer.post(() -> writeFlightDump(flight, directory, wallMs, reason));
+    }
+
+    // Flight writer thread.
+    private void writeFlightDump(FlightRecorder flight, File directory, long wallMs, String reason) {
+        String name = FlightRecorder.FILE_PREFIX + wallMs;
+        try {
+            SessionRecorder recorder = new SessionRecorder(directory, FLIGHT_FILE_BYTES, 1, name,
+                    flight.frozenStartWallMs(), flight.frozenStartMonoNs());
+            try {
+                flight.writeFrozen(recorder);
+            } finally {
+                recorder.close();
+            }
+
+            StringBuilder report = new StringBuilder(1024);
+            report.append("Flight recorder dump at ").append(Instant.ofEpochMilli(wallMs))
+                    .append(", trigger: ").append(reason).append('\n')
+                    .append(flight.frozenFrameCount()).append(" frames, ").append(flight.frozenSampleCount())
+                    .append(" samples, ").append(flight.frozenCallCount()).append(" calls over the last ")
+                    .append(FLIGHT_WINDOW_MS / 1000).append("s\n\n");
+            alertEngine.appendReport(report);
+            report.append('\n');
+            mainThreadWatchdog.appendReport(report);
+            try (OutputStream out = new FileOutputStream(new File(directory, name + FlightRecorder.REPORT_SUFFIX))) {
+                out.write(report.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            FlightRecorder.pruneDumps(directory, FLIGHT_MAX_DUMPS);
+            Log.i(TAG, "Flight recorder dump (" + reason + ") written: " + recorder.files());
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write flight recorder dump.", e);
+        } finally {
+            flight.release();
+        }
+    }
+
+    // Sampler thread.
+    private void closeFlightRecorder() {
+        if (flightRecorder == null) return;
+        flightRecorder = null;
+        pendingFlightTrigger = null;
+        manualFlightDumpRequested = false;
+        Log.d(TAG, "Flight recorder stopped.");
+    }
+
+    // Main thread.
+    private void quitFlightWriter() {
+        if (flightWriterThread != null) {
+            flightWriterThread.quitSafely();
+            flightWriterThread = null;
+            flightWriterHandler = null;
+        }
+    }
+
+    // Sampler thread.
+    private void closeRecorder() {
+        SessionRecorder recorder = sessionRecorder;
+        if (recorder == null) return;
+        sessionRecorder = null;
+        try {
+            recorder.close();
+            Log.d(TAG, "Session recording stopped: " + recorder.totalBytesWritten() + " bytes in " + recorder.files());
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to close session recording.", e);
+        }
+    }
+
+    // Sampler thread.
+    private void closeStreamServer() {
+        MetricsStreamServer server = streamServer;
+        if (server == null) return;
+        streamServer = null;
+        server.close();
+        Log.d(TAG, "Metrics streaming stopped; " + server.droppedBatches() + " batches dropped for slow clients.");
+    }
+
+    private static NetworkLogBuffer.Entry[] newEntries(int count) {
+        NetworkLogBuffer.Entry[] entries = new NetworkLogBuffer.Entry[count];
+        for (int i = 0; i < count; i++) {
+            entries[i] = new NetworkLogBuffer.Entry();
+        }
+        return entries;
     }
 }
@@ -0,0 +1,217 @@
+package com.smartherd.debugoverlay;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-host and per-route latency histograms, updated lock-free from OkHttp dispatcher threads.
+ *
+ * Each endpoint owns a LatencyHistogram. Lookups go through a ConcurrentHashMap (lock-free reads);
+ * only the first request to a new endpoint takes a lock to create it. The number of tracked hosts
+ * and routes is capped, and anything beyond the cap is folded into an "(other)" endpoint, so a
+ * client hitting unbounded URLs can't grow memory without limit.
+ *
+ * Routes are "METHOD host/path" with numeric, hex and UUID-like path segments replaced by "{id}",
+ * so /users/42 and /users/43 aggregate together.
+ */
+final class EndpointStatsRegistry {
+
+    static final int MAX_HOSTS = 16;
+    static final int MAX_ROUTES = 32;
+    static final String OTHER_ENDPOINT = "(other)";
+    private static final String ID_SEGMENT = "{id}";
+
+    /**
+     * Percentiles and error rate for one endpoint, as shown in the overlay and exports.
+     * Instances are reused; copy with copyFrom() to keep one.
+     */
+    static final class Summary {
+        String name;
+        long calls;
+        double p50Ms;
+        double p95Ms;
+        double p99Ms;
+        // Failed calls and 5xx responses, as a fraction of all calls (0-1).
+        double errorRate;
+
+        void copyFrom(Summary other) {
+            name = other.name;
+            calls = other.calls;
+            p50Ms = other.p50Ms;
+            p95Ms = other.p95Ms;
+            p99Ms = other.p99Ms;
+            errorRate = other.errorRate;
+        }
+
+        void clear() {
+            name = null;
+            calls = 0;
+            p50Ms = p95Ms = p99Ms = errorRate = 0;
+        }
+    }
+
+    private static final class Endpoint {
+        final String name;
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        Endpoint(String name) {
+            this.name = name;
+        }
+    }
+
+    private final LatencyHistogram overall = new LatencyHistogram();
+
+    private final ConcurrentHashMap<String, Endpoint> hostsByName = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Endpoint> routesByName = new ConcurrentHashMap<>();
+    // Append-only arrays for allocation-free iteration by readers; published via the volatile counts.
+    private final Endpoint[] hosts = new Endpoint[MAX_HOSTS];
+    private final Endpoint[] routes = new Endpoint[MAX_ROUTES];
+    private volatile int hostCount = 0;
+    private volatile int routeCount = 0;
+
+    /**
+     * Records one finished call. Safe from any thread.
+     *
+     * @param statusCode HTTP status, or a negative value if the call failed without a response.
+     */
+    void record(String method, String host, String encodedPath, int statusCode, long durationNanos) {
+        long micros = durationNanos / 1_000;
+        boolean error = statusCode < 0 || statusCode >= 500;
+
+        overall.record(micros, error);
+        hostEndpoint(host).histogram.record(micros, error);
+        routeEndpoint(routeKey(method, host, encodedPath)).histogram.record(micros, error);
+    }
+
+    private Endpoint hostEndpoint(String host) {
+        Endpoint endpoint = hostsByName.get(host);
+        return endpoint != null ? endpoint : createEndpoint(host, hostsByName, hosts, true);
+    }
+
+    private Endpoint routeEndpoint(String route) {
+        Endpoint endpoint = routesByName.get(route);
+        return endpoint != null ? endpoint : createEndpoint(route, routesByName, routes, false);
+    }
+
+    private synchronized Endpoint createEndpoint(String name, ConcurrentHashMap<String, Endpoint> byName,
+                                                 Endpoint[] all, boolean isHost) {
+        Endpoint existing = byName.get(name);
+        if (existing != null) return existing;
+
+        int count = isHost ? hostCount : routeCount;
+        // Keep the last slot for "(other)" once the cap is reached.
+        if (count >= all.length - 1) {
+            existing = byName.get(OTHER_ENDPOINT);
+            if (existing != null) return existing;
+            name = OTHER_ENDPOINT;
+        }
+
+        Endpoint endpoint = new Endpoint(name);
+        all[count] = endpoint;
+        byName.put(name, endpoint);
+        if (isHost) hostCount = count + 1; else routeCount = count + 1;
+        return endpoint;
+    }
+
+    static String routeKey(String method, String host, String encodedPath) {
+        StringBuilder key = new StringBuilder(method.length() + host.length() + encodedPath.length() + 8);
+        key.append(method).append(' ').append(host);
+
+        int segmentStart = 0;
+        int length = encodedPath.length();
+        while (segmentStart < length) {
+            int segmentEnd = encodedPath.indexOf('/', segmentStart + 1);
+            if (segmentEnd < 0) segmentEnd = length;
+            // Segment includes its leading '/'.
+            if (segmentEnd - segmentStart > 1 && isIdSegment(encodedPath, segmentStart + 1, segmentEnd)) {
+                key.append('/').append(ID_SEGMENT);
+            } else {
+                key.append(encodedPath, segmentStart, segmentEnd);
+            }
+            segmentStart = segmentEnd;
+        }
+        return key.toString();
+    }
+
+    // Digits only, or long hex/UUID-like tokens (e.g. "3f2a9c0d..." or "123e4567-e89b-...").
+    private static boolean isIdSegment(String path, int start, int end) {
+        boolean allDigits = true;
+        boolean allHex = true;
+        for (int i = start; i < end; i++) {
+            char c = path.charAt(i);
+            boolean digit = c >= '0' && c <= '9';
+            boolean hex = digit || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F') || c == '-';
+            allDigits &= digit;
+            allHex &= hex;
+        }
+        return allDigits || (allHex && end - start >= 16);
+    }
+
+    // --- Readers ---
+
+    /**
+     * Summarizes all calls into {@code out}. {@code scratch} must have LatencyHistogram.BUCKET_COUNT slots.
+     */
+    void summarizeOverall(long[] scratch, Summary out) {
+        summarize("all", overall, scratch, out);
+    }
+
+    /**
+     * Fills {@code out} with the busiest hosts (by call count), most calls first.
+     *
+     * @return the number of summaries written.
+     */
+    int summarizeTopHosts(long[] scratch, Summary[] out) {
+        return summarizeTop(hosts, hostCount, scratch, out);
+    }
+
+    /**
+     * Fills {@code out} with the busiest routes (by call count), most calls first.
+     *
+     * @return the number of summaries written.
+     */
+    int summarizeTopRoutes(long[] scratch, Summary[] out) {
+        return summarizeTop(routes, routeCount, scratch, out);
+    }
+
+    long getTotalCalls() {
+        return overall.getCount();
+    }
+
+    private static int summarizeTop(Endpoint[] all, int count, long[] scratch, Summary[] out) {
+        int written = 0;
+        for (int i = 0; i < count; i++) {
+            Endpoint endpoint = all[i];
+            long calls = endpoint.histogram.getCount();
+            if (calls == 0) continue;
+
+            // Insertion into the small, sorted output array: O(count * out.length), no allocation.
+            int position = written;
+            while (position > 0 && out[position - 1].calls < calls) {
+                position--;
+            }
+            if (position >= out.length) continue;
+
+            int last = Math.min(written, out.length - 1);
+            for (int j = last; j > position; j--) {
+                out[j].copyFrom(out[j - 1]);
+            }
+            summarize(endpoint.name, endpoint.histogram, scratch, out[position]);
+            written = Math.min(written + 1, out.length);
+        }
+        for (int i = written; i < out.length; i++) {
+            out[i].clear();
+        }
+        return written;
+    }
+
+    private static void summarize(String name, LatencyHistogram histogram, long[] scratch, Summary out) {
+        long total = histogram.snapshot(scratch);
+        out.name = name;
+        out.calls = total;
+        out.p50Ms = LatencyHistogram.percentile(scratch, total, 50) / 1_000.0;
+        out.p95Ms = LatencyHistogram.percentile(scratch, total, 95) / 1_000.0;
+        out.p99Ms = LatencyHistogram.percentile(scratch, total, 99) / 1_000.0;
+        long count = histogram.getCount();
+        out.errorRate = count > 0 ? (double) histogram.getErrorCount() / count : 0.0;
+    }
+}
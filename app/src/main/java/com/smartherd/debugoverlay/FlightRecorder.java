@@ -0,0 +1,291 @@
+package com.smartherd.debugoverlay;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.TreeSet;
+
+/**
+ * Always-on, fixed-memory ring of the last few seconds of frames, samples and network calls, for
+ * bugs like "it stuttered a moment ago" where continuous SessionRecorder output is too heavy.
+ *
+ * - Everything is preallocated: frame intervals and end times in primitive rings, samples as
+ *   reused StatsData copies, calls as reused NetworkLogBuffer entries. Adding overwrites the
+ *   oldest, so the cost never grows with the session.
+ * - freeze() copies the part of the rings inside the window into a second, equally preallocated
+ *   set (array copies, no I/O), so the live rings keep filling while a dump is written.
+ * - writeFrozen() then writes that copy as a session file from another thread, and release()
+ *   hands the copy back. Samples carry the main-thread stall totals; the stall stacks themselves
+ *   go into the dump's text report (MainThreadWatchdog.appendReport).
+ *
+ * Threading: add*(), clear() and freeze() run on one thread (the sampler thread); writeFrozen()
+ * may run on another, between a successful freeze() and release().
+ */
+final class FlightRecorder {
+
+    static final String FILE_PREFIX = "flight-";
+    static final String REPORT_SUFFIX = ".txt";
+
+    private final long windowNs;
+
+    // --- Live Rings (sampler thread) ---
+    private final long[] frameIntervals;
+    private final long[] frameTimes;
+    private long frameCount = 0;
+    private final DebugStatsCollector.StatsData[] samples;
+    private final long[] sampleNanos;
+    private long sampleCount = 0;
+    private final NetworkLogBuffer.Entry[] calls;
+    private long callCount = 0;
+
+    // --- Frozen Window (written by freeze(), read by writeFrozen() until release()) ---
+    private final long[] frozenIntervals;
+    private final long[] frozenTimes;
+    private int frozenFrames = 0;
+    private final DebugStatsCollector.StatsData[] frozenSamples;
+    private final long[] frozenSampleNanos;
+    private int frozenSampleCount = 0;
+    private final NetworkLogBuffer.Entry[] frozenCalls;
+    private int frozenCallCount = 0;
+    private long frozenStartWallMs;
+    private long frozenStartMonoNs;
+    private volatile boolean frozen = false;
+
+    /**
+     * @param windowMs   how far back a dump reaches.
+     * @param maxFrames  frames retained, e.g. windowMs at the highest refresh rate.
+     * @param maxSamples samples retained, e.g. windowMs at the sampling interval, plus slack.
+     * @param maxCalls   network calls retained; a busier window keeps only the newest.
+     */
+    FlightRecorder(long windowMs, int maxFrames, int maxSamples, int maxCalls) {
+        if (windowMs <= 0 || maxFrames <= 0 || maxSamples <= 0 || maxCalls <= 0) {
+            throw new IllegalArgumentException("window and capacities must be > 0");
+        }
+        windowNs = windowMs * 1_000_000L;
+        frameIntervals = new long[maxFrames];
+        frameTimes = new long[maxFrames];
+        frozenIntervals = new long[maxFrames];
+        frozenTimes = new long[maxFrames];
+        samples = newSamples(maxSamples);
+        frozenSamples = newSamples(maxSamples);
+        sampleNanos = new long[maxSamples];
+        frozenSampleNanos = new long[maxSamples];
+        calls = newEntries(maxCalls);
+        frozenCalls = newEntries(maxCalls);
+    }
+
+    // --- Recording (sampler thread) ---
+
+    /**
+     * Adds frames, oldest first, as drained from FrameIntervalBuffer.copyFrames().
+     *
+     * @return the longest interval among them in nanoseconds (0 if none), for jank triggers.
+     */
+    long addFrames(long[] intervalsNs, long[] frameTimesNs, int count) {
+        long longest = 0;
+        for (int i = 0; i < count; i++) {
+            int slot = (int) (frameCount % frameIntervals.length);
+            frameIntervals[slot] = intervalsNs[i];
+            frameTimes[slot] = frameTimesNs[i];
+            frameCount++;
+            longest = Math.max(longest, intervalsNs[i]);
+        }
+        return longest;
+    }
+
+    /**
+     * Adds one published sample, taken at {@code nowNanos} (System.nanoTime()).
+     */
+    void addSample(DebugStatsCollector.StatsData data, long nowNanos) {
+        int slot = (int) (sampleCount % samples.length);
+        samples[slot].copyFrom(data);
+        sampleNanos[slot] = nowNanos;
+        sampleCount++;
+    }
+
+    void addNetworkCall(NetworkLogBuffer.Entry entry) {
+        calls[(int) (callCount % calls.length)].copyFrom(entry);
+        callCount++;
+    }
+
+    void clear() {
+        frameCount = 0;
+        sampleCount = 0;
+        callCount = 0;
+    }
+
+    /**
+     * Copies the window ending at {@code nowNanos} / {@code nowWallMs} (the same instant on both
+     * clocks) out of the live rings.
+     *
+     * @return false if the previous frozen window hasn't been released yet; nothing is copied then.
+     */
+    boolean freeze(long nowNanos, long nowWallMs) {
+        if (frozen) return false;
+        long cutoffNs = nowNanos - windowNs;
+        long cutoffWallMs = nowWallMs - windowNs / 1_000_000L;
+
+        frozenFrames = 0;
+        for (long seq = Math.max(0, frameCount - frameIntervals.length); seq < frameCount; seq++) {
+            int slot = (int) (seq % frameIntervals.length);
+            if (frameTimes[slot] <= cutoffNs) continue;
+            frozenIntervals[frozenFrames] = frameIntervals[slot];
+            frozenTimes[frozenFrames] = frameTimes[slot];
+            frozenFrames++;
+        }
+        frozenSampleCount = 0;
+        for (long seq = Math.max(0, sampleCount - samples.length); seq < sampleCount; seq++) {
+            int slot = (int) (seq % samples.length);
+            if (sampleNanos[slot] <= cutoffNs) continue;
+            frozenSamples[frozenSampleCount].copyFrom(samples[slot]);
+            frozenSampleNanos[frozenSampleCount] = sampleNanos[slot];
+            frozenSampleCount++;
+        }
+        frozenCallCount = 0;
+        for (long seq = Math.max(0, callCount - calls.length); seq < callCount; seq++) {
+            NetworkLogBuffer.Entry entry = calls[(int) (seq % calls.length)];
+            if (entry.timestampMs <= cutoffWallMs) continue;
+            frozenCalls[frozenCallCount++].copyFrom(entry);
+        }
+        // Start the file where the earliest frame or call began, so none reaches before it.
+        long startNs = cutoffNs;
+        if (frozenFrames > 0) {
+            startNs = Math.min(startNs, frozenTimes[0] - frozenIntervals[0]);
+        }
+        for (int i = 0; i < frozenCallCount; i++) {
+            NetworkLogBuffer.Entry entry = frozenCalls[i];
+            startNs = Math.min(startNs, nowNanos + (entry.timestampMs - entry.durationMs - nowWallMs) * 1_000_000L);
+        }
+        // Whole milliseconds before now, so both clocks name exactly the same instant.
+        long startAgoMs = (nowNanos - startNs + 999_999) / 1_000_000L;
+        frozenStartMonoNs = nowNanos - startAgoMs * 1_000_000L;
+        frozenStartWallMs = nowWallMs - startAgoMs;
+        frozen = true;
+        return true;
+    }
+
+    boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Start of the frozen window on the wall clock, for the session file header.
+     */
+    long frozenStartWallMs() {
+        return frozenStartWallMs;
+    }
+
+    /**
+     * Start of the frozen window on the System.nanoTime() clock, for the session file header.
+     */
+    long frozenStartMonoNs() {
+        return frozenStartMonoNs;
+    }
+
+    int frozenFrameCount() {
+        return frozenFrames;
+    }
+
+    int frozenSampleCount() {
+        return frozenSampleCount;
+    }
+
+    int frozenCallCount() {
+        return frozenCallCount;
+    }
+
+    // --- Dumping (any one thread, between freeze() and release()) ---
+
+    /**
+     * Writes the frozen window to {@code recorder} in time order: before each sample, the frames
+     * and calls that ended before it.
+     */
+    void writeFrozen(SessionRecorder recorder) throws IOException {
+        int frame = 0;
+        int call = 0;
+        for (int s = 0; s <= frozenSampleCount; s++) {
+            long untilNs = s < frozenSampleCount ? frozenSampleNanos[s] : Long.MAX_VALUE;
+            int frameEnd = frame;
+            while (frameEnd < frozenFrames && frozenTimes[frameEnd] <= untilNs) {
+                frameEnd++;
+            }
+            if (frameEnd > frame) {
+                recorder.recordFrames(frozenIntervals, frozenTimes, frame, frameEnd - frame);
+                frame = frameEnd;
+            }
+            while (call < frozenCallCount && callEndNanos(frozenCalls[call]) <= untilNs) {
+                recorder.recordNetwork(frozenCalls[call++]);
+            }
+            if (s < frozenSampleCount) {
+                recorder.recordSample(frozenSamples[s], frozenSampleNanos[s]);
+            }
+        }
+    }
+
+    // Calls carry wall-clock end times; place them on the frozen window's monotonic timeline.
+    private long callEndNanos(NetworkLogBuffer.Entry entry) {
+        return frozenStartMonoNs + (entry.timestampMs - frozenStartWallMs) * 1_000_000L;
+    }
+
+    /**
+     * Makes the frozen buffers available to the next freeze().
+     */
+    void release() {
+        frozen = false;
+    }
+
+    // --- Dump Files ---
+
+    /**
+     * Deletes all but the newest {@code keep} dumps in {@code directory}. A dump is every file
+     * named {@code flight-<wall-clock ms>...}, i.e. its session file and its report.
+     */
+    static void pruneDumps(File directory, int keep) {
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        TreeSet<Long> dumps = new TreeSet<>();
+        for (File file : files) {
+            long id = dumpId(file.getName());
+            if (id >= 0) dumps.add(id);
+        }
+        while (dumps.size() > keep) {
+            long oldest = dumps.pollFirst();
+            for (File file : files) {
+                if (dumpId(file.getName()) == oldest) {
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    // The wall-clock ms a dump file is named after, or -1 if it isn't one.
+    private static long dumpId(String name) {
+        if (!name.startsWith(FILE_PREFIX)) return -1;
+        int end = FILE_PREFIX.length();
+        while (end < name.length() && Character.isDigit(name.charAt(end))) {
+            end++;
+        }
+        if (end == FILE_PREFIX.length()) return -1;
+        try {
+            return Long.parseLong(name.substring(FILE_PREFIX.length(), end));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static DebugStatsCollector.StatsData[] newSamples(int count) {
+        DebugStatsCollector.StatsData[] result = new DebugStatsCollector.StatsData[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = new DebugStatsCollector.StatsData();
+        }
+        return result;
+    }
+
+    private static NetworkLogBuffer.Entry[] newEntries(int count) {
+        NetworkLogBuffer.Entry[] result = new NetworkLogBuffer.Entry[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = new NetworkLogBuffer.Entry();
+        }
+        return result;
+    }
+}
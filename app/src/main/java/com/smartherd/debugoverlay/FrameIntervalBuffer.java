@@ -0,0 +1,251 @@
+package com.smartherd.debugoverlay;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-capacity ring of frame intervals (in nanoseconds) backed by a primitive long[].
+ * Recording a frame never allocates, so the overlay does not add GC pressure on every vsync.
+ *
+ * The buffer also keeps running slow-frame (> 16.6ms) and frozen-frame (> 700ms) counts, a
+ * dropped-vsync count relative to the current display refresh period, and can summarize the
+ * current window into a mean and P50/P90/P99 frame times.
+ *
+ * The ring may retain more frames than the summary window (the history), so a recorder can drain
+ * every frame with copyFrames() even when it reads less often than once per window.
+ * restartWindow() leaves the frames recorded so far out of later summaries (e.g. after the app
+ * returns from the background) without resetting the jank counters or the history.
+ *
+ * Threading: exactly one writer (the Choreographer thread) calls record(), while the reader
+ * (the sampler thread) calls summarize() and copyFrames(). The writer publishes each slot through
+ * a volatile sequence counter; the reader copies without locking and discards any slot the writer
+ * may have lapped while it was copying.
+ */
+final class FrameIntervalBuffer {
+
+    // Thresholds match the Android vitals definitions of slow and frozen frames.
+    static final long SLOW_FRAME_THRESHOLD_NS = 16_600_000L;
+    static final long FROZEN_FRAME_THRESHOLD_NS = 700_000_000L;
+    // Assumed until the real display refresh rate is known.
+    static final long DEFAULT_REFRESH_PERIOD_NS = 16_666_667L;
+
+    // --- Ring Storage ---
+    // One spare slot: the slot the writer is filling is never part of the readable window.
+    private final long[] intervalsNs;
+    // Frame timestamps (Choreographer frameTimeNanos) for the same slots; 0 when not supplied.
+    private final long[] frameTimesNs;
+    private final int windowSize;
+    private final int historySize;
+    // Total intervals ever recorded. Written only by the Choreographer thread, after the slot.
+    private volatile long writeCount = 0;
+    // First sequence summarize() may include; moved forward by restartWindow(). Writer thread only.
+    private volatile long windowStartCount = 0;
+
+    // --- Jank Counters (since the last reset) ---
+    // Volatile for cross-thread visibility; increments are safe because there is a single writer.
+    private volatile long slowFrameCount = 0;
+    private volatile long frozenFrameCount = 0;
+    private volatile long droppedVsyncCount = 0;
+
+    // Current display refresh period; updated by the sampler thread when the display mode changes.
+    private volatile long refreshPeriodNs = DEFAULT_REFRESH_PERIOD_NS;
+
+    // --- Summary (written by summarize() on the reader thread) ---
+    // Sorted copy of the window, reused on every summary so percentiles never allocate.
+    private final long[] sortedScratch;
+    private long meanNs = 0;
+    private long p50Ns = 0;
+    private long p90Ns = 0;
+    private long p99Ns = 0;
+
+    /**
+     * Position of a reader draining frames with copyFrames(). Reused across calls.
+     */
+    static final class Cursor {
+        // Sequence of the next frame to copy.
+        long nextSequence = 0;
+        // Frames the writer overwrote before they could be copied, since the cursor was created.
+        long lostFrames = 0;
+    }
+
+    FrameIntervalBuffer(int capacity) {
+        this(capacity, capacity);
+    }
+
+    /**
+     * @param windowSize  frames summarized into the mean and percentiles.
+     * @param historySize frames retained for copyFrames() (at least windowSize).
+     */
+    FrameIntervalBuffer(int windowSize, int historySize) {
+        if (windowSize <= 0 || historySize < windowSize) {
+            throw new IllegalArgumentException("need 0 < windowSize <= historySize");
+        }
+        this.windowSize = windowSize;
+        this.historySize = historySize;
+        this.intervalsNs = new long[historySize + 1];
+        this.frameTimesNs = new long[historySize + 1];
+        this.sortedScratch = new long[windowSize];
+    }
+
+    /**
+     * Records one frame interval, overwriting the oldest sample once the ring is full.
+     */
+    void record(long intervalNs) {
+        record(intervalNs, 0L);
+    }
+
+    /**
+     * Records one frame interval that ended at {@code frameTimeNanos} (System.nanoTime() base).
+     */
+    void record(long intervalNs, long frameTimeNanos) {
+        long sequence = writeCount;
+        int slot = (int) (sequence % intervalsNs.length);
+        intervalsNs[slot] = intervalNs;
+        frameTimesNs[slot] = frameTimeNanos;
+
+        if (intervalNs > FROZEN_FRAME_THRESHOLD_NS) {
+            frozenFrameCount++;
+        } else if (intervalNs > SLOW_FRAME_THRESHOLD_NS) {
+            slowFrameCount++;
+        }
+
+        // Each interval spans round(interval / period) vsyncs; every one beyond the first was missed.
+        long period = refreshPeriodNs;
+        long spannedVsyncs = (intervalNs + period / 2) / period;
+        if (spannedVsyncs > 1) {
+            droppedVsyncCount += spannedVsyncs - 1;
+        }
+
+        // Volatile write publishes the slot to the reader thread.
+        writeCount = sequence + 1;
+    }
+
+    /**
+     * Computes the mean and percentiles over the samples currently in the ring.
+     *
+     * @return the number of samples that were summarized (0 if the ring is empty).
+     */
+    int summarize() {
+        long end = writeCount;
+        long start = Math.max(Math.min(windowStartCount, end), end - windowSize);
+        for (long sequence = start; sequence < end; sequence++) {
+            sortedScratch[(int) (sequence - start)] = intervalsNs[(int) (sequence % intervalsNs.length)];
+        }
+
+        // The writer may have lapped us while copying; drop any slot that was reused meanwhile.
+        long firstIntact = writeCount - historySize;
+        int offset = (int) Math.min(end - start, Math.max(0, firstIntact - start));
+        int count = (int) (end - start) - offset;
+        if (count <= 0) {
+            meanNs = p50Ns = p90Ns = p99Ns = 0;
+            return 0;
+        }
+
+        long total = 0;
+        for (int i = offset; i < offset + count; i++) {
+            total += sortedScratch[i];
+        }
+        Arrays.sort(sortedScratch, offset, offset + count);
+
+        meanNs = total / count;
+        p50Ns = percentile(offset, count, 50);
+        p90Ns = percentile(offset, count, 90);
+        p99Ns = percentile(offset, count, 99);
+        return count;
+    }
+
+    /**
+     * Copies the frames recorded since the cursor's position, oldest first, and advances it.
+     * Frames the writer has already overwritten are skipped and counted in cursor.lostFrames.
+     * Reader thread only.
+     *
+     * @return the number of frames copied (at most the output arrays' length).
+     */
+    int copyFrames(Cursor cursor, long[] intervalsOut, long[] frameTimesOut) {
+        long end = writeCount;
+        if (cursor.nextSequence > end) {
+            // The buffer was cleared since the last read.
+            cursor.nextSequence = 0;
+        }
+        long start = Math.max(cursor.nextSequence, end - historySize);
+        int count = (int) Math.min(end - start, Math.min(intervalsOut.length, frameTimesOut.length));
+        for (int i = 0; i < count; i++) {
+            int slot = (int) ((start + i) % intervalsNs.length);
+            intervalsOut[i] = intervalsNs[slot];
+            frameTimesOut[i] = frameTimesNs[slot];
+        }
+
+        // Drop leading slots the writer reused while we were copying.
+        long firstIntact = writeCount - historySize;
+        int lapped = (int) Math.min(count, Math.max(0, firstIntact - start));
+        if (lapped > 0) {
+            System.arraycopy(intervalsOut, lapped, intervalsOut, 0, count - lapped);
+            System.arraycopy(frameTimesOut, lapped, frameTimesOut, 0, count - lapped);
+        }
+
+        cursor.lostFrames += start + lapped - cursor.nextSequence;
+        cursor.nextSequence = start + count;
+        return count - lapped;
+    }
+
+    /**
+     * Moves the cursor to the newest frame, so the next copyFrames() only sees frames from now on.
+     */
+    void seekToEnd(Cursor cursor) {
+        cursor.nextSequence = writeCount;
+    }
+
+    // Nearest-rank percentile over the sorted scratch window.
+    private long percentile(int offset, int count, int percent) {
+        int rank = (percent * count + 99) / 100; // ceil(percent / 100 * count)
+        return sortedScratch[offset + Math.max(0, rank - 1)];
+    }
+
+    /**
+     * Starts a new summary window at the next recorded frame: summarize() ignores every frame
+     * recorded so far. The slow, frozen and dropped counts keep running, and copyFrames() still
+     * sees the history. Writer thread only.
+     */
+    void restartWindow() {
+        windowStartCount = writeCount;
+    }
+
+    /**
+     * Drops all samples and jank counters. Must be called from the writer thread while no
+     * summary is in progress.
+     */
+    void clear() {
+        windowStartCount = 0;
+        writeCount = 0;
+        slowFrameCount = 0;
+        frozenFrameCount = 0;
+        droppedVsyncCount = 0;
+        meanNs = p50Ns = p90Ns = p99Ns = 0;
+    }
+
+    int size() {
+        long end = writeCount;
+        return (int) Math.min(end - Math.min(windowStartCount, end), windowSize);
+    }
+    int capacity() { return windowSize; }
+    int historySize() { return historySize; }
+
+    long getMeanNs() { return meanNs; }
+    long getP50Ns() { return p50Ns; }
+    long getP90Ns() { return p90Ns; }
+    long getP99Ns() { return p99Ns; }
+
+    long getSlowFrameCount() { return slowFrameCount; }
+    long getFrozenFrameCount() { return frozenFrameCount; }
+    long getDroppedVsyncCount() { return droppedVsyncCount; }
+
+    /**
+     * Sets the display refresh period used to count dropped vsyncs. Safe to call from any thread.
+     */
+    void setRefreshPeriodNs(long periodNs) {
+        if (periodNs > 0) {
+            refreshPeriodNs = periodNs;
+        }
+    }
+
+    long getRefreshPeriodNs() { return refreshPeriodNs; }
+}
@@ -0,0 +1,91 @@
+package com.smartherd.debugoverlay;
+
+import android.app.Activity;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.view.FrameMetrics;
+import android.view.Window;
+
+import java.util.WeakHashMap;
+
+/**
+ * Feeds every started activity's per-frame FrameMetrics (input, animation, layout, draw, sync,
+ * GPU, ...) into a FrameStageStats. Unlike the Choreographer callback, which only sees vsync
+ * timestamps, this tells which stage made a frame slow.
+ *
+ * Frame reports are delivered on a dedicated background thread, never the main thread. The
+ * thread exists only while at least one window is observed, so it is gone while the app is in
+ * the background.
+ *
+ * attach()/detach() are main-thread only (OverlayManager calls them on activity start/stop).
+ */
+final class FrameMetricsTracker {
+
+    private static final String THREAD_NAME = "FrameMetrics";
+
+    private final FrameStageStats stats;
+    // Windows currently observed; weak so a leaked detach can't keep an activity alive.
+    private final WeakHashMap<Window, Boolean> windows = new WeakHashMap<>();
+    private HandlerThread thread;
+    private Handler handler;
+
+    // --- Frame-metrics thread only ---
+    private final long[] stageNs = new long[FrameStageStats.STAGE_COUNT];
+
+    FrameMetricsTracker(FrameStageStats stats) {
+        this.stats = stats;
+    }
+
+    void attach(Activity activity) {
+        Window window = activity.getWindow();
+        if (window == null || windows.containsKey(window)) return;
+        if (thread == null) {
+            thread = new HandlerThread(THREAD_NAME, Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            handler = new Handler(thread.getLooper());
+        }
+        window.addOnFrameMetricsAvailableListener(listener, handler);
+        windows.put(window, Boolean.TRUE);
+    }
+
+    void detach(Activity activity) {
+        Window window = activity.getWindow();
+        if (window == null || windows.remove(window) == null) return;
+        try {
+            window.removeOnFrameMetricsAvailableListener(listener);
+        } catch (IllegalArgumentException ignored) {
+            // The window already dropped its observers (e.g. it was torn down first).
+        }
+        if (windows.isEmpty() && thread != null) {
+            // Reports already queued are still delivered before the thread exits.
+            thread.quitSafely();
+            thread = null;
+            handler = null;
+        }
+    }
+
+    private final Window.OnFrameMetricsAvailableListener listener = this::onFrameMetricsAvailable;
+
+    // Frame-metrics thread.
+    private void onFrameMetricsAvailable(Window window, FrameMetrics metrics, int dropCount) {
+        // dropCount (reports skipped while this thread was behind) doesn't bias the means: ignored.
+        // The first frame after a layout pass is dominated by inflation and the initial layout.
+        if (metrics.getMetric(FrameMetrics.FIRST_DRAW_FRAME) == 1) return;
+
+        stageNs[FrameStageStats.STAGE_DELAY] = metrics.getMetric(FrameMetrics.UNKNOWN_DELAY_DURATION);
+        stageNs[FrameStageStats.STAGE_INPUT] = metrics.getMetric(FrameMetrics.INPUT_HANDLING_DURATION);
+        stageNs[FrameStageStats.STAGE_ANIMATION] = metrics.getMetric(FrameMetrics.ANIMATION_DURATION);
+        stageNs[FrameStageStats.STAGE_LAYOUT] = metrics.getMetric(FrameMetrics.LAYOUT_MEASURE_DURATION);
+        stageNs[FrameStageStats.STAGE_DRAW] = metrics.getMetric(FrameMetrics.DRAW_DURATION);
+        stageNs[FrameStageStats.STAGE_SYNC] = metrics.getMetric(FrameMetrics.SYNC_DURATION);
+        stageNs[FrameStageStats.STAGE_COMMAND] = metrics.getMetric(FrameMetrics.COMMAND_ISSUE_DURATION);
+        stageNs[FrameStageStats.STAGE_SWAP] = metrics.getMetric(FrameMetrics.SWAP_BUFFERS_DURATION);
+        stageNs[FrameStageStats.STAGE_GPU] = metrics.getMetric(FrameMetrics.GPU_DURATION);
+
+        // The deadline follows the display's current refresh rate (8.3ms at 120Hz, ...).
+        long deadlineNs = metrics.getMetric(FrameMetrics.DEADLINE);
+        if (deadlineNs <= 0) deadlineNs = FrameIntervalBuffer.SLOW_FRAME_THRESHOLD_NS;
+        stats.record(stageNs, metrics.getMetric(FrameMetrics.TOTAL_DURATION) > deadlineNs);
+    }
+}
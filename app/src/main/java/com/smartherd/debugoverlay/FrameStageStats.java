@@ -0,0 +1,120 @@
+package com.smartherd.debugoverlay;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free accumulator of per-stage frame durations, fed by FrameMetricsTracker.
+ *
+ * The frame-metrics thread adds each rendered frame's stage durations (from the window's
+ * FrameMetrics); a sampler periodically drains them into per-stage means for the interval since
+ * the previous drain. For frames that missed their deadline it also tracks which stage took the
+ * longest, so the overlay can say whether jank comes from layout, draw, GPU, ... Nothing is
+ * allocated on either side.
+ */
+final class FrameStageStats {
+
+    // --- Stages (indices into every per-stage array) ---
+    // Time between vsync and the frame starting on the UI thread (e.g. the main thread was busy).
+    static final int STAGE_DELAY = 0;
+    static final int STAGE_INPUT = 1;
+    static final int STAGE_ANIMATION = 2;
+    static final int STAGE_LAYOUT = 3;
+    static final int STAGE_DRAW = 4;
+    static final int STAGE_SYNC = 5;
+    static final int STAGE_COMMAND = 6;
+    static final int STAGE_SWAP = 7;
+    static final int STAGE_GPU = 8;
+    static final int STAGE_COUNT = 9;
+
+    static final String[] STAGE_NAMES = {
+            "delay", "input", "anim", "layout", "draw", "sync", "cmd", "swap", "gpu"
+    };
+
+    /**
+     * One interval's worth of stage timings. Reused by the sampler.
+     */
+    static final class Summary {
+        int frames;
+        int slowFrames;
+        // Mean duration of each stage over all frames, and over the slow ones only.
+        final double[] meanStageMs = new double[STAGE_COUNT];
+        final double[] slowMeanStageMs = new double[STAGE_COUNT];
+        // Stage that was the longest in the most slow frames, or -1 without slow frames.
+        int dominantSlowStage = -1;
+        // Fraction of the slow frames in which dominantSlowStage was the longest stage.
+        double dominantSlowShare;
+    }
+
+    private final AtomicLongArray stageSumsNs = new AtomicLongArray(STAGE_COUNT);
+    private final AtomicLongArray slowStageSumsNs = new AtomicLongArray(STAGE_COUNT);
+    private final AtomicLongArray slowDominantCounts = new AtomicLongArray(STAGE_COUNT);
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong slowFrames = new AtomicLong();
+
+    // Lifetime totals, never reset by drain().
+    private final AtomicLong totalFrames = new AtomicLong();
+    private final AtomicLong totalSlowFrames = new AtomicLong();
+
+    /**
+     * Adds one frame.
+     *
+     * @param stageNs STAGE_COUNT durations; read during the call only.
+     * @param slow    whether the frame missed its deadline.
+     */
+    void record(long[] stageNs, boolean slow) {
+        int dominant = 0;
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            long ns = stageNs[i];
+            if (ns <= 0) continue;
+            stageSumsNs.addAndGet(i, ns);
+            if (slow) slowStageSumsNs.addAndGet(i, ns);
+            if (ns > stageNs[dominant]) dominant = i;
+        }
+        frames.incrementAndGet();
+        totalFrames.incrementAndGet();
+        if (slow) {
+            slowDominantCounts.incrementAndGet(dominant);
+            slowFrames.incrementAndGet();
+            totalSlowFrames.incrementAndGet();
+        }
+    }
+
+    /**
+     * Writes the stage timings of the frames recorded since the previous drain into {@code out},
+     * and resets the interval.
+     *
+     * @return the number of frames in the interval; if 0, {@code out} is left untouched.
+     */
+    int drain(Summary out) {
+        long frameCount = frames.getAndSet(0);
+        if (frameCount == 0) return 0;
+        long slowCount = slowFrames.getAndSet(0);
+
+        int dominant = -1;
+        long dominantCount = 0;
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            out.meanStageMs[i] = stageSumsNs.getAndSet(i, 0) / 1_000_000.0 / frameCount;
+            long slowSumNs = slowStageSumsNs.getAndSet(i, 0);
+            out.slowMeanStageMs[i] = slowCount > 0 ? slowSumNs / 1_000_000.0 / slowCount : 0.0;
+            long count = slowDominantCounts.getAndSet(i, 0);
+            if (count > dominantCount) {
+                dominant = i;
+                dominantCount = count;
+            }
+        }
+        out.frames = (int) frameCount;
+        out.slowFrames = (int) slowCount;
+        out.dominantSlowStage = dominant;
+        out.dominantSlowShare = slowCount > 0 ? (double) dominantCount / slowCount : 0.0;
+        return (int) frameCount;
+    }
+
+    long getTotalFrames() {
+        return totalFrames.get();
+    }
+
+    long getTotalSlowFrames() {
+        return totalSlowFrames.get();
+    }
+}
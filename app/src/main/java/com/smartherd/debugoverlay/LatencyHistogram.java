@@ -0,0 +1,127 @@
+package com.smartherd.debugoverlay;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free log-linear latency histogram with bounded relative error.
+ *
+ * Values (microseconds) below 2^SUB_BUCKET_BITS get one bucket each; above that, every power of
+ * two is split into 2^SUB_BUCKET_BITS equal sub-buckets, so a reported percentile is within
+ * 1/2^SUB_BUCKET_BITS (6.25%) of the true value at any scale. Values above MAX_VALUE_MICROS land
+ * in the last bucket.
+ *
+ * Recording is a couple of atomic increments into one of STRIPES copies of the counters, chosen
+ * by thread, so many OkHttp dispatcher threads can record concurrently without all contending on
+ * the same cache lines. Readers merge the stripes into a caller-owned scratch array.
+ */
+final class LatencyHistogram {
+
+    static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 25; // 2^25us ~ 33.5s
+    static final long MAX_VALUE_MICROS = (1L << (MAX_EXPONENT + 1)) - 1;
+    static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private static final int STRIPES = 4; // power of two
+    // Per-stripe totals padded to 8 longs (64 bytes) so stripes don't share a cache line.
+    private static final int TOTALS_STRIDE = 8;
+    private static final int TOTAL_COUNT = 0;
+    private static final int TOTAL_ERRORS = 1;
+    private static final int TOTAL_SUM_MICROS = 2;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(STRIPES * BUCKET_COUNT);
+    private final AtomicLongArray totals = new AtomicLongArray(STRIPES * TOTALS_STRIDE);
+
+    /**
+     * Records one call. Safe from any thread; never allocates or blocks.
+     */
+    void record(long latencyMicros, boolean error) {
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        buckets.incrementAndGet(stripe * BUCKET_COUNT + bucketIndex(latencyMicros));
+
+        int base = stripe * TOTALS_STRIDE;
+        totals.incrementAndGet(base + TOTAL_COUNT);
+        totals.addAndGet(base + TOTAL_SUM_MICROS, Math.max(0, latencyMicros));
+        if (error) {
+            totals.incrementAndGet(base + TOTAL_ERRORS);
+        }
+    }
+
+    static int bucketIndex(long micros) {
+        long v = Math.max(0, Math.min(micros, MAX_VALUE_MICROS));
+        if (v < SUB_BUCKETS) {
+            return (int) v;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(v);
+        int subBucket = (int) (v >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Representative value (bucket midpoint) for a bucket index, in microseconds.
+     */
+    static long bucketValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int group = index / SUB_BUCKETS;
+        int subBucket = index % SUB_BUCKETS;
+        int shift = group - 1;
+        long lower = ((long) (SUB_BUCKETS + subBucket)) << shift;
+        return lower + ((1L << shift) >> 1);
+    }
+
+    /**
+     * Merges all stripes into {@code scratch} (length BUCKET_COUNT).
+     *
+     * @return the total number of recorded values.
+     */
+    long snapshot(long[] scratch) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = 0;
+            for (int s = 0; s < STRIPES; s++) {
+                count += buckets.get(s * BUCKET_COUNT + i);
+            }
+            scratch[i] = count;
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Percentile (0-100) from a scratch array filled by snapshot(), in microseconds.
+     */
+    static long percentile(long[] scratch, long total, double percent) {
+        if (total <= 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percent / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += scratch[i];
+            if (seen >= rank) {
+                return bucketValue(i);
+            }
+        }
+        return bucketValue(BUCKET_COUNT - 1);
+    }
+
+    long getCount() {
+        return sumTotals(TOTAL_COUNT);
+    }
+
+    long getErrorCount() {
+        return sumTotals(TOTAL_ERRORS);
+    }
+
+    long getSumMicros() {
+        return sumTotals(TOTAL_SUM_MICROS);
+    }
+
+    private long sumTotals(int field) {
+        long sum = 0;
+        for (int s = 0; s < STRIPES; s++) {
+            sum += totals.get(s * TOTALS_STRIDE + field);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,138 @@
+package com.smartherd.debugoverlay;
+
+import java.io.IOException;
+import java.util.function.LongSupplier;
+
+/**
+ * Sampling profiler for the main thread: a background thread calls sample() at a fixed rate (100Hz
+ * by default), each call snapshots the main thread's stack and merges it into a StackSampleTree.
+ * writeCollapsed() exports the tree for flame-graph tools.
+ *
+ * Samples taken while the main thread waits for its next message (idle in the Looper) are counted
+ * but kept out of the tree, so the flame graph shows only where busy time goes.
+ *
+ * The profiler measures itself: the CPU time spent in sample() is read from {@code threadCpuClock}
+ * (e.g. Debug::threadCpuTimeNanos) before and after each sample, so its cost can be shown next to
+ * the process CPU usage it is part of.
+ *
+ * Threading: sample() runs on one background thread; the readers and reset() may run on any thread.
+ */
+final class MainThreadProfiler {
+
+    static final int DEFAULT_RATE_HZ = 100;
+    static final int MAX_RATE_HZ = 1000;
+
+    private final Thread watchedThread;
+    private final LongSupplier threadCpuClock;
+    private volatile int rateHz = DEFAULT_RATE_HZ;
+
+    // --- Results (guarded by this) ---
+    private final StackSampleTree tree;
+    private long idleSamples = 0;
+
+    // Written by the sampling thread only.
+    private volatile long cpuTimeNs = 0;
+
+    /**
+     * @param watchedThread  thread whose stack is sampled (the main thread).
+     * @param threadCpuClock CPU time of the calling thread in nanoseconds.
+     */
+    MainThreadProfiler(Thread watchedThread, LongSupplier threadCpuClock) {
+        this(watchedThread, threadCpuClock, new StackSampleTree());
+    }
+
+    MainThreadProfiler(Thread watchedThread, LongSupplier threadCpuClock, StackSampleTree tree) {
+        this.watchedThread = watchedThread;
+        this.threadCpuClock = threadCpuClock;
+        this.tree = tree;
+    }
+
+    /**
+     * Sets the sampling rate, clamped to 1..MAX_RATE_HZ. Any thread.
+     */
+    void setRateHz(int rateHz) {
+        this.rateHz = Math.max(1, Math.min(MAX_RATE_HZ, rateHz));
+    }
+
+    int getRateHz() {
+        return rateHz;
+    }
+
+    /**
+     * Delay between two samples at the current rate, at least 1ms.
+     */
+    long getIntervalMs() {
+        return Math.max(1, 1000 / rateHz);
+    }
+
+    // --- Sampling ---
+
+    /**
+     * Takes one sample of the watched thread. Sampling thread only.
+     */
+    void sample() {
+        long cpuStartNs = threadCpuClock.getAsLong();
+        StackTraceElement[] stack = watchedThread.getStackTrace();
+        synchronized (this) {
+            if (isIdle(stack)) {
+                idleSamples++;
+            } else {
+                tree.addSample(stack);
+            }
+        }
+        cpuTimeNs += threadCpuClock.getAsLong() - cpuStartNs;
+    }
+
+    /**
+     * True if the stack is a Looper waiting for its next message.
+     */
+    static boolean isIdle(StackTraceElement[] stack) {
+        if (stack.length == 0) return true;
+        StackTraceElement top = stack[0];
+        return "android.os.MessageQueue".equals(top.getClassName())
+                && "nativePollOnce".equals(top.getMethodName());
+    }
+
+    /**
+     * Drops every sample; the CPU time keeps accumulating.
+     */
+    synchronized void reset() {
+        tree.clear();
+        idleSamples = 0;
+    }
+
+    // --- Results ---
+
+    /**
+     * Writes the busy samples in collapsed-stack format ("outer;inner;leaf count" per line), for
+     * flamegraph.pl, speedscope and similar tools.
+     */
+    synchronized void writeCollapsed(Appendable out) throws IOException {
+        tree.writeCollapsed(out);
+    }
+
+    /**
+     * Samples in which the main thread was running (or blocked) rather than waiting for messages.
+     */
+    synchronized long getBusySamples() {
+        return tree.getSamples();
+    }
+
+    synchronized long getIdleSamples() {
+        return idleSamples;
+    }
+
+    /**
+     * Busy samples charged to a shorter stack because the tree was full.
+     */
+    synchronized long getTruncatedSamples() {
+        return tree.getTruncatedSamples();
+    }
+
+    /**
+     * CPU time spent sampling since the profiler was created, in nanoseconds.
+     */
+    long getCpuTimeNs() {
+        return cpuTimeNs;
+    }
+}
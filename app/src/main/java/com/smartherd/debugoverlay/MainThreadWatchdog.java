@@ -0,0 +1,276 @@
+package com.smartherd.debugoverlay;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detects main-thread stalls with a heartbeat and captures what the main thread was doing.
+ *
+ * A background thread calls check() periodically. Each check posts a tiny "ping" to the main
+ * thread unless one is still pending; a ping that hasn't run within the threshold means the
+ * message being dispatched has blocked the main thread at least that long, so its stack is
+ * captured right then, from the background thread, while the stall is still in progress. When the
+ * ping finally runs, its delay is the blocked time charged to that stack.
+ *
+ * Identical stacks are deduplicated by a hash of their frames and reported with a count, total
+ * and worst blocked time, labelled with the first frame outside the platform (usually the
+ * handler or callback responsible). The table is bounded: when full, the entry with the least
+ * blocked time is replaced.
+ *
+ * A heartbeat rather than Looper message logging: the logging hook builds a String for every
+ * message the main thread dispatches, while a ping costs one pooled Message per check.
+ *
+ * Threading: check() and reset() run on one background thread; the readers (readTopStalls(),
+ * appendReport(), the totals) may run on any thread.
+ */
+final class MainThreadWatchdog {
+
+    static final long DEFAULT_THRESHOLD_MS = 100;
+    // Blocked this long, the system would show an "Application Not Responding" dialog for input.
+    static final long ANR_THRESHOLD_NS = TimeUnit.SECONDS.toNanos(5);
+    static final int MAX_STACKS = 16;
+    private static final int MAX_REPORTED_FRAMES = 20;
+
+    /**
+     * One distinct stack the main thread was stuck in.
+     */
+    private static final class Entry {
+        long hash;
+        String label;
+        StackTraceElement[] stack;
+        int count;
+        long blockedNs;
+        long maxBlockedNs;
+        long lastSeenMs;
+    }
+
+    private final Thread watchedThread;
+    private final Executor watchedExecutor;
+    private volatile long thresholdNs = TimeUnit.MILLISECONDS.toNanos(DEFAULT_THRESHOLD_MS);
+
+    // --- Heartbeat (checker thread, except pingRanNs) ---
+    private boolean pingPending = false;
+    private long pingPostedNs;
+    private volatile long pingRanNs;
+    // Stack captured for the pending ping, if it has already stalled past the threshold.
+    private Entry stalledEntry;
+    private final Runnable ping = () -> pingRanNs = System.nanoTime();
+
+    // --- Results (guarded by this) ---
+    private final Entry[] entries = new Entry[MAX_STACKS];
+    private final boolean[] picked = new boolean[MAX_STACKS];
+    private int entryCount = 0;
+    private long stallCount = 0;
+    private long anrCount = 0;
+    private long totalBlockedNs = 0;
+
+    /**
+     * @param watchedThread   thread whose stack is captured (the main thread).
+     * @param watchedExecutor runs pings on that thread (e.g. a main-Looper Handler's post).
+     */
+    MainThreadWatchdog(Thread watchedThread, Executor watchedExecutor) {
+        this.watchedThread = watchedThread;
+        this.watchedExecutor = watchedExecutor;
+    }
+
+    /**
+     * Sets how long one dispatch may block before it counts as a stall. Any thread.
+     * Check at least twice per threshold so stalls are caught while they are still in progress.
+     */
+    void setThresholdMs(long thresholdMs) {
+        thresholdNs = TimeUnit.MILLISECONDS.toNanos(Math.max(1, thresholdMs));
+    }
+
+    long getThresholdMs() {
+        return TimeUnit.NANOSECONDS.toMillis(thresholdNs);
+    }
+
+    // --- Heartbeat ---
+
+    /**
+     * Advances the heartbeat: finishes the pending ping if it ran, captures the main stack if it
+     * is overdue, or posts the next ping. Checker thread only.
+     */
+    void check(long nowNanos) {
+        if (pingPending) {
+            long ranNs = pingRanNs;
+            if (ranNs == 0) {
+                if (stalledEntry == null && nowNanos - pingPostedNs >= thresholdNs) {
+                    stalledEntry = capture();
+                }
+                return;
+            }
+            finishPing(ranNs - pingPostedNs);
+        }
+        pingRanNs = 0;
+        pingPostedNs = nowNanos;
+        pingPending = true;
+        watchedExecutor.execute(ping);
+    }
+
+    /**
+     * Forgets the pending ping, e.g. after checks were suspended for a while. Checker thread only.
+     */
+    void reset() {
+        pingPending = false;
+        stalledEntry = null;
+    }
+
+    private void finishPing(long blockedNs) {
+        pingPending = false;
+        Entry entry = stalledEntry;
+        stalledEntry = null;
+        if (blockedNs < thresholdNs) return;
+
+        synchronized (this) {
+            stallCount++;
+            totalBlockedNs += blockedNs;
+            if (blockedNs >= ANR_THRESHOLD_NS) anrCount++;
+            // A stall that ended between two checks has no stack; it only counts in the totals.
+            // The entry may have been evicted meanwhile, then it no longer counts either.
+            if (entry == null || !isTracked(entry)) return;
+            entry.count++;
+            entry.blockedNs += blockedNs;
+            entry.maxBlockedNs = Math.max(entry.maxBlockedNs, blockedNs);
+            entry.lastSeenMs = System.currentTimeMillis();
+        }
+    }
+
+    // --- Stack Capture ---
+
+    private Entry capture() {
+        StackTraceElement[] stack = watchedThread.getStackTrace();
+        long hash = hashOf(stack);
+        synchronized (this) {
+            for (int i = 0; i < entryCount; i++) {
+                if (entries[i].hash == hash) return entries[i];
+            }
+            Entry entry = new Entry();
+            entry.hash = hash;
+            entry.stack = stack;
+            entry.label = labelOf(stack);
+            if (entryCount < MAX_STACKS) {
+                entries[entryCount++] = entry;
+            } else {
+                entries[indexOfLeastBlocked()] = entry;
+            }
+            return entry;
+        }
+    }
+
+    private boolean isTracked(Entry entry) {
+        for (int i = 0; i < entryCount; i++) {
+            if (entries[i] == entry) return true;
+        }
+        return false;
+    }
+
+    private int indexOfLeastBlocked() {
+        int least = 0;
+        for (int i = 1; i < entryCount; i++) {
+            if (entries[i].blockedNs < entries[least].blockedNs) least = i;
+        }
+        return least;
+    }
+
+    static long hashOf(StackTraceElement[] stack) {
+        long hash = 1125899906842597L;
+        for (StackTraceElement frame : stack) {
+            hash = 31 * hash + frame.getClassName().hashCode();
+            hash = 31 * hash + frame.getMethodName().hashCode();
+            hash = 31 * hash + frame.getLineNumber();
+        }
+        return hash;
+    }
+
+    /**
+     * "Class.method:line" of the first frame outside the platform and libraries, or of the top frame.
+     */
+    static String labelOf(StackTraceElement[] stack) {
+        if (stack.length == 0) return "(no stack)";
+        StackTraceElement frame = stack[0];
+        for (StackTraceElement candidate : stack) {
+            if (!isPlatformFrame(candidate.getClassName())) {
+                frame = candidate;
+                break;
+            }
+        }
+        String className = frame.getClassName();
+        return className.substring(className.lastIndexOf('.') + 1) + '.' + frame.getMethodName()
+                + ':' + frame.getLineNumber();
+    }
+
+    private static boolean isPlatformFrame(String className) {
+        return className.startsWith("android.") || className.startsWith("androidx.")
+                || className.startsWith("com.android.") || className.startsWith("java.")
+                || className.startsWith("javax.") || className.startsWith("kotlin.")
+                || className.startsWith("kotlinx.") || className.startsWith("dalvik.")
+                || className.startsWith("libcore.") || className.startsWith("sun.")
+                || className.startsWith("jdk.") || className.startsWith("okhttp3.");
+    }
+
+    // --- Results ---
+
+    /**
+     * Copies up to {@code labels.length} stacks with at least one finished stall, most blocked
+     * time first. Allocation-free.
+     *
+     * @return the number of stacks copied.
+     */
+    synchronized int readTopStalls(String[] labels, int[] counts, long[] blockedMs) {
+        int max = Math.min(labels.length, Math.min(counts.length, blockedMs.length));
+        Arrays.fill(picked, false);
+        int copied = 0;
+        while (copied < max) {
+            // Selection over at most MAX_STACKS entries.
+            int best = -1;
+            for (int i = 0; i < entryCount; i++) {
+                if (picked[i] || entries[i].count == 0) continue;
+                if (best < 0 || entries[i].blockedNs > entries[best].blockedNs) best = i;
+            }
+            if (best < 0) break;
+            picked[best] = true;
+            labels[copied] = entries[best].label;
+            counts[copied] = entries[best].count;
+            blockedMs[copied] = TimeUnit.NANOSECONDS.toMillis(entries[best].blockedNs);
+            copied++;
+        }
+        return copied;
+    }
+
+    /**
+     * Appends every recorded stack (label, count, blocked times and frames) for a text dump.
+     */
+    synchronized void appendReport(StringBuilder out) {
+        out.append("Main-thread stalls over ").append(getThresholdMs()).append("ms: ").append(stallCount)
+                .append(", blocked ").append(TimeUnit.NANOSECONDS.toMillis(totalBlockedNs)).append("ms, ANRs ")
+                .append(anrCount).append('\n');
+        for (int i = 0; i < entryCount; i++) {
+            Entry entry = entries[i];
+            if (entry.count == 0) continue;
+            out.append(entry.label).append(" x").append(entry.count)
+                    .append(", blocked ").append(TimeUnit.NANOSECONDS.toMillis(entry.blockedNs))
+                    .append("ms (max ").append(TimeUnit.NANOSECONDS.toMillis(entry.maxBlockedNs)).append("ms)\n");
+            int frames = Math.min(entry.stack.length, MAX_REPORTED_FRAMES);
+            for (int f = 0; f < frames; f++) {
+                out.append("    at ").append(entry.stack[f]).append('\n');
+            }
+            if (entry.stack.length > frames) {
+                out.append("    ... ").append(entry.stack.length - frames).append(" more\n");
+            }
+        }
+    }
+
+    synchronized long getStallCount() {
+        return stallCount;
+    }
+
+    synchronized long getAnrCount() {
+        return anrCount;
+    }
+
+    synchronized long getTotalBlockedMs() {
+        return TimeUnit.NANOSECONDS.toMillis(totalBlockedNs);
+    }
+}
@@ -0,0 +1,256 @@
+package com.smartherd.debugoverlay;
+
+import android.os.Debug;
+import android.os.SystemClock;
+import android.system.Os;
+import android.system.OsConstants;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Memory metrics in two tiers, so the cheap ones can be read every tick:
+ *
+ * - Every sample: Java heap (Runtime), native heap (Debug), RSS (/proc/self/statm through a handle
+ *   that stays open, into a reused buffer; -1 for good once it can't be read) and ART's GC
+ *   counters (count, time, blocking count and time, bytes allocated ever), from which the
+ *   allocation rate over the last sample is derived. Churn shows up there even when the totals
+ *   stay flat.
+ * - Now and then: the PSS breakdown (Java, native, graphics, code, stack) from Debug.getMemoryInfo(),
+ *   which walks /proc/self/smaps and can take tens of milliseconds. It is cached between refreshes;
+ *   the interval adapts to what the last one cost (kept under ~0.5% of the sampler's time, between
+ *   5s and 60s), and a refresh comes early once RSS has moved by 10% since the last one.
+ *   Debug.getMemoryInfo() reads this process only, so unlike ActivityManager.getProcessMemoryInfo()
+ *   it isn't rate-limited by the system into returning stale values.
+ *
+ * Not thread-safe: each sampler should own its instance.
+ */
+final class MemorySampler {
+
+    static final long MIN_BREAKDOWN_INTERVAL_MS = 5_000;
+    static final long MAX_BREAKDOWN_INTERVAL_MS = 60_000;
+    // A breakdown costing X ms is followed by at least X * 200 ms without one (0.5% duty cycle).
+    private static final long BREAKDOWN_COST_FACTOR = 200;
+    // RSS change, since the last breakdown, that triggers the next one early (in percent).
+    private static final long RSS_CHANGE_PERCENT = 10;
+    private static final String STATM_PATH = "/proc/self/statm";
+
+    /**
+     * One sample. Reused by the sampler; values are in KB unless named otherwise.
+     */
+    static final class Snapshot {
+        // --- Every Sample ---
+        long javaHeapUsedKb;
+        long javaHeapMaxKb;
+        long nativeHeapKb;
+        // Resident set size, or -1 if /proc is unreadable.
+        long rssKb = -1;
+        // Since the runtime started; -1 where ART doesn't report the counter.
+        long gcCount = -1;
+        long gcTimeMs = -1;
+        long blockingGcCount = -1;
+        long blockingGcTimeMs = -1;
+        // Allocated by the Java heap per second since the previous sample (-1 until known).
+        double allocationRateKbPerSec = -1;
+
+        // --- PSS Breakdown (cached, 0 until the first one) ---
+        long pssTotalKb;
+        long pssJavaKb;
+        long pssNativeKb;
+        long pssGraphicsKb;
+        long pssCodeKb;
+        long pssStackKb;
+        // SystemClock.uptimeMillis() when the breakdown was taken, and how long it took.
+        long breakdownUptimeMs;
+        long breakdownCostMs;
+    }
+
+    private final Debug.MemoryInfo memoryInfo = new Debug.MemoryInfo();
+    private long nextBreakdownUptimeMs = 0;
+    private long rssAtBreakdownKb = -1;
+
+    // --- Allocation Rate ---
+    private long bytesAllocatedBefore = -1;
+    private long allocationNanosBefore;
+
+    // --- RSS ---
+    // statm is one short line of page counts.
+    private final String statmPath;
+    private final byte[] buffer = new byte[128];
+    private RandomAccessFile statmFile;
+    private long pageSizeKb = 0;
+    // Set once statm couldn't be opened or read; it isn't retried every sample after that.
+    private boolean rssUnavailable = false;
+
+    MemorySampler() {
+        this(STATM_PATH);
+    }
+
+    MemorySampler(String statmPath) {
+        this.statmPath = statmPath;
+    }
+
+    /**
+     * Reads the cheap tier into {@code out}.
+     */
+    void sample(Snapshot out) {
+        Runtime runtime = Runtime.getRuntime();
+        out.javaHeapUsedKb = (runtime.totalMemory() - runtime.freeMemory()) / 1024;
+        out.javaHeapMaxKb = runtime.maxMemory() / 1024;
+        out.nativeHeapKb = Debug.getNativeHeapAllocatedSize() / 1024;
+        out.rssKb = readRssKb();
+
+        out.gcCount = runtimeStat("art.gc.gc-count");
+        out.gcTimeMs = runtimeStat("art.gc.gc-time");
+        out.blockingGcCount = runtimeStat("art.gc.blocking-gc-count");
+        out.blockingGcTimeMs = runtimeStat("art.gc.blocking-gc-time");
+        sampleAllocationRate(out);
+    }
+
+    /**
+     * Refreshes the PSS breakdown in {@code out} if it is due, judged by the RSS in {@code out}
+     * from the latest sample(). Only samplers off the main thread should call this.
+     *
+     * @return whether a breakdown was taken.
+     */
+    boolean sampleBreakdown(Snapshot out) {
+        long now = SystemClock.uptimeMillis();
+        if (now < nextBreakdownUptimeMs && !rssMovedEnough(out.rssKb, rssAtBreakdownKb)) return false;
+        takeBreakdown(out, now);
+        return true;
+    }
+
+    /**
+     * Restarts the allocation-rate baseline and forces a PSS breakdown on the next sample, e.g.
+     * after returning from the background.
+     */
+    void reset() {
+        nextBreakdownUptimeMs = 0;
+        bytesAllocatedBefore = -1;
+    }
+
+    // --- Cheap Tier ---
+
+    private void sampleAllocationRate(Snapshot out) {
+        long bytesAllocated = runtimeStat("art.gc.bytes-allocated");
+        long now = System.nanoTime();
+        if (bytesAllocated < 0) {
+            out.allocationRateKbPerSec = -1;
+            return;
+        }
+        if (bytesAllocatedBefore >= 0 && now > allocationNanosBefore) {
+            out.allocationRateKbPerSec = (bytesAllocated - bytesAllocatedBefore) / 1024.0
+                    * 1_000_000_000.0 / (now - allocationNanosBefore);
+        } else {
+            out.allocationRateKbPerSec = -1;
+        }
+        bytesAllocatedBefore = bytesAllocated;
+        allocationNanosBefore = now;
+    }
+
+    private static long runtimeStat(String name) {
+        return parseLong(Debug.getRuntimeStat(name));
+    }
+
+    /**
+     * @return the resident set size in KB, or -1 if statm is unreadable (from then on).
+     */
+    long readRssKb() {
+        if (rssUnavailable) return -1;
+        try {
+            if (statmFile == null) {
+                statmFile = new RandomAccessFile(statmPath, "r");
+                pageSizeKb = Os.sysconf(OsConstants._SC_PAGESIZE) / 1024;
+            }
+            statmFile.seek(0);
+            int length = 0;
+            int read;
+            while (length < buffer.length && (read = statmFile.read(buffer, length, buffer.length - length)) > 0) {
+                length += read;
+            }
+            long pages = parseResidentPages(buffer, length);
+            return pages >= 0 ? pages * pageSizeKb : -1;
+        } catch (IOException e) {
+            close();
+            rssUnavailable = true;
+            return -1;
+        }
+    }
+
+    /**
+     * Second field of /proc/self/statm ("size resident shared text lib data dt"), or -1.
+     */
+    static long parseResidentPages(byte[] data, int length) {
+        int field = 0;
+        long value = 0;
+        boolean sawDigit = false;
+        for (int i = 0; i < length; i++) {
+            byte b = data[i];
+            if (b >= '0' && b <= '9') {
+                value = value * 10 + (b - '0');
+                sawDigit = true;
+            } else if (sawDigit) {
+                if (field == 1) return value;
+                field++;
+                value = 0;
+                sawDigit = false;
+            }
+        }
+        return field == 1 && sawDigit ? value : -1;
+    }
+
+    // --- PSS Breakdown ---
+
+    private void takeBreakdown(Snapshot out, long now) {
+        Debug.getMemoryInfo(memoryInfo);
+        long costMs = SystemClock.uptimeMillis() - now;
+
+        out.pssTotalKb = memoryInfo.getTotalPss();
+        out.pssJavaKb = Math.max(0, parseLong(memoryInfo.getMemoryStat("summary.java-heap")));
+        out.pssNativeKb = Math.max(0, parseLong(memoryInfo.getMemoryStat("summary.native-heap")));
+        out.pssGraphicsKb = Math.max(0, parseLong(memoryInfo.getMemoryStat("summary.graphics")));
+        out.pssCodeKb = Math.max(0, parseLong(memoryInfo.getMemoryStat("summary.code")));
+        out.pssStackKb = Math.max(0, parseLong(memoryInfo.getMemoryStat("summary.stack")));
+        out.breakdownUptimeMs = now;
+        out.breakdownCostMs = costMs;
+
+        rssAtBreakdownKb = out.rssKb;
+        nextBreakdownUptimeMs = now + nextBreakdownIntervalMs(costMs);
+    }
+
+    /**
+     * Delay until the next breakdown after one that took {@code costMs}.
+     */
+    static long nextBreakdownIntervalMs(long costMs) {
+        return Math.max(MIN_BREAKDOWN_INTERVAL_MS,
+                Math.min(MAX_BREAKDOWN_INTERVAL_MS, costMs * BREAKDOWN_COST_FACTOR));
+    }
+
+    /**
+     * True once RSS has moved far enough from its value at the last breakdown to refresh it early.
+     */
+    static boolean rssMovedEnough(long rssKb, long rssAtBreakdownKb) {
+        if (rssKb < 0 || rssAtBreakdownKb <= 0) return false;
+        return Math.abs(rssKb - rssAtBreakdownKb) * 100 >= rssAtBreakdownKb * RSS_CHANGE_PERCENT;
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) return -1;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    void close() {
+        if (statmFile != null) {
+            try {
+                statmFile.close();
+            } catch (IOException ignored) {
+                // Nothing useful to do; the handle is being discarded anyway.
+            }
+            statmFile = null;
+        }
+    }
+}
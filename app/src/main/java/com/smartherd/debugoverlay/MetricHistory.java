@@ -0,0 +1,80 @@
+package com.smartherd.debugoverlay;
+
+/**
+ * Fixed-size ring of the last N values of one metric, oldest first, for the overlay's sparklines.
+ *
+ * - Values live in a preallocated float array; add() overwrites the oldest, so nothing is
+ *   allocated after construction however long the session runs.
+ * - An unknown value (NaN, e.g. FPS while nothing was drawn) is kept as a gap rather than
+ *   dropped, so every slot still stands for one sample interval and the time axis stays even.
+ * - min()/max() scan the ring; at a minute of samples that is cheaper than keeping them up to date.
+ *
+ * Not thread-safe: used on the main thread only.
+ */
+final class MetricHistory {
+
+    private final float[] values;
+    private long count = 0;
+
+    MetricHistory(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be > 0");
+        }
+        values = new float[capacity];
+    }
+
+    void add(double value) {
+        values[(int) (count % values.length)] = (float) value;
+        count++;
+    }
+
+    void clear() {
+        count = 0;
+    }
+
+    int capacity() {
+        return values.length;
+    }
+
+    int size() {
+        return (int) Math.min(count, values.length);
+    }
+
+    /**
+     * The {@code index}th retained value, 0 being the oldest (NaN for a gap).
+     */
+    float get(int index) {
+        return values[(int) ((Math.max(0, count - values.length) + index) % values.length)];
+    }
+
+    /**
+     * The newest value, or NaN if there is none.
+     */
+    float last() {
+        return count == 0 ? Float.NaN : get(size() - 1);
+    }
+
+    /**
+     * Smallest known value retained, or NaN if there is none.
+     */
+    float min() {
+        float min = Float.NaN;
+        for (int i = 0, n = size(); i < n; i++) {
+            float value = values[i];
+            if (!Float.isNaN(value) && !(value >= min)) min = value;
+        }
+        return min;
+    }
+
+    /**
+     * Largest known value retained, or NaN if there is none.
+     */
+    float max() {
+        float max = Float.NaN;
+        for (int i = 0, n = size(); i < n; i++) {
+            float value = values[i];
+            if (!Float.isNaN(value) && !(value <= max)) max = value;
+        }
+        return max;
+    }
+}
@@ -0,0 +1,274 @@
+package com.smartherd.debugoverlay;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Desktop-side reader for MetricsStreamServer. Plain Java (no Android types), so it runs in the
+ * streamclient tool and in unit tests:
+ *
+ *   adb forward tcp:7077 tcp:7077
+ *   try (MetricsStreamClient client = MetricsStreamClient.connect("localhost", 7077)) {
+ *       MetricsStreamClient.Batch batch = new MetricsStreamClient.Batch();
+ *       while (client.readBatch(batch)) { ... }
+ *   }
+ *
+ * Not thread-safe; one reader thread per client.
+ */
+public final class MetricsStreamClient implements Closeable {
+
+    /**
+     * One decoded BATCH message. Reused across readBatch() calls; copy what you keep.
+     */
+    public static final class Batch {
+        public long sequence;
+        // Batches the server skipped for this client right before this one (it read too slowly).
+        public long missedBefore;
+        public long sampleNanos;
+
+        // --- Snapshot ---
+        public int fps;
+        public float refreshRateHz;
+        public float frameTimeP50Ms;
+        public float frameTimeP90Ms;
+        public float frameTimeP99Ms;
+        public long droppedFrameCount;
+        public long slowFrameCount;
+        public long frozenFrameCount;
+        public int usedMemoryMB;
+        public float cpuUsage;
+        public int threadCount;
+        public int networkCallCount;
+        public float networkP50Ms;
+        public float networkP95Ms;
+        public float networkP99Ms;
+        public float networkErrorRate;
+
+        // --- Frames since the previous batch ---
+        public long lastFrameTimeNanos;
+        public int framesOmitted;
+        public int frameCount;
+        public int[] frameIntervalsUs = new int[128];
+
+        // --- Network calls since the previous batch ---
+        public int callsOmitted;
+        public final List<Call> calls = new ArrayList<>();
+
+        // --- The overlay's own overhead at this sample (0 components from older servers) ---
+        public int overheadComponentCount;
+        public String[] overheadNames = new String[4];
+        public float[] overheadCpuPercent = new float[4];
+        public float[] overheadMainThreadMsPerSec = new float[4];
+        // -1 if allocations weren't counted.
+        public float[] overheadAllocKbPerSec = new float[4];
+    }
+
+    /**
+     * One finished network call.
+     */
+    public static final class Call {
+        public long timestampMs;
+        public int durationMs;
+        public int statusCode;
+        public String method;
+        public String host;
+        public String path;
+    }
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private int version = -1;
+    private long deviceWallMs;
+    private long deviceNanos;
+    private long nextSequence = -1;
+    private long missedBatches = 0;
+
+    private MetricsStreamClient(Socket socket) throws IOException {
+        this.socket = socket;
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    }
+
+    /**
+     * Connects to a server (normally the local end of an adb forward).
+     */
+    public static MetricsStreamClient connect(String host, int port) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(host, port), 5_000);
+            return new MetricsStreamClient(socket);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Blocks until the next batch arrives and decodes it into {@code out}.
+     *
+     * @return false once the server closed the connection.
+     */
+    public boolean readBatch(Batch out) throws IOException {
+        boolean sawOverhead = false;
+        while (true) {
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            if (length < 1) {
+                throw new IOException("Malformed message length " + length);
+            }
+            byte type = in.readByte();
+            switch (type) {
+                case MetricsStreamProtocol.TYPE_HELLO:
+                    version = in.readInt();
+                    deviceWallMs = in.readLong();
+                    deviceNanos = in.readLong();
+                    skipFully(length - (1 + 4 + 8 + 8));
+                    if (version != MetricsStreamProtocol.VERSION) {
+                        throw new IOException("Unsupported stream version " + version);
+                    }
+                    break;
+                case MetricsStreamProtocol.TYPE_OVERHEAD:
+                    readOverheadPayload(out, length - 1);
+                    sawOverhead = true;
+                    break;
+                case MetricsStreamProtocol.TYPE_BATCH:
+                    if (!sawOverhead) out.overheadComponentCount = 0;
+                    readBatchPayload(out);
+                    return true;
+                default:
+                    // A newer server; skip what we don't understand.
+                    skipFully(length - 1);
+                    break;
+            }
+        }
+    }
+
+    private void readBatchPayload(Batch out) throws IOException {
+        out.sequence = in.readLong();
+        out.missedBefore = nextSequence < 0 ? 0 : Math.max(0, out.sequence - nextSequence);
+        missedBatches += out.missedBefore;
+        nextSequence = out.sequence + 1;
+        out.sampleNanos = in.readLong();
+
+        out.fps = in.readInt();
+        out.refreshRateHz = in.readFloat();
+        out.frameTimeP50Ms = in.readFloat();
+        out.frameTimeP90Ms = in.readFloat();
+        out.frameTimeP99Ms = in.readFloat();
+        out.droppedFrameCount = in.readLong();
+        out.slowFrameCount = in.readLong();
+        out.frozenFrameCount = in.readLong();
+        out.usedMemoryMB = in.readInt();
+        out.cpuUsage = in.readFloat();
+        out.threadCount = in.readInt();
+        out.networkCallCount = in.readInt();
+        out.networkP50Ms = in.readFloat();
+        out.networkP95Ms = in.readFloat();
+        out.networkP99Ms = in.readFloat();
+        out.networkErrorRate = in.readFloat();
+
+        out.lastFrameTimeNanos = in.readLong();
+        out.framesOmitted = in.readInt();
+        out.frameCount = in.readInt();
+        if (out.frameCount < 0 || out.frameCount > MetricsStreamProtocol.MAX_FRAMES_PER_BATCH) {
+            throw new IOException("Malformed frame count " + out.frameCount);
+        }
+        if (out.frameIntervalsUs.length < out.frameCount) {
+            out.frameIntervalsUs = Arrays.copyOf(out.frameIntervalsUs, out.frameCount);
+        }
+        for (int i = 0; i < out.frameCount; i++) {
+            out.frameIntervalsUs[i] = in.readInt();
+        }
+
+        out.callsOmitted = in.readInt();
+        int calls = in.readInt();
+        if (calls < 0) {
+            throw new IOException("Malformed call count " + calls);
+        }
+        out.calls.clear();
+        for (int i = 0; i < calls; i++) {
+            Call call = new Call();
+            call.timestampMs = in.readLong();
+            call.durationMs = in.readInt();
+            call.statusCode = in.readShort();
+            call.method = in.readUTF();
+            call.host = in.readUTF();
+            call.path = in.readUTF();
+            out.calls.add(call);
+        }
+    }
+
+    private void readOverheadPayload(Batch out, int payloadBytes) throws IOException {
+        if (payloadBytes < 1) {
+            throw new IOException("Malformed overhead message");
+        }
+        // Read whole, so fields a newer server appends are skipped with it.
+        byte[] payload = new byte[payloadBytes];
+        in.readFully(payload);
+        DataInputStream message = new DataInputStream(new ByteArrayInputStream(payload));
+        int count = message.readUnsignedByte();
+        if (out.overheadNames.length < count) {
+            out.overheadNames = Arrays.copyOf(out.overheadNames, count);
+            out.overheadCpuPercent = Arrays.copyOf(out.overheadCpuPercent, count);
+            out.overheadMainThreadMsPerSec = Arrays.copyOf(out.overheadMainThreadMsPerSec, count);
+            out.overheadAllocKbPerSec = Arrays.copyOf(out.overheadAllocKbPerSec, count);
+        }
+        for (int i = 0; i < count; i++) {
+            out.overheadNames[i] = message.readUTF();
+            out.overheadCpuPercent[i] = message.readFloat();
+            out.overheadMainThreadMsPerSec[i] = message.readFloat();
+            out.overheadAllocKbPerSec[i] = message.readFloat();
+        }
+        out.overheadComponentCount = count;
+    }
+
+    private void skipFully(int bytes) throws IOException {
+        if (bytes < 0) {
+            throw new IOException("Malformed message");
+        }
+        in.readFully(new byte[bytes]);
+    }
+
+    /**
+     * Stream version announced by the server, or -1 before the first message.
+     */
+    public int version() {
+        return version;
+    }
+
+    /**
+     * Device clocks at connect time, for mapping sampleNanos onto wall-clock time.
+     */
+    public long deviceWallMs() {
+        return deviceWallMs;
+    }
+
+    public long deviceNanos() {
+        return deviceNanos;
+    }
+
+    /**
+     * Batches the server dropped for this client since it connected.
+     */
+    public long missedBatches() {
+        return missedBatches;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
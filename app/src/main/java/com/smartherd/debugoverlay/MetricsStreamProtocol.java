@@ -0,0 +1,47 @@
+package com.smartherd.debugoverlay;
+
+/**
+ * Wire format shared by MetricsStreamServer (on the device) and MetricsStreamClient (on the desktop).
+ *
+ * The stream is a sequence of messages, all integers big-endian:
+ *   int length (of everything after this field), byte type, payload.
+ * Clients skip message types they don't know, so new ones can be added without a version bump.
+ *
+ * HELLO (once, first message)
+ *   int version, long wall-clock ms and long System.nanoTime() of the device at connect time.
+ * BATCH (once per sample)
+ *   long sequence       increases by one per batch produced; a gap means the server dropped batches
+ *                       for this client because it was reading too slowly.
+ *   long sampleNanos    System.nanoTime() when the sample was taken.
+ *   snapshot            int fps, float refreshHz, float frame-time p50/p90/p99 (ms),
+ *                       long dropped/slow/frozen frame totals, int memory (MB), float CPU (%),
+ *                       int threads, int network call total, float network p50/p95/p99 (ms),
+ *                       float network error rate (0..1).
+ *   frames              long end time (nanoTime) of the last frame (0 if none), int omitted
+ *                       (over the cap), int count, count x int interval (µs), oldest first.
+ *   network calls       int omitted (no room left in the batch), int count, then per call:
+ *                       long end wall-clock ms, int duration (ms), short status (-1 if it failed),
+ *                       method, host and path (each an unsigned short length and modified UTF-8,
+ *                       as read by DataInput.readUTF()).
+ * OVERHEAD (right before each BATCH, describing the same sample)
+ *   byte count, then per component of the overlay (sampling, rendering, network, ...): name (a
+ *   string as above), float CPU (% of one core), float main-thread time (ms per second), float
+ *   allocations (KB per second, -1 if not counted).
+ */
+public final class MetricsStreamProtocol {
+
+    public static final int VERSION = 1;
+    // Port used on both ends of `adb forward tcp:7077 tcp:7077` unless another is chosen.
+    public static final int DEFAULT_PORT = 7077;
+
+    public static final byte TYPE_HELLO = 1;
+    public static final byte TYPE_BATCH = 2;
+    public static final byte TYPE_OVERHEAD = 3;
+
+    // Frames carried by one batch; any beyond it are counted as omitted.
+    public static final int MAX_FRAMES_PER_BATCH = 1024;
+    // Longest string written, in chars; longer ones are truncated.
+    public static final int MAX_STRING_CHARS = 256;
+
+    private MetricsStreamProtocol() { }
+}
@@ -0,0 +1,386 @@
+package com.smartherd.debugoverlay;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+
+/**
+ * Streams collector samples, frame intervals and network calls to desktop tools over a loopback
+ * TCP socket, reached from the desktop with `adb forward tcp:7077 tcp:7077`. The wire format is
+ * described in MetricsStreamProtocol; MetricsStreamClient decodes it.
+ *
+ * Everything runs on the collector's sampler thread, once per sample, and never blocks: pending
+ * connections are accepted with a non-blocking accept(), each batch is encoded once, and each
+ * client gets it through a non-blocking write. Whatever the socket doesn't take stays in that
+ * client's fixed-size queue. A client too slow to drain it doesn't grow memory: when a new batch
+ * doesn't fit, the oldest queued batches that haven't started going out are dropped for that
+ * client to make room (it sees a gap in the batch sequence), so it catches up on the newest sample
+ * instead of falling further behind. A message the socket has taken part of is always finished.
+ *
+ * The socket is bound to loopback only, so nothing off the device can connect. Not thread-safe.
+ */
+final class MetricsStreamServer {
+
+    private static final int MAX_CLIENTS = 4;
+    // Encode buffer for one batch; calls that don't fit are counted as omitted.
+    private static final int BATCH_BUFFER_BYTES = 64 * 1024;
+    // Per-client backlog: room for about two full batches before the oldest are dropped.
+    private static final int CLIENT_QUEUE_BYTES = 2 * BATCH_BUFFER_BYTES;
+    // Fixed part of one network call, plus the length prefix of its three strings.
+    private static final int CALL_FIXED_BYTES = 8 + 4 + 2 + 3 * 2;
+
+    /**
+     * One connected desktop tool.
+     */
+    private static final class Client {
+        final SocketChannel channel;
+        // Kept in read mode (flip()ed) between ticks: position..limit is still to be sent.
+        final ByteBuffer queue = ByteBuffer.allocate(CLIENT_QUEUE_BYTES);
+        // Bytes of the message at the head of the queue still to be sent after the socket took
+        // part of it (0 at a message boundary). That message can't be dropped any more.
+        int headRemaining = 0;
+        long droppedBatches = 0;
+
+        Client(SocketChannel channel) {
+            this.channel = channel;
+            queue.flip();
+        }
+    }
+
+    private final ServerSocketChannel serverChannel;
+    private final ArrayList<Client> clients = new ArrayList<>(MAX_CLIENTS);
+    private final ByteBuffer batch = ByteBuffer.allocate(BATCH_BUFFER_BYTES);
+    private long sequence = 0;
+    private long droppedBatches = 0;
+
+    // --- Batch Under Construction ---
+    private boolean inBatch = false;
+    private boolean inCalls = false;
+    private int batchPosition;
+    private int lastFrameTimePosition;
+    private int framesOmittedPosition;
+    private int frameCountPosition;
+    private int frameCount;
+    private int framesOmitted;
+    private int callsOmittedPosition;
+    private int callCount;
+    private int callsOmitted;
+
+    /**
+     * Binds to loopback {@code port} (0 picks a free one, see port()).
+     */
+    MetricsStreamServer(int port) throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), MAX_CLIENTS);
+            serverChannel.configureBlocking(false);
+        } catch (IOException e) {
+            serverChannel.close();
+            throw e;
+        }
+    }
+
+    int port() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    int clientCount() {
+        return clients.size();
+    }
+
+    /**
+     * Batches dropped for slow clients since the server started, summed over clients.
+     */
+    long droppedBatches() {
+        return droppedBatches;
+    }
+
+    // --- Connections ---
+
+    /**
+     * Accepts every pending connection and greets it with a HELLO. Never blocks.
+     */
+    void acceptClients() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            if (clients.size() >= MAX_CLIENTS) {
+                channel.close();
+                continue;
+            }
+            try {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            } catch (IOException e) {
+                channel.close();
+                continue;
+            }
+            Client client = new Client(channel);
+            clients.add(client);
+
+            ByteBuffer queue = client.queue;
+            queue.compact();
+            queue.putInt(1 + 4 + 8 + 8);
+            queue.put(MetricsStreamProtocol.TYPE_HELLO);
+            queue.putInt(MetricsStreamProtocol.VERSION);
+            queue.putLong(System.currentTimeMillis());
+            queue.putLong(System.nanoTime());
+            queue.flip();
+        }
+    }
+
+    // --- Batches ---
+
+    /**
+     * Starts the next batch with one published sample. Add its frames, then its network calls,
+     * then call sendBatch().
+     */
+    void beginBatch(DebugStatsCollector.StatsData data, long sampleNanos) {
+        batch.clear();
+        putOverhead(data);
+
+        batchPosition = batch.position();
+        batch.putInt(0); // length, patched in sendBatch()
+        batch.put(MetricsStreamProtocol.TYPE_BATCH);
+        batch.putLong(sequence++);
+        batch.putLong(sampleNanos);
+
+        batch.putInt(data.fps);
+        batch.putFloat(data.refreshRateHz);
+        batch.putFloat((float) data.frameTimeP50Ms);
+        batch.putFloat((float) data.frameTimeP90Ms);
+        batch.putFloat((float) data.frameTimeP99Ms);
+        batch.putLong(data.droppedFrameCount);
+        batch.putLong(data.slowFrameCount);
+        batch.putLong(data.frozenFrameCount);
+        batch.putInt(data.usedMemoryMB);
+        batch.putFloat((float) data.cpuUsage);
+        batch.putInt(data.threadCount);
+        batch.putInt(data.networkCallCount);
+        batch.putFloat((float) data.networkOverall.p50Ms);
+        batch.putFloat((float) data.networkOverall.p95Ms);
+        batch.putFloat((float) data.networkOverall.p99Ms);
+        batch.putFloat((float) data.networkOverall.errorRate);
+
+        lastFrameTimePosition = batch.position();
+        batch.putLong(0L);
+        framesOmittedPosition = batch.position();
+        batch.putInt(0);
+        frameCountPosition = batch.position();
+        batch.putInt(0);
+        frameCount = 0;
+        framesOmitted = 0;
+        callCount = 0;
+        callsOmitted = 0;
+        inBatch = true;
+        inCalls = false;
+    }
+
+    /**
+     * Adds frames, oldest first, as drained from FrameIntervalBuffer.copyFrames().
+     */
+    void addFrames(long[] intervalsNs, long[] frameTimesNs, int count) {
+        if (!inBatch || inCalls || count <= 0) return;
+        int room = MetricsStreamProtocol.MAX_FRAMES_PER_BATCH - frameCount;
+        int added = Math.min(count, room);
+        for (int i = 0; i < added; i++) {
+            batch.putInt((int) Math.min(Integer.MAX_VALUE, intervalsNs[i] / 1_000));
+        }
+        frameCount += added;
+        framesOmitted += count - added;
+        batch.putLong(lastFrameTimePosition, frameTimesNs[count - 1]);
+    }
+
+    /**
+     * Adds one finished call. Calls that no longer fit the batch are counted as omitted.
+     */
+    void addNetworkCall(NetworkLogBuffer.Entry entry) {
+        if (!inBatch) return;
+        beginCalls();
+        String method = entry.method != null ? entry.method : "";
+        String host = entry.host != null ? entry.host : "";
+        String path = entry.path != null ? entry.path : "";
+        int worstCase = CALL_FIXED_BYTES + 3 * (stringLength(method) + stringLength(host) + stringLength(path));
+        if (batch.remaining() < worstCase) {
+            callsOmitted++;
+            return;
+        }
+        batch.putLong(entry.timestampMs);
+        batch.putInt((int) Math.min(Integer.MAX_VALUE, entry.durationMs));
+        batch.putShort((short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, entry.statusCode)));
+        putString(method);
+        putString(host);
+        putString(path);
+        callCount++;
+    }
+
+    private void beginCalls() {
+        if (inCalls) return;
+        inCalls = true;
+        batch.putInt(framesOmittedPosition, framesOmitted);
+        batch.putInt(frameCountPosition, frameCount);
+        callsOmittedPosition = batch.position();
+        batch.putInt(0);
+        batch.putInt(0);
+    }
+
+    /**
+     * Finishes the batch and queues it for every client, writing as much as each socket takes.
+     */
+    void sendBatch() {
+        if (!inBatch) return;
+        beginCalls();
+        inBatch = false;
+        batch.putInt(callsOmittedPosition, callsOmitted);
+        batch.putInt(callsOmittedPosition + 4, callCount);
+        batch.putInt(batchPosition, batch.position() - batchPosition - 4);
+        batch.flip();
+
+        for (int i = clients.size() - 1; i >= 0; i--) {
+            Client client = clients.get(i);
+            ByteBuffer queue = client.queue;
+            if (makeRoom(client, batch.remaining())) {
+                queue.compact();
+                queue.put(batch.duplicate());
+                queue.flip();
+            } else {
+                // Only if the batch can't fit even behind the partly sent message.
+                client.droppedBatches++;
+                droppedBatches++;
+            }
+            if (!flush(client)) {
+                closeClient(i);
+            }
+        }
+    }
+
+    // Backpressure: drops the client's oldest unsent messages until {@code bytes} fit. An
+    // OVERHEAD goes with the BATCH after it; a HELLO is never dropped. False if they can't fit.
+    private boolean makeRoom(Client client, int bytes) {
+        ByteBuffer queue = client.queue;
+        int free = queue.capacity() - queue.remaining();
+        if (free >= bytes) return true;
+
+        int start = queue.position() + client.headRemaining;
+        int end = start;
+        int dropped = 0;
+        boolean pairOpen = false;
+        while (end < queue.limit() && (free + end - start < bytes || pairOpen)) {
+            int length = 4 + queue.getInt(end);
+            byte type = queue.get(end + 4);
+            if (type == MetricsStreamProtocol.TYPE_HELLO && end == start) {
+                // Keep the greeting at the front and drop what follows it.
+                start += length;
+            } else if (type == MetricsStreamProtocol.TYPE_BATCH) {
+                dropped++;
+            }
+            pairOpen = type == MetricsStreamProtocol.TYPE_OVERHEAD;
+            end += length;
+        }
+        if (free + end - start < bytes) return false;
+
+        // Close the gap: the messages after the dropped ones move up behind the kept head.
+        byte[] array = queue.array();
+        System.arraycopy(array, end, array, start, queue.limit() - end);
+        queue.limit(queue.limit() - (end - start));
+        client.droppedBatches += dropped;
+        droppedBatches += dropped;
+        return true;
+    }
+
+    // Writes what the socket accepts without blocking. False if the client went away.
+    private static boolean flush(Client client) {
+        ByteBuffer queue = client.queue;
+        int start = queue.position();
+        try {
+            while (queue.hasRemaining()) {
+                if (client.channel.write(queue) == 0) break;
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        // Walk the message boundaries the socket passed, to know how much of the new head is left.
+        int sent = queue.position() - start;
+        int position = start;
+        int headRemaining = client.headRemaining;
+        while (sent > 0) {
+            int length = headRemaining > 0 ? headRemaining : 4 + queue.getInt(position);
+            int taken = Math.min(sent, length);
+            sent -= taken;
+            position += taken;
+            headRemaining = length - taken;
+        }
+        client.headRemaining = headRemaining;
+        return true;
+    }
+
+    // --- Encoding ---
+
+    // The OVERHEAD message that precedes the sample's BATCH; both are queued or dropped together.
+    private void putOverhead(DebugStatsCollector.StatsData data) {
+        int start = batch.position();
+        batch.putInt(0);
+        batch.put(MetricsStreamProtocol.TYPE_OVERHEAD);
+        batch.put((byte) OverheadMeter.COMPONENT_COUNT);
+        for (int i = 0; i < OverheadMeter.COMPONENT_COUNT; i++) {
+            putString(OverheadMeter.COMPONENT_NAMES[i]);
+            batch.putFloat((float) data.overheadCpuPercent[i]);
+            batch.putFloat((float) data.overheadMainThreadMsPerSec[i]);
+            batch.putFloat((float) data.overheadAllocKbPerSec[i]);
+        }
+        batch.putInt(start, batch.position() - start - 4);
+    }
+
+    private static int stringLength(String value) {
+        return Math.min(value.length(), MetricsStreamProtocol.MAX_STRING_CHARS);
+    }
+
+    // Modified UTF-8 with an unsigned short length, as DataOutput.writeUTF(), without allocating.
+    private void putString(String value) {
+        int length = stringLength(value);
+        int lengthPosition = batch.position();
+        batch.putShort((short) 0);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                batch.put((byte) c);
+            } else if (c <= 0x07FF) {
+                batch.put((byte) (0xC0 | (c >> 6)));
+                batch.put((byte) (0x80 | (c & 0x3F)));
+            } else {
+                batch.put((byte) (0xE0 | (c >> 12)));
+                batch.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                batch.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        batch.putShort(lengthPosition, (short) (batch.position() - lengthPosition - 2));
+    }
+
+    // --- Shutdown ---
+
+    private void closeClient(int index) {
+        try {
+            clients.remove(index).channel.close();
+        } catch (IOException ignored) {
+            // Already gone.
+        }
+    }
+
+    /**
+     * Disconnects every client and releases the port.
+     */
+    void close() {
+        for (int i = clients.size() - 1; i >= 0; i--) {
+            closeClient(i);
+        }
+        try {
+            serverChannel.close();
+        } catch (IOException ignored) {
+            // Nothing left to release.
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.smartherd.debugoverlay;
 import java.io.IOException;
 
+import okhttp3.HttpUrl;
 import okhttp3.Interceptor;
 import okhttp3.Request;
 import okhttp3.Response;
@@ -9,24 +10,26 @@ public class NetworkInterceptor implements Interceptor {
     @Override
     public Response intercept(Chain chain) throws IOException {
         Request r = chain.request();
+        HttpUrl url = r.url();
         long start = System.nanoTime();
         try {
             Response res = chain.proceed(r);
-            long tookMs = (System.nanoTime() - start) / 1_000_000;
+            long tookNs = System.nanoTime() - start;
+            long tookMs = tookNs / 1_000_000;
+            StatsCollector.endpointStats().record(r.method(), url.host(), url.encodedPath(), res.code(), tookNs);
 
-            String msg = r.method() + " " + r.url()
-                    + " → " + res.code()
-                    + " (" + tookMs + "ms)";
-
-            // 👇 send it to overlay
-            StatsCollector.logNetworkEvent(msg);
+            // 👇 send it to overlay (structured, so the log can filter by host/status)
+            StatsCollector.logNetworkEvent(r.method(), url.host(), url.encodedPath(),
+                    res.code(), tookMs, null);
 
             return res;
         } catch (IOException e) {
-            String msg = r.method() + " " + r.url()
-                    + " → ERROR " + e.getMessage();
-
-            StatsCollector.logNetworkEvent(msg);
+            long tookNs = System.nanoTime() - start;
+            long tookMs = tookNs / 1_000_000;
+            StatsCollector.endpointStats().record(r.method(), url.host(), url.encodedPath(),
+                    NetworkLogBuffer.STATUS_FAILED, tookNs);
+            StatsCollector.logNetworkEvent(r.method(), url.host(), url.encodedPath(),
+                    NetworkLogBuffer.STATUS_FAILED, tookMs, e.getMessage());
             throw e;
         }
     }
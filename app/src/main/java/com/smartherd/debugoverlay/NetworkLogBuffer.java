@@ -0,0 +1,177 @@
+package com.smartherd.debugoverlay;
+
+/**
+ * Fixed-capacity ring of network log records shared by every overlay in the process.
+ *
+ * All records are preallocated; adding one overwrites the oldest in place, so memory stays
+ * constant no matter how chatty the app is. Writers are OkHttp threads, readers are the UI
+ * thread and the session recorder. Critical sections only copy a handful of fields, so a plain
+ * monitor is cheaper than anything cleverer here.
+ */
+final class NetworkLogBuffer {
+
+    // --- Status Filters ---
+    static final int FILTER_ALL = 0;
+    static final int FILTER_SUCCESS = 1;       // 1xx-3xx
+    static final int FILTER_CLIENT_ERROR = 2;  // 4xx
+    static final int FILTER_SERVER_ERROR = 3;  // 5xx
+    static final int FILTER_FAILED = 4;        // IOException, no response
+    static final int FILTER_COUNT = 5;
+
+    // Status code stored for calls that failed without a response.
+    static final int STATUS_FAILED = -1;
+
+    /**
+     * One request in the log. Instances are reused; copy with copyFrom() to keep one.
+     */
+    static final class Entry {
+        long sequence;
+        long timestampMs;
+        String method;
+        String host;
+        String path;
+        int statusCode;
+        long durationMs;
+        String error;
+
+        void copyFrom(Entry other) {
+            sequence = other.sequence;
+            timestampMs = other.timestampMs;
+            method = other.method;
+            host = other.host;
+            path = other.path;
+            statusCode = other.statusCode;
+            durationMs = other.durationMs;
+            error = other.error;
+        }
+    }
+
+    private final Entry[] entries;
+    private long writeCount = 0;
+
+    NetworkLogBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be > 0");
+        }
+        entries = new Entry[capacity];
+        for (int i = 0; i < capacity; i++) {
+            entries[i] = new Entry();
+        }
+    }
+
+    /**
+     * Records one finished request, overwriting the oldest record once full.
+     *
+     * @param statusCode HTTP status, or STATUS_FAILED if the call threw.
+     */
+    synchronized void add(long timestampMs, String method, String host, String path,
+                          int statusCode, long durationMs, String error) {
+        Entry entry = entries[(int) (writeCount % entries.length)];
+        entry.sequence = writeCount;
+        entry.timestampMs = timestampMs;
+        entry.method = method;
+        entry.host = host;
+        entry.path = path;
+        entry.statusCode = statusCode;
+        entry.durationMs = durationMs;
+        entry.error = error;
+        writeCount++;
+    }
+
+    /**
+     * Counts the retained records matching the filter.
+     *
+     * @param hostFilter exact host or parent domain (e.g. "example.com"), or null for any host.
+     */
+    synchronized int countMatching(String hostFilter, int statusFilter) {
+        int matches = 0;
+        int retained = retained();
+        for (int i = 0; i < retained; i++) {
+            if (matches(entryFromNewest(i), hostFilter, statusFilter)) matches++;
+        }
+        return matches;
+    }
+
+    /**
+     * Copies up to {@code out.length} matching records into {@code out}, newest first, after
+     * skipping the {@code skipNewest} most recent matches. Only the rows a view actually shows
+     * are copied, so scrolling a long log costs the same as showing a short one.
+     *
+     * @return the number of records copied.
+     */
+    synchronized int readMatching(String hostFilter, int statusFilter, int skipNewest, Entry[] out) {
+        int copied = 0;
+        int skipped = 0;
+        int retained = retained();
+        for (int i = 0; i < retained && copied < out.length; i++) {
+            Entry entry = entryFromNewest(i);
+            if (!matches(entry, hostFilter, statusFilter)) continue;
+            if (skipped < skipNewest) {
+                skipped++;
+                continue;
+            }
+            out[copied++].copyFrom(entry);
+        }
+        return copied;
+    }
+
+    /**
+     * Copies up to {@code out.length} records with a sequence of at least {@code fromSequence},
+     * oldest first. Records already overwritten are skipped; compare the first copied sequence
+     * with {@code fromSequence} to detect them.
+     *
+     * @return the number of records copied.
+     */
+    synchronized int readSince(long fromSequence, Entry[] out) {
+        long start = Math.max(fromSequence, writeCount - entries.length);
+        int count = (int) Math.max(0, Math.min(writeCount - start, out.length));
+        for (int i = 0; i < count; i++) {
+            out[i].copyFrom(entries[(int) ((start + i) % entries.length)]);
+        }
+        return count;
+    }
+
+    synchronized long totalRecorded() {
+        return writeCount;
+    }
+
+    synchronized void clear() {
+        writeCount = 0;
+        for (Entry entry : entries) {
+            entry.method = entry.host = entry.path = entry.error = null;
+        }
+    }
+
+    int capacity() {
+        return entries.length;
+    }
+
+    private int retained() {
+        return (int) Math.min(writeCount, entries.length);
+    }
+
+    private Entry entryFromNewest(int index) {
+        return entries[(int) ((writeCount - 1 - index) % entries.length)];
+    }
+
+    static boolean matches(Entry entry, String hostFilter, int statusFilter) {
+        if (hostFilter != null && !matchesHost(entry.host, hostFilter)) return false;
+
+        int code = entry.statusCode;
+        switch (statusFilter) {
+            case FILTER_SUCCESS: return code >= 100 && code < 400;
+            case FILTER_CLIENT_ERROR: return code >= 400 && code < 500;
+            case FILTER_SERVER_ERROR: return code >= 500;
+            case FILTER_FAILED: return code == STATUS_FAILED;
+            default: return true;
+        }
+    }
+
+    // "api.example.com" matches both "api.example.com" and "example.com".
+    private static boolean matchesHost(String host, String filter) {
+        if (host == null) return false;
+        if (host.equals(filter)) return true;
+        int prefixLength = host.length() - filter.length();
+        return prefixLength > 0 && host.endsWith(filter) && host.charAt(prefixLength - 1) == '.';
+    }
+}
@@ -0,0 +1,175 @@
+package com.smartherd.debugoverlay;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.util.TypedValue;
+import android.view.MotionEvent;
+import android.view.View;
+
+/**
+ * Virtualized view over a NetworkLogBuffer.
+ *
+ * Instead of one TextView per request, this draws only the rows that fit in its fixed height,
+ * straight from a handful of preallocated row records. The view hierarchy and the memory used
+ * stay the same whether the log holds ten requests or ten thousand.
+ *
+ * - Drag vertically to scroll back; scrolling to the bottom resumes following new requests.
+ * - Tap a row to filter the log by that row's host.
+ */
+class NetworkLogView extends View {
+
+    private static final float TEXT_SIZE_SP = 11f;
+    private static final int MAX_ROW_CHARS = 64;
+
+    private final NetworkLogBuffer log;
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final float rowHeight;
+    private final float baselineOffset;
+    private final int fixedHeight;
+
+    // Row records and formatting buffer, sized for the rows that can be visible at once.
+    private final NetworkLogBuffer.Entry[] visibleRows;
+    private final CharLine rowText = new CharLine(MAX_ROW_CHARS);
+    private int visibleRowCount = 0;
+
+    // --- Filtering ---
+    private String hostFilter = null;
+    private int statusFilter = NetworkLogBuffer.FILTER_ALL;
+
+    // --- Scrolling ---
+    // Number of matching rows hidden below the bottom edge; 0 means following the newest request.
+    private int rowsFromBottom = 0;
+    private float lastTouchY;
+    private float dragDistance;
+
+    NetworkLogView(Context context, NetworkLogBuffer log, int heightPx) {
+        super(context);
+        this.log = log;
+        this.fixedHeight = heightPx;
+
+        textPaint.setColor(Color.GREEN);
+        textPaint.setTypeface(Typeface.MONOSPACE);
+        textPaint.setTextSize(TypedValue.applyDimension(
+                TypedValue.COMPLEX_UNIT_SP, TEXT_SIZE_SP, getResources().getDisplayMetrics()));
+        Paint.FontMetrics metrics = textPaint.getFontMetrics();
+        rowHeight = metrics.descent - metrics.ascent + metrics.leading;
+        baselineOffset = -metrics.ascent;
+
+        int maxVisible = Math.max(1, (int) (heightPx / rowHeight));
+        visibleRows = new NetworkLogBuffer.Entry[maxVisible];
+        for (int i = 0; i < maxVisible; i++) {
+            visibleRows[i] = new NetworkLogBuffer.Entry();
+        }
+    }
+
+    /**
+     * Called from any thread when the log changed. Coalesced to one redraw per frame.
+     */
+    void onLogChanged() {
+        if (getVisibility() == VISIBLE) {
+            postInvalidateOnAnimation();
+        }
+    }
+
+    void setFilter(String host, int status) {
+        hostFilter = host;
+        statusFilter = status;
+        rowsFromBottom = 0;
+        invalidate();
+    }
+
+    String getHostFilter() { return hostFilter; }
+    int getStatusFilter() { return statusFilter; }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = MeasureSpec.getMode(widthMeasureSpec) == MeasureSpec.UNSPECIFIED
+                ? (int) (textPaint.measureText("0") * 40)
+                : MeasureSpec.getSize(widthMeasureSpec);
+        setMeasuredDimension(width, fixedHeight);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        // Only the rows that fit are copied out of the ring, newest first.
+        visibleRowCount = log.readMatching(hostFilter, statusFilter, rowsFromBottom, visibleRows);
+
+        // Draw newest at the bottom, like a log that auto-scrolls.
+        float x = getPaddingLeft();
+        float y = getHeight() - getPaddingBottom() - rowHeight + baselineOffset;
+        for (int i = 0; i < visibleRowCount; i++) {
+            formatRow(visibleRows[i]);
+            canvas.drawText(rowText.chars(), 0, rowText.length(), x, y, textPaint);
+            y -= rowHeight;
+        }
+    }
+
+    private void formatRow(NetworkLogBuffer.Entry entry) {
+        rowText.clear().append(entry.method != null ? entry.method : "?").append(' ');
+        if (entry.statusCode == NetworkLogBuffer.STATUS_FAILED) {
+            rowText.append("ERR ").append(entry.error != null ? entry.error : "");
+        } else {
+            rowText.append(entry.statusCode).append(' ');
+        }
+        rowText.append(entry.durationMs).append("ms ");
+        if (entry.host != null) rowText.append(entry.host);
+        if (entry.path != null) rowText.append(entry.path);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                lastTouchY = event.getY();
+                dragDistance = 0;
+                getParent().requestDisallowInterceptTouchEvent(true);
+                return true;
+
+            case MotionEvent.ACTION_MOVE:
+                float dy = event.getY() - lastTouchY;
+                int rows = (int) (dy / rowHeight);
+                if (rows != 0) {
+                    dragDistance += Math.abs(dy);
+                    lastTouchY += rows * rowHeight;
+                    scrollRows(rows);
+                }
+                return true;
+
+            case MotionEvent.ACTION_UP:
+                if (dragDistance < rowHeight) {
+                    onRowTapped(event.getY());
+                }
+                return true;
+        }
+        return super.onTouchEvent(event);
+    }
+
+    // Dragging down reveals older rows.
+    private void scrollRows(int rows) {
+        int maxScroll = Math.max(0, log.countMatching(hostFilter, statusFilter) - visibleRows.length);
+        int updated = Math.max(0, Math.min(maxScroll, rowsFromBottom + rows));
+        if (updated != rowsFromBottom) {
+            rowsFromBottom = updated;
+            invalidate();
+        }
+    }
+
+    private void onRowTapped(float y) {
+        int indexFromBottom = (int) ((getHeight() - getPaddingBottom() - y) / rowHeight);
+        if (indexFromBottom < 0 || indexFromBottom >= visibleRowCount) return;
+
+        String host = visibleRows[indexFromBottom].host;
+        if (host != null) {
+            setFilter(host.equals(hostFilter) ? null : host, statusFilter);
+            performClick();
+        }
+    }
+
+    @Override
+    public boolean performClick() {
+        return super.performClick();
+    }
+}
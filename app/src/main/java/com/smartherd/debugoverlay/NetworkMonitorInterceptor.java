@@ -1,44 +1,89 @@
 package com.smartherd.debugoverlay;
 
+import androidx.annotation.Nullable;
+
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.HttpUrl;
 import okhttp3.Interceptor;
 import okhttp3.Request;
 import okhttp3.Response;
 
 /**
  * An OkHttp Interceptor that captures the duration of a network request
- * and reports it back to the DebugStatsCollector.
+ * and records it into the DebugStatsCollector's per-endpoint latency histograms
+ * (lock-free, no logging or string formatting on the request path).
+ * Per-phase timings (DNS, connect, TLS, TTFB, ...) come from the collector's
+ * EventListener.Factory, which should be registered on the same client.
+ * Finished calls are also appended to the collector's bounded network log
+ * (one short lock, no formatting), which the session recorder drains.
+ * That bookkeeping, not the call itself, is charged to the collector's OverheadMeter.
  *
  * NOTE: This requires the OkHttp library to be included in your project dependencies
  * and must be added to your OkHttpClient instance.
  */
 public class NetworkMonitorInterceptor implements Interceptor {
 
-    private final DebugStatsCollector collector;
+    private final EndpointStatsRegistry endpointStats;
+    @Nullable
+    private final NetworkLogBuffer networkLog;
+    @Nullable
+    private final OverheadMeter overheadMeter;
 
     public NetworkMonitorInterceptor(DebugStatsCollector collector) {
-        this.collector = collector;
+        this(collector != null ? collector.getEndpointStats() : null,
+                collector != null ? collector.getNetworkLog() : null,
+                collector != null ? collector.getOverheadMeter() : null);
+    }
+
+    NetworkMonitorInterceptor(EndpointStatsRegistry endpointStats) {
+        this(endpointStats, null, null);
+    }
+
+    NetworkMonitorInterceptor(EndpointStatsRegistry endpointStats, @Nullable NetworkLogBuffer networkLog) {
+        this(endpointStats, networkLog, null);
+    }
+
+    NetworkMonitorInterceptor(EndpointStatsRegistry endpointStats, @Nullable NetworkLogBuffer networkLog,
+                              @Nullable OverheadMeter overheadMeter) {
+        this.endpointStats = endpointStats;
+        this.networkLog = networkLog;
+        this.overheadMeter = overheadMeter;
     }
 
     @Override
     public Response intercept(Chain chain) throws IOException {
-        long startTime = System.currentTimeMillis();
+        // Monotonic clock: wall-clock time can jump while a request is in flight.
+        long startTime = System.nanoTime();
 
         Request request = chain.request();
-        Response response;
+        Response response = null;
+        String error = null;
 
         try {
             response = chain.proceed(request);
         } catch (IOException e) {
             // Propagate the exception if the request fails
+            error = e.getClass().getSimpleName();
             throw e;
         } finally {
-            long durationMs = System.currentTimeMillis() - startTime;
+            long durationNs = System.nanoTime() - startTime;
+            OverheadMeter meter = overheadMeter;
+            long cpuStart = meter != null ? meter.cpuStart() : 0;
+            long allocStart = meter != null ? meter.allocStart() : -1;
+            int status = response != null ? response.code() : NetworkLogBuffer.STATUS_FAILED;
+            HttpUrl url = request.url();
 
-            // Push the latency data to the collector for real-time update
-            if (collector != null) {
-                collector.updateNetworkStats(durationMs);
+            // Record into the per-endpoint histograms; a missing response counts as a failure
+            if (endpointStats != null) {
+                endpointStats.record(request.method(), url.host(), url.encodedPath(), status, durationNs);
+            }
+            if (networkLog != null) {
+                networkLog.add(System.currentTimeMillis(), request.method(), url.host(), url.encodedPath(),
+                        status, TimeUnit.NANOSECONDS.toMillis(durationNs), error);
             }
+            if (meter != null) meter.end(OverheadMeter.NETWORK, cpuStart, allocStart);
         }
 
         return response;
@@ -0,0 +1,58 @@
+package com.smartherd.debugoverlay;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free accumulator of per-phase network timings, fed by NetworkTimingListenerFactory.
+ *
+ * OkHttp threads add each finished call's phase durations; a sampler periodically drains the
+ * sums into per-phase means for the interval since the previous drain. Nothing is allocated on
+ * either side.
+ */
+final class NetworkPhaseStats implements NetworkTimingListenerFactory.Sink {
+
+    private final AtomicLongArray phaseSumsNs = new AtomicLongArray(NetworkTimingListener.PHASE_COUNT);
+    private final AtomicLong timedCalls = new AtomicLong();
+
+    // Lifetime totals, never reset by drain().
+    private final AtomicLong totalTimedCalls = new AtomicLong();
+    private final AtomicLong totalReusedConnections = new AtomicLong();
+
+    @Override
+    public void onCallTimed(NetworkTimingListener timing) {
+        for (int i = 0; i < NetworkTimingListener.PHASE_COUNT; i++) {
+            long ns = timing.phaseNs[i];
+            if (ns != 0) phaseSumsNs.addAndGet(i, ns);
+        }
+        timedCalls.incrementAndGet();
+        totalTimedCalls.incrementAndGet();
+        if (timing.connectionReused) {
+            totalReusedConnections.incrementAndGet();
+        }
+    }
+
+    /**
+     * Writes the mean duration of each phase (in milliseconds) over the calls finished since the
+     * previous drain into {@code outMeanMs}, and resets the interval.
+     *
+     * @return the number of calls in the interval; if 0, {@code outMeanMs} is left untouched.
+     */
+    int drain(double[] outMeanMs) {
+        long calls = timedCalls.getAndSet(0);
+        if (calls == 0) return 0;
+
+        for (int i = 0; i < NetworkTimingListener.PHASE_COUNT; i++) {
+            outMeanMs[i] = phaseSumsNs.getAndSet(i, 0) / 1_000_000.0 / calls;
+        }
+        return (int) calls;
+    }
+
+    long getTotalTimedCalls() {
+        return totalTimedCalls.get();
+    }
+
+    long getTotalReusedConnections() {
+        return totalReusedConnections.get();
+    }
+}
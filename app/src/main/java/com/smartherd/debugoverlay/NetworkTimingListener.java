@@ -0,0 +1,229 @@
+package com.smartherd.debugoverlay;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Pooled, preallocated per-call timing record fed by OkHttp's EventListener callbacks.
+ *
+ * Splits a call into DNS, connect (TCP), TLS handshake, request write, time-to-first-byte and
+ * response body read, using the monotonic System.nanoTime clock. Phases that repeat (retries,
+ * multiple connect attempts) accumulate. Instances are handed out by NetworkTimingListenerFactory
+ * and returned to its pool when the call ends, fails or is canceled, or taken back by the factory
+ * once the call has held it too long (reclaimIfStale()).
+ *
+ * Every callback checks that the record still belongs to the call that acquired it and writes
+ * under the record's own lock, the same lock reset(), reclaiming and reporting take, so a late
+ * event from a previous owner can never corrupt the next call's record. The lock is per record
+ * and practically uncontended: one call's events arrive in sequence.
+ */
+final class NetworkTimingListener extends EventListener {
+
+    // --- Phase Indices ---
+    static final int PHASE_DNS = 0;
+    static final int PHASE_CONNECT = 1;
+    static final int PHASE_TLS = 2;
+    static final int PHASE_REQUEST = 3;
+    static final int PHASE_TTFB = 4;
+    static final int PHASE_BODY = 5;
+    static final int PHASE_COUNT = 6;
+
+    static final String[] PHASE_NAMES = {"dns", "connect", "tls", "request", "ttfb", "body"};
+
+    private final NetworkTimingListenerFactory pool;
+    final int poolIndex;
+
+    // The call currently owning this record, and when it acquired it; null while in the pool.
+    // Guarded by this record's lock.
+    private Call call;
+    private long acquiredNs;
+
+    // --- Results (valid while the sink is being notified) ---
+    final long[] phaseNs = new long[PHASE_COUNT];
+    long totalNs;
+    String method;
+    String host;
+    int statusCode;
+    boolean connectionReused;
+    boolean failed;
+
+    // --- In-flight timestamps ---
+    private long callStartNs;
+    private long dnsStartNs;
+    private long connectStartNs;
+    private long tlsBeforeConnectNs;
+    private long secureStartNs;
+    private long requestStartNs;
+    private long requestEndNs;
+    private long responseBodyStartNs;
+
+    NetworkTimingListener(NetworkTimingListenerFactory pool, int poolIndex) {
+        this.pool = pool;
+        this.poolIndex = poolIndex;
+    }
+
+    synchronized void reset(Call owner, long nowNs) {
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            phaseNs[i] = 0;
+        }
+        totalNs = 0;
+        Request request = owner.request();
+        method = request.method();
+        host = request.url().host();
+        statusCode = 0;
+        connectionReused = true; // until we see a connectStart
+        failed = false;
+        callStartNs = dnsStartNs = connectStartNs = tlsBeforeConnectNs = secureStartNs = 0;
+        requestStartNs = requestEndNs = responseBodyStartNs = 0;
+        call = owner;
+        acquiredNs = nowNs;
+    }
+
+    /**
+     * Drops the owning call if it acquired this record {@code staleNs} or more before
+     * {@code nowNs}. The caller then owns the record (its pool slot stays in use).
+     *
+     * @return whether the record was taken back.
+     */
+    synchronized boolean reclaimIfStale(long nowNs, long staleNs) {
+        if (call == null || nowNs - acquiredNs < staleNs) return false;
+        call = null;
+        return true;
+    }
+
+    private boolean owns(Call c) {
+        return c == call;
+    }
+
+    @Override
+    public synchronized void callStart(Call c) {
+        if (owns(c)) callStartNs = System.nanoTime();
+    }
+
+    @Override
+    public synchronized void dnsStart(Call c, String domainName) {
+        if (owns(c)) dnsStartNs = System.nanoTime();
+    }
+
+    @Override
+    public synchronized void dnsEnd(Call c, String domainName, List<InetAddress> inetAddressList) {
+        if (owns(c) && dnsStartNs != 0) phaseNs[PHASE_DNS] += System.nanoTime() - dnsStartNs;
+    }
+
+    @Override
+    public synchronized void connectStart(Call c, InetSocketAddress inetSocketAddress, Proxy proxy) {
+        if (!owns(c)) return;
+        connectionReused = false;
+        connectStartNs = System.nanoTime();
+        tlsBeforeConnectNs = phaseNs[PHASE_TLS];
+    }
+
+    @Override
+    public synchronized void secureConnectStart(Call c) {
+        if (owns(c)) secureStartNs = System.nanoTime();
+    }
+
+    @Override
+    public synchronized void secureConnectEnd(Call c, Handshake handshake) {
+        if (owns(c) && secureStartNs != 0) phaseNs[PHASE_TLS] += System.nanoTime() - secureStartNs;
+    }
+
+    @Override
+    public synchronized void connectEnd(Call c, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+        endConnect(c);
+    }
+
+    @Override
+    public synchronized void connectFailed(Call c, InetSocketAddress inetSocketAddress, Proxy proxy,
+                              Protocol protocol, IOException ioe) {
+        endConnect(c);
+    }
+
+    // Connect time excludes the TLS handshake, which is reported as its own phase.
+    private void endConnect(Call c) {
+        if (!owns(c) || connectStartNs == 0) return;
+        long connectNs = System.nanoTime() - connectStartNs;
+        long tlsNs = phaseNs[PHASE_TLS] - tlsBeforeConnectNs;
+        phaseNs[PHASE_CONNECT] += Math.max(0, connectNs - tlsNs);
+        connectStartNs = 0;
+    }
+
+    @Override
+    public synchronized void requestHeadersStart(Call c) {
+        if (owns(c)) requestStartNs = System.nanoTime();
+    }
+
+    @Override
+    public synchronized void requestHeadersEnd(Call c, Request request) {
+        if (owns(c)) markRequestEnd();
+    }
+
+    @Override
+    public synchronized void requestBodyEnd(Call c, long byteCount) {
+        if (owns(c)) markRequestEnd();
+    }
+
+    private void markRequestEnd() {
+        requestEndNs = System.nanoTime();
+        if (requestStartNs != 0) phaseNs[PHASE_REQUEST] = requestEndNs - requestStartNs;
+    }
+
+    @Override
+    public synchronized void responseHeadersStart(Call c) {
+        if (owns(c) && requestEndNs != 0) phaseNs[PHASE_TTFB] += System.nanoTime() - requestEndNs;
+    }
+
+    @Override
+    public synchronized void responseHeadersEnd(Call c, Response response) {
+        if (owns(c)) statusCode = response.code();
+    }
+
+    @Override
+    public synchronized void responseBodyStart(Call c) {
+        if (owns(c)) responseBodyStartNs = System.nanoTime();
+    }
+
+    @Override
+    public synchronized void responseBodyEnd(Call c, long byteCount) {
+        if (owns(c) && responseBodyStartNs != 0) {
+            phaseNs[PHASE_BODY] += System.nanoTime() - responseBodyStartNs;
+        }
+    }
+
+    @Override
+    public synchronized void callEnd(Call c) {
+        finish(c, false);
+    }
+
+    @Override
+    public synchronized void callFailed(Call c, IOException ioe) {
+        finish(c, true);
+    }
+
+    @Override
+    public synchronized void canceled(Call c) {
+        // A canceled call isn't timed; hand the record back now, as callFailed() may never come.
+        if (!owns(c)) return;
+        call = null;
+        pool.release(this);
+    }
+
+    // Reports under the record's lock, so the sink reads a record nothing else can write to.
+    private synchronized void finish(Call c, boolean didFail) {
+        if (!owns(c)) return;
+        totalNs = callStartNs != 0 ? System.nanoTime() - callStartNs : 0;
+        failed = didFail;
+        call = null;
+        pool.onCallFinished(this);
+    }
+}
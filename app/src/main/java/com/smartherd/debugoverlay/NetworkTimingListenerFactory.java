@@ -0,0 +1,145 @@
+package com.smartherd.debugoverlay;
+
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+
+/**
+ * OkHttp EventListener.Factory that times every call phase into a fixed pool of preallocated
+ * NetworkTimingListener records.
+ *
+ * Acquiring and releasing a record is a lock-free scan over an AtomicIntegerArray, so the
+ * factory allocates nothing per call. A record goes back to the pool when its call ends, fails or
+ * is canceled. Calls that never get there (never executed, or a response body that is never
+ * closed) would otherwise hold their record forever, so once the pool is full, records held for
+ * longer than the stale limit are reclaimed for new calls; the abandoned call is then not timed.
+ * If more calls than that are in flight, the extra calls are simply not timed (see
+ * getUntimedCallCount()) rather than growing memory.
+ *
+ * Register with OkHttpClient.Builder.eventListenerFactory(), next to the interceptors.
+ */
+final class NetworkTimingListenerFactory implements EventListener.Factory {
+
+    static final int DEFAULT_POOL_SIZE = 64;
+    // Longer than any call the overlay should be timing; streams held open past it go untimed.
+    static final long DEFAULT_STALE_CALL_MS = 120_000;
+
+    /**
+     * Receives each finished call's phases. Called on the OkHttp thread that finished the call;
+     * the record is only valid for the duration of the callback.
+     */
+    interface Sink {
+        void onCallTimed(NetworkTimingListener timing);
+    }
+
+    private final Sink sink;
+    // Charged with the sink's work per finished call (OverheadMeter.NETWORK), if set.
+    @Nullable
+    private final OverheadMeter overheadMeter;
+    private final NetworkTimingListener[] pool;
+    private final AtomicIntegerArray inUse;
+    private final long staleCallNs;
+    // Where the next acquire starts scanning, so concurrent callers spread across the pool.
+    private final AtomicInteger nextSlot = new AtomicInteger();
+    private final AtomicLong untimedCalls = new AtomicLong();
+    private final AtomicLong reclaimedCalls = new AtomicLong();
+
+    NetworkTimingListenerFactory(Sink sink) {
+        this(sink, DEFAULT_POOL_SIZE, null);
+    }
+
+    NetworkTimingListenerFactory(Sink sink, @Nullable OverheadMeter overheadMeter) {
+        this(sink, DEFAULT_POOL_SIZE, overheadMeter);
+    }
+
+    NetworkTimingListenerFactory(Sink sink, int poolSize) {
+        this(sink, poolSize, null);
+    }
+
+    NetworkTimingListenerFactory(Sink sink, int poolSize, @Nullable OverheadMeter overheadMeter) {
+        this(sink, poolSize, overheadMeter, DEFAULT_STALE_CALL_MS);
+    }
+
+    /**
+     * @param staleCallMs how long a call may hold its record before a new call may take it over
+     *                    while the pool is full.
+     */
+    NetworkTimingListenerFactory(Sink sink, int poolSize, @Nullable OverheadMeter overheadMeter, long staleCallMs) {
+        this.sink = sink;
+        this.overheadMeter = overheadMeter;
+        this.staleCallNs = staleCallMs * 1_000_000L;
+        this.pool = new NetworkTimingListener[poolSize];
+        this.inUse = new AtomicIntegerArray(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            pool[i] = new NetworkTimingListener(this, i);
+        }
+    }
+
+    @Override
+    public EventListener create(Call call) {
+        int start = nextSlot.getAndIncrement();
+        long nowNs = System.nanoTime();
+        for (int attempt = 0; attempt < pool.length; attempt++) {
+            int index = Math.floorMod(start + attempt, pool.length);
+            if (inUse.compareAndSet(index, 0, 1)) {
+                NetworkTimingListener listener = pool[index];
+                listener.reset(call, nowNs);
+                return listener;
+            }
+        }
+        // Pool full: take over a record whose call never finished. The slot stays in use, so
+        // no other create() can claim it in between.
+        for (int attempt = 0; attempt < pool.length; attempt++) {
+            NetworkTimingListener listener = pool[Math.floorMod(start + attempt, pool.length)];
+            if (listener.reclaimIfStale(nowNs, staleCallNs)) {
+                reclaimedCalls.incrementAndGet();
+                listener.reset(call, nowNs);
+                return listener;
+            }
+        }
+        // Pool exhausted: don't allocate, just leave this call untimed.
+        untimedCalls.incrementAndGet();
+        return EventListener.NONE;
+    }
+
+    void onCallFinished(NetworkTimingListener listener) {
+        OverheadMeter meter = overheadMeter;
+        long cpuStart = meter != null ? meter.cpuStart() : 0;
+        long allocStart = meter != null ? meter.allocStart() : -1;
+        try {
+            if (sink != null) {
+                sink.onCallTimed(listener);
+            }
+        } finally {
+            if (meter != null) meter.end(OverheadMeter.NETWORK, cpuStart, allocStart);
+            release(listener);
+        }
+    }
+
+    /**
+     * Returns a record to the pool without reporting it, e.g. for a canceled call.
+     */
+    void release(NetworkTimingListener listener) {
+        inUse.set(listener.poolIndex, 0);
+    }
+
+    long getUntimedCallCount() {
+        return untimedCalls.get();
+    }
+
+    /**
+     * Records taken back from calls that held them past the stale limit.
+     */
+    long getReclaimedCallCount() {
+        return reclaimedCalls.get();
+    }
+
+    int getPoolSize() {
+        return pool.length;
+    }
+}
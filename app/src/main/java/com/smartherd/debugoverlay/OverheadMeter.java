@@ -0,0 +1,178 @@
+package com.smartherd.debugoverlay;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * What the overlay itself costs the process it measures, split by component, so its numbers can
+ * be discounted and its own regressions caught:
+ *
+ * - SAMPLING: the sampler thread's wakeups (sources, publishing, recording and streaming), the
+ *   stall watchdog's checks, the profiler's samples and the vsync callback on the main thread.
+ * - RENDERING: copying each snapshot into the panel, formatting it and drawing it (main thread).
+ * - NETWORK: the interceptor's and the timing listener's bookkeeping on OkHttp threads (not the
+ *   calls themselves).
+ *
+ * Each instrumented section reads the calling thread's CPU clock, and optionally its allocation
+ * counter, before and after; sections on the main thread also add their wall time, which is what
+ * the app's frames wait for. Totals are lock-free atomics, safe from any thread. One thread turns
+ * them into per-second rates with updateRates() and reads them back.
+ *
+ * Allocation counting goes through the runtime's per-thread counters, which cost every thread
+ * something while enabled, so it is off unless setAllocationCounting(true) is called; the
+ * allocation rates read -1 meanwhile.
+ */
+final class OverheadMeter {
+
+    static final int SAMPLING = 0;
+    static final int RENDERING = 1;
+    static final int NETWORK = 2;
+    static final int COMPONENT_COUNT = 3;
+    static final String[] COMPONENT_NAMES = {"sampling", "rendering", "network"};
+
+    private final LongSupplier threadCpuClock;
+    private final LongSupplier threadAllocClock;
+    private volatile boolean countAllocations = false;
+    // Bumped whenever counting is switched, so a window it was off for part of is not reported.
+    private volatile int allocSwitches = 0;
+
+    // --- Totals (any thread) ---
+    private final AtomicLongArray cpuNs = new AtomicLongArray(COMPONENT_COUNT);
+    private final AtomicLongArray allocBytes = new AtomicLongArray(COMPONENT_COUNT);
+    private final AtomicLongArray mainThreadNs = new AtomicLongArray(COMPONENT_COUNT);
+
+    // --- Rates (reader thread only) ---
+    private final long[] lastCpuNs = new long[COMPONENT_COUNT];
+    private final long[] lastAllocBytes = new long[COMPONENT_COUNT];
+    private final long[] lastMainThreadNs = new long[COMPONENT_COUNT];
+    private long lastRateNanos = 0;
+    private int allocSwitchesAtLast = -1;
+    private final double[] cpuPercent = new double[COMPONENT_COUNT];
+    private final double[] allocKbPerSec = new double[COMPONENT_COUNT];
+    private final double[] mainThreadMsPerSec = new double[COMPONENT_COUNT];
+
+    /**
+     * @param threadCpuClock   CPU time of the calling thread in nanoseconds (e.g. Debug::threadCpuTimeNanos).
+     * @param threadAllocClock bytes allocated by the calling thread so far (e.g. Debug::getThreadAllocSize);
+     *                         only read while allocation counting is on.
+     */
+    OverheadMeter(LongSupplier threadCpuClock, LongSupplier threadAllocClock) {
+        this.threadCpuClock = threadCpuClock;
+        this.threadAllocClock = threadAllocClock;
+        for (int i = 0; i < COMPONENT_COUNT; i++) {
+            allocKbPerSec[i] = -1;
+        }
+    }
+
+    /**
+     * Turns per-thread allocation counting on or off. The caller enables the runtime's counters
+     * first (Debug.startAllocCounting()).
+     */
+    void setAllocationCounting(boolean enabled) {
+        if (countAllocations == enabled) return;
+        countAllocations = enabled;
+        allocSwitches++;
+    }
+
+    boolean isAllocationCounting() {
+        return countAllocations;
+    }
+
+    // --- Instrumentation (any thread) ---
+
+    /**
+     * Start of a section on the calling thread: pass the result to {@link #end}.
+     */
+    long cpuStart() {
+        return threadCpuClock.getAsLong();
+    }
+
+    /**
+     * Allocation counter at the start of a section, or -1 while counting is off.
+     */
+    long allocStart() {
+        return countAllocations ? threadAllocClock.getAsLong() : -1;
+    }
+
+    /**
+     * Charges the section begun with {@code cpuStartNs}/{@code allocStartBytes} on this thread to
+     * {@code component}.
+     */
+    void end(int component, long cpuStartNs, long allocStartBytes) {
+        cpuNs.addAndGet(component, Math.max(0, threadCpuClock.getAsLong() - cpuStartNs));
+        if (allocStartBytes >= 0 && countAllocations) {
+            long allocated = threadAllocClock.getAsLong() - allocStartBytes;
+            if (allocated > 0) allocBytes.addAndGet(component, allocated);
+        }
+    }
+
+    /**
+     * Adds main-thread wall time (System.nanoTime() deltas) spent in {@code component}.
+     */
+    void addMainThread(int component, long nanos) {
+        if (nanos > 0) mainThreadNs.addAndGet(component, nanos);
+    }
+
+    // --- Rates (one reader thread) ---
+
+    /**
+     * Restarts the rate window at {@code nowNanos} without computing rates, e.g. when sampling
+     * resumes after the app was in the background.
+     */
+    void resetRates(long nowNanos) {
+        for (int i = 0; i < COMPONENT_COUNT; i++) {
+            lastCpuNs[i] = cpuNs.get(i);
+            lastAllocBytes[i] = allocBytes.get(i);
+            lastMainThreadNs[i] = mainThreadNs.get(i);
+        }
+        lastRateNanos = nowNanos;
+        allocSwitchesAtLast = allocSwitches;
+    }
+
+    /**
+     * Computes each component's rates since the previous call (System.nanoTime() clock).
+     */
+    void updateRates(long nowNanos) {
+        long elapsed = nowNanos - lastRateNanos;
+        if (lastRateNanos == 0 || elapsed <= 0) {
+            resetRates(nowNanos);
+            return;
+        }
+        // Only a window counted from start to end says anything about allocations.
+        boolean allocKnown = countAllocations && allocSwitches == allocSwitchesAtLast;
+        for (int i = 0; i < COMPONENT_COUNT; i++) {
+            long cpu = cpuNs.get(i);
+            long alloc = allocBytes.get(i);
+            long main = mainThreadNs.get(i);
+            cpuPercent[i] = (cpu - lastCpuNs[i]) * 100.0 / elapsed;
+            mainThreadMsPerSec[i] = (main - lastMainThreadNs[i]) / 1_000_000.0 * 1_000_000_000.0 / elapsed;
+            allocKbPerSec[i] = allocKnown ? (alloc - lastAllocBytes[i]) / 1024.0 * 1_000_000_000.0 / elapsed : -1;
+            lastCpuNs[i] = cpu;
+            lastAllocBytes[i] = alloc;
+            lastMainThreadNs[i] = main;
+        }
+        lastRateNanos = nowNanos;
+        allocSwitchesAtLast = allocSwitches;
+    }
+
+    /**
+     * CPU time of {@code component} over the last window, in percent of one core.
+     */
+    double getCpuPercent(int component) {
+        return cpuPercent[component];
+    }
+
+    /**
+     * Main-thread wall time of {@code component}, in milliseconds per second.
+     */
+    double getMainThreadMsPerSec(int component) {
+        return mainThreadMsPerSec[component];
+    }
+
+    /**
+     * Bytes allocated by {@code component}, in KB per second, or -1 while counting is off.
+     */
+    double getAllocKbPerSec(int component) {
+        return allocKbPerSec[component];
+    }
+}
@@ -8,9 +8,18 @@ import android.os.Bundle;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+/**
+ * Attaches an OverlayView to every activity as it is created. All overlays share the one
+ * process-wide StatsCollector engine, which runs only while at least one of them is attached and
+ * the app is visible.
+ *
+ * It also observes each started activity's window with a FrameMetricsTracker, so the overlays can
+ * show which rendering stage makes frames slow.
+ */
 class OverlayManager implements Application.ActivityLifecycleCallbacks {
 
     private final Application app;
+    private final FrameMetricsTracker frameMetrics = new FrameMetricsTracker(StatsCollector.frameStageStats());
     private boolean showFps = true;
     private boolean showMemory = true;
     private boolean showThreads = true;
@@ -18,6 +27,8 @@ class OverlayManager implements Application.ActivityLifecycleCallbacks {
 
     OverlayManager(Application app) {
         this.app = app;
+        // Lets the shared engine go idle whenever no activity is started.
+        AppVisibilityTracker.install(app);
         app.registerActivityLifecycleCallbacks(this);
     }
 
@@ -31,10 +42,20 @@ class OverlayManager implements Application.ActivityLifecycleCallbacks {
         OverlayView.attachToActivity(activity, showFps, showMemory, showThreads, showNetwork);
     }
 
-    @Override public void onActivityStarted(@NonNull Activity activity) {}
+    @Override
+    public void onActivityStarted(@NonNull Activity activity) {
+        // Not in onActivityCreated: that runs before setContentView(), and reaching the window's
+        // decor that early would break activities that still request window features.
+        frameMetrics.attach(activity);
+    }
+
+    @Override
+    public void onActivityStopped(@NonNull Activity activity) {
+        frameMetrics.detach(activity);
+    }
+
     @Override public void onActivityResumed(@NonNull Activity activity) {}
     @Override public void onActivityPaused(@NonNull Activity activity) {}
-    @Override public void onActivityStopped(@NonNull Activity activity) {}
     @Override public void onActivitySaveInstanceState(@NonNull Activity activity, @NonNull Bundle outState) {}
     @Override public void onActivityDestroyed(@NonNull Activity activity) {}
 }
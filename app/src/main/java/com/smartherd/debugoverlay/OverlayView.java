@@ -3,8 +3,6 @@ package com.smartherd.debugoverlay;
 import android.app.Activity;
 import android.content.Context;
 import android.graphics.Color;
-import android.os.Handler;
-import android.os.Looper;
 import android.util.TypedValue;
 import android.view.Gravity;
 import android.view.MotionEvent;
@@ -13,14 +11,21 @@ import android.view.ViewGroup;
 import android.widget.FrameLayout;
 import android.widget.TextView;
 import android.widget.LinearLayout;
-import android.widget.ScrollView;
-
-class OverlayView extends FrameLayout {
-    private final StatsCollector stats;
-    private final Handler main = new Handler(Looper.getMainLooper());
-    private final TextView fpsTv, memTv, threadTv;
-    private final LinearLayout logContainer;
-    private final ScrollView logScroll;
+
+/**
+ * Per-activity overlay. Renders samples from the shared StatsCollector engine, to which it is
+ * subscribed only while attached to its activity's window. A SparklineView under the values
+ * graphs the last minute of FPS and CPU (with showFps) and heap (with showMemory).
+ */
+class OverlayView extends FrameLayout implements StatsCollector.Subscriber {
+    private static final String[] STATUS_FILTER_LABELS = {"all", "ok", "4xx", "5xx", "failed"};
+    // The engine ticks every 500ms: a minute of sparkline history.
+    private static final int SPARKLINE_SAMPLES = 120;
+
+    private final TextView fpsTv, stagesTv, memTv, gcTv, threadTv, netPhaseTv, netLatencyTv;
+    private final SparklineView sparklines;
+    private final NetworkLogView logView;
+    private final TextView filterBtn;
     private final TextView toggleBtn;
     private boolean logsVisible = false;
 
@@ -30,7 +35,6 @@ class OverlayView extends FrameLayout {
                         boolean showThreads,
                         boolean showNetwork) {
         super(context);
-        stats = new StatsCollector();
 
         setBackgroundColor(0xCC222222);
         setPadding(16, 16, 16, 16);
@@ -44,33 +48,59 @@ class OverlayView extends FrameLayout {
         ));
 
         fpsTv = makeText("FPS: --");
+        stagesTv = makeText("SLOW: --");
         memTv = makeText("MEM: --");
+        gcTv = makeText("GC: --");
         threadTv = makeText("THR: --");
+        netPhaseTv = makeText("NET dns/tcp/tls/ttfb: --");
+        netLatencyTv = makeText("NET p50/95/99: --");
 
         if (showFps) container.addView(fpsTv);
+        if (showFps) container.addView(stagesTv);
         if (showMemory) container.addView(memTv);
+        if (showMemory) container.addView(gcTv);
         if (showThreads) container.addView(threadTv);
 
+        // Rolling FPS/CPU/heap graphs, as wide as the text above them
+        sparklines = new SparklineView(context);
+        sparklines.setHistorySize(SPARKLINE_SAMPLES);
+        sparklines.setPadding(0, dpToPx(4), 0, dpToPx(4));
+        sparklines.setGraphVisible(SparklineView.GRAPH_FPS, showFps);
+        sparklines.setGraphVisible(SparklineView.GRAPH_CPU, showFps);
+        sparklines.setGraphVisible(SparklineView.GRAPH_HEAP, showMemory);
+        if (showFps || showMemory) {
+            container.addView(sparklines, new LinearLayout.LayoutParams(
+                    LayoutParams.MATCH_PARENT, LayoutParams.WRAP_CONTENT));
+        }
+
         // Toggle button
         toggleBtn = makeText("▼ Show Logs");
         toggleBtn.setTextColor(Color.CYAN);
         toggleBtn.setPadding(8, 8, 8, 8);
         toggleBtn.setOnClickListener(v -> toggleLogs());
+        if (showNetwork) container.addView(netLatencyTv);
+        if (showNetwork) container.addView(netPhaseTv);
         if (showNetwork) container.addView(toggleBtn);
 
-        // Logs container
-        logScroll = new ScrollView(context);
-        logScroll.setVisibility(View.GONE);
-        logScroll.setLayoutParams(new LayoutParams(
-                LayoutParams.MATCH_PARENT,
-                dpToPx(150)
-        ));
-
-        logContainer = new LinearLayout(context);
-        logContainer.setOrientation(LinearLayout.VERTICAL);
-        logScroll.addView(logContainer);
+        // Filter chip: tap cycles the status filter, long-press clears every filter
+        filterBtn = makeText("");
+        filterBtn.setTextColor(Color.YELLOW);
+        filterBtn.setPadding(8, 4, 8, 4);
+        filterBtn.setVisibility(View.GONE);
+        filterBtn.setOnClickListener(v -> cycleStatusFilter());
+        filterBtn.setOnLongClickListener(v -> {
+            setNetworkFilter(null, NetworkLogBuffer.FILTER_ALL);
+            return true;
+        });
+        container.addView(filterBtn);
 
-        container.addView(logScroll);
+        // Logs: a single virtualized view over the shared, bounded log ring
+        logView = new NetworkLogView(context, StatsCollector.networkLog(), dpToPx(150));
+        logView.setVisibility(View.GONE);
+        // Tapping a row filters by its host; refresh the chip when that happens
+        logView.setOnClickListener(v -> updateFilterLabel());
+        container.addView(logView);
+        updateFilterLabel();
 
         addView(container);
 
@@ -92,13 +122,25 @@ class OverlayView extends FrameLayout {
                 return false;
             }
         });
+    }
 
-        main.post(update);
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        StatsCollector.subscribe(this);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        // Last overlay out stops the engine; a destroyed activity leaves nothing registered.
+        StatsCollector.unsubscribe(this);
+        super.onDetachedFromWindow();
     }
 
     private void toggleLogs() {
         logsVisible = !logsVisible;
-        logScroll.setVisibility(logsVisible ? View.VISIBLE : View.GONE);
+        logView.setVisibility(logsVisible ? View.VISIBLE : View.GONE);
+        filterBtn.setVisibility(logsVisible ? View.VISIBLE : View.GONE);
         toggleBtn.setText(logsVisible ? "▲ Hide Logs" : "▼ Show Logs");
     }
 
@@ -110,15 +152,88 @@ class OverlayView extends FrameLayout {
         return tv;
     }
 
-    private final Runnable update = new Runnable() {
-        @Override
-        public void run() {
-            fpsTv.setText("FPS: " + stats.getFps());
-            memTv.setText("MEM: " + stats.getMemoryMb() + "MB");
-            threadTv.setText("THR: " + stats.getThreadCount());
-            main.postDelayed(this, 500);
+    @Override
+    public void onSample(StatsCollector.Sample sample) {
+        fpsTv.setText("FPS: " + sample.fps);
+        // Drawn from the view's own history buffers; unknown values become gaps.
+        sparklines.addSample(sample.fps > 0 ? sample.fps : Double.NaN,
+                sample.cpuPercent >= 0 ? sample.cpuPercent : Double.NaN, sample.javaHeapMb);
+        updateMemory(sample);
+        updateFrameStages(sample);
+        updateThreads(sample);
+        updateNetworkLatency(sample);
+        if (sample.networkTimedCalls > 0) {
+            double[] phaseMs = sample.networkPhaseMs;
+            netPhaseTv.setText("NET dns/tcp/tls/ttfb: "
+                    + Math.round(phaseMs[NetworkTimingListener.PHASE_DNS]) + "/"
+                    + Math.round(phaseMs[NetworkTimingListener.PHASE_CONNECT]) + "/"
+                    + Math.round(phaseMs[NetworkTimingListener.PHASE_TLS]) + "/"
+                    + Math.round(phaseMs[NetworkTimingListener.PHASE_TTFB]) + "ms");
+        }
+    }
+
+    // e.g. "MEM: heap 42, native 31, RSS 231MB" and "GC: 12 (blocking 3, 85ms), alloc 3.2MB/s"
+    private void updateMemory(StatsCollector.Sample sample) {
+        StringBuilder text = new StringBuilder("MEM: heap ").append(sample.javaHeapMb)
+                .append(", native ").append(sample.nativeHeapMb);
+        if (sample.rssMb >= 0) text.append(", RSS ").append(sample.rssMb);
+        memTv.setText(text.append("MB"));
+
+        if (sample.gcCount < 0) return;
+        StringBuilder gc = new StringBuilder("GC: ").append(sample.gcCount)
+                .append(" (blocking ").append(sample.blockingGcCount)
+                .append(", ").append(sample.blockingGcTimeMs).append("ms)");
+        if (sample.allocationRateMbPerSec >= 0) {
+            gc.append(", alloc ").append(Math.round(sample.allocationRateMbPerSec * 10) / 10.0).append("MB/s");
         }
-    };
+        gcTv.setText(gc);
+    }
+
+    // e.g. "SLOW 9/118: layout 78% (14.2ms)": slow frames this tick, and the stage that was the
+    // longest in most of them, with its mean duration in those frames.
+    private void updateFrameStages(StatsCollector.Sample sample) {
+        FrameStageStats.Summary stages = sample.frameStages;
+        if (stages.frames == 0) return;
+
+        StringBuilder text = new StringBuilder("SLOW ").append(stages.slowFrames).append('/').append(stages.frames);
+        int dominant = stages.dominantSlowStage;
+        if (dominant >= 0) {
+            text.append(": ").append(FrameStageStats.STAGE_NAMES[dominant]).append(' ')
+                    .append(Math.round(stages.dominantSlowShare * 100)).append("% (")
+                    .append(Math.round(stages.slowMeanStageMs[dominant] * 10) / 10.0).append("ms)");
+        }
+        stagesTv.setText(text);
+    }
+
+    private void updateThreads(StatsCollector.Sample sample) {
+        StringBuilder text = new StringBuilder("THR: ").append(sample.threadCount);
+        for (int i = 0; i < sample.threadGroupCount; i++) {
+            text.append(i == 0 ? " (" : ", ")
+                    .append(sample.threadGroupNames[i]).append(' ')
+                    .append(sample.threadGroupCounts[i]);
+        }
+        if (sample.threadGroupCount > 0) text.append(')');
+        threadTv.setText(text);
+    }
+
+    private void updateNetworkLatency(StatsCollector.Sample sample) {
+        EndpointStatsRegistry.Summary overall = sample.networkOverall;
+        if (overall.calls == 0) return;
+
+        StringBuilder text = new StringBuilder("NET p50/95/99: ")
+                .append(Math.round(overall.p50Ms)).append('/')
+                .append(Math.round(overall.p95Ms)).append('/')
+                .append(Math.round(overall.p99Ms)).append("ms, err ")
+                .append(Math.round(overall.errorRate * 100)).append('%');
+        for (int i = 0; i < sample.networkTopHostCount; i++) {
+            EndpointStatsRegistry.Summary host = sample.networkTopHosts[i];
+            text.append("\n  ").append(host.name).append(' ')
+                    .append(Math.round(host.p50Ms)).append('/')
+                    .append(Math.round(host.p95Ms)).append('/').append(Math.round(host.p99Ms))
+                    .append("ms err ").append(Math.round(host.errorRate * 100)).append('%');
+        }
+        netLatencyTv.setText(text);
+    }
 
     static void attachToActivity(Activity activity,
                                  boolean showFps,
@@ -131,16 +246,30 @@ class OverlayView extends FrameLayout {
                 LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT);
         lp.gravity = Gravity.TOP | Gravity.START;
         root.addView(v, lp);
-        StatsCollector.registerOverlay(v);
     }
 
-    void addNetworkLog(String log) {
-        TextView tv = makeText(log);
-        tv.setTextColor(Color.GREEN);
-        logContainer.addView(tv);
+    @Override
+    public void onNetworkLogChanged() {
+        logView.onLogChanged();
+    }
+
+    /**
+     * Filters the log by host (exact or parent domain, null for any) and NetworkLogBuffer status filter.
+     */
+    void setNetworkFilter(String host, int statusFilter) {
+        logView.setFilter(host, statusFilter);
+        updateFilterLabel();
+    }
+
+    private void cycleStatusFilter() {
+        int next = (logView.getStatusFilter() + 1) % NetworkLogBuffer.FILTER_COUNT;
+        setNetworkFilter(logView.getHostFilter(), next);
+    }
 
-        // Auto-scroll to bottom
-        main.post(() -> logScroll.fullScroll(ScrollView.FOCUS_DOWN));
+    private void updateFilterLabel() {
+        String host = logView.getHostFilter();
+        filterBtn.setText("Filter: " + STATUS_FILTER_LABELS[logView.getStatusFilter()]
+                + (host != null ? " · " + host : ""));
     }
 
     private int dpToPx(int dp) {
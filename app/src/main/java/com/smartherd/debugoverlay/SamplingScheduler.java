@@ -0,0 +1,208 @@
+package com.smartherd.debugoverlay;
+
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * Runs a collector's metric sources, each at its own rate, from one thread and as few wakeups as
+ * possible, within a CPU budget.
+ *
+ * Every source has a base interval. runDue() runs each source that is due, and also each source
+ * due within the coalescing window, so sources whose ticks fall close together share one wakeup
+ * instead of waking the thread one after another; it returns when the next wakeup is needed.
+ *
+ * The scheduler times every source with the thread's CPU clock. Over each budget window it compares
+ * the time spent with its budget (1% of one core by default). A window lasts BUDGET_WINDOW_MS, or
+ * longer while the slowest adaptive source is slowed down beyond that, so every window sees each
+ * source run at least once. When the sources go over the budget, or the
+ * device is reported busy, the adaptive sources (the expensive ones, marked when added) run at
+ * half the rate, then a quarter, down to 1/MAX_SLOWDOWN. Once usage is back below half the budget
+ * and the device is no longer busy, they speed up again one step per window. The other sources
+ * (FPS, process CPU, ...) always keep their rate.
+ *
+ * Threading: add() before the first runDue(); runDue() and reset() on the sampling thread; the
+ * setters and readers from any thread.
+ */
+final class SamplingScheduler {
+
+    static final double DEFAULT_BUDGET_PERCENT = 1.0;
+    static final long DEFAULT_COALESCE_MS = 100;
+    static final int MAX_SLOWDOWN = 8;
+    static final long BUDGET_WINDOW_MS = 5_000;
+
+    private final LongSupplier threadCpuClock;
+    private final long coalesceMs;
+
+    // --- Sources (parallel arrays, first `count` used) ---
+    private String[] names = new String[8];
+    private long[] intervalsMs = new long[8];
+    private boolean[] adaptive = new boolean[8];
+    private Runnable[] tasks = new Runnable[8];
+    private long[] nextDueMs = new long[8];
+    private long[] runs = new long[8];
+    private long[] costNs = new long[8];
+    private int count = 0;
+    private long maxAdaptiveIntervalMs = 0;
+
+    // --- Budget ---
+    private volatile double budgetPercent = DEFAULT_BUDGET_PERCENT;
+    private volatile boolean deviceBusy = false;
+    private volatile int slowdown = 1;
+    private volatile double overheadPercent = 0.0;
+    private long windowStartMs = -1;
+    private long windowCostNs = 0;
+    private long wakeups = 0;
+
+    /**
+     * @param threadCpuClock CPU time of the calling thread in nanoseconds (e.g. Debug::threadCpuTimeNanos).
+     */
+    SamplingScheduler(LongSupplier threadCpuClock) {
+        this(threadCpuClock, DEFAULT_COALESCE_MS);
+    }
+
+    SamplingScheduler(LongSupplier threadCpuClock, long coalesceMs) {
+        this.threadCpuClock = threadCpuClock;
+        this.coalesceMs = coalesceMs;
+    }
+
+    /**
+     * Registers a source. Sources due in the same wakeup run in the order they were added.
+     *
+     * @param adaptive whether the source may be slowed down to stay within the budget.
+     * @return the source's index, for the per-source readers.
+     */
+    int add(String name, long intervalMs, boolean adaptive, Runnable task) {
+        if (count == names.length) {
+            int size = count * 2;
+            names = Arrays.copyOf(names, size);
+            intervalsMs = Arrays.copyOf(intervalsMs, size);
+            this.adaptive = Arrays.copyOf(this.adaptive, size);
+            tasks = Arrays.copyOf(tasks, size);
+            nextDueMs = Arrays.copyOf(nextDueMs, size);
+            runs = Arrays.copyOf(runs, size);
+            costNs = Arrays.copyOf(costNs, size);
+        }
+        names[count] = name;
+        intervalsMs[count] = Math.max(1, intervalMs);
+        this.adaptive[count] = adaptive;
+        tasks[count] = task;
+        nextDueMs[count] = 0;
+        if (adaptive) maxAdaptiveIntervalMs = Math.max(maxAdaptiveIntervalMs, intervalsMs[count]);
+        return count++;
+    }
+
+    /**
+     * Makes every source due at {@code firstDueMs} and restarts the budget window, e.g. when
+     * sampling resumes. Sampling thread only.
+     */
+    void reset(long firstDueMs) {
+        for (int i = 0; i < count; i++) {
+            nextDueMs[i] = firstDueMs;
+        }
+        windowStartMs = -1;
+        windowCostNs = 0;
+    }
+
+    // --- Running ---
+
+    /**
+     * Runs every source due by {@code nowMs} plus the coalescing window. Sampling thread only.
+     *
+     * @return when the next source is due, on the same clock as {@code nowMs}.
+     */
+    long runDue(long nowMs) {
+        if (windowStartMs < 0) windowStartMs = nowMs;
+        wakeups++;
+        int currentSlowdown = slowdown;
+        long nextMs = Long.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            if (nextDueMs[i] <= nowMs + coalesceMs) {
+                long startNs = threadCpuClock.getAsLong();
+                tasks[i].run();
+                long spentNs = Math.max(0, threadCpuClock.getAsLong() - startNs);
+                costNs[i] += spentNs;
+                windowCostNs += spentNs;
+                runs[i]++;
+                nextDueMs[i] = nowMs + (adaptive[i] ? intervalsMs[i] * currentSlowdown : intervalsMs[i]);
+            }
+            nextMs = Math.min(nextMs, nextDueMs[i]);
+        }
+        if (nowMs - windowStartMs >= Math.max(BUDGET_WINDOW_MS, maxAdaptiveIntervalMs * currentSlowdown)) {
+            endBudgetWindow(nowMs);
+        }
+        return nextMs;
+    }
+
+    private void endBudgetWindow(long nowMs) {
+        double percent = windowCostNs / 1_000_000.0 * 100.0 / (nowMs - windowStartMs);
+        overheadPercent = percent;
+        double budget = budgetPercent;
+        int current = slowdown;
+        if ((percent > budget || deviceBusy) && current < MAX_SLOWDOWN) {
+            slowdown = current * 2;
+        } else if (percent < budget / 2 && !deviceBusy && current > 1) {
+            slowdown = current / 2;
+        }
+        windowStartMs = nowMs;
+        windowCostNs = 0;
+    }
+
+    // --- Budget ---
+
+    /**
+     * Sets the CPU budget for all sources together, in percent of one core. Any thread.
+     */
+    void setBudgetPercent(double percent) {
+        budgetPercent = Math.max(0.01, percent);
+    }
+
+    double getBudgetPercent() {
+        return budgetPercent;
+    }
+
+    /**
+     * Reports whether the device is under load; adaptive sources slow down while it is. Any thread.
+     */
+    void setDeviceBusy(boolean busy) {
+        deviceBusy = busy;
+    }
+
+    /**
+     * Current rate divisor of the adaptive sources: 1 (full rate) to MAX_SLOWDOWN.
+     */
+    int getSlowdown() {
+        return slowdown;
+    }
+
+    /**
+     * CPU spent by all sources over the last complete budget window, in percent of one core.
+     */
+    double getOverheadPercent() {
+        return overheadPercent;
+    }
+
+    // --- Per-Source Readers (sampling thread) ---
+
+    int getSourceCount() {
+        return count;
+    }
+
+    String getName(int source) {
+        return names[source];
+    }
+
+    long getRuns(int source) {
+        return runs[source];
+    }
+
+    /**
+     * CPU time the source has spent since it was added, in nanoseconds.
+     */
+    long getCostNs(int source) {
+        return costNs[source];
+    }
+
+    long getWakeups() {
+        return wakeups;
+    }
+}
@@ -0,0 +1,345 @@
+package com.smartherd.debugoverlay;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Appends overlay data to compact, size-rotated binary session files (".dovr") so a jank report
+ * can be analysed after the fact; SessionTraceExporter turns them into Chrome/Perfetto trace JSON.
+ *
+ * Format (integers are LEB128 varints, signed ones zigzag-encoded; times are microseconds on the
+ * System.nanoTime() clock):
+ *   header   "DOVR", version byte, wall-clock ms and monotonic ns at file start (8 bytes each, big-endian)
+ *   records  tag byte, signed time delta from the previous record's time, then per tag:
+ *     FRAMES   frame count, then for each frame the signed change of its interval from the previous
+ *              frame's. The record time is the first frame's end; each later frame ends one interval
+ *              after the one before it (a gap starts a new record).
+ *     SAMPLE   one StatsData sample; running counters are written as deltas from the previous sample.
+ *     OVERHEAD the overlay's own cost at the same sample (version 2): component count, then per
+ *              OverheadMeter component CPU (1/100 % of a core), main-thread time (µs per second)
+ *              and signed allocations (1/10 KB per second, -1 if not counted).
+ *     NETWORK  route string id, signed status code, duration. The record time is the call's end.
+ *     STRING   id, UTF-8 byte length, bytes. Defines an id for later NETWORK records.
+ *
+ * Each file is self-contained (own header, string table and delta state), so rotated files can be
+ * deleted or exported on their own. At 120Hz a frame costs 1-2 bytes: an hour is well under 1MB.
+ *
+ * Not thread-safe. DebugStatsCollector drives it from its sampler thread, so the main thread never
+ * does I/O; records go through a reused direct buffer to a FileChannel, written out when full.
+ */
+final class SessionRecorder {
+
+    static final byte[] MAGIC = {'D', 'O', 'V', 'R'};
+    static final int VERSION = 2;
+    // Oldest version SessionTraceExporter still reads (no OVERHEAD records).
+    static final int MIN_VERSION = 1;
+    static final String FILE_PREFIX = "session-";
+    static final String FILE_SUFFIX = ".dovr";
+
+    static final int TAG_FRAMES = 1;
+    static final int TAG_SAMPLE = 2;
+    static final int TAG_NETWORK = 3;
+    static final int TAG_STRING = 4;
+    static final int TAG_OVERHEAD = 5;
+
+    // String id used once the table is full; exported as "(other)".
+    static final int OVERFLOW_STRING_ID = 0;
+    private static final int MAX_STRINGS = 4096;
+    private static final int MAX_STRING_BYTES = 256;
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+    // Frames per FRAMES record, so one record always fits the buffer.
+    private static final int MAX_FRAMES_PER_RECORD = 1024;
+    private static final int MAX_VARINT_BYTES = 10;
+
+    private final File directory;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final String sessionName;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final ArrayDeque<File> files = new ArrayDeque<>();
+    private int fileIndex = 0;
+
+    // --- Per-file State ---
+    private FileChannel channel;
+    private long fileBytes;
+    private long startWallMs;
+    private long startMonoNs;
+    private long lastTimeUs;
+    private long lastIntervalUs;
+    private final HashMap<String, Integer> stringIds = new HashMap<>();
+    private final DebugStatsCollector.StatsData previousSample = new DebugStatsCollector.StatsData();
+
+    private long totalBytes = 0;
+
+    /**
+     * Creates the directory if needed and opens the first file.
+     *
+     * @param maxFileBytes size at which the current file is closed and a new one started.
+     * @param maxFiles     files of this session kept on disk; the oldest is deleted beyond that.
+     */
+    SessionRecorder(File directory, long maxFileBytes, int maxFiles) throws IOException {
+        this(directory, maxFileBytes, maxFiles, FILE_PREFIX + System.currentTimeMillis(),
+                System.currentTimeMillis(), System.nanoTime());
+    }
+
+    /**
+     * Like the above, but for data that was captured earlier (e.g. a FlightRecorder window): files
+     * are named {@code sessionName}-NNN.dovr, and the first one starts at the given wall-clock and
+     * System.nanoTime() instant instead of now.
+     */
+    SessionRecorder(File directory, long maxFileBytes, int maxFiles, String sessionName,
+                    long startWallMs, long startMonoNs) throws IOException {
+        if (maxFileBytes < BUFFER_BYTES || maxFiles < 1) {
+            throw new IllegalArgumentException("maxFileBytes must be >= " + BUFFER_BYTES + " and maxFiles >= 1");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        this.directory = directory;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+        this.sessionName = sessionName;
+        openNextFile(startWallMs, startMonoNs);
+    }
+
+    // --- Recording ---
+
+    /**
+     * Appends frames, oldest first, as drained from FrameIntervalBuffer.copyFrames().
+     */
+    void recordFrames(long[] intervalsNs, long[] frameTimesNs, int count) throws IOException {
+        recordFrames(intervalsNs, frameTimesNs, 0, count);
+    }
+
+    /**
+     * Appends {@code count} frames starting at {@code offset} of the arrays, oldest first.
+     */
+    void recordFrames(long[] intervalsNs, long[] frameTimesNs, int offset, int count) throws IOException {
+        int end = offset + count;
+        int batchStart = offset;
+        for (int i = offset + 1; i <= end; i++) {
+            // Split at gaps (lost frames, resume after background) and to bound the record size.
+            boolean split = i == end
+                    || i - batchStart == MAX_FRAMES_PER_RECORD
+                    || (frameTimesNs[i] != 0 && frameTimesNs[i] - frameTimesNs[i - 1] != intervalsNs[i]);
+            if (split) {
+                writeFrameBatch(intervalsNs, frameTimesNs, batchStart, i - batchStart);
+                batchStart = i;
+            }
+        }
+        rotateIfFull();
+    }
+
+    private void writeFrameBatch(long[] intervalsNs, long[] frameTimesNs, int offset, int count) throws IOException {
+        ensureCapacity(2 + MAX_VARINT_BYTES * (count + 2));
+        beginRecord(TAG_FRAMES, frameTimesNs[offset] / 1_000);
+        writeVarint(count);
+        for (int i = offset; i < offset + count; i++) {
+            long intervalUs = intervalsNs[i] / 1_000;
+            writeSignedVarint(intervalUs - lastIntervalUs);
+            lastIntervalUs = intervalUs;
+        }
+    }
+
+    /**
+     * Appends one published sample, taken at {@code nowNanos} (System.nanoTime()).
+     */
+    void recordSample(DebugStatsCollector.StatsData data, long nowNanos) throws IOException {
+        ensureCapacity(2 + MAX_VARINT_BYTES * 20);
+        beginRecord(TAG_SAMPLE, nowNanos / 1_000);
+        DebugStatsCollector.StatsData previous = previousSample;
+        writeVarint(Math.max(0, data.fps));
+        writeVarint(Math.round(data.refreshRateHz * 100));
+        writeVarint(toMicros(data.frameTimeP50Ms));
+        writeVarint(toMicros(data.frameTimeP90Ms));
+        writeVarint(toMicros(data.frameTimeP99Ms));
+        writeSignedVarint(data.droppedFrameCount - previous.droppedFrameCount);
+        writeSignedVarint(data.slowFrameCount - previous.slowFrameCount);
+        writeSignedVarint(data.frozenFrameCount - previous.frozenFrameCount);
+        writeVarint(Math.max(0, data.usedMemoryMB));
+        writeVarint(Math.round(Math.max(0, data.cpuUsage) * 10));
+        writeSignedVarint(data.threadCount);
+        writeSignedVarint(data.networkCallCount - previous.networkCallCount);
+        writeVarint(toMicros(data.networkOverall.p50Ms));
+        writeVarint(toMicros(data.networkOverall.p95Ms));
+        writeVarint(toMicros(data.networkOverall.p99Ms));
+        writeVarint(Math.round(data.networkOverall.errorRate * 10_000));
+
+        previous.droppedFrameCount = data.droppedFrameCount;
+        previous.slowFrameCount = data.slowFrameCount;
+        previous.frozenFrameCount = data.frozenFrameCount;
+        previous.networkCallCount = data.networkCallCount;
+
+        ensureCapacity(2 + MAX_VARINT_BYTES * (2 + 3 * OverheadMeter.COMPONENT_COUNT));
+        beginRecord(TAG_OVERHEAD, nowNanos / 1_000);
+        writeVarint(OverheadMeter.COMPONENT_COUNT);
+        for (int i = 0; i < OverheadMeter.COMPONENT_COUNT; i++) {
+            writeVarint(Math.round(Math.max(0, data.overheadCpuPercent[i]) * 100));
+            writeVarint(Math.round(Math.max(0, data.overheadMainThreadMsPerSec[i]) * 1_000));
+            writeSignedVarint(data.overheadAllocKbPerSec[i] >= 0 ? Math.round(data.overheadAllocKbPerSec[i] * 10) : -1);
+        }
+        // After updating the deltas: a new file restarts them from zero.
+        rotateIfFull();
+    }
+
+    /**
+     * Appends one finished request from the collector's network log.
+     */
+    void recordNetwork(NetworkLogBuffer.Entry entry) throws IOException {
+        String route = EndpointStatsRegistry.routeKey(
+                entry.method != null ? entry.method : "?",
+                entry.host != null ? entry.host : "?",
+                entry.path != null ? entry.path : "");
+        int routeId = stringId(route);
+
+        // The log keeps wall-clock end times; map them onto the monotonic timeline of this file.
+        long endUs = startMonoNs / 1_000 + (entry.timestampMs - startWallMs) * 1_000;
+        ensureCapacity(2 + MAX_VARINT_BYTES * 4);
+        beginRecord(TAG_NETWORK, endUs);
+        writeVarint(routeId);
+        writeSignedVarint(entry.statusCode);
+        writeVarint(Math.max(0, entry.durationMs) * 1_000);
+        rotateIfFull();
+    }
+
+    private int stringId(String value) throws IOException {
+        Integer id = stringIds.get(value);
+        if (id != null) return id;
+        if (stringIds.size() >= MAX_STRINGS) return OVERFLOW_STRING_ID;
+
+        int newId = stringIds.size() + 1;
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, MAX_STRING_BYTES);
+        // Cut before a character, not inside one: back up over UTF-8 continuation bytes (10xxxxxx).
+        while (length > 0 && length < bytes.length && (bytes[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        ensureCapacity(2 + MAX_VARINT_BYTES * 3 + length);
+        beginRecord(TAG_STRING, lastTimeUs);
+        writeVarint(newId);
+        writeVarint(length);
+        buffer.put(bytes, 0, length);
+        stringIds.put(value, newId);
+        return newId;
+    }
+
+    private static long toMicros(double millis) {
+        return Math.max(0, Math.round(millis * 1_000));
+    }
+
+    // --- Encoding ---
+
+    private void beginRecord(int tag, long timeUs) {
+        buffer.put((byte) tag);
+        writeSignedVarint(timeUs - lastTimeUs);
+        lastTimeUs = timeUs;
+    }
+
+    // Called after each complete logical entry, so a STRING and the record using it share a file.
+    private void rotateIfFull() throws IOException {
+        if (fileBytes + buffer.position() >= maxFileBytes) {
+            rotate();
+        }
+    }
+
+    private void writeVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private void writeSignedVarint(long value) {
+        writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    private void ensureCapacity(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes buffered records to the current file.
+     */
+    void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            int written = channel.write(buffer);
+            fileBytes += written;
+            totalBytes += written;
+        }
+        buffer.clear();
+    }
+
+    // --- Files ---
+
+    private void openNextFile(long startWallMs, long startMonoNs) throws IOException {
+        File file = new File(directory,
+                String.format(Locale.US, "%s-%03d%s", sessionName, fileIndex++, FILE_SUFFIX));
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        channel.truncate(0);
+        files.addLast(file);
+        while (files.size() > maxFiles) {
+            //noinspection ResultOfMethodCallIgnored
+            files.removeFirst().delete();
+        }
+
+        fileBytes = 0;
+        this.startWallMs = startWallMs;
+        this.startMonoNs = startMonoNs;
+        lastTimeUs = startMonoNs / 1_000;
+        lastIntervalUs = 0;
+        stringIds.clear();
+        previousSample.droppedFrameCount = 0;
+        previousSample.slowFrameCount = 0;
+        previousSample.frozenFrameCount = 0;
+        previousSample.networkCallCount = 0;
+
+        buffer.put(MAGIC);
+        buffer.put((byte) VERSION);
+        buffer.putLong(startWallMs);
+        buffer.putLong(startMonoNs);
+    }
+
+    private void rotate() throws IOException {
+        flush();
+        channel.close();
+        openNextFile(System.currentTimeMillis(), System.nanoTime());
+    }
+
+    /**
+     * Flushes and closes the current file. The recorder can't be used afterwards.
+     */
+    void close() throws IOException {
+        if (channel == null) return;
+        try {
+            flush();
+        } finally {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Files of this session still on disk, oldest first.
+     */
+    List<File> files() {
+        return new ArrayList<>(files);
+    }
+
+    long totalBytesWritten() {
+        return totalBytes + buffer.position();
+    }
+}
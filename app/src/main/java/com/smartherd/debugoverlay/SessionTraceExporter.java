@@ -0,0 +1,282 @@
+package com.smartherd.debugoverlay;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Converts session files written by SessionRecorder into Chrome trace-event JSON, which opens in
+ * ui.perfetto.dev and chrome://tracing.
+ *
+ * - Every frame becomes a slice on a "Frames" track: "Janky frame" if it spanned more than one
+ *   vsync at the last sampled refresh rate (as in the dropped-frame count), "Frozen frame" above
+ *   700ms. Jank then lines up with everything else on the timeline.
+ * - Every request becomes a slice on a "Network" track, named by its route.
+ * - Sampled values (FPS, frame-time percentiles, memory, CPU, threads, network latency) become
+ *   counter tracks, as does the overlay's own overhead per component (CPU, main-thread time and,
+ *   if counted, allocations).
+ *
+ * Timestamps are microseconds since the start of the first file passed in.
+ */
+public final class SessionTraceExporter {
+
+    private static final int PID = 1;
+    private static final int TID_FRAMES = 1;
+    private static final int TID_NETWORK = 2;
+
+    private final Writer out;
+    private long baseUs = -1;
+    private boolean firstEvent = true;
+
+    private SessionTraceExporter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes one trace covering {@code sessionFiles}, which must be in recording order
+     * (e.g. SessionRecorder.files() or the recording directory sorted by name).
+     */
+    public static void export(List<File> sessionFiles, Writer out) throws IOException {
+        SessionTraceExporter exporter = new SessionTraceExporter(out);
+        out.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+        exporter.writeMetadata();
+        for (File file : sessionFiles) {
+            exporter.exportFile(file);
+        }
+        out.write("]}\n");
+        out.flush();
+    }
+
+    private void writeMetadata() throws IOException {
+        beginEvent().append("\"name\":\"process_name\",\"ph\":\"M\",\"pid\":").append(PID)
+                .append(",\"args\":{\"name\":\"DebugOverlay session\"}");
+        endEvent();
+        writeThreadName(TID_FRAMES, "Frames");
+        writeThreadName(TID_NETWORK, "Network");
+    }
+
+    private void writeThreadName(int tid, String name) throws IOException {
+        beginEvent().append("\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":").append(PID)
+                .append(",\"tid\":").append(tid)
+                .append(",\"args\":{\"name\":\"").append(name).append("\"}");
+        endEvent();
+    }
+
+    // --- Decoding ---
+
+    private void exportFile(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            byte[] magic = new byte[SessionRecorder.MAGIC.length];
+            in.readFully(magic);
+            for (int i = 0; i < magic.length; i++) {
+                if (magic[i] != SessionRecorder.MAGIC[i]) {
+                    throw new IOException(file + " is not a session file");
+                }
+            }
+            int version = in.readUnsignedByte();
+            if (version < SessionRecorder.MIN_VERSION || version > SessionRecorder.VERSION) {
+                throw new IOException(file + " has unsupported version " + version);
+            }
+            in.readLong(); // wall-clock start, not needed on a relative timeline
+            long startMonoUs = in.readLong() / 1_000;
+            if (baseUs < 0) {
+                baseUs = startMonoUs;
+            }
+
+            FileState state = new FileState(startMonoUs);
+            int tag;
+            while ((tag = in.read()) >= 0) {
+                state.timeUs += readSignedVarint(in);
+                switch (tag) {
+                    case SessionRecorder.TAG_FRAMES: readFrames(in, state); break;
+                    case SessionRecorder.TAG_SAMPLE: readSample(in, state); break;
+                    case SessionRecorder.TAG_NETWORK: readNetwork(in, state); break;
+                    case SessionRecorder.TAG_STRING: readString(in, state); break;
+                    case SessionRecorder.TAG_OVERHEAD: readOverhead(in, state); break;
+                    default: throw new IOException(file + " has unknown record tag " + tag);
+                }
+            }
+        }
+    }
+
+    // Decoder state; restarts with every file, like the recorder's.
+    private static final class FileState {
+        long timeUs;
+        long lastIntervalUs = 0;
+        // From the latest sample; the 60Hz default covers frames recorded before the first one.
+        long refreshPeriodUs = FrameIntervalBuffer.DEFAULT_REFRESH_PERIOD_NS / 1_000;
+        final List<String> strings = new ArrayList<>();
+
+        FileState(long startUs) {
+            timeUs = startUs;
+            strings.add("(other)"); // SessionRecorder.OVERFLOW_STRING_ID
+        }
+    }
+
+    private void readFrames(DataInputStream in, FileState state) throws IOException {
+        long count = readVarint(in);
+        long endUs = state.timeUs;
+        for (long i = 0; i < count; i++) {
+            long intervalUs = state.lastIntervalUs + readSignedVarint(in);
+            state.lastIntervalUs = intervalUs;
+            if (i > 0) endUs += intervalUs;
+
+            long spannedVsyncs = (intervalUs + state.refreshPeriodUs / 2) / state.refreshPeriodUs;
+            String name = intervalUs * 1_000 > FrameIntervalBuffer.FROZEN_FRAME_THRESHOLD_NS ? "Frozen frame"
+                    : spannedVsyncs > 1 ? "Janky frame"
+                    : "Frame";
+            beginEvent().append("\"name\":\"").append(name).append("\",\"cat\":\"frame\",\"ph\":\"X\",\"ts\":")
+                    .append(endUs - intervalUs - baseUs).append(",\"dur\":").append(intervalUs)
+                    .append(",\"pid\":").append(PID).append(",\"tid\":").append(TID_FRAMES);
+            endEvent();
+        }
+    }
+
+    private void readSample(DataInputStream in, FileState state) throws IOException {
+        long fps = readVarint(in);
+        long refreshCentiHz = readVarint(in);
+        long p50Us = readVarint(in);
+        long p90Us = readVarint(in);
+        long p99Us = readVarint(in);
+        readSignedVarint(in); // dropped frames since previous sample
+        readSignedVarint(in); // slow frames since previous sample
+        readSignedVarint(in); // frozen frames since previous sample
+        long memoryMb = readVarint(in);
+        long cpuPermille = readVarint(in);
+        long threads = readSignedVarint(in);
+        readSignedVarint(in); // calls since previous sample
+        long netP50Us = readVarint(in);
+        long netP95Us = readVarint(in);
+        long netP99Us = readVarint(in);
+        readVarint(in); // error rate, 1/10000
+
+        if (refreshCentiHz > 0) {
+            state.refreshPeriodUs = 100_000_000L / refreshCentiHz;
+        }
+        long ts = state.timeUs - baseUs;
+        writeCounter(ts, "FPS", "fps", fps, "refresh_hz", refreshCentiHz / 100.0);
+        writeCounter(ts, "Frame time (ms)", "p50", p50Us / 1_000.0, "p90", p90Us / 1_000.0, "p99", p99Us / 1_000.0);
+        writeCounter(ts, "Memory (MB)", "pss", memoryMb);
+        writeCounter(ts, "CPU (%)", "cpu", cpuPermille / 10.0);
+        if (threads >= 0) {
+            writeCounter(ts, "Threads", "threads", threads);
+        }
+        writeCounter(ts, "Network latency (ms)", "p50", netP50Us / 1_000.0, "p95", netP95Us / 1_000.0, "p99", netP99Us / 1_000.0);
+    }
+
+    private void readOverhead(DataInputStream in, FileState state) throws IOException {
+        int count = (int) readVarint(in);
+        Object[] cpu = new Object[2 * count];
+        Object[] mainThread = new Object[2 * count];
+        Object[] alloc = new Object[2 * count];
+        int allocCount = 0;
+        for (int i = 0; i < count; i++) {
+            String name = i < OverheadMeter.COMPONENT_NAMES.length ? OverheadMeter.COMPONENT_NAMES[i] : "component" + i;
+            cpu[2 * i] = name;
+            cpu[2 * i + 1] = readVarint(in) / 100.0;
+            mainThread[2 * i] = name;
+            mainThread[2 * i + 1] = readVarint(in) / 1_000.0;
+            long allocDeciKb = readSignedVarint(in);
+            if (allocDeciKb >= 0) {
+                alloc[2 * allocCount] = name;
+                alloc[2 * allocCount + 1] = allocDeciKb / 10.0;
+                allocCount++;
+            }
+        }
+        long ts = state.timeUs - baseUs;
+        writeCounter(ts, "Overlay CPU (%)", cpu);
+        writeCounter(ts, "Overlay main thread (ms/s)", mainThread);
+        if (allocCount > 0) {
+            writeCounter(ts, "Overlay allocations (KB/s)", Arrays.copyOf(alloc, 2 * allocCount));
+        }
+    }
+
+    private void readNetwork(DataInputStream in, FileState state) throws IOException {
+        int routeId = (int) readVarint(in);
+        long status = readSignedVarint(in);
+        long durationUs = readVarint(in);
+        String route = routeId < state.strings.size() ? state.strings.get(routeId) : "(unknown)";
+
+        StringBuilder event = beginEvent().append("\"name\":\"");
+        appendEscaped(event, route);
+        event.append("\",\"cat\":\"network\",\"ph\":\"X\",\"ts\":").append(state.timeUs - durationUs - baseUs)
+                .append(",\"dur\":").append(durationUs)
+                .append(",\"pid\":").append(PID).append(",\"tid\":").append(TID_NETWORK)
+                .append(",\"args\":{\"status\":").append(status).append('}');
+        endEvent();
+    }
+
+    private static void readString(DataInputStream in, FileState state) throws IOException {
+        int id = (int) readVarint(in);
+        byte[] bytes = new byte[(int) readVarint(in)];
+        in.readFully(bytes);
+        while (state.strings.size() <= id) {
+            state.strings.add(null);
+        }
+        state.strings.set(id, new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    static long readVarint(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) throw new EOFException("Truncated varint");
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    static long readSignedVarint(DataInputStream in) throws IOException {
+        long raw = readVarint(in);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    // --- JSON Output ---
+
+    private final StringBuilder event = new StringBuilder(256);
+
+    private StringBuilder beginEvent() {
+        event.setLength(0);
+        if (!firstEvent) event.append(',');
+        firstEvent = false;
+        return event.append("\n{");
+    }
+
+    private void endEvent() throws IOException {
+        event.append('}');
+        out.append(event);
+    }
+
+    private void writeCounter(long ts, String name, Object... keyValues) throws IOException {
+        StringBuilder e = beginEvent().append("\"name\":\"").append(name)
+                .append("\",\"ph\":\"C\",\"ts\":").append(ts).append(",\"pid\":").append(PID).append(",\"args\":{");
+        for (int i = 0; i + 1 < keyValues.length; i += 2) {
+            if (i > 0) e.append(',');
+            e.append('"').append(keyValues[i]).append("\":").append(keyValues[i + 1]);
+        }
+        e.append('}');
+        endEvent();
+    }
+
+    private static void appendEscaped(StringBuilder sb, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.smartherd.debugoverlay;
+
+/**
+ * Min, max, mean and rate of change of a sampled value over the last {@code windowMs}, kept up to
+ * date in O(1) amortized per sample instead of rescanning the history:
+ *
+ * - Samples live in a preallocated ring of (time, value) pairs; those older than the window are
+ *   evicted from the front as time moves on.
+ * - A running sum gives the mean.
+ * - Two monotonic deques of sample sequence numbers give the minimum and maximum: each new sample
+ *   drops the ones it dominates from the back, eviction pops the front, so every sample is pushed
+ *   and popped at most once.
+ *
+ * If samples arrive faster than the ring holds, the oldest are dropped early and the window is
+ * effectively shorter. Not thread-safe: one thread adds and reads.
+ */
+final class SlidingWindow {
+
+    private final long windowMs;
+    private final int capacity;
+    private final long[] times;
+    private final double[] values;
+    // Sequence numbers of the oldest retained sample and of the next one to be added.
+    private long first = 0;
+    private long next = 0;
+    private double sum = 0;
+
+    // --- Monotonic Deques (rings of sequence numbers) ---
+    // Values increase from head to tail in minQueue and decrease in maxQueue.
+    private final long[] minQueue;
+    private int minHead = 0;
+    private int minSize = 0;
+    private final long[] maxQueue;
+    private int maxHead = 0;
+    private int maxSize = 0;
+
+    SlidingWindow(long windowMs, int capacity) {
+        if (windowMs <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("windowMs and capacity must be > 0");
+        }
+        this.windowMs = windowMs;
+        this.capacity = capacity;
+        times = new long[capacity];
+        values = new double[capacity];
+        minQueue = new long[capacity];
+        maxQueue = new long[capacity];
+    }
+
+    long windowMs() {
+        return windowMs;
+    }
+
+    /**
+     * Adds the sample {@code value} taken at {@code timeMs} (non-decreasing between calls) and
+     * evicts everything that fell out of the window.
+     */
+    void add(long timeMs, double value) {
+        evict(timeMs);
+        if (next - first == capacity) {
+            removeOldest();
+        }
+        int slot = slot(next);
+        times[slot] = timeMs;
+        values[slot] = value;
+        sum += value;
+
+        while (minSize > 0 && values[slot(minQueue[(minHead + minSize - 1) % capacity])] >= value) {
+            minSize--;
+        }
+        minQueue[(minHead + minSize) % capacity] = next;
+        minSize++;
+        while (maxSize > 0 && values[slot(maxQueue[(maxHead + maxSize - 1) % capacity])] <= value) {
+            maxSize--;
+        }
+        maxQueue[(maxHead + maxSize) % capacity] = next;
+        maxSize++;
+        next++;
+    }
+
+    /**
+     * Drops the samples taken at or before {@code nowMs - windowMs}.
+     */
+    void evict(long nowMs) {
+        long cutoff = nowMs - windowMs;
+        while (next > first && times[slot(first)] <= cutoff) {
+            removeOldest();
+        }
+    }
+
+    void clear() {
+        first = next;
+        sum = 0;
+        minSize = 0;
+        maxSize = 0;
+    }
+
+    int size() {
+        return (int) (next - first);
+    }
+
+    // The getters below are only meaningful while size() > 0.
+
+    double min() {
+        return values[slot(minQueue[minHead])];
+    }
+
+    double max() {
+        return values[slot(maxQueue[maxHead])];
+    }
+
+    double mean() {
+        return sum / size();
+    }
+
+    long oldestTimeMs() {
+        return times[slot(first)];
+    }
+
+    long newestTimeMs() {
+        return times[slot(next - 1)];
+    }
+
+    /**
+     * Change from the oldest to the newest sample, per minute (NaN with fewer than two samples or
+     * no time between them).
+     */
+    double ratePerMinute() {
+        long elapsedMs = newestTimeMs() - oldestTimeMs();
+        if (size() < 2 || elapsedMs <= 0) return Double.NaN;
+        return (values[slot(next - 1)] - values[slot(first)]) * 60_000.0 / elapsedMs;
+    }
+
+    private void removeOldest() {
+        sum -= values[slot(first)];
+        if (minSize > 0 && minQueue[minHead] == first) {
+            minHead = (minHead + 1) % capacity;
+            minSize--;
+        }
+        if (maxSize > 0 && maxQueue[maxHead] == first) {
+            maxHead = (maxHead + 1) % capacity;
+            maxSize--;
+        }
+        first++;
+        if (first == next) {
+            // Empty: drop accumulated rounding error along with the samples.
+            sum = 0;
+        }
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % capacity);
+    }
+}
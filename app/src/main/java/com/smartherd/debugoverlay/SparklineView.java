@@ -0,0 +1,255 @@
+package com.smartherd.debugoverlay;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Typeface;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.View;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Rolling sparklines of FPS, CPU and Java heap under the overlay's current values, so a spike that
+ * came and went between two refreshes still shows.
+ *
+ * - Each graph reads straight from a MetricHistory (a primitive ring, the last 60 samples by
+ *   default) into a Path that is rewound and refilled in place; labels are formatted into reused
+ *   CharLines. Adding a sample allocates nothing.
+ * - The paths are rebuilt only in addSample() (and on a size change), which then invalidates the
+ *   view once; onDraw() just strokes them.
+ * - The view draws into a hardware layer, so between samples the overlay recomposites the cached
+ *   texture instead of replaying the paths, and its size is fixed like StatsPanelView's, so a
+ *   sample never requests layout.
+ * - A graph can be hidden (e.g. HEAP when the overlay doesn't show memory); the view then takes
+ *   only the height of the graphs it draws.
+ * - Unknown values (NaN) are drawn as gaps. FPS and CPU are scaled from zero, heap between its
+ *   lowest and highest value in the window; each label shows that window range.
+ *
+ * Main thread only. Drawing is charged to an OverheadMeter as rendering, if one is set.
+ */
+public class SparklineView extends View {
+
+    // --- Graphs ---
+    static final int GRAPH_FPS = 0;
+    static final int GRAPH_CPU = 1;
+    static final int GRAPH_HEAP = 2;
+    static final int GRAPH_COUNT = 3;
+    private static final String[] LABELS = {"FPS ", "CPU ", "HEAP "};
+    private static final String[] UNITS = {"", "%", "MB"};
+    private static final int[] COLORS = {0xFF69F0AE, 0xFF40C4FF, 0xFFFFD740};
+    // Scale floor (NaN: the window's minimum) and the lowest scale ceiling, so a quiet metric
+    // doesn't fill the graph with noise.
+    private static final float[] FLOORS = {0f, 0f, Float.NaN};
+    private static final float[] MIN_CEILINGS = {60f, 10f, Float.NaN};
+    private static final float MIN_RANGE = 1f;
+
+    static final int DEFAULT_HISTORY_SAMPLES = 60;
+    private static final float DEFAULT_WIDTH_DP = 160f;
+    private static final float GRAPH_HEIGHT_DP = 20f;
+    private static final float GRAPH_SPACING_DP = 4f;
+    private static final float LABEL_SIZE_SP = 9f;
+    private static final float STROKE_DP = 1.5f;
+    private static final int MAX_LABEL_CHARS = 20;
+
+    private final MetricHistory[] histories = new MetricHistory[GRAPH_COUNT];
+    private final Path[] paths = new Path[GRAPH_COUNT];
+    private final CharLine[] labels = new CharLine[GRAPH_COUNT];
+    private final boolean[] visible = {true, true, true};
+    private int visibleCount = GRAPH_COUNT;
+
+    private final Paint[] linePaints = new Paint[GRAPH_COUNT];
+    private final Paint labelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint baselinePaint = new Paint();
+    private final float graphHeight;
+    private final float graphSpacing;
+    private final float labelBaseline;
+    private final int defaultWidth;
+    @Nullable
+    private OverheadMeter overheadMeter;
+
+    public SparklineView(Context context) {
+        this(context, null);
+    }
+
+    public SparklineView(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        graphHeight = dp(GRAPH_HEIGHT_DP);
+        graphSpacing = dp(GRAPH_SPACING_DP);
+        defaultWidth = (int) dp(DEFAULT_WIDTH_DP);
+
+        labelPaint.setColor(0xB3FFFFFF);
+        labelPaint.setTypeface(Typeface.MONOSPACE);
+        labelPaint.setTextSize(TypedValue.applyDimension(
+                TypedValue.COMPLEX_UNIT_SP, LABEL_SIZE_SP, getResources().getDisplayMetrics()));
+        labelBaseline = -labelPaint.getFontMetrics().ascent;
+        baselinePaint.setColor(0x33FFFFFF);
+
+        for (int i = 0; i < GRAPH_COUNT; i++) {
+            histories[i] = new MetricHistory(DEFAULT_HISTORY_SAMPLES);
+            paths[i] = new Path();
+            labels[i] = new CharLine(MAX_LABEL_CHARS).append(LABELS[i]).append("--");
+            Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            paint.setColor(COLORS[i]);
+            paint.setStyle(Paint.Style.STROKE);
+            paint.setStrokeWidth(dp(STROKE_DP));
+            paint.setStrokeJoin(Paint.Join.ROUND);
+            linePaints[i] = paint;
+        }
+        // Redrawn only when a sample arrives; in between the cached layer is composited as is.
+        setLayerType(LAYER_TYPE_HARDWARE, null);
+    }
+
+    /**
+     * Keeps the last {@code samples} values per graph (e.g. 60s at the caller's sampling
+     * interval), dropping the current history. Call once while setting the overlay up: it allocates.
+     */
+    void setHistorySize(int samples) {
+        for (int i = 0; i < GRAPH_COUNT; i++) {
+            histories[i] = new MetricHistory(samples);
+        }
+        rebuild();
+    }
+
+    /**
+     * Shows or hides one graph (GRAPH_FPS, GRAPH_CPU or GRAPH_HEAP). Hidden graphs still record
+     * their samples but aren't drawn or measured.
+     */
+    void setGraphVisible(int graph, boolean show) {
+        if (visible[graph] == show) return;
+        visible[graph] = show;
+        visibleCount += show ? 1 : -1;
+        requestLayout();
+        rebuild();
+    }
+
+    /**
+     * Charges this view's drawing to {@code meter} from now on (null to stop).
+     */
+    void setOverheadMeter(@Nullable OverheadMeter meter) {
+        overheadMeter = meter;
+    }
+
+    /**
+     * Appends one sample to every graph (NaN for an unknown value) and redraws. Allocation-free.
+     *
+     * @param cpuPercent process CPU normalised to the available cores (0-100).
+     */
+    void addSample(double fps, double cpuPercent, double heapMb) {
+        histories[GRAPH_FPS].add(fps);
+        histories[GRAPH_CPU].add(cpuPercent);
+        histories[GRAPH_HEAP].add(heapMb);
+        rebuild();
+    }
+
+    void clear() {
+        for (MetricHistory history : histories) {
+            history.clear();
+        }
+        rebuild();
+    }
+
+    // Refills every path and label from the histories and invalidates the view once.
+    private void rebuild() {
+        float left = getPaddingLeft();
+        float width = getWidth() - getPaddingLeft() - getPaddingRight();
+        float top = getPaddingTop();
+        for (int i = 0; i < GRAPH_COUNT; i++) {
+            if (!visible[i]) continue;
+            rebuildGraph(i, left, top, width);
+            top += graphHeight + graphSpacing;
+        }
+        invalidate();
+    }
+
+    private void rebuildGraph(int graph, float left, float top, float width) {
+        MetricHistory history = histories[graph];
+        Path path = paths[graph];
+        path.rewind();
+
+        float min = history.min();
+        float max = history.max();
+        CharLine label = labels[graph].clear().append(LABELS[graph]);
+        if (Float.isNaN(min)) {
+            label.append("--");
+            return;
+        }
+        label.append(Math.round(min)).append('-').append(Math.round(max)).append(UNITS[graph]);
+        if (width <= 0) return;
+
+        float floor = Float.isNaN(FLOORS[graph]) ? min : FLOORS[graph];
+        float ceiling = Float.isNaN(MIN_CEILINGS[graph]) ? max : Math.max(max, MIN_CEILINGS[graph]);
+        float range = Math.max(MIN_RANGE, ceiling - floor);
+        // The label sits in the top of the graph; the line uses the rest, newest sample at the right.
+        float lineTop = top + labelBaseline * 0.5f;
+        float lineHeight = top + graphHeight - lineTop;
+        float step = width / Math.max(1, history.capacity() - 1);
+        int size = history.size();
+        float x = left + width - (size - 1) * step;
+        boolean drawing = false;
+        for (int i = 0; i < size; i++, x += step) {
+            float value = history.get(i);
+            if (Float.isNaN(value)) {
+                drawing = false;
+                continue;
+            }
+            float fraction = Math.max(0f, Math.min(1f, (value - floor) / range));
+            float y = lineTop + lineHeight * (1f - fraction);
+            if (drawing) {
+                path.lineTo(x, y);
+            } else {
+                path.moveTo(x, y);
+                // A lone sample between gaps still shows as a dot.
+                path.lineTo(x + 0.01f, y);
+                drawing = true;
+            }
+        }
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        // Fixed height: samples never change the view's dimensions.
+        int width = defaultWidth + getPaddingLeft() + getPaddingRight();
+        int height = (int) Math.ceil(visibleCount * graphHeight + Math.max(0, visibleCount - 1) * graphSpacing)
+                + getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec), resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        rebuild();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        OverheadMeter meter = overheadMeter;
+        long start = System.nanoTime();
+        long cpuStart = meter != null ? meter.cpuStart() : 0;
+        long allocStart = meter != null ? meter.allocStart() : -1;
+
+        float left = getPaddingLeft();
+        float right = getWidth() - getPaddingRight();
+        float top = getPaddingTop();
+        for (int i = 0; i < GRAPH_COUNT; i++) {
+            if (!visible[i]) continue;
+            float bottom = top + graphHeight;
+            canvas.drawLine(left, bottom, right, bottom, baselinePaint);
+            canvas.drawPath(paths[i], linePaints[i]);
+            CharLine label = labels[i];
+            canvas.drawText(label.chars(), 0, label.length(), left, top + labelBaseline, labelPaint);
+            top = bottom + graphSpacing;
+        }
+
+        if (meter != null) {
+            meter.end(OverheadMeter.RENDERING, cpuStart, allocStart);
+            meter.addMainThread(OverheadMeter.RENDERING, System.nanoTime() - start);
+        }
+    }
+
+    private float dp(float value) {
+        return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, value, getResources().getDisplayMetrics());
+    }
+}
@@ -0,0 +1,207 @@
+package com.smartherd.debugoverlay;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Bounded call tree aggregated from stack samples, for MainThreadProfiler.
+ *
+ * Frames are interned to small ids ("package.Class.method", line numbers dropped so one method is
+ * one frame) and samples are merged into a tree where stacks share their common prefix, so memory
+ * grows with the number of distinct call paths, not with the number of samples. Nodes live in
+ * parallel primitive arrays; a node's children form a singly linked sibling list.
+ *
+ * Both tables are capped. Once the tree is full, a sample whose path needs new nodes is charged
+ * to the deepest node that already exists (and counted in getTruncatedSamples()), so totals stay
+ * right and only detail is lost.
+ *
+ * Not thread-safe; MainThreadProfiler guards it.
+ */
+final class StackSampleTree {
+
+    static final int DEFAULT_MAX_NODES = 16_384;
+    static final int DEFAULT_MAX_FRAMES = 4_096;
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+    // Frame id of samples whose method didn't fit the frame table.
+    private static final String OVERFLOW_FRAME = "(other)";
+
+    private final int maxNodes;
+    private final int maxFrames;
+
+    // --- Interned Frames ---
+    private final HashMap<StackTraceElement, Integer> frameIdsByElement = new HashMap<>();
+    private final HashMap<String, Integer> frameIdsByName = new HashMap<>();
+    private String[] frameNames = new String[64];
+    private int frameCount = 0;
+
+    // --- Nodes (index 0 is the root) ---
+    private int[] nodeFrame = new int[256];
+    private int[] nodeFirstChild = new int[256];
+    private int[] nodeNextSibling = new int[256];
+    private long[] nodeSelfSamples = new long[256];
+    private int nodeCount;
+
+    private long samples = 0;
+    private long truncatedSamples = 0;
+
+    StackSampleTree() {
+        this(DEFAULT_MAX_NODES, DEFAULT_MAX_FRAMES);
+    }
+
+    StackSampleTree(int maxNodes, int maxFrames) {
+        if (maxNodes < 2 || maxFrames < 2) {
+            throw new IllegalArgumentException("need maxNodes >= 2 and maxFrames >= 2");
+        }
+        this.maxNodes = maxNodes;
+        this.maxFrames = maxFrames;
+        clear();
+    }
+
+    /**
+     * Adds one sample. {@code stack} is innermost frame first, as returned by Thread.getStackTrace().
+     */
+    void addSample(StackTraceElement[] stack) {
+        int node = ROOT;
+        for (int i = stack.length - 1; i >= 0; i--) {
+            int child = findOrAddChild(node, internFrame(stack[i]));
+            if (child == NONE) {
+                truncatedSamples++;
+                break;
+            }
+            node = child;
+        }
+        nodeSelfSamples[node]++;
+        samples++;
+    }
+
+    private int findOrAddChild(int parent, int frame) {
+        int last = NONE;
+        for (int child = nodeFirstChild[parent]; child != NONE; child = nodeNextSibling[child]) {
+            if (nodeFrame[child] == frame) return child;
+            last = child;
+        }
+        if (nodeCount >= maxNodes) return NONE;
+
+        int node = nodeCount++;
+        if (node == nodeFrame.length) growNodes();
+        nodeFrame[node] = frame;
+        nodeFirstChild[node] = NONE;
+        nodeNextSibling[node] = NONE;
+        nodeSelfSamples[node] = 0;
+        if (last == NONE) {
+            nodeFirstChild[parent] = node;
+        } else {
+            nodeNextSibling[last] = node;
+        }
+        return node;
+    }
+
+    private int internFrame(StackTraceElement element) {
+        Integer id = frameIdsByElement.get(element);
+        if (id != null) return id;
+
+        // First time this call site is seen: resolve its method (shared by every line in it).
+        String name = element.getClassName() + '.' + element.getMethodName();
+        id = frameIdsByName.get(name);
+        if (id == null) {
+            if (frameCount >= maxFrames - 1) {
+                id = frameIdsByName.get(OVERFLOW_FRAME);
+            } else {
+                id = addFrame(name);
+            }
+        }
+        // Bounded like the frames: call sites of known methods are cached up to a few per method.
+        if (frameIdsByElement.size() < maxFrames * 4) {
+            frameIdsByElement.put(element, id);
+        }
+        return id;
+    }
+
+    private int addFrame(String name) {
+        if (frameCount == frameNames.length) {
+            frameNames = Arrays.copyOf(frameNames, frameNames.length * 2);
+        }
+        frameNames[frameCount] = name;
+        frameIdsByName.put(name, frameCount);
+        return frameCount++;
+    }
+
+    private void growNodes() {
+        int size = Math.min(maxNodes, nodeFrame.length * 2);
+        nodeFrame = Arrays.copyOf(nodeFrame, size);
+        nodeFirstChild = Arrays.copyOf(nodeFirstChild, size);
+        nodeNextSibling = Arrays.copyOf(nodeNextSibling, size);
+        nodeSelfSamples = Arrays.copyOf(nodeSelfSamples, size);
+    }
+
+    /**
+     * Drops every sample and interned frame; keeps the grown arrays.
+     */
+    void clear() {
+        frameIdsByElement.clear();
+        frameIdsByName.clear();
+        Arrays.fill(frameNames, null);
+        frameCount = 0;
+        addFrame(OVERFLOW_FRAME);
+
+        nodeCount = 1;
+        nodeFrame[ROOT] = NONE;
+        nodeFirstChild[ROOT] = NONE;
+        nodeNextSibling[ROOT] = NONE;
+        nodeSelfSamples[ROOT] = 0;
+        samples = 0;
+        truncatedSamples = 0;
+    }
+
+    // --- Export ---
+
+    /**
+     * Writes the tree in collapsed-stack format ("outer;inner;leaf count" per line, outermost frame
+     * first), as read by flamegraph.pl, speedscope and most flame-graph tools.
+     */
+    void writeCollapsed(Appendable out) throws IOException {
+        if (nodeCount <= 1) return;
+        // Iterative depth-first walk: the explicit stack holds nodes, path holds their prefix.
+        int[] stack = new int[nodeCount];
+        int[] prefixLengths = new int[nodeCount];
+        StringBuilder path = new StringBuilder(256);
+        int depth = 0;
+        for (int child = nodeFirstChild[ROOT]; child != NONE; child = nodeNextSibling[child]) {
+            stack[depth] = child;
+            prefixLengths[depth++] = 0;
+        }
+        while (depth > 0) {
+            int node = stack[--depth];
+            path.setLength(prefixLengths[depth]);
+            if (path.length() > 0) path.append(';');
+            path.append(frameNames[nodeFrame[node]]);
+
+            if (nodeSelfSamples[node] > 0) {
+                out.append(path).append(' ').append(Long.toString(nodeSelfSamples[node])).append('\n');
+            }
+            int prefix = path.length();
+            for (int child = nodeFirstChild[node]; child != NONE; child = nodeNextSibling[child]) {
+                stack[depth] = child;
+                prefixLengths[depth++] = prefix;
+            }
+        }
+    }
+
+    long getSamples() {
+        return samples;
+    }
+
+    long getTruncatedSamples() {
+        return truncatedSamples;
+    }
+
+    int getNodeCount() {
+        return nodeCount;
+    }
+
+    int getFrameCount() {
+        return frameCount;
+    }
+}
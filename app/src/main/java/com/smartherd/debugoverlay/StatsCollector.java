@@ -1,45 +1,554 @@
 package com.smartherd.debugoverlay;
 
 import android.os.Debug;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
 import android.view.Choreographer;
 
-import java.lang.ref.WeakReference;
+import androidx.annotation.Nullable;
 
-class StatsCollector {
-    private static WeakReference<OverlayView> overlayRef = new WeakReference<>(null);
-    private int fps = 0, frames = 0;
-    private long lastTime = System.nanoTime();
+/**
+ * Process-wide metrics engine behind the per-activity overlays (DebugOverlay / OverlayManager).
+ *
+ * One reference-counted instance serves every OverlayView, however many activities are in the back
+ * stack: the first subscriber starts a single Choreographer frame callback and a single sampling
+ * loop on the main thread, each tick is sampled once and handed to every subscriber, and
+ * the last subscriber to leave removes both and drops the instance. Nothing keeps running, or keeps
+ * a destroyed Activity reachable, once no overlay is attached.
+ *
+ * While the app is in the background (AppVisibilityTracker) the engine stays subscribed but
+ * suspends its frame callback, sampling loop and overlay notifications; on return it restarts the
+ * FPS window from scratch, so no sample spans the time spent away.
+ *
+ * The loop's sources run at their own rates through a SamplingScheduler: the gauges every 500ms,
+ * the thread inventory and endpoint summaries less often, and slower still once sampling costs the
+ * main thread more than its budget. The thread count and inventory read /proc (one file per thread
+ * for the inventory), so they run on a background thread; each tick publishes their latest result.
+ *
+ * subscribe()/unsubscribe() are main-thread only. The network state below is shared the same way
+ * and is written from OkHttp threads.
+ *
+ * Everything the engine needs from the platform (frame callbacks, the main Handler, its background
+ * thread, clocks, the native memory counters) goes through a Host, so local unit tests can run it on a fake one.
+ */
+final class StatsCollector {
 
-    StatsCollector() {
-        Choreographer.getInstance().postFrameCallback(frameCallback);
+    /**
+     * Receives the shared engine's samples. Overlays subscribe while attached to a window.
+     */
+    interface Subscriber {
+        /**
+         * Called on the main thread once per tick. {@code sample} is reused: read it during the call.
+         */
+        void onSample(Sample sample);
+
+        /**
+         * Called from any thread after a request was added to the shared log ring.
+         */
+        void onNetworkLogChanged();
+    }
+
+    /**
+     * The platform side of the engine: the main thread's Choreographer and Handler, its clocks and
+     * the native memory counters. Called on the main thread only.
+     */
+    interface Host {
+        void postFrameCallback(Choreographer.FrameCallback callback);
+
+        void removeFrameCallback(Choreographer.FrameCallback callback);
+
+        void postAtTime(Runnable task, long uptimeMs);
+
+        void removeCallbacks(Runnable task);
+
+        // Runs task on the engine's background thread, starting it if needed. A task still
+        // queued there isn't queued twice.
+        void postBackground(Runnable task);
+
+        // Lets the background thread finish what is queued, then stops it.
+        void quitBackground();
+
+        // SystemClock.uptimeMillis()
+        long uptimeMillis();
+
+        // System.nanoTime()
+        long nanoTime();
+
+        // CPU time of the whole process in milliseconds (Process.getElapsedCpuTime())
+        long processCpuTimeMs();
+
+        // CPU time of the calling thread (Debug.threadCpuTimeNanos())
+        long threadCpuTimeNanos();
+
+        // MemorySampler.sample(), which reads native counters
+        void sampleMemory(MemorySampler sampler, MemorySampler.Snapshot out);
+    }
+
+    /**
+     * One tick's worth of metrics, sampled once and shared by every subscriber.
+     */
+    static final class Sample {
+        static final int MAX_THREAD_GROUPS = 3;
+        static final int MAX_TOP_HOSTS = 3;
+
+        int fps;
+        // Process CPU over the last tick, normalised to the available cores (0-100%, -1 until known).
+        double cpuPercent = -1;
+        // Cheap memory gauges (MemorySampler without its PSS breakdown, which is too slow for the
+        // main thread). rssMb is -1 if /proc is unreadable.
+        int javaHeapMb;
+        int nativeHeapMb;
+        int rssMb;
+        // GC activity since the runtime started (-1 where ART doesn't report it), and the Java
+        // allocation rate over the last tick (-1 until known).
+        long gcCount;
+        long blockingGcCount;
+        long blockingGcTimeMs;
+        double allocationRateMbPerSec;
+        int threadCount;
+        // Largest thread groups by name prefix, refreshed every THREAD_INVENTORY_INTERVAL_MS or slower.
+        final String[] threadGroupNames = new String[MAX_THREAD_GROUPS];
+        final int[] threadGroupCounts = new int[MAX_THREAD_GROUPS];
+        int threadGroupCount;
+        final EndpointStatsRegistry.Summary networkOverall = new EndpointStatsRegistry.Summary();
+        final EndpointStatsRegistry.Summary[] networkTopHosts = newSummaries(MAX_TOP_HOSTS);
+        int networkTopHostCount;
+        // Mean per-phase timings of the calls finished in the last tick that had any (NetworkTimingListener.PHASE_*).
+        final double[] networkPhaseMs = new double[NetworkTimingListener.PHASE_COUNT];
+        long networkTimedCalls;
+        // Per-stage frame timings (FrameMetrics) of the last tick that rendered any frame.
+        final FrameStageStats.Summary frameStages = new FrameStageStats.Summary();
+
+        private static EndpointStatsRegistry.Summary[] newSummaries(int count) {
+            EndpointStatsRegistry.Summary[] summaries = new EndpointStatsRegistry.Summary[count];
+            for (int i = 0; i < count; i++) {
+                summaries[i] = new EndpointStatsRegistry.Summary();
+            }
+            return summaries;
+        }
+    }
+
+    // --- Source Rates (SamplingScheduler) ---
+    private static final long UPDATE_INTERVAL_MS = 500;
+    // The inventory reads one small file per thread; the thread total is read every tick. Both on
+    // the background thread.
+    private static final long THREAD_INVENTORY_INTERVAL_MS = 5_000;
+    // Percentiles for the overall and top hosts walk every histogram.
+    private static final long ENDPOINT_SUMMARY_INTERVAL_MS = 1_000;
+
+    // --- Shared Network State ---
+    // Bounded log shared by every overlay: memory stays constant regardless of traffic.
+    private static final int NETWORK_LOG_CAPACITY = 500;
+    private static final NetworkLogBuffer networkLog = new NetworkLogBuffer(NETWORK_LOG_CAPACITY);
+    // Per-phase call timings, shared by every overlay like the log above.
+    private static final NetworkPhaseStats networkPhaseStats = new NetworkPhaseStats();
+    private static final NetworkTimingListenerFactory networkTimingFactory =
+            new NetworkTimingListenerFactory(networkPhaseStats);
+    // Per-host/per-route latency histograms fed by NetworkInterceptor.
+    private static final EndpointStatsRegistry endpointStats = new EndpointStatsRegistry();
+
+    // --- Shared Frame Stage State ---
+    // Fed by OverlayManager's FrameMetricsTracker from its own thread.
+    private static final FrameStageStats frameStageStats = new FrameStageStats();
+
+    // --- Engine Reference Counting ---
+    private static final Subscriber[] NO_SUBSCRIBERS = new Subscriber[0];
+    private static final Object subscriberLock = new Object();
+    // Copy-on-write so OkHttp threads can notify without locking.
+    private static volatile Subscriber[] subscribers = NO_SUBSCRIBERS;
+    // Main thread only; non-null exactly while there is at least one subscriber.
+    private static StatsCollector engine;
+    // What the next engine runs on; the main thread unless a test replaced it (setHost()).
+    @Nullable
+    private static Host host;
+    // False while the engine is suspended in the background: network log changes aren't pushed.
+    private static volatile boolean notifySubscribers = false;
+
+    // --- Engine State (main thread only) ---
+    private final Host platform;
+    private final Sample sample = new Sample();
+    private final MemorySampler memory = new MemorySampler();
+    private final MemorySampler.Snapshot memorySnapshot = new MemorySampler.Snapshot();
+    private final long[] histogramScratch = new long[LatencyHistogram.BUCKET_COUNT];
+    private final SamplingScheduler scheduler;
+    private final int cpuCoreCount = Math.max(1, Runtime.getRuntime().availableProcessors());
+    // Process CPU time and uptime at the previous CPU sample (-1: next sample starts a new window).
+    private long lastCpuTimeMs = -1;
+    private long lastCpuUptimeMs;
+    private boolean running = false;
+    // Running and the app is visible: frame callback and sampling loop are posted.
+    private boolean sampling = false;
+    private int frames = 0;
+    private long lastTime;
+
+    // --- Thread Sampling (background thread) ---
+    private final ThreadInventory threads = new ThreadInventory();
+    // Latest results, handed to the main-thread tick under threadResultLock.
+    private final Object threadResultLock = new Object();
+    private int threadCountResult = 0;
+    private final String[] threadGroupNamesResult = new String[Sample.MAX_THREAD_GROUPS];
+    private final int[] threadGroupCountsResult = new int[Sample.MAX_THREAD_GROUPS];
+    private int threadGroupCountResult = 0;
+
+    private StatsCollector(Host platform) {
+        this.platform = platform;
+        scheduler = new SamplingScheduler(platform::threadCpuTimeNanos);
+        scheduler.add("memory", UPDATE_INTERVAL_MS, false, this::collectMemory);
+        scheduler.add("cpu", UPDATE_INTERVAL_MS, false, this::collectCpu);
+        scheduler.add("threads", UPDATE_INTERVAL_MS, false, this::collectThreadCount);
+        scheduler.add("thread_inventory", THREAD_INVENTORY_INTERVAL_MS, true, this::collectThreadInventory);
+        scheduler.add("frame_stages", UPDATE_INTERVAL_MS, false, this::collectFrameStages);
+        scheduler.add("network_phases", UPDATE_INTERVAL_MS, false, this::collectNetworkPhases);
+        scheduler.add("endpoints", ENDPOINT_SUMMARY_INTERVAL_MS, true, this::collectEndpoints);
+    }
+
+    /**
+     * Adds an overlay, starting the engine if it is the first one. Main thread only.
+     */
+    static void subscribe(Subscriber subscriber) {
+        synchronized (subscriberLock) {
+            Subscriber[] current = subscribers;
+            for (Subscriber s : current) {
+                if (s == subscriber) return;
+            }
+            Subscriber[] next = new Subscriber[current.length + 1];
+            System.arraycopy(current, 0, next, 0, current.length);
+            next[current.length] = subscriber;
+            subscribers = next;
+        }
+        if (engine == null) {
+            if (host == null) {
+                host = new MainThreadHost();
+            }
+            engine = new StatsCollector(host);
+            engine.start();
+        }
+    }
+
+    /**
+     * Removes an overlay, tearing the engine down if it was the last one. Main thread only.
+     */
+    static void unsubscribe(Subscriber subscriber) {
+        boolean empty;
+        synchronized (subscriberLock) {
+            Subscriber[] current = subscribers;
+            int index = -1;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == subscriber) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) return;
+
+            Subscriber[] next = current.length == 1 ? NO_SUBSCRIBERS : new Subscriber[current.length - 1];
+            System.arraycopy(current, 0, next, 0, index);
+            System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+            subscribers = next;
+            empty = next.length == 0;
+        }
+        if (empty && engine != null) {
+            engine.stop();
+            engine = null;
+        }
+    }
+
+    static int subscriberCount() {
+        return subscribers.length;
+    }
+
+    /**
+     * Whether the shared engine exists, i.e. some overlay is subscribed. Main thread only.
+     */
+    static boolean isEngineRunning() {
+        return engine != null;
+    }
+
+    /**
+     * Runs the engines created from now on on {@code replacement} (null for the main thread).
+     * For local unit tests; call while no overlay is subscribed.
+     */
+    static void setHost(@Nullable Host replacement) {
+        host = replacement;
+    }
+
+    private void start() {
+        running = true;
+        AppVisibilityTracker visibility = AppVisibilityTracker.get();
+        if (visibility != null) {
+            visibility.addListener(visibilityListener);
+        }
+        if (visibility == null || visibility.isVisible()) {
+            startSampling();
+        }
+    }
+
+    private void stop() {
+        running = false;
+        AppVisibilityTracker visibility = AppVisibilityTracker.get();
+        if (visibility != null) {
+            visibility.removeListener(visibilityListener);
+        }
+        stopSampling();
+        platform.postBackground(closeThreads);
+        platform.quitBackground();
+        memory.close();
+    }
+
+    private final AppVisibilityTracker.Listener visibilityListener = visible -> {
+        if (!running) return;
+        if (visible) {
+            startSampling();
+            // Log entries that arrived in the background weren't pushed; redraw once.
+            for (Subscriber subscriber : subscribers) {
+                subscriber.onNetworkLogChanged();
+            }
+        } else {
+            stopSampling();
+        }
+    };
+
+    private void startSampling() {
+        if (sampling) return;
+        sampling = true;
+        notifySubscribers = true;
+        // Fresh FPS window: the first second back must not include the time spent away.
+        frames = 0;
+        lastTime = platform.nanoTime();
+        lastCpuTimeMs = -1;
+        sample.cpuPercent = -1;
+        memory.reset();
+        scheduler.reset(0);
+        platform.postFrameCallback(frameCallback);
+        platform.postAtTime(update, platform.uptimeMillis());
+    }
+
+    private void stopSampling() {
+        sampling = false;
+        notifySubscribers = false;
+        platform.removeFrameCallback(frameCallback);
+        platform.removeCallbacks(update);
     }
 
     private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
         @Override
         public void doFrame(long frameTimeNanos) {
+            if (!sampling) return;
             frames++;
-            long now = System.nanoTime();
+            long now = platform.nanoTime();
             if (now - lastTime >= 1_000_000_000L) {
-                fps = frames;
+                sample.fps = frames;
                 frames = 0;
                 lastTime = now;
             }
-            Choreographer.getInstance().postFrameCallback(this);
+            platform.postFrameCallback(this);
+        }
+    };
+
+    private final Runnable update = new Runnable() {
+        @Override
+        public void run() {
+            if (!sampling) return;
+            long nextDueMs = scheduler.runDue(platform.uptimeMillis());
+            for (Subscriber subscriber : subscribers) {
+                subscriber.onSample(sample);
+            }
+            platform.postAtTime(this, nextDueMs);
+        }
+    };
+
+    private void collectFrameStages() {
+        // Keeps the previous breakdown when nothing was drawn during this tick.
+        frameStageStats.drain(sample.frameStages);
+    }
+
+    private void collectNetworkPhases() {
+        // Keeps the previous means when no call finished during this tick.
+        networkPhaseStats.drain(sample.networkPhaseMs);
+        sample.networkTimedCalls = networkPhaseStats.getTotalTimedCalls();
+    }
+
+    private void collectEndpoints() {
+        endpointStats.summarizeOverall(histogramScratch, sample.networkOverall);
+        sample.networkTopHostCount = endpointStats.summarizeTopHosts(histogramScratch, sample.networkTopHosts);
+    }
+
+    private void collectCpu() {
+        long cpuTimeMs = platform.processCpuTimeMs();
+        long uptimeMs = platform.uptimeMillis();
+        if (lastCpuTimeMs >= 0 && uptimeMs > lastCpuUptimeMs) {
+            double percentOfOneCore = (cpuTimeMs - lastCpuTimeMs) * 100.0 / (uptimeMs - lastCpuUptimeMs);
+            sample.cpuPercent = Math.min(100.0, percentOfOneCore / cpuCoreCount);
+        }
+        lastCpuTimeMs = cpuTimeMs;
+        lastCpuUptimeMs = uptimeMs;
+    }
+
+    private void collectMemory() {
+        MemorySampler.Snapshot snapshot = memorySnapshot;
+        platform.sampleMemory(memory, snapshot);
+        sample.javaHeapMb = (int) (snapshot.javaHeapUsedKb / 1024);
+        sample.nativeHeapMb = (int) (snapshot.nativeHeapKb / 1024);
+        sample.rssMb = snapshot.rssKb >= 0 ? (int) (snapshot.rssKb / 1024) : -1;
+        sample.gcCount = snapshot.gcCount;
+        sample.blockingGcCount = snapshot.blockingGcCount;
+        sample.blockingGcTimeMs = snapshot.blockingGcTimeMs;
+        sample.allocationRateMbPerSec = snapshot.allocationRateKbPerSec >= 0
+                ? snapshot.allocationRateKbPerSec / 1024.0 : -1;
+    }
+
+    // Asks for a fresh count and publishes the latest background results, inventory included.
+    private void collectThreadCount() {
+        platform.postBackground(countThreads);
+        synchronized (threadResultLock) {
+            sample.threadCount = threadCountResult;
+            System.arraycopy(threadGroupNamesResult, 0, sample.threadGroupNames, 0, Sample.MAX_THREAD_GROUPS);
+            System.arraycopy(threadGroupCountsResult, 0, sample.threadGroupCounts, 0, Sample.MAX_THREAD_GROUPS);
+            sample.threadGroupCount = threadGroupCountResult;
+        }
+    }
+
+    private void collectThreadInventory() {
+        platform.postBackground(takeThreadInventory);
+    }
+
+    // Background thread.
+    private final Runnable countThreads = () -> {
+        int count = threads.countThreads();
+        // Java threads only, but still cheap, if /proc is unavailable.
+        if (count < 0) count = Thread.activeCount();
+        synchronized (threadResultLock) {
+            threadCountResult = count;
+        }
+    };
+
+    // Background thread.
+    private final Runnable takeThreadInventory = () -> {
+        if (threads.takeInventory() < 0) return;
+
+        int groups = Math.min(Sample.MAX_THREAD_GROUPS, threads.getGroupCount());
+        synchronized (threadResultLock) {
+            for (int i = 0; i < Sample.MAX_THREAD_GROUPS; i++) {
+                threadGroupNamesResult[i] = i < groups ? threads.getGroupName(i) : null;
+                threadGroupCountsResult[i] = i < groups ? threads.getGroupThreadCount(i) : 0;
+            }
+            threadGroupCountResult = groups;
         }
     };
 
-    int getFps() { return fps; }
-    int getThreadCount() { return Thread.getAllStackTraces().keySet().size(); }
-    int getMemoryMb() { return (int)(Debug.getNativeHeapAllocatedSize() / 1024 / 1024); }
+    // Background thread, the last task before it quits.
+    private final Runnable closeThreads = () -> threads.close();
 
-    static void registerOverlay(OverlayView v) {
-        overlayRef = new WeakReference<>(v);
+    static FrameStageStats frameStageStats() {
+        return frameStageStats;
     }
 
-    static void logNetworkEvent(String s) {
-        OverlayView v = overlayRef.get();
-        if (v != null) {
-            v.post(() -> v.addNetworkLog(s));
+    // --- Shared Network API ---
+
+    static NetworkLogBuffer networkLog() {
+        return networkLog;
+    }
+
+    static EndpointStatsRegistry endpointStats() {
+        return endpointStats;
+    }
+
+    static NetworkTimingListenerFactory networkTimingFactory() {
+        return networkTimingFactory;
+    }
+
+    /**
+     * Records a finished request into the shared ring and asks every overlay to redraw its log.
+     * Called from OkHttp threads.
+     *
+     * @param statusCode HTTP status, or NetworkLogBuffer.STATUS_FAILED if the call threw.
+     */
+    static void logNetworkEvent(String method, String host, String path,
+                                int statusCode, long durationMs, String error) {
+        networkLog.add(System.currentTimeMillis(), method, host, path, statusCode, durationMs, error);
+        if (!notifySubscribers) return;
+        for (Subscriber subscriber : subscribers) {
+            subscriber.onNetworkLogChanged();
+        }
+    }
+
+    // --- Platform ---
+
+    private static final class MainThreadHost implements Host {
+        private static final String BACKGROUND_THREAD_NAME = "DebugOverlay-Threads";
+        private final Handler main = new Handler(Looper.getMainLooper());
+        // Started by the first background task of each engine, quit when the engine stops.
+        @Nullable
+        private HandlerThread backgroundThread;
+        @Nullable
+        private Handler background;
+
+        @Override
+        public void postFrameCallback(Choreographer.FrameCallback callback) {
+            Choreographer.getInstance().postFrameCallback(callback);
+        }
+
+        @Override
+        public void removeFrameCallback(Choreographer.FrameCallback callback) {
+            Choreographer.getInstance().removeFrameCallback(callback);
+        }
+
+        @Override
+        public void postAtTime(Runnable task, long uptimeMs) {
+            main.postAtTime(task, uptimeMs);
+        }
+
+        @Override
+        public void removeCallbacks(Runnable task) {
+            main.removeCallbacks(task);
+        }
+
+        @Override
+        public void postBackground(Runnable task) {
+            if (background == null) {
+                backgroundThread = new HandlerThread(BACKGROUND_THREAD_NAME, Process.THREAD_PRIORITY_BACKGROUND);
+                backgroundThread.start();
+                background = new Handler(backgroundThread.getLooper());
+            }
+            background.removeCallbacks(task);
+            background.post(task);
+        }
+
+        @Override
+        public void quitBackground() {
+            if (backgroundThread != null) {
+                backgroundThread.quitSafely();
+                backgroundThread = null;
+                background = null;
+            }
+        }
+
+        @Override
+        public long uptimeMillis() {
+            return SystemClock.uptimeMillis();
+        }
+
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public long processCpuTimeMs() {
+            return Process.getElapsedCpuTime();
+        }
+
+        @Override
+        public long threadCpuTimeNanos() {
+            return Debug.threadCpuTimeNanos();
+        }
+
+        @Override
+        public void sampleMemory(MemorySampler sampler, MemorySampler.Snapshot out) {
+            sampler.sample(out);
         }
     }
 }
@@ -0,0 +1,286 @@
+package com.smartherd.debugoverlay;
+
+/**
+ * Formats a DebugStatsCollector.StatsData snapshot into the stats panel's text lines.
+ *
+ * Kept free of Android types so the formatting cost can be unit-tested and benchmarked on a plain
+ * JVM; StatsPanelView only compares and draws the resulting CharLines. Allocation-free.
+ */
+final class StatsLineFormatter {
+
+    // --- Line Layout ---
+    static final int LINE_FPS = 0;
+    static final int LINE_JANK = 1;
+    static final int LINE_FRAME_TIMES = 2;
+    static final int LINE_MEMORY = 3;
+    static final int LINE_MEMORY_BREAKDOWN = 4;
+    static final int LINE_HEAP = 5;
+    static final int LINE_GC = 6;
+    static final int LINE_CPU = 7;
+    static final int LINE_SYSTEM_CPU = 8;
+    static final int LINE_FIRST_CORES = 9;
+    static final int CORES_PER_LINE = 4;
+    static final int CORE_LINES = (DebugStatsCollector.MAX_CPU_CORES + CORES_PER_LINE - 1) / CORES_PER_LINE;
+    static final int LINE_THREADS = LINE_FIRST_CORES + CORE_LINES;
+    static final int LINE_THREAD_CPU = LINE_THREADS + 1;
+    static final int LINE_STALLS = LINE_THREADS + 2;
+    static final int LINE_FIRST_STALL = LINE_THREADS + 3;
+    static final int LINE_NETWORK = LINE_FIRST_STALL + DebugStatsCollector.MAX_TOP_STALLS;
+    static final int LINE_NETWORK_ERRORS = LINE_NETWORK + 1;
+    static final int LINE_NETWORK_PHASES = LINE_NETWORK + 2;
+    static final int LINE_FIRST_HOST = LINE_NETWORK + 3;
+    static final int LINE_OVERHEAD = LINE_FIRST_HOST + DebugStatsCollector.MAX_TOP_HOSTS;
+    static final int LINE_OVERHEAD_MAIN = LINE_OVERHEAD + 1;
+    static final int LINE_ALERT = LINE_OVERHEAD + 2;
+    static final int LINE_COUNT = LINE_ALERT + 1;
+
+    // Widest line the panel reserves space for (monospace, so this fixes the width).
+    static final int MAX_LINE_CHARS = 30;
+    // Leaves room for three four-digit latencies and the error rate.
+    private static final int MAX_HOST_CHARS = 9;
+    private static final int MAX_THREAD_GROUP_CHARS = 8;
+    private static final int MAX_STALL_LABEL_CHARS = 18;
+    private static final int MAX_CPU_THREAD_CHARS = 6;
+    private static final int MAX_ALERT_LABEL_CHARS = 20;
+
+    // AlertRule metrics (bit 1 << metric) shown on each line, for highlighting firing ones.
+    private static final long[] LINE_METRICS = new long[LINE_COUNT];
+
+    static {
+        LINE_METRICS[LINE_FPS] = 1L << AlertRule.FPS;
+        LINE_METRICS[LINE_FRAME_TIMES] = 1L << AlertRule.FRAME_P99;
+        LINE_METRICS[LINE_MEMORY] = 1L << AlertRule.PSS | 1L << AlertRule.RSS;
+        LINE_METRICS[LINE_HEAP] = 1L << AlertRule.HEAP | 1L << AlertRule.NATIVE_HEAP;
+        LINE_METRICS[LINE_GC] = 1L << AlertRule.BLOCKING_GC;
+        LINE_METRICS[LINE_CPU] = 1L << AlertRule.CPU;
+        LINE_METRICS[LINE_SYSTEM_CPU] = 1L << AlertRule.SYSTEM_CPU;
+        LINE_METRICS[LINE_THREADS] = 1L << AlertRule.THREADS;
+        LINE_METRICS[LINE_STALLS] = 1L << AlertRule.STALLS;
+        LINE_METRICS[LINE_NETWORK] = 1L << AlertRule.NET_P50 | 1L << AlertRule.NET_P95 | 1L << AlertRule.NET_P99;
+        LINE_METRICS[LINE_NETWORK_ERRORS] = 1L << AlertRule.NET_ERRORS;
+    }
+
+    private StatsLineFormatter() {}
+
+    /**
+     * Replaces the contents of {@code out} with line {@code line} (0 to LINE_COUNT - 1) of the panel.
+     */
+    static void formatLine(DebugStatsCollector.StatsData data, int line, CharLine out) {
+        out.clear();
+        switch (line) {
+            case LINE_FPS:
+                out.append("FPS: ").append(data.fps)
+                        .append(" @ ").appendFixed(data.refreshRateHz, 0).append("Hz");
+                break;
+            case LINE_JANK:
+                out.append("drop ").append(data.droppedFrameCount)
+                        .append(" slow ").append(data.slowFrameCount)
+                        .append(" froz ").append(data.frozenFrameCount);
+                break;
+            case LINE_FRAME_TIMES:
+                out.append("p50/90/99: ").appendFixed(data.frameTimeP50Ms, 1)
+                        .append('/').appendFixed(data.frameTimeP90Ms, 1)
+                        .append('/').appendFixed(data.frameTimeP99Ms, 1);
+                break;
+            case LINE_MEMORY:
+                // PSS from the last (slower) breakdown, RSS from this sample: "Mem: PSS 184 RSS 231MB"
+                out.append("Mem: PSS ").append(data.usedMemoryMB);
+                if (data.rssMB >= 0) {
+                    out.append(" RSS ").append(data.rssMB);
+                }
+                out.append("MB");
+                break;
+            case LINE_MEMORY_BREAKDOWN:
+                // Java/native/graphics/code/stack PSS and the breakdown's age: "j42 n31 g60 c40 s2 12s"
+                out.append('j').append(data.pssJavaMB).append(" n").append(data.pssNativeMB)
+                        .append(" g").append(data.pssGraphicsMB).append(" c").append(data.pssCodeMB)
+                        .append(" s").append(data.pssStackMB).append(' ');
+                if (data.pssAgeSeconds >= 0) {
+                    out.append(data.pssAgeSeconds).append('s');
+                } else {
+                    out.append('-');
+                }
+                break;
+            case LINE_HEAP:
+                out.append("Heap ").append(data.javaHeapUsedMB).append('/').append(data.javaHeapMaxMB)
+                        .append(" nat ").append(data.nativeHeapMB).append("MB");
+                break;
+            case LINE_GC:
+                // Total GCs, blocking GCs and their time, allocation rate: "GC 12 blk 3/85ms 3.2MB/s"
+                out.append("GC ");
+                if (data.gcCount >= 0) {
+                    out.append(data.gcCount).append(" blk ").append(data.blockingGcCount)
+                            .append('/').append(data.blockingGcTimeMs).append("ms");
+                } else {
+                    out.append("N/A");
+                }
+                if (data.allocationRateMBps >= 0) {
+                    out.append(' ').appendFixed(data.allocationRateMBps, 1).append("MB/s");
+                }
+                break;
+            case LINE_CPU:
+                // Share of all cores, then per core: "CPU: 37.5% raw 300%" (three of eight cores busy),
+                // plus " prof 0.8%" (per core too) while the main-thread profiler runs.
+                out.append("CPU: ").appendFixed(data.cpuUsage, 1).append("% raw ")
+                        .appendFixed(data.cpuUsageRaw, 0).append('%');
+                if (data.profilerRateHz > 0) {
+                    out.append(" prof ").appendFixed(data.profilerCpuUsage, 1).append('%');
+                }
+                break;
+            case LINE_THREADS:
+                // "Thr: 42 OkHttp D 8 RenderTh 1"
+                out.append("Thr: ").append(data.threadCount);
+                for (int i = 0; i < data.threadGroupCount; i++) {
+                    out.append(' ').append(data.threadGroupNames[i], MAX_THREAD_GROUP_CHARS)
+                            .append(' ').append(data.threadGroupCounts[i]);
+                }
+                break;
+            case LINE_SYSTEM_CPU:
+                // Whole device: "Sys 64% load 5.2 cap 4/8" (cores capped below their max frequency)
+                out.append("Sys ");
+                if (data.systemCpuUsage >= 0) {
+                    out.appendFixed(data.systemCpuUsage, 0).append('%');
+                } else {
+                    out.append('-');
+                }
+                if (data.systemLoadAverage >= 0) {
+                    out.append(" load ").appendFixed(data.systemLoadAverage, 1);
+                }
+                if (data.cappedCoreCount >= 0) {
+                    out.append(" cap ").append(data.cappedCoreCount).append('/').append(data.coreCount);
+                }
+                break;
+            case LINE_THREAD_CPU:
+                // Busiest threads, in percent of one core: "main 12% Render 8% OkHttp 3%"
+                if (data.topCpuThreadCount == 0) {
+                    out.append("Top: idle");
+                }
+                for (int i = 0; i < data.topCpuThreadCount; i++) {
+                    if (i > 0) out.append(' ');
+                    out.append(data.topCpuThreadNames[i], MAX_CPU_THREAD_CHARS).append(' ')
+                            .appendFixed(data.topCpuThreadPercent[i], 0).append('%');
+                }
+                break;
+            case LINE_STALLS:
+                // Main-thread dispatches over the watchdog threshold: "Main: 5 stalls 812ms"
+                out.append("Main: ").append(data.mainThreadStallCount).append(" stalls ")
+                        .append(data.mainThreadBlockedMs).append("ms");
+                break;
+            case LINE_NETWORK:
+                out.append("Net: ");
+                if (data.networkCallCount > 0) {
+                    EndpointStatsRegistry.Summary overall = data.networkOverall;
+                    out.append("p50/95/99 ").appendFixed(overall.p50Ms, 0)
+                            .append('/').appendFixed(overall.p95Ms, 0)
+                            .append('/').appendFixed(overall.p99Ms, 0).append("ms");
+                } else {
+                    out.append("N/A");
+                }
+                break;
+            case LINE_NETWORK_ERRORS:
+                out.append("err ").appendFixed(data.networkOverall.errorRate * 100.0, 1)
+                        .append("% of ").append(data.networkCallCount).append(" calls");
+                break;
+            case LINE_NETWORK_PHASES:
+                double[] phases = data.networkPhaseMs;
+                out.append("dns/tcp/tls/ttfb ")
+                        .appendFixed(phases[NetworkTimingListener.PHASE_DNS], 0)
+                        .append('/').appendFixed(phases[NetworkTimingListener.PHASE_CONNECT], 0)
+                        .append('/').appendFixed(phases[NetworkTimingListener.PHASE_TLS], 0)
+                        .append('/').appendFixed(phases[NetworkTimingListener.PHASE_TTFB], 0);
+                break;
+            case LINE_OVERHEAD:
+                // The overlay's own CPU, sampling/rendering/network, in percent of one core, plus the
+                // sampling slowdown when over budget: "Ovh cpu 0.42/0.11/0.02% x2"
+                out.append("Ovh cpu ");
+                for (int i = 0; i < OverheadMeter.COMPONENT_COUNT; i++) {
+                    if (i > 0) out.append('/');
+                    out.appendFixed(data.overheadCpuPercent[i], 2);
+                }
+                out.append('%');
+                if (data.samplingSlowdown > 1) {
+                    out.append(" x").append(data.samplingSlowdown);
+                }
+                break;
+            case LINE_OVERHEAD_MAIN:
+                // Its main-thread time and allocations, all components: "Ovh main 0.3ms/s alloc 12KB/s"
+                double mainMs = 0;
+                double allocKb = 0;
+                for (int i = 0; i < OverheadMeter.COMPONENT_COUNT; i++) {
+                    mainMs += data.overheadMainThreadMsPerSec[i];
+                    allocKb = allocKb >= 0 && data.overheadAllocKbPerSec[i] >= 0
+                            ? allocKb + data.overheadAllocKbPerSec[i] : -1;
+                }
+                out.append("Ovh main ").appendFixed(mainMs, 1).append("ms/s");
+                if (allocKb >= 0) {
+                    out.append(" alloc ").appendFixed(allocKb, 0).append("KB/s");
+                }
+                break;
+            case LINE_ALERT:
+                // The newest firing rule and how long ago it fired: "! fps < 45 for 3s (12s)",
+                // otherwise "Alerts: ok, 3 rules, 2 fired"
+                if (data.alertFiringCount > 0 && data.alertLabel != null) {
+                    out.append("! ").append(data.alertLabel, MAX_ALERT_LABEL_CHARS)
+                            .append(" (").append(data.alertAgeSeconds).append("s)");
+                } else if (data.alertRuleCount > 0) {
+                    out.append("Alerts: ok, ").append(data.alertRuleCount).append(" rules, ")
+                            .append(data.alertEventCount).append(" fired");
+                }
+                break;
+            default:
+                // Per core, busy share @ current GHz: "12@1.8 80@1.8 75@2.4 9@2.4"
+                int coreLine = line - LINE_FIRST_CORES;
+                if (coreLine >= 0 && coreLine < CORE_LINES) {
+                    int first = coreLine * CORES_PER_LINE;
+                    int end = Math.min(data.coreCount, first + CORES_PER_LINE);
+                    for (int core = first; core < end; core++) {
+                        if (core > first) out.append(' ');
+                        appendCore(data, core, out);
+                    }
+                    break;
+                }
+                // Most-blocking stall stacks: "Feed.bind:88 x3 600ms"
+                int stallIndex = line - LINE_FIRST_STALL;
+                if (stallIndex >= 0 && stallIndex < DebugStatsCollector.MAX_TOP_STALLS) {
+                    if (stallIndex < data.topStallCount) {
+                        out.append(data.topStallLabels[stallIndex], MAX_STALL_LABEL_CHARS)
+                                .append(" x").append(data.topStallCounts[stallIndex])
+                                .append(' ').append(data.topStallBlockedMs[stallIndex]).append("ms");
+                    }
+                    break;
+                }
+                // Busiest hosts: "host p50/p95/p99 error%"
+                int hostIndex = line - LINE_FIRST_HOST;
+                if (hostIndex >= 0 && hostIndex < data.networkTopHostCount) {
+                    EndpointStatsRegistry.Summary host = data.networkTopHosts[hostIndex];
+                    out.append(host.name, MAX_HOST_CHARS).append(' ')
+                            .appendFixed(host.p50Ms, 0).append('/').appendFixed(host.p95Ms, 0)
+                            .append('/').appendFixed(host.p99Ms, 0)
+                            .append(" e").appendFixed(host.errorRate * 100.0, 0).append('%');
+                }
+                break;
+        }
+    }
+
+    /**
+     * Whether line {@code line} shows a metric an alert rule is firing on (or is the alert line
+     * while any rule fires).
+     */
+    static boolean isAlerting(DebugStatsCollector.StatsData data, int line) {
+        if (line == LINE_ALERT) return data.alertFiringCount > 0;
+        return (LINE_METRICS[line] & data.alertFiringMetrics) != 0;
+    }
+
+    private static void appendCore(DebugStatsCollector.StatsData data, int core, CharLine out) {
+        double usage = data.coreUsage[core];
+        int freqMHz = data.coreFreqMHz[core];
+        if (usage >= 0) {
+            out.appendFixed(usage, 0);
+        } else {
+            out.append('-');
+        }
+        if (freqMHz > 0) {
+            out.append('@').appendFixed(freqMHz / 1000.0, 1);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.smartherd.debugoverlay;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.View;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Single custom-drawn stats panel that replaces the stack of TextViews in debug_overlay.xml.
+ *
+ * - Values are formatted by StatsLineFormatter into reused CharLine buffers (no String.format,
+ *   no per-update garbage).
+ * - Each line is compared with what is currently on screen; unchanged lines are skipped, and the
+ *   view is invalidated once per update only if some line changed. If nothing changed, nothing is
+ *   invalidated at all.
+ * - The panel's size is fixed once from the font metrics, so updates never call requestLayout()
+ *   and never trigger a relayout of the overlay window through WindowManager.
+ * - Lines showing a metric an alert rule is firing on are drawn in red; a line whose highlight
+ *   changes counts as changed like one whose text changed.
+ *
+ * On hardware-accelerated windows the framework re-records the whole view when it is invalidated,
+ * so the "skip unchanged values" check is what keeps the per-update cost near zero.
+ *
+ * Drawing is charged to an OverheadMeter as rendering, if one is set.
+ */
+public class StatsPanelView extends View {
+
+    private static final float TEXT_SIZE_SP = 12f;
+    private static final int ALERT_COLOR = 0xFFFF5252;
+
+    // Lines currently drawn, plus a scratch line the next value is formatted into.
+    private final CharLine[] lines = new CharLine[StatsLineFormatter.LINE_COUNT];
+    private final CharLine scratch = new CharLine(StatsLineFormatter.MAX_LINE_CHARS);
+    // Lines currently drawn highlighted (StatsLineFormatter.isAlerting).
+    private final boolean[] alerting = new boolean[StatsLineFormatter.LINE_COUNT];
+
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint alertPaint;
+    private final float lineHeight;
+    private final float baselineOffset;
+    private final int contentWidth;
+    @Nullable
+    private OverheadMeter overheadMeter;
+
+    public StatsPanelView(Context context) {
+        this(context, null);
+    }
+
+    public StatsPanelView(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        textPaint.setColor(Color.WHITE);
+        textPaint.setTypeface(Typeface.MONOSPACE);
+        textPaint.setTextSize(TypedValue.applyDimension(
+                TypedValue.COMPLEX_UNIT_SP, TEXT_SIZE_SP, getResources().getDisplayMetrics()));
+        alertPaint = new Paint(textPaint);
+        alertPaint.setColor(ALERT_COLOR);
+
+        Paint.FontMetrics metrics = textPaint.getFontMetrics();
+        lineHeight = metrics.descent - metrics.ascent + metrics.leading;
+        baselineOffset = -metrics.ascent;
+        contentWidth = (int) Math.ceil(textPaint.measureText("0") * StatsLineFormatter.MAX_LINE_CHARS);
+
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = new CharLine(StatsLineFormatter.MAX_LINE_CHARS);
+        }
+        // Placeholder until the first snapshot arrives.
+        lines[StatsLineFormatter.LINE_FPS].append("FPS: 0");
+    }
+
+    /**
+     * Charges this panel's drawing to {@code meter} from now on (null to stop). Main thread only.
+     */
+    void setOverheadMeter(@Nullable OverheadMeter meter) {
+        overheadMeter = meter;
+    }
+
+    /**
+     * Formats the snapshot into the panel, invalidating it once if any line's text or
+     * highlight changed.
+     * Main thread only. Allocation-free.
+     */
+    public void setStats(DebugStatsCollector.StatsData data) {
+        boolean changed = false;
+        for (int i = 0; i < lines.length; i++) {
+            StatsLineFormatter.formatLine(data, i, scratch);
+            changed |= commitLine(i, StatsLineFormatter.isAlerting(data, i));
+        }
+        if (changed) {
+            invalidate();
+        }
+    }
+
+    // Swaps the scratch text into the given line; returns whether the line changed.
+    private boolean commitLine(int index, boolean alert) {
+        CharLine line = lines[index];
+        if (line.contentEquals(scratch) && alerting[index] == alert) return false;
+
+        line.copyFrom(scratch);
+        alerting[index] = alert;
+        return true;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        // Fixed size: content never changes the panel's dimensions.
+        int width = contentWidth + getPaddingLeft() + getPaddingRight();
+        int height = (int) Math.ceil(lineHeight * lines.length) + getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec), resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        OverheadMeter meter = overheadMeter;
+        long start = System.nanoTime();
+        long cpuStart = meter != null ? meter.cpuStart() : 0;
+        long allocStart = meter != null ? meter.allocStart() : -1;
+
+        float x = getPaddingLeft();
+        float y = getPaddingTop() + baselineOffset;
+        for (int i = 0; i < lines.length; i++) {
+            CharLine line = lines[i];
+            if (line.length() > 0) {
+                canvas.drawText(line.chars(), 0, line.length(), x, y, alerting[i] ? alertPaint : textPaint);
+            }
+            y += lineHeight;
+        }
+
+        if (meter != null) {
+            meter.end(OverheadMeter.RENDERING, cpuStart, allocStart);
+            meter.addMainThread(OverheadMeter.RENDERING, System.nanoTime() - start);
+        }
+    }
+}
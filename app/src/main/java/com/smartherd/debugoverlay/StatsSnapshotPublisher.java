@@ -0,0 +1,116 @@
+package com.smartherd.debugoverlay;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * Lock-free, allocation-free publication of DebugStatsCollector.StatsData snapshots.
+ *
+ * A single writer (the sampler thread) copies each finished sample into one shared snapshot guarded
+ * by a seqlock: the sequence is odd while a write is in progress and even once it is complete.
+ * Readers on any thread copy the snapshot into their own StatsData and retry if the sequence moved
+ * underneath them, so they never observe a torn (half-written) sample and never block the writer.
+ *
+ * Listeners are kept in a copy-on-write array, so registering allocates but notifying does not.
+ */
+final class StatsSnapshotPublisher {
+
+    private static final DebugStatsCollector.StatsUpdateListener[] NO_LISTENERS =
+            new DebugStatsCollector.StatsUpdateListener[0];
+
+    // --- Seqlock State ---
+    private final DebugStatsCollector.StatsData snapshot = new DebugStatsCollector.StatsData();
+    private volatile long sequence = 0;
+
+    // --- Listener Registry ---
+    private final Object listenerLock = new Object();
+    private volatile DebugStatsCollector.StatsUpdateListener[] listeners = NO_LISTENERS;
+
+    /**
+     * Publishes a finished sample and notifies every registered listener.
+     * Must only be called from the single writer thread.
+     *
+     * @param sample the writer's working copy. Listeners receive this instance directly; it is
+     *               not modified again until the writer's next sample.
+     */
+    void publish(DebugStatsCollector.StatsData sample) {
+        long start = sequence;
+        sample.version = start / 2 + 1;
+
+        sequence = start + 1; // odd: write in progress
+        // Keep the data stores below from being reordered ahead of the odd sequence.
+        VarHandle.storeStoreFence();
+        snapshot.copyFrom(sample);
+        sequence = start + 2; // even: volatile write releases the data to readers
+
+        DebugStatsCollector.StatsUpdateListener[] current = listeners;
+        for (DebugStatsCollector.StatsUpdateListener listener : current) {
+            listener.onStatsUpdated(sample);
+        }
+    }
+
+    /**
+     * Copies the latest consistent snapshot into {@code out}. Safe to call from any thread.
+     *
+     * @return the version of the copied snapshot (0 if nothing has been published yet).
+     */
+    long read(DebugStatsCollector.StatsData out) {
+        while (true) {
+            long before = sequence;
+            if ((before & 1L) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            out.copyFrom(snapshot);
+            // Keep the data loads above from being reordered after the sequence re-check.
+            VarHandle.loadLoadFence();
+            if (sequence == before) {
+                return out.version;
+            }
+        }
+    }
+
+    /**
+     * Version of the latest published snapshot; cheap way for readers to skip unchanged data.
+     */
+    long latestVersion() {
+        return sequence / 2;
+    }
+
+    void addListener(DebugStatsCollector.StatsUpdateListener listener) {
+        synchronized (listenerLock) {
+            DebugStatsCollector.StatsUpdateListener[] current = listeners;
+            for (DebugStatsCollector.StatsUpdateListener existing : current) {
+                if (existing == listener) return;
+            }
+            DebugStatsCollector.StatsUpdateListener[] updated =
+                    new DebugStatsCollector.StatsUpdateListener[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, current.length);
+            updated[current.length] = listener;
+            listeners = updated;
+        }
+    }
+
+    void removeListener(DebugStatsCollector.StatsUpdateListener listener) {
+        synchronized (listenerLock) {
+            DebugStatsCollector.StatsUpdateListener[] current = listeners;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] != listener) continue;
+
+                if (current.length == 1) {
+                    listeners = NO_LISTENERS;
+                    return;
+                }
+                DebugStatsCollector.StatsUpdateListener[] updated =
+                        new DebugStatsCollector.StatsUpdateListener[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                listeners = updated;
+                return;
+            }
+        }
+    }
+
+    int listenerCount() {
+        return listeners.length;
+    }
+}
@@ -0,0 +1,377 @@
+package com.smartherd.debugoverlay;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Device-wide CPU state, to tell "our app is busy" apart from "the device is busy or throttled":
+ *
+ * - Utilisation of the whole system and of each core, from the deltas of /proc/stat's cpu lines.
+ * - The 1-minute load average from /proc/loadavg.
+ * - Each core's current frequency (cpufreq scaling_cur_freq), its hardware maximum
+ *   (cpuinfo_max_freq, read once) and whether its current cap (scaling_max_freq) sits below that
+ *   maximum, which is how thermal throttling shows up.
+ *
+ * Apps can't read some of these on newer Android versions (/proc/stat is usually denied): a file
+ * that fails to open is not retried, and its values stay unknown (-1). Files that open are kept
+ * open and re-read from offset 0 into one reused buffer, parsed by hand, so sampling allocates
+ * nothing. A core that is offline has no cpu line and no readable frequency; it reads as -1 too.
+ *
+ * Not thread-safe: each sampler should own its instance.
+ */
+final class SystemCpuSampler {
+
+    static final String PROC_STAT = "/proc/stat";
+    static final String PROC_LOADAVG = "/proc/loadavg";
+    static final String CPU_SYS_DIR = "/sys/devices/system/cpu";
+
+    // /proc/stat has one cpu line per core plus interrupt counters; the cpu lines come first.
+    private final byte[] buffer = new byte[8192];
+    private final int coreCount;
+    private final String cpuSysDir;
+
+    // --- Open Files (null once unreadable, see the *Unavailable flags) ---
+    private final String statPath;
+    private final String loadAvgPath;
+    private RandomAccessFile statFile;
+    private RandomAccessFile loadAvgFile;
+    private boolean statUnavailable = false;
+    private boolean loadAvgUnavailable = false;
+    private final RandomAccessFile[] curFreqFiles;
+    private final RandomAccessFile[] capFreqFiles;
+    private final boolean[] freqUnavailable;
+    private final long[] maxFreqKHz;
+
+    // --- /proc/stat Baselines (index coreCount is the aggregate "cpu" line) ---
+    private final long[] lastTotalTicks;
+    private final long[] lastIdleTicks;
+    private final long[] totalTicks;
+    private final long[] idleTicks;
+
+    // --- Results ---
+    private double systemUsagePercent = -1;
+    private double loadAverage1 = -1;
+    private final double[] coreUsagePercent;
+    private final int[] coreFreqMHz;
+    private final int[] coreMaxFreqMHz;
+    private int cappedCoreCount = -1;
+
+    /**
+     * @param coreCount number of cores to report (e.g. Runtime.availableProcessors()).
+     */
+    SystemCpuSampler(int coreCount) {
+        this(PROC_STAT, PROC_LOADAVG, CPU_SYS_DIR, coreCount);
+    }
+
+    SystemCpuSampler(String statPath, String loadAvgPath, String cpuSysDir, int coreCount) {
+        this.statPath = statPath;
+        this.loadAvgPath = loadAvgPath;
+        this.cpuSysDir = cpuSysDir;
+        this.coreCount = coreCount;
+        curFreqFiles = new RandomAccessFile[coreCount];
+        capFreqFiles = new RandomAccessFile[coreCount];
+        freqUnavailable = new boolean[coreCount];
+        maxFreqKHz = new long[coreCount];
+        lastTotalTicks = new long[coreCount + 1];
+        lastIdleTicks = new long[coreCount + 1];
+        totalTicks = new long[coreCount + 1];
+        idleTicks = new long[coreCount + 1];
+        coreUsagePercent = new double[coreCount];
+        coreFreqMHz = new int[coreCount];
+        coreMaxFreqMHz = new int[coreCount];
+        reset();
+    }
+
+    int getCoreCount() {
+        return coreCount;
+    }
+
+    /**
+     * Reads every source once. Utilisation needs two samples; until then it stays -1.
+     */
+    void sample() {
+        sampleStat();
+        sampleLoadAverage();
+        sampleFrequencies();
+    }
+
+    /**
+     * Forgets the /proc/stat baselines, e.g. after sampling was suspended for a while.
+     */
+    void reset() {
+        for (int i = 0; i <= coreCount; i++) {
+            lastTotalTicks[i] = -1;
+            lastIdleTicks[i] = -1;
+        }
+        systemUsagePercent = -1;
+        for (int i = 0; i < coreCount; i++) {
+            coreUsagePercent[i] = -1;
+        }
+    }
+
+    // --- /proc/stat ---
+
+    private void sampleStat() {
+        if (statUnavailable) return;
+        if (statFile == null) {
+            statFile = open(statPath);
+            if (statFile == null) {
+                statUnavailable = true;
+                return;
+            }
+        }
+        int length = read(statFile);
+        if (length < 0) {
+            closeQuietly(statFile);
+            statFile = null;
+            statUnavailable = true;
+            return;
+        }
+        for (int i = 0; i <= coreCount; i++) {
+            totalTicks[i] = -1;
+        }
+        parseStat(buffer, length, coreCount, totalTicks, idleTicks);
+
+        for (int i = 0; i <= coreCount; i++) {
+            double usage = -1;
+            if (totalTicks[i] >= 0 && lastTotalTicks[i] >= 0) {
+                long total = totalTicks[i] - lastTotalTicks[i];
+                long idle = idleTicks[i] - lastIdleTicks[i];
+                if (total > 0) usage = Math.max(0, Math.min(100.0, (total - idle) * 100.0 / total));
+            }
+            lastTotalTicks[i] = totalTicks[i];
+            lastIdleTicks[i] = idleTicks[i];
+            if (i == coreCount) {
+                systemUsagePercent = usage;
+            } else {
+                coreUsagePercent[i] = usage;
+            }
+        }
+    }
+
+    /**
+     * Parses the cpu lines of /proc/stat into total and idle (idle + iowait) ticks per core, with
+     * the aggregate "cpu" line at index {@code coreCount}. Cores without a line are left as they are.
+     */
+    static void parseStat(byte[] data, int length, int coreCount, long[] totalOut, long[] idleOut) {
+        int i = 0;
+        while (i + 3 < length && data[i] == 'c' && data[i + 1] == 'p' && data[i + 2] == 'u') {
+            i += 3;
+            int index;
+            if (data[i] == ' ') {
+                index = coreCount;
+            } else {
+                index = 0;
+                while (i < length && data[i] >= '0' && data[i] <= '9') {
+                    index = index * 10 + (data[i++] - '0');
+                }
+                // More cores than expected (e.g. hotplugged): not reported.
+                if (index >= coreCount) index = -1;
+            }
+            // user nice system idle iowait irq softirq steal (guest time is already in user).
+            long total = 0;
+            long idle = 0;
+            for (int field = 0; field < 8; field++) {
+                while (i < length && data[i] == ' ') i++;
+                long value = 0;
+                while (i < length && data[i] >= '0' && data[i] <= '9') {
+                    value = value * 10 + (data[i++] - '0');
+                }
+                total += value;
+                if (field == 3 || field == 4) idle += value;
+            }
+            if (index >= 0) {
+                totalOut[index] = total;
+                idleOut[index] = idle;
+            }
+            while (i < length && data[i] != '\n') i++;
+            i++;
+        }
+    }
+
+    // --- /proc/loadavg ---
+
+    private void sampleLoadAverage() {
+        if (loadAvgUnavailable) return;
+        if (loadAvgFile == null) {
+            loadAvgFile = open(loadAvgPath);
+            if (loadAvgFile == null) {
+                loadAvgUnavailable = true;
+                return;
+            }
+        }
+        int length = read(loadAvgFile);
+        loadAverage1 = length > 0 ? parseDecimal(buffer, length) : -1;
+    }
+
+    /**
+     * The leading decimal number ("5.20 4.10 ..."), or -1.
+     */
+    static double parseDecimal(byte[] data, int length) {
+        long whole = 0;
+        long fraction = 0;
+        long scale = 1;
+        boolean sawDigit = false;
+        boolean inFraction = false;
+        for (int i = 0; i < length; i++) {
+            byte b = data[i];
+            if (b >= '0' && b <= '9') {
+                sawDigit = true;
+                if (inFraction) {
+                    fraction = fraction * 10 + (b - '0');
+                    scale *= 10;
+                } else {
+                    whole = whole * 10 + (b - '0');
+                }
+            } else if (b == '.' && !inFraction) {
+                inFraction = true;
+            } else {
+                break;
+            }
+        }
+        return sawDigit ? whole + (double) fraction / scale : -1;
+    }
+
+    // --- cpufreq ---
+
+    private void sampleFrequencies() {
+        int capped = 0;
+        boolean anyCap = false;
+        for (int core = 0; core < coreCount; core++) {
+            coreFreqMHz[core] = -1;
+            if (freqUnavailable[core]) continue;
+            if (curFreqFiles[core] == null && !openFrequencyFiles(core)) {
+                freqUnavailable[core] = true;
+                continue;
+            }
+            long curKHz = readLong(curFreqFiles[core]);
+            // Offline cores fail the read but may come back; keep their files.
+            if (curKHz <= 0) continue;
+            coreFreqMHz[core] = (int) (curKHz / 1000);
+            if (capFreqFiles[core] != null && maxFreqKHz[core] > 0) {
+                long capKHz = readLong(capFreqFiles[core]);
+                if (capKHz > 0) {
+                    anyCap = true;
+                    if (capKHz < maxFreqKHz[core]) capped++;
+                }
+            }
+        }
+        cappedCoreCount = anyCap ? capped : -1;
+    }
+
+    private boolean openFrequencyFiles(int core) {
+        String dir = cpuSysDir + "/cpu" + core + "/cpufreq/";
+        curFreqFiles[core] = open(dir + "scaling_cur_freq");
+        if (curFreqFiles[core] == null) return false;
+        capFreqFiles[core] = open(dir + "scaling_max_freq");
+        RandomAccessFile maxFile = open(dir + "cpuinfo_max_freq");
+        if (maxFile != null) {
+            maxFreqKHz[core] = readLong(maxFile);
+            coreMaxFreqMHz[core] = maxFreqKHz[core] > 0 ? (int) (maxFreqKHz[core] / 1000) : -1;
+            closeQuietly(maxFile);
+        } else {
+            coreMaxFreqMHz[core] = -1;
+        }
+        return true;
+    }
+
+    // --- File Helpers ---
+
+    private static RandomAccessFile open(String path) {
+        try {
+            return new RandomAccessFile(path, "r");
+        } catch (IOException | SecurityException e) {
+            return null;
+        }
+    }
+
+    // Re-reads the file from the start; -1 on error.
+    private int read(RandomAccessFile file) {
+        try {
+            // procfs and sysfs regenerate the content on every read from offset 0.
+            file.seek(0);
+            int length = 0;
+            int read;
+            while (length < buffer.length && (read = file.read(buffer, length, buffer.length - length)) > 0) {
+                length += read;
+            }
+            return length;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private long readLong(RandomAccessFile file) {
+        int length = read(file);
+        long value = 0;
+        boolean sawDigit = false;
+        for (int i = 0; i < length && buffer[i] >= '0' && buffer[i] <= '9'; i++) {
+            value = value * 10 + (buffer[i] - '0');
+            sawDigit = true;
+        }
+        return sawDigit ? value : -1;
+    }
+
+    private static void closeQuietly(RandomAccessFile file) {
+        if (file == null) return;
+        try {
+            file.close();
+        } catch (IOException ignored) {
+            // Nothing useful to do; the handle is being discarded anyway.
+        }
+    }
+
+    void close() {
+        closeQuietly(statFile);
+        closeQuietly(loadAvgFile);
+        statFile = null;
+        loadAvgFile = null;
+        for (int core = 0; core < coreCount; core++) {
+            closeQuietly(curFreqFiles[core]);
+            closeQuietly(capFreqFiles[core]);
+            curFreqFiles[core] = null;
+            capFreqFiles[core] = null;
+        }
+    }
+
+    // --- Results ---
+
+    /**
+     * Busy share of all cores over the last interval, 0-100, or -1 if unknown.
+     */
+    double getSystemUsagePercent() {
+        return systemUsagePercent;
+    }
+
+    /**
+     * 1-minute load average, or -1 if unreadable.
+     */
+    double getLoadAverage1() {
+        return loadAverage1;
+    }
+
+    /**
+     * Busy share of one core over the last interval, 0-100, or -1 if unknown or offline.
+     */
+    double getCoreUsagePercent(int core) {
+        return coreUsagePercent[core];
+    }
+
+    /**
+     * Current frequency of one core, or -1 if unknown or offline.
+     */
+    int getCoreFreqMHz(int core) {
+        return coreFreqMHz[core];
+    }
+
+    int getCoreMaxFreqMHz(int core) {
+        return coreMaxFreqMHz[core];
+    }
+
+    /**
+     * Cores whose frequency cap is below their hardware maximum (thermal or power limits), or -1.
+     */
+    int getCappedCoreCount() {
+        return cappedCoreCount;
+    }
+}
@@ -0,0 +1,278 @@
+package com.smartherd.debugoverlay;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Per-thread CPU usage from the kernel's per-task stat files (/proc/self/task/<tid>/stat), so the
+ * overlay can tell whether the main thread, RenderThread or a network pool is burning the CPU.
+ *
+ * Cheap enough for every sample: each task's stat file is opened once and kept open, re-read
+ * from offset 0 into one reused byte buffer, and parsed by hand (utime + stime, the comm name in
+ * place). The task directory is only listed again when the thread count changes or every
+ * RESCAN_INTERVAL samples, and a thread's name is only turned into a String when it is first
+ * seen or renamed. Tasks whose file can no longer be read have exited and are dropped.
+ *
+ * A thread's first reading is its baseline, so only CPU time spent between two samples is
+ * counted, never a thread's lifetime total.
+ *
+ * Not thread-safe: each sampler should own its instance.
+ */
+final class ThreadCpuSampler {
+
+    static final String TASK_DIR = "/proc/self/task";
+    static final int MAX_THREADS = 512;
+    // Name used for the task whose tid is the process id.
+    static final String MAIN_THREAD_NAME = "main";
+    private static final int RESCAN_INTERVAL = 10;
+    private static final int NO_BASELINE = -1;
+
+    private final String taskDir;
+    private final int mainTid;
+    private final long ticksPerSecond;
+
+    // A stat line is ~300 bytes; comm is at most 16.
+    private final byte[] buffer = new byte[1024];
+
+    // --- Tracked Tasks (parallel arrays, first `count` used) ---
+    private final int[] tids = new int[MAX_THREADS];
+    private final RandomAccessFile[] files = new RandomAccessFile[MAX_THREADS];
+    private final String[] names = new String[MAX_THREADS];
+    private final long[] ticks = new long[MAX_THREADS];
+    private final long[] deltaTicks = new long[MAX_THREADS];
+    private final boolean[] picked = new boolean[MAX_THREADS];
+    private int count = 0;
+
+    private long lastSampleNanos = 0;
+    private long intervalNanos = 0;
+    private int samplesUntilRescan = 0;
+    private int lastThreadCountHint = -1;
+
+    /**
+     * @param taskDir        directory with one entry per task (TASK_DIR outside tests).
+     * @param mainTid        tid reported as MAIN_THREAD_NAME (the process id).
+     * @param ticksPerSecond unit of utime/stime (sysconf(_SC_CLK_TCK), normally 100).
+     */
+    ThreadCpuSampler(String taskDir, int mainTid, long ticksPerSecond) {
+        this.taskDir = taskDir;
+        this.mainTid = mainTid;
+        this.ticksPerSecond = ticksPerSecond;
+    }
+
+    /**
+     * Reads every tracked task's CPU time. Allocation-free unless the task list is re-read.
+     *
+     * @param nowNanos         System.nanoTime() of this sample.
+     * @param threadCountHint  current number of threads (e.g. ThreadInventory.countThreads()), or -1;
+     *                         a change triggers a rescan of the task directory.
+     * @return the number of tasks tracked, or -1 if the task directory is unreadable.
+     */
+    int sample(long nowNanos, int threadCountHint) {
+        boolean countChanged = threadCountHint >= 0 && threadCountHint != lastThreadCountHint;
+        lastThreadCountHint = threadCountHint;
+        if (samplesUntilRescan-- <= 0 || countChanged) {
+            samplesUntilRescan = RESCAN_INTERVAL - 1;
+            if (!rescan()) return -1;
+        }
+
+        // Backwards, so removing a task (moving the last one into its slot) skips nothing.
+        for (int i = count - 1; i >= 0; i--) {
+            long taskTicks = readTicks(i);
+            if (taskTicks < 0) {
+                remove(i);
+                continue;
+            }
+            deltaTicks[i] = ticks[i] == NO_BASELINE ? 0 : Math.max(0, taskTicks - ticks[i]);
+            ticks[i] = taskTicks;
+        }
+        intervalNanos = lastSampleNanos == 0 ? 0 : nowNanos - lastSampleNanos;
+        lastSampleNanos = nowNanos;
+        return count;
+    }
+
+    /**
+     * Makes the next sample a baseline only, e.g. after sampling was suspended for a while.
+     */
+    void reset() {
+        lastSampleNanos = 0;
+        intervalNanos = 0;
+        for (int i = 0; i < count; i++) {
+            ticks[i] = NO_BASELINE;
+            deltaTicks[i] = 0;
+        }
+    }
+
+    // --- Task Discovery ---
+
+    private boolean rescan() {
+        String[] entries = new File(taskDir).list();
+        if (entries == null) return false;
+        for (String entry : entries) {
+            if (count >= MAX_THREADS) break;
+            int tid;
+            try {
+                tid = Integer.parseInt(entry);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if (indexOf(tid) >= 0) continue;
+            try {
+                files[count] = new RandomAccessFile(taskDir + "/" + entry + "/stat", "r");
+            } catch (IOException e) {
+                // Exited between listing and opening.
+                continue;
+            }
+            tids[count] = tid;
+            names[count] = tid == mainTid ? MAIN_THREAD_NAME : null;
+            ticks[count] = NO_BASELINE;
+            deltaTicks[count] = 0;
+            count++;
+        }
+        return true;
+    }
+
+    private int indexOf(int tid) {
+        for (int i = 0; i < count; i++) {
+            if (tids[i] == tid) return i;
+        }
+        return -1;
+    }
+
+    private void remove(int index) {
+        closeQuietly(files[index]);
+        int last = --count;
+        tids[index] = tids[last];
+        files[index] = files[last];
+        names[index] = names[last];
+        ticks[index] = ticks[last];
+        deltaTicks[index] = deltaTicks[last];
+        files[last] = null;
+        names[last] = null;
+    }
+
+    // --- Parsing ---
+
+    // utime + stime of task {@code index}, refreshing its name; -1 once the task is gone.
+    private long readTicks(int index) {
+        int length;
+        try {
+            RandomAccessFile file = files[index];
+            // procfs regenerates the file on every read from offset 0.
+            file.seek(0);
+            length = 0;
+            int read;
+            while (length < buffer.length && (read = file.read(buffer, length, buffer.length - length)) > 0) {
+                length += read;
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+
+        // "tid (comm) state ppid ...": comm may itself hold spaces or ')', so use the last ')'.
+        int open = -1;
+        int close = -1;
+        for (int i = 0; i < length; i++) {
+            if (buffer[i] == '(' && open < 0) open = i;
+            if (buffer[i] == ')') close = i;
+        }
+        if (open < 0 || close < open) return -1;
+        if (tids[index] != mainTid) updateName(index, open + 1, close - open - 1);
+        return parseCpuTicks(buffer, close, length);
+    }
+
+    /**
+     * utime + stime (fields 14 and 15) of a stat line whose comm ends at {@code close}, or -1.
+     */
+    static long parseCpuTicks(byte[] data, int close, int length) {
+        // Field 3 (state) starts two bytes after ')'; skip to field 14.
+        int field = 3;
+        int i = close + 2;
+        while (field < 14 && i < length) {
+            if (data[i++] == ' ') field++;
+        }
+        long utime = 0;
+        long stime = 0;
+        boolean sawUtime = false;
+        boolean sawStime = false;
+        for (; i < length && data[i] >= '0' && data[i] <= '9'; i++) {
+            utime = utime * 10 + (data[i] - '0');
+            sawUtime = true;
+        }
+        for (i++; i < length && data[i] >= '0' && data[i] <= '9'; i++) {
+            stime = stime * 10 + (data[i] - '0');
+            sawStime = true;
+        }
+        return sawUtime && sawStime ? utime + stime : -1;
+    }
+
+    private void updateName(int index, int start, int length) {
+        String name = names[index];
+        if (name != null && name.length() == length) {
+            boolean same = true;
+            for (int i = 0; i < length && same; i++) {
+                same = name.charAt(i) == (char) (buffer[start + i] & 0xFF);
+            }
+            if (same) return;
+        }
+        // First sighting, or the thread renamed itself.
+        names[index] = new String(buffer, start, length, StandardCharsets.UTF_8);
+    }
+
+    // --- Results ---
+
+    /**
+     * Copies up to {@code outNames.length} threads that used CPU during the last interval, busiest
+     * first, with their usage in percent of one core. Allocation-free.
+     *
+     * @return the number of threads copied.
+     */
+    int readTopThreads(String[] outNames, double[] outPercent) {
+        int max = Math.min(outNames.length, outPercent.length);
+        if (intervalNanos <= 0) return 0;
+        for (int i = 0; i < count; i++) {
+            picked[i] = false;
+        }
+        int copied = 0;
+        while (copied < max) {
+            // Selection: N is a handful, the task count a few dozen.
+            int best = -1;
+            for (int i = 0; i < count; i++) {
+                if (picked[i] || deltaTicks[i] == 0) continue;
+                if (best < 0 || deltaTicks[i] > deltaTicks[best]) best = i;
+            }
+            if (best < 0) break;
+            picked[best] = true;
+            outNames[copied] = names[best];
+            outPercent[copied] = deltaTicks[best] * 100.0 * 1_000_000_000.0 / ticksPerSecond / intervalNanos;
+            copied++;
+        }
+        return copied;
+    }
+
+    int getTrackedCount() {
+        return count;
+    }
+
+    void close() {
+        for (int i = 0; i < count; i++) {
+            closeQuietly(files[i]);
+            files[i] = null;
+            names[i] = null;
+        }
+        count = 0;
+        lastSampleNanos = 0;
+        intervalNanos = 0;
+        samplesUntilRescan = 0;
+        lastThreadCountHint = -1;
+    }
+
+    private static void closeQuietly(RandomAccessFile file) {
+        try {
+            file.close();
+        } catch (IOException ignored) {
+            // Nothing useful to do; the handle is being discarded anyway.
+        }
+    }
+}
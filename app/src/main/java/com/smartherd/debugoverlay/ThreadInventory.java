@@ -0,0 +1,240 @@
+package com.smartherd.debugoverlay;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Low-cost thread metrics read straight from the kernel's view of this process.
+ *
+ * - countThreads() reads the "Threads:" line of /proc/self/status through a file handle that
+ *   stays open and is re-read from offset 0, into a reused byte buffer. No thread is suspended
+ *   and nothing is allocated, unlike Thread.getAllStackTraces(). If the file can't be read it
+ *   isn't retried: the count is -1 from then on.
+ * - takeInventory() walks /proc/self/task and groups every task (including native threads the
+ *   Java runtime doesn't know about, e.g. RenderThread, binder and hwui workers) by name prefix,
+ *   with trailing numbers stripped: "OkHttp Dispatch", "RxCachedThreadS", "pool-3-thread", ...
+ *   It touches one file per thread, so it is meant to run far less often than countThreads().
+ *
+ * Not thread-safe: each sampler should own its instance.
+ */
+final class ThreadInventory {
+
+    private static final String STATUS_PATH = "/proc/self/status";
+    private static final String TASK_DIR = "/proc/self/task";
+    private static final byte[] THREADS_KEY = {'T', 'h', 'r', 'e', 'a', 'd', 's', ':'};
+    static final int MAX_GROUPS = 32;
+    // Used once MAX_GROUPS distinct prefixes have been seen.
+    static final String OTHER_GROUP = "(other)";
+
+    // /proc/self/status is ~1.5KB; comm is at most 16 bytes.
+    private final byte[] buffer = new byte[4096];
+    private final String statusPath;
+    private RandomAccessFile statusFile;
+    // Set once the status file couldn't be opened or read; it isn't reopened every tick after that.
+    private boolean statusUnavailable = false;
+
+    // --- Inventory (sorted by thread count, most first) ---
+    private final String[] groupNames = new String[MAX_GROUPS];
+    private final int[] groupCounts = new int[MAX_GROUPS];
+    private int groupCount = 0;
+
+    ThreadInventory() {
+        this(STATUS_PATH);
+    }
+
+    /**
+     * @param statusPath the process status file (STATUS_PATH outside tests).
+     */
+    ThreadInventory(String statusPath) {
+        this.statusPath = statusPath;
+    }
+
+    /**
+     * @return the number of threads (tasks) in this process, or -1 if /proc is unreadable.
+     */
+    int countThreads() {
+        if (statusUnavailable) return -1;
+        try {
+            if (statusFile == null) {
+                statusFile = new RandomAccessFile(statusPath, "r");
+            }
+            // procfs regenerates the file on every read from offset 0.
+            statusFile.seek(0);
+            int length = readFully(statusFile);
+            return parseThreadsLine(buffer, length);
+        } catch (IOException e) {
+            close();
+            statusUnavailable = true;
+            return -1;
+        }
+    }
+
+    private int readFully(RandomAccessFile file) throws IOException {
+        int length = 0;
+        int read;
+        while (length < buffer.length && (read = file.read(buffer, length, buffer.length - length)) > 0) {
+            length += read;
+        }
+        return length;
+    }
+
+    static int parseThreadsLine(byte[] data, int length) {
+        for (int i = 0; i + THREADS_KEY.length <= length; i++) {
+            // Keys always start a line.
+            if (i > 0 && data[i - 1] != '\n') continue;
+            if (!startsWith(data, i, THREADS_KEY)) continue;
+
+            int value = 0;
+            boolean sawDigit = false;
+            for (int j = i + THREADS_KEY.length; j < length && data[j] != '\n'; j++) {
+                byte b = data[j];
+                if (b >= '0' && b <= '9') {
+                    value = value * 10 + (b - '0');
+                    sawDigit = true;
+                } else if (sawDigit) {
+                    break;
+                }
+            }
+            return sawDigit ? value : -1;
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(byte[] data, int offset, byte[] prefix) {
+        for (int k = 0; k < prefix.length; k++) {
+            if (data[offset + k] != prefix[k]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Re-reads every task's name and rebuilds the grouped inventory.
+     *
+     * @return the number of tasks seen, or -1 if /proc/self/task is unreadable.
+     */
+    int takeInventory() {
+        String[] tids = new File(TASK_DIR).list();
+        if (tids == null) return -1;
+
+        for (int i = 0; i < groupCount; i++) {
+            groupCounts[i] = 0;
+        }
+        int seen = 0;
+        for (String tid : tids) {
+            try (RandomAccessFile comm = new RandomAccessFile(TASK_DIR + "/" + tid + "/comm", "r")) {
+                int length = readFully(comm);
+                addToGroup(buffer, prefixLength(buffer, length));
+                seen++;
+            } catch (IOException e) {
+                // The thread exited between listing and reading; skip it.
+            }
+        }
+        dropEmptyGroupsAndSort();
+        return seen;
+    }
+
+    /**
+     * Length of the group prefix of a thread name: the trailing newline, numbers and separators
+     * are stripped, e.g. "Binder:1234_5" -> "Binder", "pool-3-thread-12" -> "pool-3-thread".
+     */
+    static int prefixLength(byte[] name, int length) {
+        int end = length;
+        while (end > 0 && (name[end - 1] == '\n' || name[end - 1] == 0)) end--;
+        int original = end;
+
+        boolean changed = true;
+        while (changed && end > 0) {
+            changed = false;
+            while (end > 0 && name[end - 1] >= '0' && name[end - 1] <= '9') {
+                end--;
+                changed = true;
+            }
+            while (end > 0 && isSeparator(name[end - 1])) {
+                end--;
+                changed = true;
+            }
+        }
+        // Names that are nothing but a number keep their full text.
+        return end > 0 ? end : original;
+    }
+
+    private static boolean isSeparator(byte b) {
+        return b == '-' || b == '_' || b == '#' || b == ':' || b == ' ' || b == '.';
+    }
+
+    private void addToGroup(byte[] name, int length) {
+        for (int i = 0; i < groupCount; i++) {
+            if (sameName(groupNames[i], name, length)) {
+                groupCounts[i]++;
+                return;
+            }
+        }
+        if (groupCount < MAX_GROUPS - 1) {
+            // Only a never-seen prefix allocates its name.
+            groupNames[groupCount] = new String(name, 0, length, StandardCharsets.UTF_8);
+            groupCounts[groupCount++] = 1;
+            return;
+        }
+        for (int i = 0; i < groupCount; i++) {
+            if (OTHER_GROUP.equals(groupNames[i])) {
+                groupCounts[i]++;
+                return;
+            }
+        }
+        groupNames[groupCount] = OTHER_GROUP;
+        groupCounts[groupCount++] = 1;
+    }
+
+    private static boolean sameName(String group, byte[] name, int length) {
+        if (group.length() != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (group.charAt(i) != (char) (name[i] & 0xFF)) return false;
+        }
+        return true;
+    }
+
+    // Removes groups whose threads all exited, then sorts by count (insertion sort, n <= 32).
+    private void dropEmptyGroupsAndSort() {
+        int kept = 0;
+        for (int i = 0; i < groupCount; i++) {
+            if (groupCounts[i] == 0) continue;
+            groupNames[kept] = groupNames[i];
+            groupCounts[kept] = groupCounts[i];
+            kept++;
+        }
+        for (int i = kept; i < groupCount; i++) {
+            groupNames[i] = null;
+        }
+        groupCount = kept;
+
+        for (int i = 1; i < groupCount; i++) {
+            String name = groupNames[i];
+            int count = groupCounts[i];
+            int j = i - 1;
+            while (j >= 0 && groupCounts[j] < count) {
+                groupNames[j + 1] = groupNames[j];
+                groupCounts[j + 1] = groupCounts[j];
+                j--;
+            }
+            groupNames[j + 1] = name;
+            groupCounts[j + 1] = count;
+        }
+    }
+
+    int getGroupCount() { return groupCount; }
+    String getGroupName(int index) { return groupNames[index]; }
+    int getGroupThreadCount(int index) { return groupCounts[index]; }
+
+    void close() {
+        if (statusFile != null) {
+            try {
+                statusFile.close();
+            } catch (IOException ignored) {
+                // Nothing useful to do; the handle is being discarded anyway.
+            }
+            statusFile = null;
+        }
+    }
+}
@@ -20,6 +20,7 @@ public class myApp extends Application {
         // Example OkHttp client (not strictly required if you don’t use OkHttp)
         OkHttpClient client = new OkHttpClient.Builder()
                 .addInterceptor(DebugOverlay.getNetworkInterceptor())
+                .eventListenerFactory(DebugOverlay.getNetworkEventListenerFactory())
                 .build();
     }
 }
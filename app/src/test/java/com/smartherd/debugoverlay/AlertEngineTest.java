@@ -0,0 +1,169 @@
+package com.smartherd.debugoverlay;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the sliding-window aggregates and the alert rules evaluated over them.
+ */
+public class AlertEngineTest {
+
+    private final DebugStatsCollector.StatsData data = new DebugStatsCollector.StatsData();
+
+    @Test
+    public void slidingWindow_tracksMinMaxMeanAsSamplesExpire() {
+        SlidingWindow window = new SlidingWindow(3_000, 8);
+        double[] values = {5, 1, 4, 8, 2, 7};
+        for (int i = 0; i < values.length; i++) {
+            window.add(i * 1_000L, values[i]);
+        }
+        // Samples at 3s, 4s and 5s remain: 8, 2, 7.
+        assertEquals(3, window.size());
+        assertEquals(2, window.min(), 0.0);
+        assertEquals(8, window.max(), 0.0);
+        assertEquals(17 / 3.0, window.mean(), 1e-9);
+        assertEquals((7 - 8) * 60_000.0 / 2_000, window.ratePerMinute(), 1e-9);
+
+        window.evict(7_500);
+        assertEquals(1, window.size());
+        assertEquals(7, window.min(), 0.0);
+        assertEquals(7, window.max(), 0.0);
+    }
+
+    @Test
+    public void slidingWindow_dropsOldestWhenFull() {
+        SlidingWindow window = new SlidingWindow(60_000, 3);
+        for (int i = 0; i < 5; i++) {
+            window.add(i, 10 - i);
+        }
+        assertEquals(3, window.size());
+        assertEquals(8, window.max(), 0.0);
+        assertEquals(6, window.min(), 0.0);
+    }
+
+    @Test
+    public void parse_readsMetricHostOperatorAndWindow() {
+        AlertRule rule = AlertRule.parse(" net.p99[api.example.com] above 800ms over 30s ");
+        assertEquals(AlertRule.NET_P99, rule.metric);
+        assertEquals("api.example.com", rule.host);
+        assertTrue(rule.above);
+        assertEquals(800, rule.threshold, 0.0);
+        assertFalse(rule.sustained);
+        assertEquals(30_000, rule.windowMs);
+        assertEquals("net.p99[api.example.com] above 800ms over 30s", rule.text);
+
+        AlertRule growth = AlertRule.parse("rate(heap) > 20MB/min over 1m");
+        assertTrue(growth.rate);
+        assertEquals(AlertRule.HEAP, growth.metric);
+        assertEquals(60_000, growth.windowMs);
+
+        String[] invalid = {
+                "fps < 45", "frames < 45 for 3s", "fps = 45 for 3s", "fps < lots for 3s",
+                "fps < 45 during 3s", "fps < 45 for 3h", "heap[a.com] > 1 over 1s",
+                "net.p99 > 800 for 30s", "rate(net.p99) > 1 over 1m",
+        };
+        for (String text : invalid) {
+            try {
+                AlertRule.parse(text);
+                fail("Parsed " + text);
+            } catch (IllegalArgumentException expected) {
+                // Rejected as it should be.
+            }
+        }
+    }
+
+    @Test
+    public void sustainedRule_firesOnceCoveredAndClears() {
+        AlertEngine engine = new AlertEngine();
+        List<String> fired = new ArrayList<>();
+        engine.setListener((rule, value, wallMs) -> fired.add(rule.text + "=" + value));
+        engine.addRule("fps < 45 for 3s");
+
+        long now = 0;
+        // 40 FPS at 0, 1 and 2s: below the threshold, but not yet for 3s.
+        for (; now <= 2_000; now += 1_000) {
+            evaluate(engine, 40, now);
+            assertEquals(0, data.alertFiringCount);
+        }
+        evaluate(engine, 40, now);
+        assertEquals(1, data.alertFiringCount);
+        assertEquals(1L << AlertRule.FPS, data.alertFiringMetrics);
+        assertEquals("fps < 45 for 3s", data.alertLabel);
+        assertEquals(1, data.alertEventCount);
+        assertEquals(1, fired.size());
+        assertTrue(StatsLineFormatter.isAlerting(data, StatsLineFormatter.LINE_FPS));
+        assertFalse(StatsLineFormatter.isAlerting(data, StatsLineFormatter.LINE_CPU));
+
+        // One good sample breaks "every sample in the window".
+        now += 1_000;
+        evaluate(engine, 60, now);
+        assertEquals(0, data.alertFiringCount);
+        assertEquals(0, data.alertFiringMetrics);
+
+        // Only once it has left the window does the rule fire again.
+        for (int i = 0; i < 2; i++) {
+            now += 1_000;
+            evaluate(engine, 40, now);
+            assertEquals(0, data.alertFiringCount);
+        }
+        now += 1_000;
+        evaluate(engine, 40, now);
+        assertEquals(1, data.alertFiringCount);
+        assertEquals(2, fired.size());
+
+        StringBuilder report = new StringBuilder();
+        engine.appendReport(report);
+        assertTrue(report.toString(), report.toString().contains("fired 2 times"));
+        assertTrue(report.toString(), report.toString().contains(", cleared 1970-01-01T00:00:04Z"));
+    }
+
+    @Test
+    public void rateRule_comparesGrowthPerMinute() {
+        AlertEngine engine = new AlertEngine();
+        engine.addRule("rate(heap) > 20 over 30s");
+        // +15MB every 30s is 30MB/min.
+        for (long now = 0; now <= 30_000; now += 1_000) {
+            data.javaHeapUsedMB = (int) (100 + now / 2_000);
+            engine.evaluate(data, now, now);
+        }
+        assertEquals(1, data.alertFiringCount);
+        assertEquals(30, data.alertValue, 2.0);
+    }
+
+    @Test
+    public void networkRule_usesCallsToTheHostWithinTheWindow() {
+        AlertEngine engine = new AlertEngine();
+        engine.addRule("net.p99[example.com] > 800ms over 30s");
+        NetworkLogBuffer.Entry call = new NetworkLogBuffer.Entry();
+
+        // Slow calls elsewhere don't count; subdomains do.
+        call.host = "other.org";
+        call.durationMs = 5_000;
+        engine.addCall(0, call);
+        engine.evaluate(data, 0, 0);
+        assertEquals(0, data.alertFiringCount);
+
+        call.host = "api.example.com";
+        call.statusCode = 200;
+        for (int i = 0; i < 10; i++) {
+            call.durationMs = i == 9 ? 1_200 : 100;
+            engine.addCall(1_000, call);
+        }
+        engine.evaluate(data, 1_000, 1_000);
+        assertEquals(1, data.alertFiringCount);
+        assertTrue(StatsLineFormatter.isAlerting(data, StatsLineFormatter.LINE_NETWORK));
+
+        // Thirty seconds on, the slow call has left the window.
+        engine.evaluate(data, 31_000, 31_000);
+        assertEquals(0, data.alertFiringCount);
+    }
+
+    private void evaluate(AlertEngine engine, int fps, long nowMs) {
+        data.fps = fps;
+        engine.evaluate(data, nowMs, nowMs);
+    }
+}
@@ -0,0 +1,74 @@
+package com.smartherd.debugoverlay;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the started-activity count behind background suspension.
+ */
+public class AppVisibilityTrackerTest {
+
+    private final List<Boolean> changes = new ArrayList<>();
+
+    private AppVisibilityTracker tracker(boolean initiallyVisible) {
+        AppVisibilityTracker tracker = new AppVisibilityTracker(initiallyVisible);
+        tracker.addListener(changes::add);
+        return tracker;
+    }
+
+    @Test
+    public void countsStartedActivities() {
+        AppVisibilityTracker tracker = tracker(false);
+        assertFalse(tracker.isVisible());
+
+        tracker.onStarted();
+        tracker.onStarted();
+        assertTrue(tracker.isVisible());
+
+        // One of two activities stopping (e.g. navigating back) keeps the app visible.
+        tracker.onStopped(false);
+        assertTrue(tracker.isVisible());
+
+        tracker.onStopped(false);
+        assertFalse(tracker.isVisible());
+        assertEquals(List.of(true, false), changes);
+
+        // A stray stop never drives the count below zero.
+        tracker.onStopped(false);
+        tracker.onStarted();
+        assertTrue(tracker.isVisible());
+    }
+
+    @Test
+    public void configurationChange_isNotABackgroundTrip() {
+        AppVisibilityTracker tracker = tracker(true);
+        tracker.onStarted();
+
+        // Rotation: the activity stops to be recreated, and its replacement starts.
+        tracker.onStopped(true);
+        assertTrue(tracker.isVisible());
+        tracker.onStarted();
+        assertTrue(tracker.isVisible());
+        assertTrue(changes.isEmpty());
+
+        tracker.onStopped(false);
+        assertFalse(tracker.isVisible());
+        assertEquals(List.of(false), changes);
+    }
+
+    @Test
+    public void removedListener_isNotCalled() {
+        AppVisibilityTracker tracker = new AppVisibilityTracker(false);
+        AppVisibilityTracker.Listener listener = changes::add;
+        tracker.addListener(listener);
+        tracker.addListener(listener);
+        tracker.onStarted();
+        tracker.removeListener(listener);
+        tracker.onStopped(false);
+        assertEquals(List.of(true), changes);
+    }
+}
@@ -0,0 +1,48 @@
+package com.smartherd.debugoverlay;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for allocation-free overlay text formatting.
+ */
+public class CharLineTest {
+
+    @Test
+    public void append_formatsIntegers() {
+        CharLine line = new CharLine(32);
+        line.append("FPS: ").append(58).append(' ').append(-7).append(' ').append(0);
+        assertEquals("FPS: 58 -7 0", line.toString());
+    }
+
+    @Test
+    public void appendFixed_matchesStringFormat() {
+        CharLine line = new CharLine(32);
+        assertEquals(String.format("%.1f", 12.345), line.clear().appendFixed(12.345, 1).toString());
+        assertEquals("5.05", line.clear().appendFixed(5.05, 2).toString());
+        assertEquals("0.0", line.clear().appendFixed(0.0, 1).toString());
+        assertEquals("-3.5", line.clear().appendFixed(-3.5, 1).toString());
+        assertEquals("120", line.clear().appendFixed(119.96, 0).toString());
+    }
+
+    @Test
+    public void append_truncatesAtCapacity() {
+        CharLine line = new CharLine(6);
+        line.append("Net: ").append(12345);
+        assertEquals("Net: 1", line.toString());
+        assertEquals(6, line.length());
+    }
+
+    @Test
+    public void contentEquals_comparesVisibleText() {
+        CharLine a = new CharLine(16).append("CPU: ").appendFixed(4.2, 1);
+        CharLine b = new CharLine(16).append("CPU: 4.2");
+        assertTrue(a.contentEquals(b));
+
+        b.clear().append("CPU: 4.3");
+        assertFalse(a.contentEquals(b));
+        a.copyFrom(b);
+        assertTrue(a.contentEquals(b));
+    }
+}
@@ -0,0 +1,97 @@
+package com.smartherd.debugoverlay;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for log-linear latency histograms and per-endpoint aggregation.
+ */
+public class EndpointStatsRegistryTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void histogram_percentilesStayWithinRelativeErrorBound() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int ms = 1; ms <= 1000; ms++) {
+            histogram.record(ms * 1_000L, false);
+        }
+
+        long[] scratch = new long[LatencyHistogram.BUCKET_COUNT];
+        long total = histogram.snapshot(scratch);
+        assertEquals(1000, total);
+
+        double bound = 1.0 / (1 << LatencyHistogram.SUB_BUCKET_BITS);
+        assertWithin(500_000, LatencyHistogram.percentile(scratch, total, 50), bound);
+        assertWithin(950_000, LatencyHistogram.percentile(scratch, total, 95), bound);
+        assertWithin(990_000, LatencyHistogram.percentile(scratch, total, 99), bound);
+    }
+
+    @Test
+    public void histogram_bucketIndexIsMonotonicAndClamped() {
+        int previous = -1;
+        for (long v = 0; v < 5_000_000L; v += 997) {
+            int index = LatencyHistogram.bucketIndex(v);
+            assertTrue(index >= previous);
+            previous = index;
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+        assertEquals(0, LatencyHistogram.bucketIndex(-5));
+    }
+
+    @Test
+    public void routeKey_collapsesIdSegments() {
+        assertEquals("GET api.example.com/users/{id}/posts",
+                EndpointStatsRegistry.routeKey("GET", "api.example.com", "/users/42/posts"));
+        assertEquals("GET api.example.com/",
+                EndpointStatsRegistry.routeKey("GET", "api.example.com", "/"));
+        assertEquals("PUT h/items/{id}",
+                EndpointStatsRegistry.routeKey("PUT", "h", "/items/123e4567-e89b-12d3-a456-426614174000"));
+        assertEquals("GET h/v2/feed", EndpointStatsRegistry.routeKey("GET", "h", "/v2/feed"));
+    }
+
+    @Test
+    public void record_aggregatesPerHostWithErrorRate() {
+        EndpointStatsRegistry registry = new EndpointStatsRegistry();
+        for (int i = 0; i < 10; i++) {
+            registry.record("GET", "busy.example.com", "/a/" + i, i < 2 ? 503 : 200, 100 * MS);
+        }
+        registry.record("GET", "quiet.example.com", "/", NetworkLogBuffer.STATUS_FAILED, 10 * MS);
+
+        long[] scratch = new long[LatencyHistogram.BUCKET_COUNT];
+        EndpointStatsRegistry.Summary[] top = {
+                new EndpointStatsRegistry.Summary(), new EndpointStatsRegistry.Summary(), new EndpointStatsRegistry.Summary()
+        };
+        assertEquals(2, registry.summarizeTopHosts(scratch, top));
+        assertEquals("busy.example.com", top[0].name);
+        assertEquals(10, top[0].calls);
+        assertEquals(0.2, top[0].errorRate, 1e-9);
+        assertEquals(100.0, top[0].p99Ms, 100.0 / 16);
+        assertEquals(1.0, top[1].errorRate, 1e-9);
+        assertNull(top[2].name);
+
+        // All ten paths collapse into one route.
+        assertEquals(2, registry.summarizeTopRoutes(scratch, top));
+        assertEquals("GET busy.example.com/a/{id}", top[0].name);
+    }
+
+    @Test
+    public void record_foldsEndpointsBeyondCapIntoOther() {
+        EndpointStatsRegistry registry = new EndpointStatsRegistry();
+        for (int i = 0; i < EndpointStatsRegistry.MAX_HOSTS * 2; i++) {
+            registry.record("GET", "host" + i + ".example.com", "/", 200, MS);
+        }
+
+        long[] scratch = new long[LatencyHistogram.BUCKET_COUNT];
+        EndpointStatsRegistry.Summary[] top = { new EndpointStatsRegistry.Summary() };
+        registry.summarizeTopHosts(scratch, top);
+        assertEquals(EndpointStatsRegistry.OTHER_ENDPOINT, top[0].name);
+        assertEquals(EndpointStatsRegistry.MAX_HOSTS + 1, top[0].calls);
+    }
+
+    private static void assertWithin(long expected, long actual, double relativeError) {
+        assertTrue("expected ~" + expected + " but was " + actual,
+                Math.abs(actual - expected) <= expected * relativeError);
+    }
+}
@@ -0,0 +1,109 @@
+package com.smartherd.debugoverlay;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the in-memory flight recorder and its dumps.
+ */
+public class FlightRecorderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final long FRAME_NS = 16_666_667L;
+    private static final long SECOND_NS = 1_000_000_000L;
+
+    // Feeds {@code seconds} of 60Hz frames and one sample per second, starting at startNs.
+    private static long feed(FlightRecorder flight, long startNs, int seconds, long jankNs) {
+        long[] intervals = new long[60];
+        long[] frameTimes = new long[60];
+        long longest = 0;
+        long time = startNs;
+        for (int s = 0; s < seconds; s++) {
+            for (int i = 0; i < 60; i++) {
+                intervals[i] = s == seconds - 1 && i == 30 ? jankNs : FRAME_NS;
+                time += intervals[i];
+                frameTimes[i] = time;
+            }
+            longest = Math.max(longest, flight.addFrames(intervals, frameTimes, 60));
+            DebugStatsCollector.StatsData sample = new DebugStatsCollector.StatsData();
+            sample.fps = 50 + s;
+            flight.addSample(sample, time);
+        }
+        return longest;
+    }
+
+    @Test
+    public void freeze_keepsOnlyTheWindowAndWritesAReadableSession() throws Exception {
+        FlightRecorder flight = new FlightRecorder(5_000, 4096, 16, 8);
+        long start = 1_000 * SECOND_NS;
+        long longest = feed(flight, start, 20, 300_000_000L);
+        assertEquals(300_000_000L, longest);
+        long now = start + 20 * SECOND_NS + SECOND_NS / 2;
+
+        NetworkLogBuffer.Entry call = new NetworkLogBuffer.Entry();
+        call.method = "GET";
+        call.host = "api.example.com";
+        call.path = "/feed";
+        call.statusCode = 200;
+        call.durationMs = 120;
+        long wallNow = 1_700_000_000_000L;
+        call.timestampMs = wallNow - 30_000; // Outside the window.
+        flight.addNetworkCall(call);
+        call.timestampMs = wallNow - 1_000;
+        flight.addNetworkCall(call);
+
+        assertTrue(flight.freeze(now, wallNow));
+        // Only the last 5 seconds (the janky frame stretches the last one).
+        assertEquals(5, flight.frozenSampleCount());
+        assertEquals(1, flight.frozenCallCount());
+        assertTrue(flight.frozenFrameCount() >= 4 * 60 && flight.frozenFrameCount() <= 5 * 60);
+        // The frozen copy is busy until released; the live rings keep filling meanwhile.
+        assertFalse(flight.freeze(now, wallNow));
+        feed(flight, now, 1, FRAME_NS);
+
+        SessionRecorder recorder = new SessionRecorder(folder.getRoot(), 1024 * 1024, 1,
+                FlightRecorder.FILE_PREFIX + wallNow, flight.frozenStartWallMs(), flight.frozenStartMonoNs());
+        flight.writeFrozen(recorder);
+        recorder.close();
+        flight.release();
+        assertTrue(flight.freeze(now + SECOND_NS, wallNow + 1_000));
+
+        StringWriter json = new StringWriter();
+        SessionTraceExporter.export(recorder.files(), json);
+        String trace = json.toString();
+        assertTrue(trace, trace.contains("\"name\":\"Frozen frame\"") || trace.contains("\"name\":\"Janky frame\""));
+        assertTrue(trace.contains("\"name\":\"GET api.example.com/feed\""));
+        assertTrue(trace.contains("\"args\":{\"fps\":69"));
+        assertFalse(trace.contains("\"args\":{\"fps\":64"));
+        // Times start at the window, not before it.
+        assertFalse(trace.contains("\"ts\":-"));
+    }
+
+    @Test
+    public void pruneDumps_keepsTheNewestDumpsWithAllTheirFiles() throws Exception {
+        File dir = folder.getRoot();
+        for (long id : new long[] {1000, 2000, 3000}) {
+            assertTrue(new File(dir, FlightRecorder.FILE_PREFIX + id + "-000.dovr").createNewFile());
+            assertTrue(new File(dir, FlightRecorder.FILE_PREFIX + id + FlightRecorder.REPORT_SUFFIX).createNewFile());
+        }
+        assertTrue(new File(dir, "session-1-000.dovr").createNewFile());
+
+        FlightRecorder.pruneDumps(dir, 2);
+
+        String[] names = dir.list();
+        Arrays.sort(names);
+        assertArrayEquals(new String[] {
+                "flight-2000-000.dovr", "flight-2000.txt", "flight-3000-000.dovr", "flight-3000.txt",
+                "session-1-000.dovr"
+        }, names);
+    }
+}
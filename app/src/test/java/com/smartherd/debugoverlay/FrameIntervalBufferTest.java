@@ -0,0 +1,125 @@
+package com.smartherd.debugoverlay;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the primitive frame-interval ring buffer.
+ */
+public class FrameIntervalBufferTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void summarize_emptyBuffer_reportsZero() {
+        FrameIntervalBuffer buffer = new FrameIntervalBuffer(8);
+        assertEquals(0, buffer.summarize());
+        assertEquals(0, buffer.getMeanNs());
+        assertEquals(0, buffer.getP99Ns());
+    }
+
+    @Test
+    public void summarize_computesMeanAndPercentiles() {
+        FrameIntervalBuffer buffer = new FrameIntervalBuffer(100);
+        for (int i = 1; i <= 100; i++) {
+            buffer.record(i * MS);
+        }
+
+        assertEquals(100, buffer.summarize());
+        assertEquals(50_500_000L, buffer.getMeanNs());
+        assertEquals(50 * MS, buffer.getP50Ns());
+        assertEquals(90 * MS, buffer.getP90Ns());
+        assertEquals(99 * MS, buffer.getP99Ns());
+    }
+
+    @Test
+    public void record_overwritesOldestSampleWhenFull() {
+        FrameIntervalBuffer buffer = new FrameIntervalBuffer(4);
+        buffer.record(100 * MS);
+        for (int i = 0; i < 4; i++) {
+            buffer.record(10 * MS);
+        }
+
+        assertEquals(4, buffer.summarize());
+        assertEquals(10 * MS, buffer.getMeanNs());
+        assertEquals(10 * MS, buffer.getP99Ns());
+    }
+
+    @Test
+    public void record_countsSlowAndFrozenFrames() {
+        FrameIntervalBuffer buffer = new FrameIntervalBuffer(8);
+        buffer.record(16 * MS);
+        buffer.record(17 * MS);
+        buffer.record(120 * MS);
+        buffer.record(800 * MS);
+
+        assertEquals(2, buffer.getSlowFrameCount());
+        assertEquals(1, buffer.getFrozenFrameCount());
+
+        buffer.clear();
+        assertEquals(0, buffer.getSlowFrameCount());
+        assertEquals(0, buffer.getFrozenFrameCount());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void record_countsDroppedVsyncsAgainstRefreshPeriod() {
+        FrameIntervalBuffer buffer = new FrameIntervalBuffer(8);
+        buffer.setRefreshPeriodNs(8_333_333L); // 120Hz
+
+        buffer.record(8_400_000L);  // on time (jitter)
+        buffer.record(16_700_000L); // spans 2 vsyncs -> 1 dropped
+        buffer.record(33_300_000L); // spans 4 vsyncs -> 3 dropped
+
+        assertEquals(4, buffer.getDroppedVsyncCount());
+        // Slow-frame counting keeps the fixed 16.6ms vitals threshold regardless of refresh rate.
+        assertEquals(2, buffer.getSlowFrameCount());
+    }
+
+    @Test
+    public void copyFrames_drainsHistoryBeyondWindowAndCountsLostFrames() {
+        FrameIntervalBuffer buffer = new FrameIntervalBuffer(4, 8);
+        FrameIntervalBuffer.Cursor cursor = new FrameIntervalBuffer.Cursor();
+        long[] intervals = new long[16];
+        long[] times = new long[16];
+        for (int i = 1; i <= 6; i++) {
+            buffer.record(i * MS, i * 100 * MS);
+        }
+
+        // All six frames are retained even though the summary window is four.
+        assertEquals(6, buffer.copyFrames(cursor, intervals, times));
+        assertEquals(1 * MS, intervals[0]);
+        assertEquals(600 * MS, times[5]);
+        assertEquals(0, buffer.copyFrames(cursor, intervals, times));
+        assertEquals(4, buffer.summarize());
+
+        // Ten more frames overflow the eight-frame history: the two oldest are lost.
+        for (int i = 7; i <= 16; i++) {
+            buffer.record(i * MS, i * 100 * MS);
+        }
+        assertEquals(8, buffer.copyFrames(cursor, intervals, times));
+        assertEquals(9 * MS, intervals[0]);
+        assertEquals(2, cursor.lostFrames);
+    }
+
+    @Test
+    public void restartWindow_summarizesOnlyNewFramesButKeepsCounters() {
+        FrameIntervalBuffer buffer = new FrameIntervalBuffer(8);
+        buffer.record(40 * MS);
+        buffer.record(800 * MS);
+        buffer.restartWindow();
+
+        assertEquals(0, buffer.summarize());
+        assertEquals(0, buffer.size());
+
+        buffer.record(10 * MS);
+        buffer.record(20 * MS);
+        assertEquals(2, buffer.summarize());
+        assertEquals(15 * MS, buffer.getMeanNs());
+        assertEquals(20 * MS, buffer.getP99Ns());
+        // Jank totals are cumulative and survive the restart.
+        assertEquals(2, buffer.getSlowFrameCount());
+        assertEquals(1, buffer.getFrozenFrameCount());
+    }
+}
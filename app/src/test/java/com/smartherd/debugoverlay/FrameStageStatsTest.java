@@ -0,0 +1,59 @@
+package com.smartherd.debugoverlay;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the per-stage frame timing accumulator.
+ */
+public class FrameStageStatsTest {
+
+    private static long[] frame(long layoutMs, long drawMs, long gpuMs) {
+        long[] stageNs = new long[FrameStageStats.STAGE_COUNT];
+        stageNs[FrameStageStats.STAGE_LAYOUT] = layoutMs * 1_000_000L;
+        stageNs[FrameStageStats.STAGE_DRAW] = drawMs * 1_000_000L;
+        stageNs[FrameStageStats.STAGE_GPU] = gpuMs * 1_000_000L;
+        return stageNs;
+    }
+
+    @Test
+    public void drain_reportsMeansAndDominantStageOfSlowFrames() {
+        FrameStageStats stats = new FrameStageStats();
+        stats.record(frame(2, 3, 1), false);
+        stats.record(frame(2, 3, 1), false);
+        stats.record(frame(20, 4, 2), true);
+        stats.record(frame(16, 2, 6), true);
+        stats.record(frame(1, 3, 25), true);
+
+        FrameStageStats.Summary summary = new FrameStageStats.Summary();
+        assertEquals(5, stats.drain(summary));
+        assertEquals(5, summary.frames);
+        assertEquals(3, summary.slowFrames);
+        assertEquals(FrameStageStats.STAGE_LAYOUT, summary.dominantSlowStage);
+        assertEquals(2 / 3.0, summary.dominantSlowShare, 1e-9);
+        assertEquals(37 / 3.0, summary.slowMeanStageMs[FrameStageStats.STAGE_LAYOUT], 1e-9);
+        assertEquals(41 / 5.0, summary.meanStageMs[FrameStageStats.STAGE_LAYOUT], 1e-9);
+        assertEquals(3, stats.getTotalSlowFrames());
+    }
+
+    @Test
+    public void drain_resetsIntervalAndKeepsSummaryWhenIdle() {
+        FrameStageStats stats = new FrameStageStats();
+        stats.record(frame(2, 3, 1), false);
+        FrameStageStats.Summary summary = new FrameStageStats.Summary();
+        stats.drain(summary);
+        assertEquals(-1, summary.dominantSlowStage);
+
+        // Nothing drawn since: the previous interval stays in place.
+        assertEquals(0, stats.drain(summary));
+        assertEquals(1, summary.frames);
+
+        stats.record(frame(1, 30, 1), true);
+        stats.drain(summary);
+        assertEquals(1, summary.frames);
+        assertEquals(FrameStageStats.STAGE_DRAW, summary.dominantSlowStage);
+        assertEquals(1.0, summary.dominantSlowShare, 1e-9);
+        assertEquals(2, stats.getTotalFrames());
+    }
+}
@@ -0,0 +1,110 @@
+package com.smartherd.debugoverlay;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the main-thread sampling profiler and its call tree.
+ */
+public class MainThreadProfilerTest {
+
+    private static StackTraceElement frame(String className, String method, int line) {
+        return new StackTraceElement(className, method, className + ".java", line);
+    }
+
+    // Innermost frame first, as Thread.getStackTrace() returns them.
+    private static StackTraceElement[] stack(StackTraceElement... frames) {
+        return frames;
+    }
+
+    private static final StackTraceElement LOOP = frame("android.os.Looper", "loop", 10);
+    private static final StackTraceElement DISPATCH = frame("app.Feed", "dispatch", 20);
+    private static final StackTraceElement BIND = frame("app.Feed", "bind", 30);
+    private static final StackTraceElement INFLATE = frame("app.Feed", "inflate", 40);
+
+    @Test
+    public void tree_sharesPrefixesAndExportsCollapsedStacks() throws Exception {
+        StackSampleTree tree = new StackSampleTree();
+        tree.addSample(stack(BIND, DISPATCH, LOOP));
+        tree.addSample(stack(BIND, DISPATCH, LOOP));
+        // Another line of the same method is the same frame.
+        tree.addSample(stack(frame("app.Feed", "bind", 31), DISPATCH, LOOP));
+        tree.addSample(stack(INFLATE, DISPATCH, LOOP));
+        tree.addSample(stack(DISPATCH, LOOP));
+
+        // Root + loop + dispatch + bind + inflate: the common prefix is stored once.
+        assertEquals(5, tree.getNodeCount());
+        assertEquals(5, tree.getSamples());
+
+        StringBuilder out = new StringBuilder();
+        tree.writeCollapsed(out);
+        String collapsed = out.toString();
+        assertTrue(collapsed, collapsed.contains("android.os.Looper.loop;app.Feed.dispatch;app.Feed.bind 3\n"));
+        assertTrue(collapsed, collapsed.contains("android.os.Looper.loop;app.Feed.dispatch;app.Feed.inflate 1\n"));
+        assertTrue(collapsed, collapsed.contains("android.os.Looper.loop;app.Feed.dispatch 1\n"));
+        assertEquals(3, collapsed.split("\n").length);
+    }
+
+    @Test
+    public void tree_whenFull_chargesSamplesToTheDeepestKnownFrame() throws Exception {
+        StackSampleTree tree = new StackSampleTree(4, 64);
+        tree.addSample(stack(BIND, DISPATCH, LOOP));
+        tree.addSample(stack(INFLATE, DISPATCH, LOOP));
+
+        assertEquals(4, tree.getNodeCount());
+        assertEquals(2, tree.getSamples());
+        assertEquals(1, tree.getTruncatedSamples());
+        StringBuilder out = new StringBuilder();
+        tree.writeCollapsed(out);
+        assertTrue(out.toString(), out.toString().contains("android.os.Looper.loop;app.Feed.dispatch 1\n"));
+
+        tree.clear();
+        assertEquals(1, tree.getNodeCount());
+        assertEquals(0, tree.getSamples());
+    }
+
+    @Test
+    public void profiler_samplesBusyThreadAndSkipsIdleLooper() throws Exception {
+        assertTrue(MainThreadProfiler.isIdle(stack(frame("android.os.MessageQueue", "nativePollOnce", -2), LOOP)));
+        assertFalse(MainThreadProfiler.isIdle(stack(BIND, LOOP)));
+
+        CountDownLatch started = new CountDownLatch(1);
+        Thread busy = new Thread(() -> {
+            started.countDown();
+            spinInKnownPlace();
+        }, "fake-main");
+        busy.start();
+        try {
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            long[] fakeCpuNs = {0};
+            MainThreadProfiler profiler = new MainThreadProfiler(busy, () -> fakeCpuNs[0] += 1_000);
+            for (int i = 0; i < 20; i++) {
+                profiler.sample();
+            }
+
+            assertEquals(20, profiler.getBusySamples());
+            assertEquals(0, profiler.getIdleSamples());
+            // One clock step per sample: the profiler charges itself what the clock advanced.
+            assertEquals(20 * 1_000, profiler.getCpuTimeNs());
+            StringBuilder out = new StringBuilder();
+            profiler.writeCollapsed(out);
+            assertTrue(out.toString(), out.toString().contains("MainThreadProfilerTest.spinInKnownPlace"));
+
+            profiler.reset();
+            assertEquals(0, profiler.getBusySamples());
+        } finally {
+            busy.interrupt();
+            busy.join();
+        }
+    }
+
+    private static void spinInKnownPlace() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Thread.onSpinWait();
+        }
+    }
+}
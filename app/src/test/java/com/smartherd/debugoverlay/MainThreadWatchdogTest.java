@@ -0,0 +1,109 @@
+package com.smartherd.debugoverlay;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the main-thread watchdog, with a single-thread executor standing in for
+ * the main Looper.
+ */
+public class MainThreadWatchdogTest {
+
+    private volatile Thread watchedThread;
+    private ExecutorService watched;
+    private MainThreadWatchdog watchdog;
+
+    @Before
+    public void setUp() throws Exception {
+        watched = Executors.newSingleThreadExecutor(r -> watchedThread = new Thread(r, "fake-main"));
+        watched.submit(() -> { }).get();
+        watchdog = new MainThreadWatchdog(watchedThread, watched);
+        watchdog.setThresholdMs(50);
+    }
+
+    @After
+    public void tearDown() {
+        watched.shutdownNow();
+    }
+
+    private static void blockInKnownPlace(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Runs the heartbeat every 10ms (as the collector does, twice per threshold or more).
+    private void checkUntil(Future<?> work) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!work.isDone() && System.nanoTime() < deadline) {
+            watchdog.check(System.nanoTime());
+            Thread.sleep(10);
+        }
+        // Let the ping queued behind the work run and be accounted for.
+        for (int i = 0; i < 5; i++) {
+            Thread.sleep(10);
+            watchdog.check(System.nanoTime());
+        }
+    }
+
+    @Test
+    public void stall_isCapturedAndLabelledWithTheBlockingFrame() throws Exception {
+        watchdog.check(System.nanoTime());
+        checkUntil(watched.submit(() -> blockInKnownPlace(200)));
+
+        assertEquals(1, watchdog.getStallCount());
+        assertTrue(watchdog.getTotalBlockedMs() >= 100);
+
+        String[] labels = new String[2];
+        int[] counts = new int[2];
+        long[] blockedMs = new long[2];
+        assertEquals(1, watchdog.readTopStalls(labels, counts, blockedMs));
+        assertTrue(labels[0], labels[0].startsWith("MainThreadWatchdogTest.blockInKnownPlace:"));
+        assertEquals(1, counts[0]);
+        assertEquals(watchdog.getTotalBlockedMs(), blockedMs[0]);
+
+        StringBuilder report = new StringBuilder();
+        watchdog.appendReport(report);
+        assertTrue(report.toString().contains("java.lang.Thread.sleep"));
+    }
+
+    @Test
+    public void identicalStacks_areDeduplicatedWithCounts() throws Exception {
+        watchdog.check(System.nanoTime());
+        for (int i = 0; i < 2; i++) {
+            checkUntil(watched.submit(() -> blockInKnownPlace(150)));
+        }
+        // Short work never reaches the threshold.
+        checkUntil(watched.submit(() -> blockInKnownPlace(5)));
+
+        String[] labels = new String[2];
+        int[] counts = new int[2];
+        long[] blockedMs = new long[2];
+        assertEquals(1, watchdog.readTopStalls(labels, counts, blockedMs));
+        assertEquals(2, counts[0]);
+        assertEquals(2, watchdog.getStallCount());
+        assertEquals(0, watchdog.getAnrCount());
+    }
+
+    @Test
+    public void labelOf_skipsPlatformFrames() {
+        StackTraceElement[] stack = {
+                new StackTraceElement("java.lang.Thread", "sleep", "Thread.java", -2),
+                new StackTraceElement("android.os.Handler", "dispatchMessage", "Handler.java", 102),
+                new StackTraceElement("com.example.feed.FeedAdapter", "onBind", "FeedAdapter.java", 88),
+        };
+        assertEquals("FeedAdapter.onBind:88", MainThreadWatchdog.labelOf(stack));
+        assertNotEquals(MainThreadWatchdog.hashOf(stack),
+                MainThreadWatchdog.hashOf(new StackTraceElement[] {stack[0], stack[2]}));
+    }
+}
@@ -0,0 +1,63 @@
+package com.smartherd.debugoverlay;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for MemorySampler's /proc parsing and PSS refresh policy.
+ */
+public class MemorySamplerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static long parse(String statm) {
+        byte[] data = statm.getBytes(StandardCharsets.US_ASCII);
+        return MemorySampler.parseResidentPages(data, data.length);
+    }
+
+    @Test
+    public void parseResidentPages_readsSecondField() {
+        assertEquals(59123, parse("3467220 59123 38200 2 0 120840 0\n"));
+        assertEquals(7, parse("12 7"));
+        assertEquals(-1, parse("3467220"));
+        assertEquals(-1, parse(""));
+    }
+
+    @Test
+    public void breakdownInterval_scalesWithItsCostWithinBounds() {
+        assertEquals(MemorySampler.MIN_BREAKDOWN_INTERVAL_MS, MemorySampler.nextBreakdownIntervalMs(0));
+        assertEquals(MemorySampler.MIN_BREAKDOWN_INTERVAL_MS, MemorySampler.nextBreakdownIntervalMs(10));
+        assertEquals(16_000, MemorySampler.nextBreakdownIntervalMs(80));
+        assertEquals(MemorySampler.MAX_BREAKDOWN_INTERVAL_MS, MemorySampler.nextBreakdownIntervalMs(2_000));
+    }
+
+    @Test
+    public void rssMovedEnough_triggersOnTenPercentEitherWay() {
+        assertFalse(MemorySampler.rssMovedEnough(105_000, 100_000));
+        assertTrue(MemorySampler.rssMovedEnough(110_000, 100_000));
+        assertTrue(MemorySampler.rssMovedEnough(89_000, 100_000));
+        // Unknown RSS, or no breakdown yet: leave it to the timer.
+        assertFalse(MemorySampler.rssMovedEnough(-1, 100_000));
+        assertFalse(MemorySampler.rssMovedEnough(150_000, -1));
+    }
+
+    @Test
+    public void readRssKb_stopsTryingOnceStatmIsUnreadable() throws Exception {
+        File statm = new File(folder.getRoot(), "statm");
+        MemorySampler sampler = new MemorySampler(statm.getPath());
+        assertEquals(-1, sampler.readRssKb());
+
+        // Not reopened on later samples, even once the file is there.
+        Files.write(statm.toPath(), "3467220 59123 38200 2 0 120840 0\n".getBytes(StandardCharsets.US_ASCII));
+        assertEquals(-1, sampler.readRssKb());
+        sampler.close();
+    }
+}
@@ -0,0 +1,48 @@
+package com.smartherd.debugoverlay;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the sparklines' fixed-size metric history.
+ */
+public class MetricHistoryTest {
+
+    @Test
+    public void add_keepsTheNewestValuesOldestFirst() {
+        MetricHistory history = new MetricHistory(3);
+        assertEquals(0, history.size());
+        assertTrue(Float.isNaN(history.last()));
+        assertTrue(Float.isNaN(history.max()));
+
+        for (int i = 1; i <= 5; i++) {
+            history.add(i * 10);
+        }
+        assertEquals(3, history.size());
+        assertEquals(30, history.get(0), 0f);
+        assertEquals(40, history.get(1), 0f);
+        assertEquals(50, history.get(2), 0f);
+        assertEquals(50, history.last(), 0f);
+        assertEquals(30, history.min(), 0f);
+        assertEquals(50, history.max(), 0f);
+
+        history.clear();
+        assertEquals(0, history.size());
+    }
+
+    @Test
+    public void unknownValues_areGapsThatMinMaxSkip() {
+        MetricHistory history = new MetricHistory(4);
+        history.add(Double.NaN);
+        assertEquals(1, history.size());
+        assertTrue(Float.isNaN(history.min()));
+
+        history.add(58);
+        history.add(Double.NaN);
+        history.add(12);
+        assertTrue(Float.isNaN(history.get(2)));
+        assertEquals(12, history.min(), 0f);
+        assertEquals(58, history.max(), 0f);
+    }
+}
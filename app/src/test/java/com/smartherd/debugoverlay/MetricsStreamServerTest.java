@@ -0,0 +1,175 @@
+package com.smartherd.debugoverlay;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the metrics stream: the device-side server and the desktop client over a
+ * real loopback socket.
+ */
+public class MetricsStreamServerTest {
+
+    private MetricsStreamServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MetricsStreamServer(0);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    private void awaitClients(int count) throws Exception {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (server.clientCount() < count) {
+            assertTrue("client not accepted", System.currentTimeMillis() < deadline);
+            server.acceptClients();
+            Thread.sleep(1);
+        }
+    }
+
+    private static DebugStatsCollector.StatsData sample(int fps) {
+        DebugStatsCollector.StatsData data = new DebugStatsCollector.StatsData();
+        data.fps = fps;
+        data.refreshRateHz = 120f;
+        data.frameTimeP99Ms = 24.5;
+        data.slowFrameCount = 7;
+        data.usedMemoryMB = 143;
+        data.cpuUsage = 12.5;
+        data.threadCount = 42;
+        data.networkOverall.p95Ms = 180;
+        data.overheadCpuPercent[OverheadMeter.SAMPLING] = 0.5f;
+        data.overheadMainThreadMsPerSec[OverheadMeter.RENDERING] = 0.25f;
+        return data;
+    }
+
+    private static NetworkLogBuffer.Entry call(String path, int status) {
+        NetworkLogBuffer.Entry entry = new NetworkLogBuffer.Entry();
+        entry.timestampMs = 1_700_000_000_000L;
+        entry.method = "GET";
+        entry.host = "api.example.com";
+        entry.path = path;
+        entry.statusCode = status;
+        entry.durationMs = 95;
+        return entry;
+    }
+
+    @Test
+    public void batch_roundTripsThroughClient() throws Exception {
+        try (MetricsStreamClient client = MetricsStreamClient.connect("127.0.0.1", server.port())) {
+            awaitClients(1);
+
+            server.beginBatch(sample(118), 5_000_000L);
+            server.addFrames(new long[] {8_333_000L, 25_000_000L}, new long[] {1_000_000L, 26_000_000L}, 2);
+            server.addNetworkCall(call("/café/1", 200));
+            server.addNetworkCall(call("/items", NetworkLogBuffer.STATUS_FAILED));
+            server.sendBatch();
+
+            MetricsStreamClient.Batch batch = new MetricsStreamClient.Batch();
+            assertTrue(client.readBatch(batch));
+            assertEquals(MetricsStreamProtocol.VERSION, client.version());
+            assertEquals(0, batch.sequence);
+            assertEquals(5_000_000L, batch.sampleNanos);
+            assertEquals(118, batch.fps);
+            assertEquals(120f, batch.refreshRateHz, 0f);
+            assertEquals(24.5f, batch.frameTimeP99Ms, 0f);
+            assertEquals(7, batch.slowFrameCount);
+            assertEquals(143, batch.usedMemoryMB);
+            assertEquals(42, batch.threadCount);
+            assertEquals(180f, batch.networkP95Ms, 0f);
+
+            assertEquals(2, batch.frameCount);
+            assertEquals(8_333, batch.frameIntervalsUs[0]);
+            assertEquals(25_000, batch.frameIntervalsUs[1]);
+            assertEquals(26_000_000L, batch.lastFrameTimeNanos);
+
+            assertEquals(2, batch.calls.size());
+            assertEquals("/café/1", batch.calls.get(0).path);
+            assertEquals("api.example.com", batch.calls.get(0).host);
+            assertEquals(95, batch.calls.get(0).durationMs);
+            assertEquals(NetworkLogBuffer.STATUS_FAILED, batch.calls.get(1).statusCode);
+
+            // The OVERHEAD message ahead of the batch lands in the same Batch.
+            assertEquals(OverheadMeter.COMPONENT_COUNT, batch.overheadComponentCount);
+            assertEquals("sampling", batch.overheadNames[OverheadMeter.SAMPLING]);
+            assertEquals(0.5f, batch.overheadCpuPercent[OverheadMeter.SAMPLING], 0f);
+            assertEquals(0.25f, batch.overheadMainThreadMsPerSec[OverheadMeter.RENDERING], 0f);
+            assertEquals(-1f, batch.overheadAllocKbPerSec[OverheadMeter.NETWORK], 0f);
+        }
+    }
+
+    @Test
+    public void slowClient_dropsOldestBatchesInsteadOfBuffering() throws Exception {
+        MetricsStreamClient client = MetricsStreamClient.connect("127.0.0.1", server.port());
+        awaitClients(1);
+
+        // Flood a client that isn't reading until the socket buffers and its queue are full.
+        long[] intervals = new long[MetricsStreamProtocol.MAX_FRAMES_PER_BATCH];
+        long[] frameTimes = new long[intervals.length];
+        Arrays.fill(intervals, 16_666_667L);
+        StringBuilder longPath = new StringBuilder();
+        for (int i = 0; i < MetricsStreamProtocol.MAX_STRING_CHARS; i++) longPath.append('x');
+        NetworkLogBuffer.Entry bigCall = call(longPath.toString(), 200);
+        DebugStatsCollector.StatsData data = sample(60);
+        long batches = 0;
+        while (server.droppedBatches() == 0) {
+            assertTrue("never applied backpressure", batches < 100_000);
+            server.beginBatch(data, batches);
+            server.addFrames(intervals, frameTimes, intervals.length);
+            for (int i = 0; i < 40; i++) server.addNetworkCall(bigCall);
+            server.sendBatch();
+            batches++;
+        }
+
+        // Now read, while the server keeps producing small batches until the client has the newest.
+        // The oldest batches were dropped, so the newest one of the flood is still delivered.
+        long newestFlooded = batches - 1;
+        AtomicBoolean sawNewestFlooded = new AtomicBoolean();
+        AtomicLong lastSeen = new AtomicLong(-1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            MetricsStreamClient.Batch batch = new MetricsStreamClient.Batch();
+            long previous = -1;
+            try {
+                while (client.readBatch(batch)) {
+                    assertTrue(batch.sequence > previous);
+                    previous = batch.sequence;
+                    if (batch.sequence == newestFlooded) sawNewestFlooded.set(true);
+                    lastSeen.set(batch.sequence);
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        reader.start();
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        long newest;
+        do {
+            assertTrue("client never caught up", System.currentTimeMillis() < deadline);
+            server.beginBatch(data, batches);
+            server.sendBatch();
+            newest = batches++;
+            Thread.sleep(1);
+        } while (lastSeen.get() != newest);
+
+        server.close();
+        reader.join(5_000);
+        client.close();
+        assertNull(failure.get());
+        assertTrue(server.droppedBatches() > 0);
+        assertTrue(sawNewestFlooded.get());
+        // Every batch the server skipped shows up as a sequence gap on the client.
+        assertEquals(server.droppedBatches(), client.missedBatches());
+    }
+}
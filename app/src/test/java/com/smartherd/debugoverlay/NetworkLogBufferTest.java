@@ -0,0 +1,83 @@
+package com.smartherd.debugoverlay;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the bounded network log ring and its filters.
+ */
+public class NetworkLogBufferTest {
+
+    private static NetworkLogBuffer.Entry[] rows(int n) {
+        NetworkLogBuffer.Entry[] rows = new NetworkLogBuffer.Entry[n];
+        for (int i = 0; i < n; i++) rows[i] = new NetworkLogBuffer.Entry();
+        return rows;
+    }
+
+    @Test
+    public void add_keepsOnlyNewestRecordsWhenFull() {
+        NetworkLogBuffer log = new NetworkLogBuffer(3);
+        for (int i = 0; i < 10; i++) {
+            log.add(i, "GET", "example.com", "/" + i, 200, i, null);
+        }
+
+        assertEquals(10, log.totalRecorded());
+        assertEquals(3, log.countMatching(null, NetworkLogBuffer.FILTER_ALL));
+
+        NetworkLogBuffer.Entry[] out = rows(5);
+        assertEquals(3, log.readMatching(null, NetworkLogBuffer.FILTER_ALL, 0, out));
+        assertEquals("/9", out[0].path);
+        assertEquals("/7", out[2].path);
+    }
+
+    @Test
+    public void readMatching_filtersByHostAndStatus() {
+        NetworkLogBuffer log = new NetworkLogBuffer(16);
+        log.add(0, "GET", "api.example.com", "/a", 200, 10, null);
+        log.add(1, "GET", "cdn.other.net", "/b", 404, 10, null);
+        log.add(2, "POST", "example.com", "/c", 503, 10, null);
+        log.add(3, "GET", "badexample.com", "/d", 200, 10, null);
+        log.add(4, "GET", "api.example.com", "/e", NetworkLogBuffer.STATUS_FAILED, 10, "timeout");
+
+        assertEquals(3, log.countMatching("example.com", NetworkLogBuffer.FILTER_ALL));
+        assertEquals(1, log.countMatching(null, NetworkLogBuffer.FILTER_CLIENT_ERROR));
+        assertEquals(1, log.countMatching(null, NetworkLogBuffer.FILTER_SERVER_ERROR));
+        assertEquals(2, log.countMatching(null, NetworkLogBuffer.FILTER_SUCCESS));
+
+        NetworkLogBuffer.Entry[] out = rows(2);
+        assertEquals(1, log.readMatching("api.example.com", NetworkLogBuffer.FILTER_FAILED, 0, out));
+        assertEquals("timeout", out[0].error);
+    }
+
+    @Test
+    public void readMatching_skipsNewestRowsForScrolling() {
+        NetworkLogBuffer log = new NetworkLogBuffer(8);
+        for (int i = 0; i < 6; i++) {
+            log.add(i, "GET", "example.com", "/" + i, 200, i, null);
+        }
+
+        NetworkLogBuffer.Entry[] out = rows(2);
+        assertEquals(2, log.readMatching(null, NetworkLogBuffer.FILTER_ALL, 3, out));
+        assertEquals("/2", out[0].path);
+        assertEquals("/1", out[1].path);
+    }
+
+    @Test
+    public void readSince_returnsNewerRecordsOldestFirstAndSkipsOverwritten() {
+        NetworkLogBuffer log = new NetworkLogBuffer(4);
+        for (int i = 0; i < 6; i++) {
+            log.add(i, "GET", "example.com", "/" + i, 200, i, null);
+        }
+
+        NetworkLogBuffer.Entry[] out = rows(8);
+        // Records 0 and 1 were overwritten: reading starts at the oldest retained one.
+        assertEquals(4, log.readSince(0, out));
+        assertEquals(2, out[0].sequence);
+        assertEquals("/5", out[3].path);
+
+        assertEquals(1, log.readSince(5, out));
+        assertEquals("/5", out[0].path);
+        assertEquals(0, log.readSince(6, out));
+    }
+}
@@ -0,0 +1,117 @@
+package com.smartherd.debugoverlay;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mockwebserver3.MockResponse;
+import mockwebserver3.MockWebServer;
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for pooled per-phase call timing against a local mock server.
+ */
+public class NetworkTimingListenerFactoryTest {
+
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void create_timesCallsAndReusesPooledRecords() throws Exception {
+        NetworkPhaseStats stats = new NetworkPhaseStats();
+        AtomicInteger statusSeen = new AtomicInteger();
+        NetworkTimingListenerFactory factory = new NetworkTimingListenerFactory(timing -> {
+            statusSeen.set(timing.statusCode);
+            stats.onCallTimed(timing);
+        }, 1);
+        OkHttpClient client = new OkHttpClient.Builder().eventListenerFactory(factory).build();
+
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse.Builder().code(201).body("ok").build());
+            try (Response response = client.newCall(new Request.Builder().url(server.url("/")).build()).execute()) {
+                response.body().string();
+            }
+        }
+
+        // A pool of one served all three sequential calls; the later ones reused the connection.
+        assertEquals(0, factory.getUntimedCallCount());
+        assertEquals(201, statusSeen.get());
+        assertEquals(3, stats.getTotalTimedCalls());
+        assertEquals(2, stats.getTotalReusedConnections());
+
+        double[] meanMs = new double[NetworkTimingListener.PHASE_COUNT];
+        assertEquals(3, stats.drain(meanMs));
+        assertTrue(meanMs[NetworkTimingListener.PHASE_TTFB] >= 0);
+        assertEquals(0, stats.drain(meanMs));
+    }
+
+    @Test
+    public void create_fallsBackToNoneWhenPoolExhausted() {
+        NetworkTimingListenerFactory factory = new NetworkTimingListenerFactory(null, 1);
+        OkHttpClient client = new OkHttpClient();
+        Request request = new Request.Builder().url(server.url("/")).build();
+
+        EventListener first = factory.create(client.newCall(request));
+        EventListener second = factory.create(client.newCall(request));
+
+        assertTrue(first instanceof NetworkTimingListener);
+        assertSame(EventListener.NONE, second);
+        assertEquals(1, factory.getUntimedCallCount());
+    }
+
+    @Test
+    public void canceled_returnsTheRecordToThePool() {
+        NetworkTimingListenerFactory factory = new NetworkTimingListenerFactory(null, 1);
+        OkHttpClient client = new OkHttpClient();
+        Request request = new Request.Builder().url(server.url("/")).build();
+
+        Call canceled = client.newCall(request);
+        EventListener first = factory.create(canceled);
+        first.canceled(canceled);
+
+        assertSame(first, factory.create(client.newCall(request)));
+        assertEquals(0, factory.getUntimedCallCount());
+    }
+
+    @Test
+    public void create_reclaimsStaleRecordsAndIgnoresTheirLateEvents() {
+        AtomicInteger timed = new AtomicInteger();
+        // Stale at once: the next call may take over any record while the pool is full.
+        NetworkTimingListenerFactory factory =
+                new NetworkTimingListenerFactory(timing -> timed.incrementAndGet(), 1, null, 0);
+        OkHttpClient client = new OkHttpClient();
+        Request request = new Request.Builder().url(server.url("/")).build();
+
+        Call abandoned = client.newCall(request);
+        EventListener first = factory.create(abandoned);
+        Call next = client.newCall(request);
+        EventListener second = factory.create(next);
+        assertSame(first, second);
+        assertEquals(1, factory.getReclaimedCallCount());
+        assertEquals(0, factory.getUntimedCallCount());
+
+        // The abandoned call finishing late neither reports nor frees the new owner's record.
+        second.callEnd(abandoned);
+        assertEquals(0, timed.get());
+        second.callEnd(next);
+        assertEquals(1, timed.get());
+    }
+}
@@ -0,0 +1,66 @@
+package com.smartherd.debugoverlay;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the overlay's self-overhead meter.
+ */
+public class OverheadMeterTest {
+
+    // Thread clocks the test advances by hand, as instrumented sections would.
+    private final long[] cpuNs = {0};
+    private final long[] allocBytes = {0};
+    private final OverheadMeter meter = new OverheadMeter(() -> cpuNs[0], () -> allocBytes[0]);
+
+    private void section(int component, long cpu, long alloc) {
+        long cpuStart = meter.cpuStart();
+        long allocStart = meter.allocStart();
+        cpuNs[0] += cpu;
+        allocBytes[0] += alloc;
+        meter.end(component, cpuStart, allocStart);
+    }
+
+    @Test
+    public void rates_areSplitByComponent() {
+        meter.resetRates(1_000_000_000L);
+        section(OverheadMeter.SAMPLING, 10_000_000, 4096);
+        section(OverheadMeter.NETWORK, 2_000_000, 0);
+        meter.addMainThread(OverheadMeter.RENDERING, 500_000);
+        meter.updateRates(3_000_000_000L);
+
+        // 10ms over 2s is 0.5% of a core.
+        assertEquals(0.5, meter.getCpuPercent(OverheadMeter.SAMPLING), 1e-9);
+        assertEquals(0.1, meter.getCpuPercent(OverheadMeter.NETWORK), 1e-9);
+        assertEquals(0.0, meter.getCpuPercent(OverheadMeter.RENDERING), 1e-9);
+        assertEquals(0.25, meter.getMainThreadMsPerSec(OverheadMeter.RENDERING), 1e-9);
+        // Allocation counting is off: unknown, not zero.
+        assertEquals(-1, meter.getAllocKbPerSec(OverheadMeter.SAMPLING), 0.0);
+
+        // The next window starts empty.
+        meter.updateRates(4_000_000_000L);
+        assertEquals(0.0, meter.getCpuPercent(OverheadMeter.SAMPLING), 1e-9);
+    }
+
+    @Test
+    public void allocations_countOnlyWindowsCoveredFromStartToEnd() {
+        meter.setAllocationCounting(true);
+        meter.resetRates(1_000_000_000L);
+        section(OverheadMeter.RENDERING, 0, 2048);
+        meter.updateRates(2_000_000_000L);
+        assertEquals(2.0, meter.getAllocKbPerSec(OverheadMeter.RENDERING), 1e-9);
+        assertEquals(0.0, meter.getAllocKbPerSec(OverheadMeter.SAMPLING), 1e-9);
+
+        // Switched off then on again mid-window: that window is unknown.
+        meter.setAllocationCounting(false);
+        meter.setAllocationCounting(true);
+        section(OverheadMeter.RENDERING, 0, 2048);
+        meter.updateRates(3_000_000_000L);
+        assertEquals(-1, meter.getAllocKbPerSec(OverheadMeter.RENDERING), 0.0);
+
+        section(OverheadMeter.RENDERING, 0, 1024);
+        meter.updateRates(4_000_000_000L);
+        assertEquals(1.0, meter.getAllocKbPerSec(OverheadMeter.RENDERING), 1e-9);
+    }
+}
@@ -0,0 +1,86 @@
+package com.smartherd.debugoverlay;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the multi-rate sampling scheduler and its CPU budget.
+ */
+public class SamplingSchedulerTest {
+
+    // A thread CPU clock the sources advance by hand.
+    private final long[] cpuNs = {0};
+
+    private Runnable costing(long ns) {
+        return () -> cpuNs[0] += ns;
+    }
+
+    @Test
+    public void runDue_mergesTicksWithinTheCoalescingWindow() {
+        SamplingScheduler scheduler = new SamplingScheduler(() -> cpuNs[0], 100);
+        int fast = scheduler.add("fast", 1000, false, costing(0));
+        int slow = scheduler.add("slow", 1050, false, costing(0));
+
+        // Both due at start.
+        assertEquals(1000, scheduler.runDue(0));
+        assertEquals(1, scheduler.getRuns(fast));
+        assertEquals(1, scheduler.getRuns(slow));
+
+        // "slow" is due at 1050, within 100ms of 1000: it runs in the same wakeup.
+        assertEquals(2000, scheduler.runDue(1000));
+        assertEquals(2, scheduler.getRuns(slow));
+        assertEquals(2, scheduler.getWakeups());
+    }
+
+    @Test
+    public void budget_slowsAdaptiveSourcesAndRecovers() {
+        SamplingScheduler scheduler = new SamplingScheduler(() -> cpuNs[0], 0);
+        long[] expensiveCost = {100_000_000}; // 100ms per run: 10% of a core at 1Hz.
+        int cheap = scheduler.add("cheap", 1000, false, costing(0));
+        int expensive = scheduler.add("expensive", 1000, true, () -> cpuNs[0] += expensiveCost[0]);
+
+        long now = 0;
+        for (; now <= SamplingScheduler.BUDGET_WINDOW_MS; now += 1000) {
+            scheduler.runDue(now);
+        }
+        assertEquals(2, scheduler.getSlowdown());
+        assertTrue(scheduler.getOverheadPercent() > SamplingScheduler.DEFAULT_BUDGET_PERCENT);
+
+        // Keeps halving while over budget, never past MAX_SLOWDOWN; the cheap source keeps its rate.
+        for (; now <= 10 * SamplingScheduler.BUDGET_WINDOW_MS; now += 1000) {
+            scheduler.runDue(now);
+        }
+        assertEquals(SamplingScheduler.MAX_SLOWDOWN, scheduler.getSlowdown());
+        assertEquals(now / 1000, scheduler.getRuns(cheap));
+        assertTrue(scheduler.getRuns(expensive) < now / 1000);
+
+        // Cheap again: one step back per window, so full rate within a few windows.
+        expensiveCost[0] = 0;
+        long end = now + 5 * 8_000;
+        for (; now <= end && scheduler.getSlowdown() > 1; now += 1000) {
+            scheduler.runDue(now);
+        }
+        assertEquals(1, scheduler.getSlowdown());
+    }
+
+    @Test
+    public void deviceBusy_slowsDownEvenWithinBudget() {
+        SamplingScheduler scheduler = new SamplingScheduler(() -> cpuNs[0], 0);
+        int expensive = scheduler.add("expensive", 1000, true, costing(0));
+        scheduler.setDeviceBusy(true);
+
+        long now = 0;
+        for (; now <= SamplingScheduler.BUDGET_WINDOW_MS; now += 1000) {
+            scheduler.runDue(now);
+        }
+        assertEquals(2, scheduler.getSlowdown());
+        // From its next run on, the adaptive source is two intervals apart.
+        assertEquals(now + 2000, scheduler.runDue(now));
+        assertEquals(0.0, scheduler.getOverheadPercent(), 0.0);
+        assertEquals("expensive", scheduler.getName(expensive));
+
+        scheduler.reset(now);
+        assertEquals(now + 2000, scheduler.runDue(now));
+    }
+}
@@ -0,0 +1,137 @@
+package com.smartherd.debugoverlay;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the binary session recorder and its trace export.
+ */
+public class SessionRecorderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final long FRAME_NS = 16_666_667L;
+
+    private static int occurrences(String text, String token) {
+        int count = 0;
+        for (int i = text.indexOf(token); i >= 0; i = text.indexOf(token, i + 1)) count++;
+        return count;
+    }
+
+    @Test
+    public void recordedSession_exportsFramesSamplesAndCalls() throws Exception {
+        SessionRecorder recorder = new SessionRecorder(folder.getRoot(), 1024 * 1024, 2);
+        long start = System.nanoTime();
+        long[] intervals = new long[10];
+        long[] frameTimes = new long[10];
+        long time = start;
+        for (int i = 0; i < 10; i++) {
+            intervals[i] = i == 5 ? 5 * FRAME_NS : FRAME_NS;
+            time += intervals[i];
+            frameTimes[i] = time;
+        }
+        recorder.recordFrames(intervals, frameTimes, 10);
+
+        NetworkLogBuffer log = new NetworkLogBuffer(4);
+        log.add(System.currentTimeMillis(), "GET", "api.example.com", "/users/42", 200, 120, null);
+        log.add(System.currentTimeMillis(), "GET", "api.example.com", "/users/7", 500, 80, null);
+        NetworkLogBuffer.Entry[] entries = {new NetworkLogBuffer.Entry(), new NetworkLogBuffer.Entry()};
+        assertEquals(2, log.readSince(0, entries));
+        recorder.recordNetwork(entries[0]);
+        recorder.recordNetwork(entries[1]);
+
+        DebugStatsCollector.StatsData sample = new DebugStatsCollector.StatsData();
+        sample.fps = 57;
+        sample.usedMemoryMB = 143;
+        sample.cpuUsage = 12.5;
+        sample.overheadCpuPercent[OverheadMeter.SAMPLING] = 0.25;
+        recorder.recordSample(sample, time);
+        recorder.close();
+
+        List<File> files = recorder.files();
+        assertEquals(1, files.size());
+        // A second of 60Hz frames plus a few records stays in the tens of bytes.
+        assertTrue(files.get(0).length() < 128);
+
+        StringWriter json = new StringWriter();
+        SessionTraceExporter.export(files, json);
+        String trace = json.toString();
+        assertTrue(trace.startsWith("{"));
+        assertEquals(9, occurrences(trace, "\"name\":\"Frame\""));
+        assertEquals(1, occurrences(trace, "\"name\":\"Janky frame\""));
+        // Both calls share one interned route, so its name is only written to the file once.
+        assertEquals(2, occurrences(trace, "\"name\":\"GET api.example.com/users/{id}\""));
+        assertTrue(trace.contains("\"status\":500"));
+        assertTrue(trace.contains("\"args\":{\"fps\":57"));
+        assertTrue(trace.contains("\"cpu\":12.5"));
+        assertTrue(trace, trace.contains("\"name\":\"Overlay CPU (%)\""));
+        assertTrue(trace.contains("\"sampling\":0.25"));
+        // Allocations weren't counted, so there is no allocation track.
+        assertFalse(trace.contains("Overlay allocations"));
+    }
+
+    @Test
+    public void rotation_keepsNewestFilesAndEachExportsOnItsOwn() throws Exception {
+        SessionRecorder recorder = new SessionRecorder(folder.getRoot(), 64 * 1024, 2);
+        long[] intervals = new long[1024];
+        long[] frameTimes = new long[1024];
+        long time = System.nanoTime();
+        for (int batch = 0; batch < 200; batch++) {
+            for (int i = 0; i < intervals.length; i++) {
+                // Alternating intervals, so every frame needs a few bytes.
+                intervals[i] = (i % 2 == 0) ? FRAME_NS : 3 * FRAME_NS;
+                time += intervals[i];
+                frameTimes[i] = time;
+            }
+            recorder.recordFrames(intervals, frameTimes, intervals.length);
+        }
+        recorder.close();
+
+        List<File> files = recorder.files();
+        assertEquals(2, files.size());
+        assertEquals(2, folder.getRoot().listFiles().length);
+        // The oldest files were deleted as newer ones were opened.
+        assertFalse(files.get(0).getName().endsWith("-000" + SessionRecorder.FILE_SUFFIX));
+        for (File file : files) {
+            assertTrue(file.length() <= 64 * 1024 + 16 * 1024);
+            StringWriter json = new StringWriter();
+            SessionTraceExporter.export(Collections.singletonList(file), json);
+            assertTrue(json.toString().contains("\"name\":\"Janky frame\""));
+        }
+    }
+
+    @Test
+    public void longStrings_areCutOnACharacterBoundary() throws Exception {
+        SessionRecorder recorder = new SessionRecorder(folder.getRoot(), 1024 * 1024, 1);
+        NetworkLogBuffer log = new NetworkLogBuffer(4);
+        // Two- and three-byte characters, so some cut must fall inside one whichever the prefix.
+        log.add(System.currentTimeMillis(), "GET", "api.example.com", "/" + "\u00e9".repeat(300), 200, 10, null);
+        log.add(System.currentTimeMillis(), "GET", "api.example.com", "/x" + "\u20ac".repeat(300), 200, 10, null);
+        log.add(System.currentTimeMillis(), "GET", "api.example.com", "/xy" + "\u20ac".repeat(300), 200, 10, null);
+        NetworkLogBuffer.Entry[] entries = {
+                new NetworkLogBuffer.Entry(), new NetworkLogBuffer.Entry(), new NetworkLogBuffer.Entry()
+        };
+        assertEquals(3, log.readSince(0, entries));
+        for (NetworkLogBuffer.Entry entry : entries) {
+            recorder.recordNetwork(entry);
+        }
+        recorder.close();
+
+        StringWriter json = new StringWriter();
+        SessionTraceExporter.export(recorder.files(), json);
+        String trace = json.toString();
+        assertTrue(trace.contains("\u00e9\u00e9\u00e9"));
+        assertTrue(trace.contains("\u20ac\u20ac\u20ac"));
+        // A character split in half would decode as U+FFFD.
+        assertFalse(trace.contains("\ufffd"));
+    }
+}
@@ -0,0 +1,282 @@
+package com.smartherd.debugoverlay;
+
+import android.view.Choreographer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the shared, reference-counted StatsCollector engine, run on a fake host.
+ */
+public class StatsCollectorTest {
+
+    /**
+     * Records what the engine schedules instead of posting it, with clocks the test advances.
+     */
+    static final class FakeHost implements StatsCollector.Host {
+        final List<Choreographer.FrameCallback> frameCallbacks = new ArrayList<>();
+        final Map<Runnable, Long> tasks = new IdentityHashMap<>();
+        final List<Runnable> backgroundTasks = new ArrayList<>();
+        boolean backgroundQuit = false;
+        long uptimeMs = 10_000;
+        long processCpuMs = 0;
+
+        @Override
+        public void postFrameCallback(Choreographer.FrameCallback callback) {
+            frameCallbacks.add(callback);
+        }
+
+        @Override
+        public void removeFrameCallback(Choreographer.FrameCallback callback) {
+            frameCallbacks.removeIf(c -> c == callback);
+        }
+
+        @Override
+        public void postAtTime(Runnable task, long atUptimeMs) {
+            tasks.put(task, atUptimeMs);
+        }
+
+        @Override
+        public void removeCallbacks(Runnable task) {
+            tasks.remove(task);
+        }
+
+        @Override
+        public void postBackground(Runnable task) {
+            if (!backgroundTasks.contains(task)) backgroundTasks.add(task);
+        }
+
+        @Override
+        public void quitBackground() {
+            runBackground();
+            backgroundQuit = true;
+        }
+
+        @Override
+        public long uptimeMillis() {
+            return uptimeMs;
+        }
+
+        @Override
+        public long nanoTime() {
+            return uptimeMs * 1_000_000L;
+        }
+
+        @Override
+        public long processCpuTimeMs() {
+            return processCpuMs;
+        }
+
+        @Override
+        public long threadCpuTimeNanos() {
+            return 0;
+        }
+
+        @Override
+        public void sampleMemory(MemorySampler sampler, MemorySampler.Snapshot out) {
+            // No native counters off-device; the snapshot keeps its defaults.
+        }
+
+        // Runs the sampling loop once, as the main Handler would when it came due.
+        void runTick() {
+            Runnable tick = tasks.keySet().iterator().next();
+            tasks.remove(tick);
+            tick.run();
+        }
+
+        // Runs what is queued on the background thread.
+        void runBackground() {
+            while (!backgroundTasks.isEmpty()) {
+                backgroundTasks.remove(0).run();
+            }
+        }
+
+        // Delivers a vsync to the frame callback, as the Choreographer would.
+        void frame() {
+            Choreographer.FrameCallback callback = frameCallbacks.remove(0);
+            callback.doFrame(nanoTime());
+        }
+    }
+
+    static class RecordingSubscriber implements StatsCollector.Subscriber {
+        int samples = 0;
+        int fps = -1;
+        double cpuPercent = -2;
+        int threadCount = -1;
+        int threadGroupCount = -1;
+
+        @Override
+        public void onSample(StatsCollector.Sample sample) {
+            samples++;
+            fps = sample.fps;
+            cpuPercent = sample.cpuPercent;
+            threadCount = sample.threadCount;
+            threadGroupCount = sample.threadGroupCount;
+        }
+
+        @Override
+        public void onNetworkLogChanged() {
+        }
+    }
+
+    final FakeHost host = new FakeHost();
+
+    @Before
+    public void setUp() {
+        StatsCollector.setHost(host);
+    }
+
+    @After
+    public void tearDown() {
+        StatsCollector.setHost(null);
+    }
+
+    @Test
+    public void subscribe_firstSubscriberStartsOneEngine() {
+        RecordingSubscriber first = new RecordingSubscriber();
+        RecordingSubscriber second = new RecordingSubscriber();
+        assertFalse(StatsCollector.isEngineRunning());
+
+        StatsCollector.subscribe(first);
+        assertTrue(StatsCollector.isEngineRunning());
+        assertEquals(1, host.frameCallbacks.size());
+        assertEquals(1, host.tasks.size());
+
+        // A second overlay shares the engine: still one frame callback and one loop.
+        StatsCollector.subscribe(second);
+        assertEquals(2, StatsCollector.subscriberCount());
+        assertEquals(1, host.frameCallbacks.size());
+        assertEquals(1, host.tasks.size());
+
+        // Each tick is sampled once and handed to every subscriber.
+        host.runTick();
+        assertEquals(1, first.samples);
+        assertEquals(1, second.samples);
+
+        StatsCollector.unsubscribe(first);
+        StatsCollector.unsubscribe(second);
+    }
+
+    @Test
+    public void subscribe_twiceCountsOnce() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        StatsCollector.subscribe(subscriber);
+        StatsCollector.subscribe(subscriber);
+        assertEquals(1, StatsCollector.subscriberCount());
+
+        // So a single unsubscribe is the last one.
+        StatsCollector.unsubscribe(subscriber);
+        assertEquals(0, StatsCollector.subscriberCount());
+        assertFalse(StatsCollector.isEngineRunning());
+    }
+
+    @Test
+    public void unsubscribe_lastSubscriberStopsTheEngine() {
+        RecordingSubscriber first = new RecordingSubscriber();
+        RecordingSubscriber second = new RecordingSubscriber();
+        StatsCollector.subscribe(first);
+        StatsCollector.subscribe(second);
+        host.runTick();
+
+        StatsCollector.unsubscribe(first);
+        assertTrue(StatsCollector.isEngineRunning());
+        assertEquals(1, host.frameCallbacks.size());
+        assertEquals(1, host.tasks.size());
+        // Unknown subscribers are ignored.
+        StatsCollector.unsubscribe(first);
+        assertTrue(StatsCollector.isEngineRunning());
+
+        StatsCollector.unsubscribe(second);
+        assertFalse(StatsCollector.isEngineRunning());
+        // No frame callback and no sampling loop left behind.
+        assertTrue(host.frameCallbacks.isEmpty());
+        assertTrue(host.tasks.isEmpty());
+
+        // The next overlay starts a fresh engine.
+        StatsCollector.subscribe(first);
+        assertTrue(StatsCollector.isEngineRunning());
+        assertEquals(1, host.frameCallbacks.size());
+        StatsCollector.unsubscribe(first);
+    }
+
+    @Test
+    public void resume_doesNotReportDeltasSpanningTheBackground() {
+        AppVisibilityTracker tracker = new AppVisibilityTracker(true);
+        AppVisibilityTracker.setInstance(tracker);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        try {
+            tracker.onStarted();
+            StatsCollector.subscribe(subscriber);
+            host.runTick();
+            assertEquals(-1, subscriber.cpuPercent, 0.0);
+
+            // A second of 50 FPS and 100ms of CPU per 500ms tick.
+            for (int tick = 0; tick < 2; tick++) {
+                for (int i = 0; i < 25; i++) {
+                    host.uptimeMs += 20;
+                    host.frame();
+                }
+                host.processCpuMs += 100;
+                host.runTick();
+            }
+            int cores = Runtime.getRuntime().availableProcessors();
+            assertEquals(50, subscriber.fps);
+            assertEquals(20.0 / cores, subscriber.cpuPercent, 1e-9);
+
+            // A minute in the background, busy on other threads: nothing is scheduled meanwhile.
+            tracker.onStopped(false);
+            assertTrue(host.frameCallbacks.isEmpty());
+            assertTrue(host.tasks.isEmpty());
+            host.uptimeMs += 60_000;
+            host.processCpuMs += 30_000;
+
+            // Back: the first tick starts a new CPU window instead of averaging the background in.
+            tracker.onStarted();
+            host.runTick();
+            assertEquals(-1, subscriber.cpuPercent, 0.0);
+            // One frame back doesn't close an FPS window opened before the background.
+            host.uptimeMs += 20;
+            host.frame();
+            host.uptimeMs += 480;
+            host.processCpuMs += 50;
+            host.runTick();
+            assertEquals(50, subscriber.fps);
+            assertEquals(10.0 / cores, subscriber.cpuPercent, 1e-9);
+        } finally {
+            StatsCollector.unsubscribe(subscriber);
+            AppVisibilityTracker.setInstance(null);
+        }
+    }
+
+    @Test
+    public void threadSampling_runsInTheBackgroundAndIsPublishedOnTheNextTick() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        StatsCollector.subscribe(subscriber);
+        try {
+            // The tick only queues the /proc reads; nothing is known yet.
+            host.runTick();
+            assertEquals(0, subscriber.threadCount);
+            assertEquals(0, subscriber.threadGroupCount);
+            assertEquals(2, host.backgroundTasks.size());
+
+            host.runBackground();
+            host.uptimeMs += 500;
+            host.runTick();
+            assertTrue(subscriber.threadCount > 0);
+            assertTrue(subscriber.threadGroupCount > 0);
+        } finally {
+            StatsCollector.unsubscribe(subscriber);
+        }
+        // Stopping closes the inventory on the background thread before it quits.
+        assertTrue(host.backgroundTasks.isEmpty());
+        assertTrue(host.backgroundQuit);
+    }
+}
@@ -0,0 +1,67 @@
+package com.smartherd.debugoverlay;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for seqlock snapshot publishing and the listener registry.
+ */
+public class StatsSnapshotPublisherTest {
+
+    @Test
+    public void publish_notifiesEveryListenerAndBumpsVersion() {
+        StatsSnapshotPublisher publisher = new StatsSnapshotPublisher();
+        AtomicInteger calls = new AtomicInteger();
+        DebugStatsCollector.StatsUpdateListener first = data -> calls.incrementAndGet();
+        DebugStatsCollector.StatsUpdateListener second = data -> calls.incrementAndGet();
+        publisher.addListener(first);
+        publisher.addListener(second);
+        publisher.addListener(second); // duplicates are ignored
+
+        DebugStatsCollector.StatsData sample = new DebugStatsCollector.StatsData();
+        sample.fps = 58;
+        publisher.publish(sample);
+        publisher.removeListener(first);
+        publisher.publish(sample);
+
+        assertEquals(3, calls.get());
+        assertEquals(2, publisher.latestVersion());
+
+        DebugStatsCollector.StatsData out = new DebugStatsCollector.StatsData();
+        assertEquals(2, publisher.read(out));
+        assertEquals(58, out.fps);
+    }
+
+    @Test
+    public void read_neverObservesTornSnapshot() throws InterruptedException {
+        StatsSnapshotPublisher publisher = new StatsSnapshotPublisher();
+        AtomicBoolean done = new AtomicBoolean();
+
+        Thread writer = new Thread(() -> {
+            DebugStatsCollector.StatsData sample = new DebugStatsCollector.StatsData();
+            for (int i = 0; i < 200_000; i++) {
+                // Every field carries the same value, so a torn read shows up as a mismatch.
+                sample.fps = i;
+                sample.usedMemoryMB = i;
+                sample.networkCallCount = i;
+                sample.slowFrameCount = i;
+                publisher.publish(sample);
+            }
+            done.set(true);
+        });
+        writer.start();
+
+        DebugStatsCollector.StatsData out = new DebugStatsCollector.StatsData();
+        while (!done.get()) {
+            publisher.read(out);
+            assertEquals(out.fps, out.usedMemoryMB);
+            assertEquals(out.fps, out.networkCallCount);
+            assertEquals(out.fps, out.slowFrameCount);
+        }
+        writer.join();
+    }
+}
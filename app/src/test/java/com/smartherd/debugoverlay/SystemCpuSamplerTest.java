@@ -0,0 +1,86 @@
+package com.smartherd.debugoverlay;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for device-wide CPU sampling, against fake /proc and cpufreq files.
+ */
+public class SystemCpuSamplerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void write(File file, String content) throws Exception {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void parseDecimal_readsLeadingNumber() {
+        byte[] loadavg = "5.20 4.10 3.00 2/1234 5678\n".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(5.2, SystemCpuSampler.parseDecimal(loadavg, loadavg.length), 1e-9);
+        byte[] empty = "\n".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(-1, SystemCpuSampler.parseDecimal(empty, empty.length), 1e-9);
+    }
+
+    @Test
+    public void sample_reportsPerCoreUsageLoadAndFrequencies() throws Exception {
+        File root = folder.getRoot();
+        File stat = new File(root, "stat");
+        File loadavg = new File(root, "loadavg");
+        File cpu = new File(root, "cpu");
+        // user nice system idle iowait irq softirq steal guest guest_nice
+        write(stat, "cpu  200 0 100 700 0 0 0 0 0 0\n"
+                + "cpu0 100 0 50 350 0 0 0 0 0 0\n"
+                + "cpu1 100 0 50 350 0 0 0 0 0 0\n"
+                + "intr 12345 0 0\n");
+        write(loadavg, "1.50 1.00 0.50 1/300 4242\n");
+        write(new File(cpu, "cpu0/cpufreq/scaling_cur_freq"), "1804800\n");
+        write(new File(cpu, "cpu0/cpufreq/scaling_max_freq"), "1804800\n");
+        write(new File(cpu, "cpu0/cpufreq/cpuinfo_max_freq"), "1804800\n");
+        write(new File(cpu, "cpu1/cpufreq/scaling_cur_freq"), "1200000\n");
+        write(new File(cpu, "cpu1/cpufreq/scaling_max_freq"), "1500000\n");
+        write(new File(cpu, "cpu1/cpufreq/cpuinfo_max_freq"), "3000000\n");
+
+        SystemCpuSampler sampler = new SystemCpuSampler(stat.getPath(), loadavg.getPath(), cpu.getPath(), 2);
+        sampler.sample();
+        // Utilisation needs a second reading; the rest is known right away.
+        assertEquals(-1, sampler.getCoreUsagePercent(0), 1e-9);
+        assertEquals(1.5, sampler.getLoadAverage1(), 1e-9);
+        assertEquals(1804, sampler.getCoreFreqMHz(0));
+        assertEquals(3000, sampler.getCoreMaxFreqMHz(1));
+        assertEquals(1, sampler.getCappedCoreCount());
+
+        // +100 ticks per core: cpu0 fully busy, cpu1 a quarter busy (iowait counts as idle).
+        write(stat, "cpu  275 0 150 750 25 0 0 0 0 0\n"
+                + "cpu0 150 0 100 350 0 0 0 0 0 0\n"
+                + "cpu1 125 0 50 400 25 0 0 0 0 0\n");
+        sampler.sample();
+        assertEquals(100.0, sampler.getCoreUsagePercent(0), 1e-9);
+        assertEquals(25.0, sampler.getCoreUsagePercent(1), 1e-9);
+        assertEquals(62.5, sampler.getSystemUsagePercent(), 1e-9);
+        sampler.close();
+    }
+
+    @Test
+    public void sample_leavesUnreadableSourcesUnknown() throws Exception {
+        File root = folder.getRoot();
+        SystemCpuSampler sampler = new SystemCpuSampler(new File(root, "missing-stat").getPath(),
+                new File(root, "missing-loadavg").getPath(), new File(root, "missing-cpu").getPath(), 4);
+        sampler.sample();
+        sampler.sample();
+        assertEquals(-1, sampler.getSystemUsagePercent(), 1e-9);
+        assertEquals(-1, sampler.getLoadAverage1(), 1e-9);
+        assertEquals(-1, sampler.getCoreUsagePercent(3), 1e-9);
+        assertEquals(-1, sampler.getCoreFreqMHz(3));
+        assertEquals(-1, sampler.getCappedCoreCount());
+    }
+}
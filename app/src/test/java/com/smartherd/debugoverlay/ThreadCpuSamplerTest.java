@@ -0,0 +1,91 @@
+package com.smartherd.debugoverlay;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for per-thread CPU sampling, against a fake task directory.
+ */
+public class ThreadCpuSamplerTest {
+
+    private static final long SECOND_NS = 1_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // A stat line with the given comm and utime/stime, the other fields as the kernel writes them.
+    private void writeStat(File taskDir, int tid, String comm, long utime, long stime) throws Exception {
+        File dir = new File(taskDir, Integer.toString(tid));
+        dir.mkdirs();
+        String stat = tid + " (" + comm + ") S 1 1 0 0 -1 4194624 1200 0 0 0 "
+                + utime + " " + stime + " 0 0 20 0 42 0 3456 12345678 5000\n";
+        Files.write(new File(dir, "stat").toPath(), stat.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void parseCpuTicks_sumsUtimeAndStimeEvenWithParensInComm() {
+        byte[] line = "77 (evil) name) R 1 1 0 0 -1 0 0 0 0 0 250 50 0 0 20 0\n".getBytes(StandardCharsets.US_ASCII);
+        int close = new String(line, StandardCharsets.US_ASCII).lastIndexOf(')');
+        assertEquals(300, ThreadCpuSampler.parseCpuTicks(line, close, line.length));
+        assertEquals(-1, ThreadCpuSampler.parseCpuTicks(line, close, close + 10));
+    }
+
+    @Test
+    public void sample_reportsBusiestThreadsOverTheInterval() throws Exception {
+        File tasks = folder.newFolder("task");
+        writeStat(tasks, 100, "com.example.app", 1_000, 500);
+        writeStat(tasks, 101, "RenderThread", 200, 100);
+        writeStat(tasks, 102, "OkHttp Dispatch", 50, 0);
+        ThreadCpuSampler sampler = new ThreadCpuSampler(tasks.getPath(), 100, 100);
+
+        // The first reading is only a baseline: lifetime totals are never reported.
+        assertEquals(3, sampler.sample(SECOND_NS, 3));
+        String[] names = new String[2];
+        double[] percent = new double[2];
+        assertEquals(0, sampler.readTopThreads(names, percent));
+
+        // Over one second: main +30 ticks (30%), RenderThread +12 (12%), OkHttp idle.
+        writeStat(tasks, 100, "com.example.app", 1_020, 510);
+        writeStat(tasks, 101, "RenderThread", 210, 102);
+        assertEquals(3, sampler.sample(2 * SECOND_NS, 3));
+        assertEquals(2, sampler.readTopThreads(names, percent));
+        assertEquals(ThreadCpuSampler.MAIN_THREAD_NAME, names[0]);
+        assertEquals(30.0, percent[0], 0.001);
+        assertEquals("RenderThread", names[1]);
+        assertEquals(12.0, percent[1], 0.001);
+    }
+
+    @Test
+    public void sample_picksUpNewThreadsAndDropsExitedOnes() throws Exception {
+        File tasks = folder.newFolder("task");
+        writeStat(tasks, 100, "main", 10, 0);
+        ThreadCpuSampler sampler = new ThreadCpuSampler(tasks.getPath(), 100, 100);
+        assertEquals(1, sampler.sample(SECOND_NS, 1));
+
+        // A changed thread count triggers a rescan.
+        writeStat(tasks, 103, "worker-1", 0, 0);
+        assertEquals(2, sampler.sample(2 * SECOND_NS, 2));
+
+        // A renamed thread is reported under its new name.
+        writeStat(tasks, 103, "worker-renamed", 40, 10);
+        sampler.sample(3 * SECOND_NS, 2);
+        String[] names = new String[1];
+        double[] percent = new double[1];
+        assertEquals(1, sampler.readTopThreads(names, percent));
+        assertEquals("worker-renamed", names[0]);
+        assertEquals(50.0, percent[0], 0.001);
+
+        // An unreadable stat (as for an exited task) drops the thread.
+        Files.write(new File(tasks, "103/stat").toPath(), new byte[0]);
+        assertEquals(1, sampler.sample(4 * SECOND_NS, 1));
+        sampler.close();
+        assertEquals(0, sampler.getTrackedCount());
+    }
+}
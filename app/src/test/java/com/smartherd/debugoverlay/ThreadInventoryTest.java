@@ -0,0 +1,96 @@
+package com.smartherd.debugoverlay;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for /proc-based thread counting and name-prefix grouping.
+ */
+public class ThreadInventoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void prefixLength_stripsTrailingNumbersAndSeparators() {
+        assertEquals("Binder", prefix("Binder:1234_5\n"));
+        assertEquals("pool-3-thread", prefix("pool-3-thread-12\n"));
+        assertEquals("OkHttp Dispatch", prefix("OkHttp Dispatch\n"));
+        assertEquals("RenderThread", prefix("RenderThread"));
+        // Purely numeric names are kept whole.
+        assertEquals("1234", prefix("1234\n"));
+    }
+
+    @Test
+    public void parseThreadsLine_readsValueAfterKey() {
+        byte[] status = "Name:\tapp\nThreadsMax:\t9\nThreads:\t42\nSigQ:\t0/1\n".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(42, ThreadInventory.parseThreadsLine(status, status.length));
+
+        byte[] missing = "Name:\tapp\n".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(-1, ThreadInventory.parseThreadsLine(missing, missing.length));
+    }
+
+    @Test
+    public void inventory_groupsThreadsOfThisProcess() throws Exception {
+        ThreadInventory inventory = new ThreadInventory();
+        if (inventory.countThreads() < 0) return; // No /proc on this host.
+
+        Thread[] workers = new Thread[3];
+        Object lock = new Object();
+        // A thread's name reaches /proc only once it runs, so wait until every worker has.
+        CountDownLatch running = new CountDownLatch(workers.length);
+        synchronized (lock) {
+            for (int i = 0; i < workers.length; i++) {
+                workers[i] = new Thread(() -> {
+                    running.countDown();
+                    synchronized (lock) { /* wait for the test to finish */ }
+                }, "InvTestWorker-" + i);
+                workers[i].start();
+            }
+            assertTrue(running.await(5, TimeUnit.SECONDS));
+            assertTrue(inventory.countThreads() >= workers.length + 1);
+            assertTrue(inventory.takeInventory() > workers.length);
+
+            int workerCount = 0;
+            for (int i = 0; i < inventory.getGroupCount(); i++) {
+                if ("InvTestWorker".equals(inventory.getGroupName(i))) {
+                    workerCount = inventory.getGroupThreadCount(i);
+                }
+                if (i > 0) {
+                    assertTrue(inventory.getGroupThreadCount(i) <= inventory.getGroupThreadCount(i - 1));
+                }
+            }
+            assertEquals(workers.length, workerCount);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        inventory.close();
+    }
+
+    @Test
+    public void countThreads_stopsTryingOnceStatusIsUnreadable() throws Exception {
+        File status = new File(folder.getRoot(), "status");
+        ThreadInventory inventory = new ThreadInventory(status.getPath());
+        assertEquals(-1, inventory.countThreads());
+
+        // Not reopened on later ticks, even once the file is there.
+        Files.write(status.toPath(), "Name:\tapp\nThreads:\t42\n".getBytes(StandardCharsets.US_ASCII));
+        assertEquals(-1, inventory.countThreads());
+        inventory.close();
+    }
+
+    private static String prefix(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.US_ASCII);
+        return new String(bytes, 0, ThreadInventory.prefixLength(bytes, bytes.length), StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,70 @@
+package com.smartherd.debugoverlay;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the per-vsync frame recording done in DebugStatsCollector.doFrame() and of the
+ * once-per-sample FPS/percentile aggregation over a full window.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FrameStatsBenchmark {
+
+    private static final int WINDOW = 120;
+    private static final long PERIOD_NS = 8_333_333L; // 120Hz
+
+    private FrameIntervalBuffer frames;
+    private long frameTimeNanos;
+    private long lastFrameTimeNanos;
+
+    @Setup
+    public void setUp() {
+        frames = new FrameIntervalBuffer(WINDOW);
+        frames.setRefreshPeriodNs(PERIOD_NS);
+        frameTimeNanos = 0;
+        lastFrameTimeNanos = 0;
+        for (int i = 0; i < WINDOW; i++) {
+            frames.record(intervalFor(i));
+        }
+    }
+
+    // Mostly on-time frames with an occasional two- and five-vsync miss.
+    private static long intervalFor(long frame) {
+        if (frame % 97 == 0) return PERIOD_NS * 5;
+        if (frame % 13 == 0) return PERIOD_NS * 2;
+        return PERIOD_NS + (frame & 0xFFFF);
+    }
+
+    /**
+     * The main-thread work per vsync: interval from the previous timestamp, recorded into the ring.
+     */
+    @Benchmark
+    public long doFrame() {
+        frameTimeNanos += intervalFor(frameTimeNanos / PERIOD_NS);
+        if (lastFrameTimeNanos > 0) {
+            frames.record(frameTimeNanos - lastFrameTimeNanos);
+        }
+        lastFrameTimeNanos = frameTimeNanos;
+        return lastFrameTimeNanos;
+    }
+
+    /**
+     * The sampler-thread aggregation behind the FPS and frame-time percentile figures.
+     */
+    @Benchmark
+    public long aggregateFps() {
+        frames.record(intervalFor(frameTimeNanos++));
+        frames.summarize();
+        return frames.getMeanNs() + frames.getP50Ns() + frames.getP90Ns() + frames.getP99Ns()
+                + frames.getDroppedVsyncCount();
+    }
+}
@@ -0,0 +1,151 @@
+package com.smartherd.debugoverlay;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ServerSocketFactory;
+
+import mockwebserver3.Dispatcher;
+import mockwebserver3.MockResponse;
+import mockwebserver3.MockWebServer;
+import mockwebserver3.RecordedRequest;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Per-request overhead of the overlay's OkHttp hooks. Compare each {@code hooks} value against
+ * "none" for the same benchmark method:
+ *
+ * - roundTrip: a real call to a local MockWebServer over a kept-alive connection.
+ * - shortCircuited: the same call answered by a final interceptor without touching the network,
+ *   so the hooks' share of the cost (and their allocations) isn't buried in socket I/O.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class InterceptorOverheadBenchmark {
+
+    /**
+     * none: plain client. monitor: NetworkMonitorInterceptor. monitorAndTiming: plus the pooled
+     * per-phase EventListener.Factory. legacy: NetworkInterceptor (histograms plus the log ring).
+     */
+    @Param({"none", "monitor", "monitorAndTiming", "legacy"})
+    public String hooks;
+
+    private MockWebServer server;
+    private OkHttpClient networkClient;
+    private OkHttpClient shortCircuitClient;
+    private Request request;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        MockResponse response = new MockResponse.Builder().code(200).body("{\"ok\":true}").build();
+        server = new MockWebServer();
+        server.setServerSocketFactory(new NoDelayServerSocketFactory());
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest recordedRequest) {
+                return response;
+            }
+        });
+        server.start();
+        // An ID segment, so route collapsing is part of the measured work.
+        request = new Request.Builder().url(server.url("/users/42/posts")).build();
+
+        networkClient = withHooks(new OkHttpClient.Builder()).build();
+        shortCircuitClient = withHooks(new OkHttpClient.Builder())
+                .addInterceptor(chain -> new Response.Builder()
+                        .request(chain.request())
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(200)
+                        .message("OK")
+                        .body(ResponseBody.create("{\"ok\":true}", null))
+                        .build())
+                .build();
+    }
+
+    private OkHttpClient.Builder withHooks(OkHttpClient.Builder builder) {
+        switch (hooks) {
+            case "monitor":
+                return builder.addInterceptor(new NetworkMonitorInterceptor(new EndpointStatsRegistry()));
+            case "monitorAndTiming":
+                return builder.addInterceptor(new NetworkMonitorInterceptor(new EndpointStatsRegistry()))
+                        .eventListenerFactory(new NetworkTimingListenerFactory(new NetworkPhaseStats()));
+            case "legacy":
+                return builder.addInterceptor(new NetworkInterceptor());
+            default:
+                return builder;
+        }
+    }
+
+    /**
+     * MockWebServer writes headers and body separately; without TCP_NODELAY on its side, Nagle's
+     * algorithm plus the client's delayed ACK adds ~40ms per call and hides everything else.
+     */
+    private static final class NoDelayServerSocketFactory extends ServerSocketFactory {
+        @Override
+        public ServerSocket createServerSocket() throws IOException {
+            return new ServerSocket() {
+                @Override
+                public Socket accept() throws IOException {
+                    Socket socket = super.accept();
+                    socket.setTcpNoDelay(true);
+                    return socket;
+                }
+            };
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port) throws IOException {
+            throw new UnsupportedOperationException("MockWebServer binds unbound sockets");
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog) throws IOException {
+            throw new UnsupportedOperationException("MockWebServer binds unbound sockets");
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog, InetAddress address) throws IOException {
+            throw new UnsupportedOperationException("MockWebServer binds unbound sockets");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        networkClient.dispatcher().executorService().shutdown();
+        networkClient.connectionPool().evictAll();
+        server.close();
+    }
+
+    @Benchmark
+    public int roundTrip() throws IOException {
+        try (Response response = networkClient.newCall(request).execute()) {
+            return response.body().string().length();
+        }
+    }
+
+    @Benchmark
+    public int shortCircuited() throws IOException {
+        try (Response response = shortCircuitClient.newCall(request).execute()) {
+            return response.code();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.smartherd.debugoverlay;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of publishing a sample through the seqlock snapshot and of copying it out, alone and with
+ * a reader racing the writer.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SnapshotPublishBenchmark {
+
+    @Param({"0", "3"})
+    public int listeners;
+
+    private StatsSnapshotPublisher publisher;
+    private DebugStatsCollector.StatsData sample;
+    private DebugStatsCollector.StatsData readCopy;
+    private Blackhole blackhole;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        publisher = new StatsSnapshotPublisher();
+        for (int i = 0; i < listeners; i++) {
+            // Listeners do what DebugOverlayView does: a cheap hand-off, no work inline.
+            publisher.addListener(data -> this.blackhole.consume(data.version));
+        }
+        sample = StatsSamples.typical();
+        readCopy = new DebugStatsCollector.StatsData();
+    }
+
+    @Benchmark
+    @Group("uncontended")
+    public void publish() {
+        sample.fps++;
+        publisher.publish(sample);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public void publishWhileRead() {
+        sample.fps++;
+        publisher.publish(sample);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public long readWhilePublish() {
+        return publisher.read(readCopy);
+    }
+}
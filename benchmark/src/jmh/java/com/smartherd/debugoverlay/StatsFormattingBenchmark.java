@@ -0,0 +1,51 @@
+package com.smartherd.debugoverlay;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of formatting one snapshot into every line of the stats panel, as done on the main thread
+ * for each published sample (drawing itself needs a device and is not covered here).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StatsFormattingBenchmark {
+
+    private DebugStatsCollector.StatsData data;
+    private final CharLine[] lines = new CharLine[StatsLineFormatter.LINE_COUNT];
+    private final CharLine scratch = new CharLine(StatsLineFormatter.MAX_LINE_CHARS);
+
+    @Setup
+    public void setUp() {
+        data = StatsSamples.typical();
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = new CharLine(StatsLineFormatter.MAX_LINE_CHARS);
+        }
+    }
+
+    /**
+     * StatsPanelView.setStats() minus the invalidation: format, compare, copy changed lines.
+     */
+    @Benchmark
+    public int formatPanel() {
+        data.fps = (data.fps + 1) % 121;
+        data.cpuUsage += 0.1;
+        int changed = 0;
+        for (int i = 0; i < lines.length; i++) {
+            StatsLineFormatter.formatLine(data, i, scratch);
+            if (!lines[i].contentEquals(scratch)) {
+                lines[i].copyFrom(scratch);
+                changed++;
+            }
+        }
+        return changed;
+    }
+}
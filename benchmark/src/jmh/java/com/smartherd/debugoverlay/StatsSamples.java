@@ -0,0 +1,110 @@
+package com.smartherd.debugoverlay;
+
+/**
+ * Realistic snapshot contents shared by the benchmarks.
+ */
+final class StatsSamples {
+
+    private StatsSamples() {}
+
+    static DebugStatsCollector.StatsData typical() {
+        DebugStatsCollector.StatsData data = new DebugStatsCollector.StatsData();
+        data.version = 1;
+        data.fps = 58;
+        data.refreshRateHz = 120f;
+        data.droppedFrameCount = 37;
+        data.frameTimeP50Ms = 8.3;
+        data.frameTimeP90Ms = 16.7;
+        data.frameTimeP99Ms = 41.2;
+        data.slowFrameCount = 12;
+        data.frozenFrameCount = 1;
+        data.usedMemoryMB = 184;
+        data.pssJavaMB = 42;
+        data.pssNativeMB = 31;
+        data.pssGraphicsMB = 60;
+        data.pssCodeMB = 40;
+        data.pssStackMB = 2;
+        data.pssAgeSeconds = 12;
+        data.javaHeapUsedMB = 42;
+        data.javaHeapMaxMB = 512;
+        data.nativeHeapMB = 31;
+        data.rssMB = 231;
+        data.gcCount = 12;
+        data.blockingGcCount = 3;
+        data.blockingGcTimeMs = 85;
+        data.allocationRateMBps = 3.2;
+        data.cpuUsage = 23.4;
+        data.cpuUsageRaw = 187.2;
+        data.cpuCoreCount = 8;
+        data.systemCpuUsage = 64.0;
+        data.systemLoadAverage = 5.2;
+        data.coreCount = 8;
+        for (int core = 0; core < data.coreCount; core++) {
+            data.coreUsage[core] = 10 + core * 11;
+            data.coreMaxFreqMHz[core] = core < 4 ? 1804 : 2400;
+            data.coreFreqMHz[core] = core < 4 ? 1804 : 1200;
+        }
+        data.cappedCoreCount = 4;
+        data.profilerCpuUsage = 0.8;
+        data.profilerRateHz = 100;
+        data.samplingSlowdown = 2;
+        data.overheadCpuPercent[OverheadMeter.SAMPLING] = 0.42;
+        data.overheadCpuPercent[OverheadMeter.RENDERING] = 0.11;
+        data.overheadCpuPercent[OverheadMeter.NETWORK] = 0.02;
+        data.overheadMainThreadMsPerSec[OverheadMeter.RENDERING] = 0.3;
+        data.overheadAllocKbPerSec[OverheadMeter.SAMPLING] = 12;
+        data.overheadAllocKbPerSec[OverheadMeter.RENDERING] = 0;
+        data.overheadAllocKbPerSec[OverheadMeter.NETWORK] = 3;
+        data.threadCount = 61;
+        data.threadGroupNames[0] = "OkHttp Dispatch";
+        data.threadGroupCounts[0] = 8;
+        data.threadGroupNames[1] = "RenderThread";
+        data.threadGroupCounts[1] = 1;
+        data.threadGroupCount = 2;
+        data.topCpuThreadNames[0] = "main";
+        data.topCpuThreadPercent[0] = 12.0;
+        data.topCpuThreadNames[1] = "RenderThread";
+        data.topCpuThreadPercent[1] = 8.0;
+        data.topCpuThreadNames[2] = "OkHttp Dispatch";
+        data.topCpuThreadPercent[2] = 3.0;
+        data.topCpuThreadCount = 3;
+        data.mainThreadStallCount = 5;
+        data.mainThreadBlockedMs = 812;
+        data.topStallLabels[0] = "FeedAdapter.onBindViewHolder:88";
+        data.topStallCounts[0] = 3;
+        data.topStallBlockedMs[0] = 600;
+        data.topStallLabels[1] = "SettingsStore.load:41";
+        data.topStallCounts[1] = 2;
+        data.topStallBlockedMs[1] = 212;
+        data.topStallCount = 2;
+        data.networkCallCount = 1532;
+        data.networkOverall.name = "all";
+        data.networkOverall.calls = 1532;
+        data.networkOverall.p50Ms = 84.0;
+        data.networkOverall.p95Ms = 310.0;
+        data.networkOverall.p99Ms = 920.0;
+        data.networkOverall.errorRate = 0.013;
+        String[] hosts = {"api.example.com", "cdn.example.com", "auth.example.com"};
+        for (int i = 0; i < hosts.length; i++) {
+            EndpointStatsRegistry.Summary host = data.networkTopHosts[i];
+            host.name = hosts[i];
+            host.calls = 900 - i * 300;
+            host.p50Ms = 60 + i * 20;
+            host.p95Ms = 250 + i * 50;
+            host.p99Ms = 800 + i * 100;
+            host.errorRate = 0.01 * i;
+        }
+        data.networkTopHostCount = hosts.length;
+        for (int i = 0; i < data.networkPhaseMs.length; i++) {
+            data.networkPhaseMs[i] = 3.5 * (i + 1);
+        }
+        data.alertRuleCount = 3;
+        data.alertFiringCount = 1;
+        data.alertFiringMetrics = 1L << AlertRule.FPS;
+        data.alertEventCount = 2;
+        data.alertLabel = "fps < 45 for 3s";
+        data.alertValue = 38;
+        data.alertAgeSeconds = 12;
+        return data;
+    }
+}
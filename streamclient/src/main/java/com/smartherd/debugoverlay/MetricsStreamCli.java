@@ -0,0 +1,45 @@
+package com.smartherd.debugoverlay;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Prints one line per batch from a device's metrics stream.
+ *
+ * Usage: MetricsStreamCli [host] [port]   (defaults: localhost 7077)
+ */
+public final class MetricsStreamCli {
+
+    private MetricsStreamCli() { }
+
+    public static void main(String[] args) throws IOException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : MetricsStreamProtocol.DEFAULT_PORT;
+
+        try (MetricsStreamClient client = MetricsStreamClient.connect(host, port)) {
+            MetricsStreamClient.Batch batch = new MetricsStreamClient.Batch();
+            while (client.readBatch(batch)) {
+                int maxFrameUs = 0;
+                for (int i = 0; i < batch.frameCount; i++) {
+                    maxFrameUs = Math.max(maxFrameUs, batch.frameIntervalsUs[i]);
+                }
+                float overheadCpu = 0;
+                for (int i = 0; i < batch.overheadComponentCount; i++) {
+                    overheadCpu += batch.overheadCpuPercent[i];
+                }
+                System.out.println(String.format(Locale.US,
+                        "#%d fps=%d/%.0fHz p50=%.1fms p99=%.1fms worst=%.1fms frames=%d mem=%dMB cpu=%.1f%% "
+                                + "threads=%d calls=+%d net.p95=%.0fms overlay=%.2f%% missed=%d",
+                        batch.sequence, batch.fps, batch.refreshRateHz, batch.frameTimeP50Ms,
+                        batch.frameTimeP99Ms, maxFrameUs / 1000.0, batch.frameCount, batch.usedMemoryMB,
+                        batch.cpuUsage, batch.threadCount, batch.calls.size(), batch.networkP95Ms,
+                        overheadCpu, client.missedBatches()));
+                for (MetricsStreamClient.Call call : batch.calls) {
+                    System.out.println(String.format(Locale.US, "    %s %s%s -> %d in %dms",
+                            call.method, call.host, call.path, call.statusCode, call.durationMs));
+                }
+            }
+        }
+        System.out.println("Stream closed.");
+    }
+}